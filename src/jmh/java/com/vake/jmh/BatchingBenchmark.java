@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.vake.MessageClient;
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.codec.MessageProtocolCodecFactory;
+import com.vake.message.request.MessageResponseFuture;
+import com.vake.message.request.TimingWheelScheduler;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 合并写出对小消息吞吐量的影响：每次操作异步发出一批请求并等待全部响应<p/>
+ * batching=true时客户端和服务端都使用BatchingMessageEncoder，多条消息打包在一个数据报中
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchingBenchmark
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingBenchmark.class);
+
+    private static final int SESSION_ID = 10000;
+
+    private static final int IN_FLIGHT = 256;
+
+    @Param({"false", "true"})
+    public boolean batching;
+
+    private NioDatagramAcceptor server;
+
+    private MessageClient client;
+
+    private final MessageResponseFuture[] futures = new MessageResponseFuture[IN_FLIGHT];
+
+    private int serial;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        System.setProperty(MessageProtocolCodecFactory.BATCHING_PROPERTY, String.valueOf(batching));
+        server = EchoServer.start();
+        client = new MessageClient(new TimingWheelScheduler(), EchoServer.HOST, server.getLocalAddress().getPort(), 0);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        LOGGER.info("batching={}, limiters={}", batching, client.getLimiters());
+        client.destory();
+        server.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IN_FLIGHT)
+    public void executeBurst() throws DeviceResponseTimeout
+    {
+        for (int i = 0; i < IN_FLIGHT; i++)
+        {
+            futures[i] = client.executeAsync(SESSION_ID, Messages.create(SESSION_ID, ++serial, 16));
+        }
+        for (int i = 0; i < IN_FLIGHT; i++)
+        {
+            futures[i].await(10, TimeUnit.SECONDS);
+        }
+    }
+}
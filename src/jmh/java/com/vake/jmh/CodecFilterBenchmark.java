@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import com.vake.message.Message;
+import com.vake.message.codec.MessageProtocolCodecFactory;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.service.DefaultTransportMetadata;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * MessageEncoder/MessageDecoder经过ProtocolCodecFilter的基准<p/>
+ * 使用DummySession驱动过滤器链，包含MINA写请求、解码输出队列等真实开销
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecFilterBenchmark
+{
+    @Param({"datagram", "stream"})
+    public String transport;
+
+    @Param({"16", "512"})
+    public int contentLength;
+
+    private DummySession session;
+
+    private Message message;
+
+    private IoBuffer frame;
+
+    private Object received;
+
+    @Setup
+    public void setUp()
+    {
+        session = new DummySession();
+        // stream传输有分片，走MessageFrameDecoder累积解码
+        final boolean fragmentation = "stream".equals(transport);
+        session.setTransportMetadata(new DefaultTransportMetadata("mina", transport, false, fragmentation,
+                SocketAddress.class, IoSessionConfig.class, Object.class));
+        session.getFilterChain().addLast("codec", new ProtocolCodecFilter(new MessageProtocolCodecFactory()));
+        session.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message) throws Exception
+            {
+                received = message;
+            }
+        });
+        message = Messages.create(10000, 1, contentLength);
+        frame = message.encodeToBuffer();
+    }
+
+    @Benchmark
+    public Object decode()
+    {
+        session.getFilterChain().fireMessageReceived(frame.duplicate());
+        return received;
+    }
+
+    @Benchmark
+    public Object encode()
+    {
+        return session.write(message);
+    }
+}
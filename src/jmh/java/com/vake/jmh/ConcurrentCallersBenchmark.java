@@ -0,0 +1,140 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vake.MessageClient;
+import com.vake.VirtualThreads;
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.request.TimingWheelScheduler;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 大量并发阻塞调用方的基准：固定线程池与虚拟线程模式对比<p/>
+ * 每次操作同时发起callers个阻塞的MessageClient.execute并等待全部完成。
+ * fixed模式由固定大小的平台线程池承载调用方；virtual模式每个调用方一个虚拟线程，
+ * 客户端的ExecutorFilter也运行在虚拟线程上，需在JDK 21+上以-Pvirtual-threads运行
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ConcurrentCallersBenchmark
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentCallersBenchmark.class);
+
+    // fixed模式的调用方线程数，即同时在途请求的上限
+    private static final int FIXED_POOL_SIZE = 200;
+
+    private static final int SESSION_ID = 10000;
+
+    @Param({"1000", "10000", "100000"})
+    public int callers;
+
+    @Param({"fixed", "virtual"})
+    public String mode;
+
+    private NioDatagramAcceptor server;
+
+    private MessageClient client;
+
+    private ExecutorService callerExecutor;
+
+    private final AtomicInteger serial = new AtomicInteger();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        final boolean virtual = "virtual".equals(mode);
+        if (virtual && !VirtualThreads.isSupported())
+        {
+            throw new IllegalStateException("virtual threads require JDK 21+, running on " + System.getProperty("java.version"));
+        }
+        server = EchoServer.start();
+        client = new MessageClient(new TimingWheelScheduler(), EchoServer.HOST, server.getLocalAddress().getPort(), 0, virtual);
+        callerExecutor = virtual ? VirtualThreads.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(FIXED_POOL_SIZE);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        LOGGER.info("mode={}, callers={}, timeouts={}", mode, callers, timeouts.get());
+        callerExecutor.shutdownNow();
+        client.destory();
+        server.dispose();
+    }
+
+    @Benchmark
+    public long executeAll() throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(callers);
+        for (int i = 0; i < callers; i++)
+        {
+            callerExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        client.execute(SESSION_ID, Messages.create(SESSION_ID, serial.incrementAndGet(), 16));
+                    } catch (DeviceResponseTimeout ex)
+                    {
+                        timeouts.incrementAndGet();
+                    } finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        return timeouts.get();
+    }
+}
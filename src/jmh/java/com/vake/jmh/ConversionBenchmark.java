@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vake.ArrayUtils;
+import com.vake.LegacyArrayUtils;
+import com.vake.NumberUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * NumberUtils/ArrayUtils转换基准<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversionBenchmark
+{
+    // 11位号码加结束符，占6字节BCD
+    private static final String PHONE = "13800138000";
+
+    private int intValue = 0x12345678;
+
+    private byte[] intBytes;
+
+    private byte[] bcd;
+
+    private byte[] payload;
+
+    private String simpleHex;
+
+    private final StringBuilder builder = new StringBuilder(512);
+
+    @Setup
+    public void setUp()
+    {
+        intBytes = NumberUtils.intToBytes(intValue);
+        bcd = NumberUtils.stringToBcd(PHONE, 12);
+        payload = new byte[64];
+        for (int i = 0; i < payload.length; i++)
+        {
+            payload[i] = (byte) (i * 37);
+        }
+        simpleHex = ArrayUtils.toSimpleHexString(payload);
+    }
+
+    @Benchmark
+    public byte[] intToBytes()
+    {
+        return NumberUtils.intToBytes(intValue);
+    }
+
+    @Benchmark
+    public int byteArrayToInt()
+    {
+        return NumberUtils.byteArrayToInt(intBytes);
+    }
+
+    @Benchmark
+    public int bytesToInt()
+    {
+        return ArrayUtils.bytesToInt(intBytes);
+    }
+
+    @Benchmark
+    public byte[] stringToBcd()
+    {
+        return NumberUtils.stringToBcd(PHONE, 12);
+    }
+
+    @Benchmark
+    public String bcdToString()
+    {
+        return NumberUtils.bcdToString(bcd);
+    }
+
+    @Benchmark
+    public String intToIpV4String()
+    {
+        return NumberUtils.intToIpV4String(intValue);
+    }
+
+    @Benchmark
+    public String toHexString()
+    {
+        return ArrayUtils.toHexString(payload);
+    }
+
+    @Benchmark
+    public String toHexStringLegacy()
+    {
+        return LegacyArrayUtils.toString(payload, 16);
+    }
+
+    @Benchmark
+    public StringBuilder appendToReusedBuilder()
+    {
+        builder.setLength(0);
+        return ArrayUtils.append(builder, payload, 0, payload.length, 16);
+    }
+
+    @Benchmark
+    public String toSimpleHexString()
+    {
+        return ArrayUtils.toSimpleHexString(payload);
+    }
+
+    @Benchmark
+    public String toSimpleHexStringLegacy()
+    {
+        return LegacyArrayUtils.toSimpleHexString(payload);
+    }
+
+    @Benchmark
+    public byte[] parseSimpleHexString()
+    {
+        return ArrayUtils.parseSimpleHexString(simpleHex);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.vake.message.Message;
+import com.vake.message.request.RequestCorrelationTable;
+import org.apache.mina.util.ConcurrentHashSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 原ConcurrentHashSet&lt;String&gt;与RequestCorrelationTable在不同在途请求数下的对比基准<p/>
+ * 每次操作模拟一个请求的完整生命周期：加入新请求、按响应查找、移除最早的请求
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CorrelationTableBenchmark
+{
+    private static final int SESSION_ID = 10000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int inFlight;
+
+    private final Object id = new Object();
+
+    private Set<Object> set;
+
+    private RequestCorrelationTable<Object> table;
+
+    private Message response;
+
+    private int setSerial;
+
+    private int tableSerial;
+
+    @Setup
+    public void setUp()
+    {
+        set = new ConcurrentHashSet<Object>();
+        table = new RequestCorrelationTable<Object>();
+        for (int serial = 0; serial < inFlight; serial++)
+        {
+            set.add(SESSION_ID + "#" + serial);
+            table.put(RequestCorrelationTable.pack(SESSION_ID, serial), id);
+        }
+        setSerial = inFlight;
+        tableSerial = inFlight;
+        response = new Message();
+        response.setSessionId(SESSION_ID);
+    }
+
+    @Benchmark
+    public boolean stringSet()
+    {
+        final int serial = setSerial++;
+        set.add(SESSION_ID + "#" + serial);
+        response.setSerial(serial);
+        final boolean found = set.contains(response.getSessionId() + "#" + (long) response.getSerial());
+        set.remove(SESSION_ID + "#" + (serial - inFlight));
+        return found;
+    }
+
+    @Benchmark
+    public Object correlationTable()
+    {
+        final int serial = tableSerial++;
+        table.put(RequestCorrelationTable.pack(SESSION_ID, serial), id);
+        response.setSerial(serial);
+        final Object found = table.get(RequestCorrelationTable.pack(response.getSessionId(), response.getSerial()));
+        table.remove(RequestCorrelationTable.pack(SESSION_ID, serial - inFlight));
+        return found;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.io.IOException;
+
+import com.vake.MessageServer;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+
+/**
+ * 进程内的UDP回显服务(MessageServer的udp模式)，绑定在临时端口上<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+final class EchoServer
+{
+    static final String HOST = "127.0.0.1";
+
+    private EchoServer()
+    {
+    }
+
+    static NioDatagramAcceptor start() throws IOException
+    {
+        return MessageServer.bindDatagram(0);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vake.MessageClient;
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+import com.vake.message.request.TimingWheelScheduler;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * MessageClient.execute经本机UDP回环到进程内回显服务的完整往返基准<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoopbackRoundTripBenchmark
+{
+    private static final int SESSION_ID = 10000;
+
+    @Param({"16", "512"})
+    public int contentLength;
+
+    private NioDatagramAcceptor server;
+
+    private MessageClient client;
+
+    // 并发调用时流水号不能重复，否则响应无法区分
+    private final AtomicInteger serial = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        server = EchoServer.start();
+        client = new MessageClient(new TimingWheelScheduler(), EchoServer.HOST, server.getLocalAddress().getPort(), 0);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.destory();
+        server.dispose();
+    }
+
+    @Benchmark
+    public Message execute() throws DeviceResponseTimeout
+    {
+        return client.execute(SESSION_ID, Messages.create(SESSION_ID, serial.incrementAndGet(), contentLength));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Message executeConcurrent() throws DeviceResponseTimeout
+    {
+        return client.execute(SESSION_ID, Messages.create(SESSION_ID, serial.incrementAndGet(), contentLength));
+    }
+}
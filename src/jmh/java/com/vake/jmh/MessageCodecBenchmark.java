@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vake.message.Message;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Message编解码基准，对比byte[]与IoBuffer两条路径<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageCodecBenchmark
+{
+    @Param({"16", "512"})
+    public int contentLength;
+
+    private Message message;
+
+    private byte[] frame;
+
+    private IoBuffer frameBuffer;
+
+    @Setup
+    public void setUp()
+    {
+        message = Messages.create(10000, 1, contentLength);
+        frame = message.encodeToBytes();
+        frameBuffer = IoBuffer.wrap(frame);
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes()
+    {
+        return message.encodeToBytes();
+    }
+
+    @Benchmark
+    public IoBuffer encodeToBuffer()
+    {
+        return message.encodeToBuffer();
+    }
+
+    @Benchmark
+    public Message fromBytes()
+    {
+        return Message.from(frame);
+    }
+
+    @Benchmark
+    public Message fromBufferCopy()
+    {
+        frameBuffer.rewind();
+        final byte[] bytes = new byte[frameBuffer.limit()];
+        frameBuffer.get(bytes);
+        return Message.from(bytes);
+    }
+
+    @Benchmark
+    public Message fromBuffer()
+    {
+        frameBuffer.rewind();
+        return Message.from(frameBuffer);
+    }
+
+    @Benchmark
+    public String fromBytesAndDecodeContent()
+    {
+        return Message.from(frame).getContent();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import com.vake.message.Message;
+
+/**
+ * 基准测试用的消息构造<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+final class Messages
+{
+    private Messages()
+    {
+    }
+
+    /**
+     * 构造指定内容长度的消息，内容为ASCII字符
+     */
+    static Message create(int sessionId, int serial, int contentLength)
+    {
+        final StringBuilder builder = new StringBuilder(contentLength);
+        for (int i = 0; i < contentLength; i++)
+        {
+            builder.append((char) ('a' + i % 26));
+        }
+        final String content = builder.toString();
+        final Message msg = new Message();
+        msg.setSessionId(sessionId);
+        msg.setSerial(serial);
+        msg.setContent(content);
+        msg.setContentLength(content.getBytes().length);
+        return msg;
+    }
+}
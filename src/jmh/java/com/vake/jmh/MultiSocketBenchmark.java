@@ -0,0 +1,98 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vake.MessageClient;
+import com.vake.SocketStats;
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+import com.vake.message.request.TimingWheelScheduler;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 多socket接收的吞吐量基准，结束时输出每个socket的收包数和内核丢包数<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+public class MultiSocketBenchmark
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiSocketBenchmark.class);
+
+    private static final int SESSION_ID = 10000;
+
+    @Param({"1", "2", "4"})
+    public int sockets;
+
+    private NioDatagramAcceptor server;
+
+    private MessageClient client;
+
+    private final AtomicInteger serial = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        server = EchoServer.start();
+        client = new MessageClient(new TimingWheelScheduler(), EchoServer.HOST, server.getLocalAddress().getPort(),
+                0, false, sockets);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        for (SocketStats stats : client.getSocketStats())
+        {
+            LOGGER.info("sockets={}, {}", sockets, stats);
+        }
+        client.destory();
+        server.dispose();
+    }
+
+    @Benchmark
+    public Message execute() throws DeviceResponseTimeout
+    {
+        return client.execute(SESSION_ID, Messages.create(SESSION_ID, serial.incrementAndGet(), 16));
+    }
+}
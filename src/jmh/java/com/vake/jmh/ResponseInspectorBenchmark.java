@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vake.message.Message;
+import com.vake.message.request.MessageRequest;
+import com.vake.message.request.MessageResponseInspector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * MessageResponseInspector响应匹配基准，在途请求数由pending指定<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseInspectorBenchmark
+{
+    private static final int SESSION_ID = 10000;
+
+    @Param({"16", "65536"})
+    public int pending;
+
+    private MessageResponseInspector inspector;
+
+    private Message[] responses;
+
+    private Message unknown;
+
+    private int index;
+
+    @Setup
+    public void setUp()
+    {
+        inspector = new MessageResponseInspector();
+        responses = new Message[pending];
+        for (int serial = 0; serial < pending; serial++)
+        {
+            final Message msg = Messages.create(SESSION_ID, serial, 16);
+            inspector.addRequestId(new MessageRequest(MessageRequest.generateKey(SESSION_ID, serial), msg,
+                    MessageRequest.DEFAULT_TIME_OUT));
+            responses[serial] = msg;
+        }
+        unknown = Messages.create(SESSION_ID, -1, 16);
+    }
+
+    @Benchmark
+    public Object getRequestIdHit()
+    {
+        final Message response = responses[index];
+        index = index + 1 == pending ? 0 : index + 1;
+        return inspector.getRequestId(response);
+    }
+
+    @Benchmark
+    public Object getRequestIdMiss()
+    {
+        return inspector.getRequestId(unknown);
+    }
+}
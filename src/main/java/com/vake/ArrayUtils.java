@@ -22,8 +22,6 @@ package com.vake;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
-import org.apache.commons.lang.StringUtils;
-
 /**
  * 数组工具集<p/>
  *
@@ -40,6 +38,76 @@ public class ArrayUtils
 
     public static final Object[] EMPTY_OBJECT_ARRAY = org.apache.commons.lang.ArrayUtils.EMPTY_OBJECT_ARRAY;
 
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // 每个字节值对应的定长数字字符，按字节值连续存放
+    private static final char[] BINARY_TABLE = buildTable(2, 8);
+
+    private static final char[] OCTAL_TABLE = buildTable(8, 3);
+
+    private static final char[] HEX_TABLE = buildTable(16, 2);
+
+    // 十六进制字符到数值的映射，非法字符为-1
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static
+    {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++)
+        {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++)
+        {
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private static char[] buildTable(int radix, int width)
+    {
+        final char[] table = new char[256 * width];
+        for (int value = 0; value < 256; value++)
+        {
+            int remain = value;
+            for (int j = width - 1; j >= 0; j--)
+            {
+                table[value * width + j] = DIGITS[remain % radix];
+                remain /= radix;
+            }
+        }
+        return table;
+    }
+
+    private static int digitWidth(int radix)
+    {
+        switch (radix)
+        {
+            case 2:
+                return 8;
+            case 8:
+                return 3;
+            case 16:
+                return 2;
+            default:
+                final String msg = "radix must be 2, 8 or 16";
+                throw new IllegalArgumentException(msg);
+        }
+    }
+
+    private static char[] digitTable(int radix)
+    {
+        return 2 == radix ? BINARY_TABLE : (8 == radix ? OCTAL_TABLE : HEX_TABLE);
+    }
+
+    private static void checkRange(byte[] bytes, int offset, int length)
+    {
+        if (offset < 0 || length < 0 || offset + length > bytes.length)
+        {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", size=" + bytes.length);
+        }
+    }
+
     /**
      * 将字节数组转换为由radix指定的数制的字符串<p/>
      * 如果bytes等于null，将返回"null"，如果bytes的长度为零，将返回"[]"
@@ -50,45 +118,65 @@ public class ArrayUtils
      */
     public static String toString(byte[] bytes, int radix)
     {
-        if (2 != radix && 8 != radix && 16 != radix)
+        digitWidth(radix);
+        if (null == bytes)
         {
-            final String msg = "radix must be 2, 8 or 16";
-            throw new IllegalArgumentException(msg);
+            return "null";
         }
+        return toString(bytes, 0, bytes.length, radix);
+    }
+
+    /**
+     * 将字节数组中的一段转换为由radix指定的数制的字符串，格式同{@link #toString(byte[], int)}
+     *
+     * @param bytes  字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     * @param radix  数制，值必须为2、8或16之一
+     * @return 指定数制的字符串
+     */
+    public static String toString(byte[] bytes, int offset, int length, int radix)
+    {
+        final int width = digitWidth(radix);
         if (null == bytes)
         {
             return "null";
         }
+        final StringBuilder builder = new StringBuilder(2 + length * (width + 2));
+        return append(builder, bytes, offset, length, radix).toString();
+    }
 
-        final StringBuilder builder = new StringBuilder("[");
-        final int len = bytes.length;
-        for (int i = 0; i < len; i++)
+    /**
+     * 将字节数组中的一段以"[XX, XX]"的形式追加到builder，不产生中间对象
+     *
+     * @param builder 目标
+     * @param bytes   字节数组
+     * @param offset  起始位置
+     * @param length  长度
+     * @param radix   数制，值必须为2、8或16之一
+     * @return builder
+     */
+    public static StringBuilder append(StringBuilder builder, byte[] bytes, int offset, int length, int radix)
+    {
+        final int width = digitWidth(radix);
+        checkRange(bytes, offset, length);
+        builder.append('[');
+        appendDigits(builder, bytes, offset, length, digitTable(radix), width);
+        builder.append(']');
+        return builder;
+    }
+
+    private static void appendDigits(StringBuilder builder, byte[] bytes, int offset, int length, char[] table, int width)
+    {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++)
         {
-            final int intValue = bytes[i] & 0xFF;
-            final String string;
-            final String padString;
-            switch (radix)
-            {
-                case 2:
-                    string = Integer.toBinaryString(intValue);
-                    padString = StringUtils.leftPad(string, 8, '0');
-                    break;
-                case 8:
-                    string = Integer.toOctalString(intValue);
-                    padString = StringUtils.leftPad(string, 3, '0');
-                    break;
-                default:
-                    string = Integer.toHexString(intValue);
-                    padString = StringUtils.leftPad(string, 2, '0');
-            }
-            builder.append(padString.toUpperCase());
-            if (i < len - 1)
+            if (i > offset)
             {
                 builder.append(", ");
             }
+            builder.append(table, (bytes[i] & 0xFF) * width, width);
         }
-        builder.append("]");
-        return builder.toString();
     }
 
     public static String toHexString(byte[] bytes)
@@ -96,9 +184,39 @@ public class ArrayUtils
         return toString(bytes, 16);
     }
 
+    /**
+     * 转换为十六进制字符串，超过maxBytes的部分被截断，适用于日志中输出大报文<p/>
+     * 截断时形如"[0A, 0B, ...(1024 bytes)]"
+     *
+     * @param bytes    字节数组
+     * @param maxBytes 最多输出的字节数
+     * @return 十六进制字符串
+     */
+    public static String toHexString(byte[] bytes, int maxBytes)
+    {
+        if (null == bytes)
+        {
+            return "null";
+        }
+        if (bytes.length <= maxBytes)
+        {
+            return toString(bytes, 0, bytes.length, 16);
+        }
+        final int shown = Math.max(0, maxBytes);
+        final StringBuilder builder = new StringBuilder(24 + shown * 4);
+        builder.append('[');
+        appendDigits(builder, bytes, 0, shown, HEX_TABLE, 2);
+        if (shown > 0)
+        {
+            builder.append(", ");
+        }
+        builder.append("...(").append(bytes.length).append(" bytes)]");
+        return builder.toString();
+    }
+
     public static String toBinaryString(byte[] bytes)
     {
-        return toString(bytes, 16);
+        return toString(bytes, 2);
     }
 
     public static boolean isEquals(Object array1, Object array2)
@@ -299,16 +417,129 @@ public class ArrayUtils
         {
             return "null";
         }
+        final char[] chars = new char[bytes.length * 2];
+        toSimpleHexChars(bytes, 0, bytes.length, chars, 0);
+        return new String(chars);
+    }
 
-        final int len = bytes.length;
-        final StringBuilder builder = new StringBuilder(len * 2);
-        for (int i = 0; i < len; i++)
+    /**
+     * 将字节数组中的一段以简单十六进制形式追加到builder
+     *
+     * @param builder 目标
+     * @param bytes   字节数组
+     * @param offset  起始位置
+     * @param length  长度
+     * @return builder
+     */
+    public static StringBuilder appendSimpleHex(StringBuilder builder, byte[] bytes, int offset, int length)
+    {
+        checkRange(bytes, offset, length);
+        final int end = offset + length;
+        for (int i = offset; i < end; i++)
         {
-            final int intValue = bytes[i] & 0xFF;
-            final String string = Integer.toHexString(intValue);
-            final String padString = StringUtils.leftPad(string, 2, '0');
-            builder.append(padString.toUpperCase());
+            builder.append(HEX_TABLE, (bytes[i] & 0xFF) * 2, 2);
         }
-        return builder.toString();
+        return builder;
+    }
+
+    /**
+     * 将字节数组中的一段以简单十六进制形式写入调用方提供的字符数组
+     *
+     * @param bytes      字节数组
+     * @param offset     起始位置
+     * @param length     长度
+     * @param dest       目标字符数组，需至少有length * 2个字符的空间
+     * @param destOffset 目标起始位置
+     * @return 写入的字符数
+     */
+    public static int toSimpleHexChars(byte[] bytes, int offset, int length, char[] dest, int destOffset)
+    {
+        checkRange(bytes, offset, length);
+        final int end = offset + length;
+        int position = destOffset;
+        for (int i = offset; i < end; i++)
+        {
+            final int index = (bytes[i] & 0xFF) << 1;
+            dest[position++] = HEX_TABLE[index];
+            dest[position++] = HEX_TABLE[index + 1];
+        }
+        return position - destOffset;
+    }
+
+    /**
+     * 解析{@link #toSimpleHexString(byte[])}的结果，大小写均可
+     *
+     * @param hex 十六进制字符串，长度必须为偶数
+     * @return 字节数组
+     */
+    public static byte[] parseSimpleHexString(CharSequence hex)
+    {
+        final int length = hex.length();
+        if (length % 2 != 0)
+        {
+            throw new IllegalArgumentException("hex string length must be even: " + length);
+        }
+        final byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) ((hexValue(hex, i * 2) << 4) | hexValue(hex, i * 2 + 1));
+        }
+        return bytes;
+    }
+
+    /**
+     * 解析{@link #toHexString(byte[])}的结果，如"[0A, FF]"<p/>
+     * 方括号、逗号和空白都作为分隔符忽略，每个字节必须是连续的两个十六进制字符
+     *
+     * @param text 十六进制字符串
+     * @return 字节数组
+     */
+    public static byte[] parseHexString(CharSequence text)
+    {
+        final int length = text.length();
+        int digits = 0;
+        for (int i = 0; i < length; i++)
+        {
+            if (!isHexSeparator(text.charAt(i)))
+            {
+                digits++;
+            }
+        }
+        if (digits % 2 != 0)
+        {
+            throw new IllegalArgumentException("odd number of hex digits: " + text);
+        }
+        final byte[] bytes = new byte[digits / 2];
+        int index = 0;
+        for (int i = 0; i < length; i++)
+        {
+            if (isHexSeparator(text.charAt(i)))
+            {
+                continue;
+            }
+            if (i + 1 >= length || isHexSeparator(text.charAt(i + 1)))
+            {
+                throw new IllegalArgumentException("each byte must be two hex digits: " + text);
+            }
+            bytes[index++] = (byte) ((hexValue(text, i) << 4) | hexValue(text, i + 1));
+            i++;
+        }
+        return bytes;
+    }
+
+    private static boolean isHexSeparator(char ch)
+    {
+        return '[' == ch || ']' == ch || ',' == ch || Character.isWhitespace(ch);
+    }
+
+    private static int hexValue(CharSequence text, int index)
+    {
+        final char ch = text.charAt(index);
+        final int value = ch < 128 ? HEX_VALUES[ch] : -1;
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("invalid hex digit '" + ch + "' at " + index);
+        }
+        return value;
     }
 }
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+import com.vake.message.request.MessageRequest;
+
+/**
+ * {@link MessageClient#executeAll}一批请求的结果<p/>
+ * 以(sessionId, serial)打包后的键({@link MessageRequest#generateKey})索引，
+ * 每个请求要么有响应，要么有失败原因：期限内未响应的为{@link DeviceResponseTimeout}，过载未发出的为
+ * {@link com.vake.message.DeviceOverload}
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class BatchResult
+{
+    private final Map<Long, Message> responses;
+
+    private final Map<Long, DeviceResponseTimeout> failures;
+
+    BatchResult(int size)
+    {
+        responses = new LinkedHashMap<>(size * 4 / 3 + 1);
+        failures = new LinkedHashMap<>();
+    }
+
+    void addResponse(long key, Message response)
+    {
+        responses.put(key, response);
+    }
+
+    void addFailure(long key, DeviceResponseTimeout cause)
+    {
+        failures.put(key, cause);
+    }
+
+    /**
+     * @param sessionId 客户端唯一标识
+     * @param serial    流水号
+     * @return 响应消息，未收到响应时为null
+     */
+    public Message getResponse(int sessionId, int serial)
+    {
+        return responses.get(MessageRequest.generateKey(sessionId, serial));
+    }
+
+    /**
+     * @param sessionId 客户端唯一标识
+     * @param serial    流水号
+     * @return 失败原因，收到响应时为null
+     */
+    public DeviceResponseTimeout getFailure(int sessionId, int serial)
+    {
+        return failures.get(MessageRequest.generateKey(sessionId, serial));
+    }
+
+    /**
+     * @return 收到的响应，按请求的顺序
+     */
+    public Map<Long, Message> getResponses()
+    {
+        return Collections.unmodifiableMap(responses);
+    }
+
+    /**
+     * @return 超时或失败的请求及原因，按请求的顺序
+     */
+    public Map<Long, DeviceResponseTimeout> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return 是否全部请求都收到了响应
+     */
+    public boolean isComplete()
+    {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BatchResult{" +
+                "responses=" + responses.size() +
+                ", failures=" + failures.size() +
+                '}';
+    }
+}
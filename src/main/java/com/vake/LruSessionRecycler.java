@@ -0,0 +1,298 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionRecycler;
+
+/**
+ * 按对端地址管理UDP会话的有界LRU回收器<p/>
+ * 会话数超过上限时关闭最久未收到数据的会话，避免大量对端(或伪造源地址)使会话无限增长；
+ * 超过空闲期限没有收到数据的会话同样关闭，释放会话属性中的重组状态、分段发送窗口等。<p/>
+ * 每个数据报都要查找会话，查找不加锁；访问顺序每个会话每{@link #REORDER_INTERVAL}毫秒最多调整一次，
+ * 淘汰和过期因此是近似的，误差不超过这个间隔。空闲检查在放入和查找时顺带进行，每秒最多一次
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class LruSessionRecycler implements IoSessionRecycler
+{
+    public static final int DEFAULT_MAX_SESSIONS = 65536;
+
+    /**
+     * 缺省空闲期限(毫秒)
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+    /**
+     * 访问顺序的调整间隔(毫秒)
+     */
+    public static final long REORDER_INTERVAL = 1000;
+
+    // 空闲检查的间隔
+    private static final long SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxSessions;
+
+    private final long idleTimeoutNanos;
+
+    private final long reorderNanos;
+
+    // 按对端地址查找，不加锁
+    private final ConcurrentMap<SocketAddress, Entry> sessions = new ConcurrentHashMap<>();
+
+    // 近似的访问顺序，最久未访问的在最前面；受lock保护
+    private final LinkedHashMap<SocketAddress, Entry> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Lock lock = new ReentrantLock();
+
+    private volatile long nextSweep = System.nanoTime() + SWEEP_NANOS;
+
+    private volatile long evicted;
+
+    private volatile long expired;
+
+    public LruSessionRecycler()
+    {
+        this(DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Constructor，空闲期限为{@link #DEFAULT_IDLE_TIMEOUT}
+     *
+     * @param maxSessions 最多保留的会话数
+     */
+    public LruSessionRecycler(int maxSessions)
+    {
+        this(maxSessions, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxSessions       最多保留的会话数
+     * @param idleTimeoutMillis 超过此时间(毫秒)没有收到数据的会话被关闭
+     */
+    public LruSessionRecycler(int maxSessions, long idleTimeoutMillis)
+    {
+        this(maxSessions, idleTimeoutMillis, REORDER_INTERVAL);
+    }
+
+    // 测试用，可指定访问顺序的调整间隔
+    LruSessionRecycler(int maxSessions, long idleTimeoutMillis, long reorderIntervalMillis)
+    {
+        if (maxSessions <= 0 || idleTimeoutMillis <= 0)
+        {
+            throw new IllegalArgumentException("maxSessions and idleTimeout must be positive, maxSessions=" + maxSessions
+                    + ", idleTimeout=" + idleTimeoutMillis);
+        }
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.reorderNanos = TimeUnit.MILLISECONDS.toNanos(reorderIntervalMillis);
+    }
+
+    public void put(IoSession session)
+    {
+        final long now = System.nanoTime();
+        final SocketAddress remoteAddress = session.getRemoteAddress();
+        final Entry entry = new Entry(session, now);
+        final List<IoSession> toClose;
+        lock.lock();
+        try
+        {
+            sessions.put(remoteAddress, entry);
+            order.put(remoteAddress, entry);
+            toClose = evictOverflow();
+        } finally
+        {
+            lock.unlock();
+        }
+        // 关闭会话会回调remove，在锁外进行
+        close(toClose);
+        sweepIfDue(now);
+    }
+
+    private List<IoSession> evictOverflow()
+    {
+        final int overflow = order.size() - maxSessions;
+        if (overflow <= 0)
+        {
+            return Collections.emptyList();
+        }
+        final List<IoSession> eldest = new ArrayList<>(overflow);
+        final Iterator<Map.Entry<SocketAddress, Entry>> it = order.entrySet().iterator();
+        for (int i = 0; i < overflow && it.hasNext(); i++)
+        {
+            final Map.Entry<SocketAddress, Entry> next = it.next();
+            sessions.remove(next.getKey(), next.getValue());
+            eldest.add(next.getValue().session);
+            it.remove();
+        }
+        evicted += eldest.size();
+        return eldest;
+    }
+
+    public IoSession recycle(SocketAddress remoteAddress)
+    {
+        final Entry entry = sessions.get(remoteAddress);
+        if (null == entry)
+        {
+            return null;
+        }
+        final long now = System.nanoTime();
+        entry.accessedAt = now;
+        if (now - entry.orderedAt >= reorderNanos)
+        {
+            lock.lock();
+            try
+            {
+                // 访问顺序模式下get即移到末尾
+                if (order.get(remoteAddress) == entry)
+                {
+                    entry.orderedAt = now;
+                }
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+        sweepIfDue(now);
+        return entry.session;
+    }
+
+    // 从最久未访问的会话开始关闭空闲超时的，遇到未超时的即停止
+    private void sweepIfDue(long now)
+    {
+        if (now - nextSweep < 0 || !lock.tryLock())
+        {
+            return;
+        }
+        final List<IoSession> idle = new ArrayList<>();
+        try
+        {
+            nextSweep = now + SWEEP_NANOS;
+            final Iterator<Map.Entry<SocketAddress, Entry>> it = order.entrySet().iterator();
+            while (it.hasNext())
+            {
+                final Map.Entry<SocketAddress, Entry> next = it.next();
+                if (now - next.getValue().accessedAt < idleTimeoutNanos)
+                {
+                    break;
+                }
+                sessions.remove(next.getKey(), next.getValue());
+                idle.add(next.getValue().session);
+                it.remove();
+            }
+            expired += idle.size();
+        } finally
+        {
+            lock.unlock();
+        }
+        close(idle);
+    }
+
+    private static void close(List<IoSession> toClose)
+    {
+        for (IoSession session : toClose)
+        {
+            session.close(true);
+        }
+    }
+
+    public void remove(IoSession session)
+    {
+        final SocketAddress remoteAddress = session.getRemoteAddress();
+        lock.lock();
+        try
+        {
+            // 同一地址可能已被新会话占用，只移除自身
+            final Entry entry = sessions.get(remoteAddress);
+            if (null != entry && entry.session == session)
+            {
+                sessions.remove(remoteAddress, entry);
+                order.remove(remoteAddress);
+            }
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int size()
+    {
+        return sessions.size();
+    }
+
+    public int getMaxSessions()
+    {
+        return maxSessions;
+    }
+
+    /**
+     * @return 因超过上限被关闭的会话总数
+     */
+    public long getEvicted()
+    {
+        return evicted;
+    }
+
+    /**
+     * @return 因空闲超时被关闭的会话总数
+     */
+    public long getExpired()
+    {
+        return expired;
+    }
+
+    private static final class Entry
+    {
+        private final IoSession session;
+
+        // 最近一次收到数据的时间
+        private volatile long accessedAt;
+
+        // 最近一次调整访问顺序的时间，受lock保护的order中的位置据此更新
+        private volatile long orderedAt;
+
+        Entry(IoSession session, long now)
+        {
+            this.session = session;
+            this.accessedAt = now;
+            this.orderedAt = now;
+        }
+    }
+}
@@ -19,19 +19,47 @@
  */
 package com.vake;
 
+import com.vake.capture.WireCaptureFilter;
+import com.vake.message.DeviceOverload;
 import com.vake.message.DeviceResponseTimeout;
 import com.vake.message.Message;
+import com.vake.message.PartLost;
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Set;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.vake.message.codec.MessageProtocolCodecFactory;
+import com.vake.metrics.EndpointMetrics;
+import com.vake.metrics.LatencyHistogram;
+import com.vake.metrics.RequestEventFilter;
+import com.vake.metrics.RequestEvents;
+import com.vake.message.request.ConcurrencyLimiter;
 import com.vake.message.request.MessageRequest;
+import com.vake.message.request.MessageResponseFuture;
+import com.vake.message.request.MessageRequestResponseFilter;
 import com.vake.message.request.MessageResponseInspector;
+import com.vake.message.request.PartConsumer;
+import com.vake.message.request.PartSender;
+import com.vake.message.request.ResponseCallback;
+import com.vake.message.request.RetransmissionTimer;
+import com.vake.message.request.TimingWheelScheduler;
 import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
-import org.apache.mina.core.future.ConnectFuture;
 import org.apache.mina.core.service.IoHandler;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoEventType;
@@ -39,10 +67,10 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.filter.logging.LoggingFilter;
-import org.apache.mina.filter.reqres.RequestResponseFilter;
+import org.apache.mina.filter.reqres.Request;
 import org.apache.mina.filter.reqres.RequestTimeoutException;
 import org.apache.mina.filter.reqres.Response;
-import org.apache.mina.filter.statistic.ProfilerTimerFilter;
+import org.apache.mina.filter.reqres.ResponseType;
 import org.apache.mina.transport.socket.DatagramSessionConfig;
 import org.apache.mina.transport.socket.nio.NioDatagramConnector;
 import org.slf4j.Logger;
@@ -65,44 +93,197 @@ public class MessageClient implements IoHandler
     // 设置UDP读取缓冲池大小
     public static final int READ_BUFFER_SIZE = 1024 * 1024;//1M
 
+    /**
+     * 设置为true时响应处理在虚拟线程上执行(需JDK 21+)，见{@link VirtualThreads}
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "client.virtualThreads";
+
+    /**
+     * 每个设备的UDP socket(通道)个数，缺省为1，见{@link SessionPool}
+     */
+    public static final String SOCKETS_PROPERTY = "client.sockets";
+
+    /**
+     * 每个设备在途请求数上限的最大值，见{@link ConcurrencyLimiter}
+     */
+    public static final String MAX_IN_FLIGHT_PROPERTY = "client.maxInFlight";
+
+    /**
+     * 每个设备排队等待发送的最大请求数
+     */
+    public static final String MAX_QUEUE_PROPERTY = "client.maxQueue";
+
+    /**
+     * 每个请求最多重传次数，缺省为{@link #DEFAULT_MAX_RETRANSMITS}，0表示不重传，见{@link RetransmissionTimer}
+     */
+    public static final String MAX_RETRANSMITS_PROPERTY = "client.maxRetransmits";
+
+    public static final int DEFAULT_MAX_RETRANSMITS = 3;
+
 
     private final NioDatagramConnector connector;
 
     private final ScheduledExecutorService scheduleExecutor;
 
-    private IoSession session;
+    // 按设备地址分组的会话，每个会话由连接器的I/O处理器池分别读取
+    private final SessionPool pool;
+
+    // 构造时指定的设备，未指定设备的请求发往此设备
+    private final InetSocketAddress defaultEndpoint;
+
+    // 每个设备的在途请求数限制，首次请求时创建
+    private final ConcurrentMap<InetSocketAddress, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    // 每个设备的重传计时器，首次请求时创建
+    private final ConcurrentMap<InetSocketAddress, RetransmissionTimer> retransmissionTimers = new ConcurrentHashMap<>();
+
+    private final int maxRetransmits = Integer.getInteger(MAX_RETRANSMITS_PROPERTY, DEFAULT_MAX_RETRANSMITS);
 
 
     private final MessageResponseInspector responseInspector;
 
-    private ProfilerTimerFilter profiler;
+    private final MessageRequestResponseFilter requestResponseFilter;
+
+    // 客户端序号，区分同一JVM中多个客户端的JMX名称
+    private static final AtomicInteger CLIENT_SEQUENCE = new AtomicInteger();
+
+    private final String name = "client-" + CLIENT_SEQUENCE.incrementAndGet();
+
+    // 每个设备的请求延迟统计，首次请求时创建并注册到JMX
+    private final ConcurrentMap<InetSocketAddress, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+
+    // 抓包过滤器，未启用时为null
+    private final WireCaptureFilter capture;
+
+    private final MessageProtocolCodecFactory codec;
+
+    // 虚拟线程模式下ExecutorFilter使用的执行器，由本类负责关闭；否则为null
+    private final ExecutorService virtualExecutor;
+
+    // 重传在此编码写出，不占用调度器(时间轮)的线程，以免推迟同一tick中的其他超时；
+    // 排队的请求获得许可后也在此发出，不在完成请求的IO线程上等待重新连接
+    private final ExecutorService retransmitExecutor;
+
+    // 分段响应的读取流控
+    private final ReadThrottle readThrottle = ReadThrottle.fromSystemProperties();
 
     /**
-     * Constructor
+     * Constructor，使用时间轮调度请求超时
+     */
+    public MessageClient(String ip, int port)
+    {
+        this(new TimingWheelScheduler(), ip, port);
+    }
+
+    /**
+     * Constructor，本地端口与设备端口相同
      *
-     * @param scheduleExecutor check request time out schedule executor
+     * @param scheduleExecutor check request time out schedule executor，在途请求很多时建议使用{@link TimingWheelScheduler}
      */
     public MessageClient(ScheduledExecutorService scheduleExecutor, String ip, int port)
     {
+        this(scheduleExecutor, ip, port, port);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param scheduleExecutor check request time out schedule executor，在途请求很多时建议使用{@link TimingWheelScheduler}
+     * @param ip               设备地址
+     * @param port             设备端口
+     * @param localPort        本地绑定端口，0表示由系统分配
+     */
+    public MessageClient(ScheduledExecutorService scheduleExecutor, String ip, int port, int localPort)
+    {
+        this(scheduleExecutor, ip, port, localPort, Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param scheduleExecutor check request time out schedule executor，在途请求很多时建议使用{@link TimingWheelScheduler}
+     * @param ip               设备地址
+     * @param port             设备端口
+     * @param localPort        本地绑定端口，0表示由系统分配
+     * @param virtualThreads   响应处理是否使用虚拟线程，JVM不支持时退回固定线程池
+     */
+    public MessageClient(ScheduledExecutorService scheduleExecutor, String ip, int port, int localPort, boolean virtualThreads)
+    {
+        this(scheduleExecutor, ip, port, localPort, virtualThreads, Integer.getInteger(SOCKETS_PROPERTY, 1));
+    }
+
+    /**
+     * Constructor<p/>
+     * 每个设备打开socketCount个UDP socket，每个socket的会话分配到不同的I/O处理器线程，请求从在途请求最少的socket发出，
+     * 设备按请求的源端口回复，响应随之分散到各socket上读取。构造时指定的设备立即连接，第一个socket绑定localPort；
+     * 通过{@link #execute(InetSocketAddress, int, Message)}访问的其他设备在首次请求时连接，全部绑定临时端口
+     *
+     * @param scheduleExecutor check request time out schedule executor，在途请求很多时建议使用{@link TimingWheelScheduler}
+     * @param ip               设备地址
+     * @param port             设备端口
+     * @param localPort        第一个socket的本地绑定端口，0表示由系统分配
+     * @param virtualThreads   响应处理是否使用虚拟线程，JVM不支持时退回固定线程池
+     * @param socketCount      每个设备的UDP socket个数
+     */
+    public MessageClient(ScheduledExecutorService scheduleExecutor, String ip, int port, int localPort,
+                         boolean virtualThreads, int socketCount)
+    {
+        if (socketCount <= 0)
+        {
+            throw new IllegalArgumentException("socketCount must be positive: " + socketCount);
+        }
         connector = new NioDatagramConnector();
         this.scheduleExecutor = scheduleExecutor;
         responseInspector = new MessageResponseInspector();
         final DefaultIoFilterChainBuilder filterChain = connector.getFilterChain();
+        // JFR收发事件和抓包放在最前面，记录编解码前的原始报文
+        final RequestEventFilter events = RequestEventFilter.create();
+        if (null != events)
+        {
+            filterChain.addLast("events", events);
+        }
+        capture = WireCaptureFilter.fromSystemProperties();
+        if (null != capture)
+        {
+            filterChain.addLast("capture", capture);
+        }
         filterChain.addLast("logging", new LoggingFilter(MessageClient.class));
         // 消息解码过滤器
-        final MessageProtocolCodecFactory codec = new MessageProtocolCodecFactory();
+        codec = MessageProtocolCodecFactory.fromSystemProperties(Charset.defaultCharset(), null);
         filterChain.addLast("codec", new ProtocolCodecFilter(codec));
 
         // thread pool
-        filterChain.addLast("threadPool", new ExecutorFilter(IoEventType.MESSAGE_RECEIVED));
-
-        // profile
-        profiler = new ProfilerTimerFilter(TimeUnit.MILLISECONDS, IoEventType.MESSAGE_RECEIVED);
-        filterChain.addLast("profiler", profiler);
+        if (virtualThreads && !VirtualThreads.isSupported())
+        {
+            LOGGER.warn("virtual threads are not supported on java {}, use the default thread pool", System.getProperty("java.version"));
+        }
+        if (virtualThreads && VirtualThreads.isSupported())
+        {
+            // 每个响应一个虚拟线程，不保证同一会话内的顺序；各响应按流水号独立匹配，不依赖顺序
+            virtualExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+            filterChain.addLast("throttleEnqueue", readThrottle.getEnqueueFilter());
+            filterChain.addLast("threadPool", new ExecutorFilter(virtualExecutor, IoEventType.MESSAGE_RECEIVED));
+            retransmitExecutor = virtualExecutor;
+        } else
+        {
+            virtualExecutor = null;
+            retransmitExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable task)
+                {
+                    final Thread thread = new Thread(task, name + "-retransmit");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            filterChain.addLast("throttleEnqueue", readThrottle.getEnqueueFilter());
+            filterChain.addLast("threadPool", new ExecutorFilter(IoEventType.MESSAGE_RECEIVED));
+        }
+        filterChain.addLast("throttleDequeue", readThrottle.getDequeueFilter());
 
-        // request and response filter
-        final RequestResponseFilter reqRspFilter = new RequestResponseFilter(responseInspector, scheduleExecutor);
-        filterChain.addLast("requestResponse", reqRspFilter);
+        // request and response filter，每个会话各自存储请求
+        requestResponseFilter = new MessageRequestResponseFilter(responseInspector, scheduleExecutor);
+        filterChain.addLast("requestResponse", requestResponseFilter);
 
         final DatagramSessionConfig sessionConfig = connector.getSessionConfig();
         sessionConfig.setReceiveBufferSize(READ_BUFFER_SIZE);
@@ -111,82 +292,882 @@ public class MessageClient implements IoHandler
         // add chained io handler
         connector.setHandler(this);
 
-        final ConnectFuture connect = connector.connect(new InetSocketAddress("10.8.9.60", port), new InetSocketAddress(port));
-        connect.awaitUninterruptibly();
-        session = connect.getSession();
+        pool = new SessionPool(connector, socketCount);
+        defaultEndpoint = new InetSocketAddress(ip, port);
+        pool.open(defaultEndpoint, localPort);
     }
 
     public void destory()
     {
         scheduleExecutor.shutdown();
         connector.dispose();
+        codec.dispose();
+        for (EndpointMetrics endpointMetrics : metrics.values())
+        {
+            endpointMetrics.unregister();
+        }
+        retransmitExecutor.shutdown();
+        if (null != capture)
+        {
+            try
+            {
+                capture.getRing().close();
+            } catch (IOException ex)
+            {
+                LOGGER.error("close capture file failed", ex);
+            }
+        }
     }
 
     public void sendMessage(Message msg)
     {
-        if (session != null && session.isConnected())
+        final SessionPool.Channel channel = pool.acquire(defaultEndpoint);
+        if (channel != null && channel.getSession().isConnected())
         {
-            session.write(msg);
+            channel.getSession().write(msg);
         }
     }
 
+    /**
+     * @return 按设备地址分组的会话池
+     */
+    public SessionPool getSessionPool()
+    {
+        return pool;
+    }
+
+    /**
+     * @return 分段响应的读取流控，可读取窗口大小和暂停读取次数
+     */
+    public ReadThrottle getReadThrottle()
+    {
+        return readThrottle;
+    }
+
+    /**
+     * 各socket的收包和内核丢包统计，用于观察多socket时接收能力是否随之扩展
+     *
+     * @return 每个socket一项
+     */
+    public List<SocketStats> getSocketStats()
+    {
+        final List<SocketStats> stats = new ArrayList<>();
+        for (SessionPool.Channel channel : pool.getChannels())
+        {
+            stats.add(SocketStats.of(channel.getSession()));
+        }
+        return stats;
+    }
+
+    /**
+     * 向构造时指定的设备同步发送请求并等待响应<p/>
+     * 等待只使用j.u.c同步器，调用方为虚拟线程时等待期间会卸载，不占用载体线程
+     *
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @return 响应消息，连接不可用时为null
+     * @throws DeviceResponseTimeout 等待超时
+     */
     public Message execute(int sessionId, Message requestMsg) throws DeviceResponseTimeout
+    {
+        return execute(defaultEndpoint, sessionId, requestMsg);
+    }
+
+    /**
+     * 向指定设备同步发送请求并等待响应，在途请求数达到上限时阻塞等待
+     *
+     * @param endpoint   设备地址
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @return 响应消息，连接不可用时为null
+     * @throws DeviceResponseTimeout 等待超时
+     */
+    public Message execute(InetSocketAddress endpoint, int sessionId, Message requestMsg) throws DeviceResponseTimeout
+    {
+        return execute(endpoint, sessionId, requestMsg, ConcurrencyLimiter.Policy.BLOCK);
+    }
+
+    /**
+     * 向指定设备同步发送请求并等待响应
+     *
+     * @param endpoint   设备地址
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @param policy     在途请求数达到上限时的处理方式
+     * @return 响应消息，连接不可用时为null
+     * @throws DeviceOverload        达到上限且未能等到许可
+     * @throws DeviceResponseTimeout 等待超时
+     */
+    public Message execute(InetSocketAddress endpoint, int sessionId, Message requestMsg,
+                           ConcurrencyLimiter.Policy policy) throws DeviceResponseTimeout
     {
         if (null != connector && connector.isActive())
         {
-            final MessageRequest request = MessageRequest.createRequest(sessionId, requestMsg);
-            if (session != null && session.isConnected())
-            {
-                responseInspector.addRequestId(request.getId());
-                session.write(request);
-            }
-            Response response = null;
+            final MessageResponseFuture future = executeAsync(endpoint, sessionId, requestMsg, policy);
             try
             {
-                response = request.awaitResponse(MessageRequest.DEFAULT_TIME_OUT * 2, TimeUnit.MILLISECONDS);
-            } catch (RequestTimeoutException ex)
+                return future.await(MessageRequest.DEFAULT_TIME_OUT * 2, TimeUnit.MILLISECONDS);
+            } catch (DeviceOverload ex)
             {
-                LOGGER.error("request is time out, request={}", request);
-                LOGGER.error("", ex);
-                throw new DeviceResponseTimeout(ex.getMessage());
-            } catch (InterruptedException ex)
+                LOGGER.warn("request is rejected, {}", ex.getMessage());
+                throw ex;
+            } catch (DeviceResponseTimeout ex)
             {
-                Thread.currentThread().interrupt();
-                LOGGER.error("while request wait response, thread interrupted, request={}", request);
+                LOGGER.error("request is time out, request={}", future.getRequest());
                 LOGGER.error("", ex);
-                throw new DeviceResponseTimeout(ex.getMessage());
-            } finally
+                throw ex;
+            }
+        } else
+        {
+            LOGGER.error("connector is unavaliable!");
+        }
+        return null;
+    }
+
+    /**
+     * 向构造时指定的设备异步发送请求，不阻塞调用线程<p/>
+     * 同一会话上可以同时有多个未完成的请求，请求由RequestResponseFilter投递的响应或超时事件完成
+     *
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @return 请求结果
+     */
+    public MessageResponseFuture executeAsync(int sessionId, Message requestMsg)
+    {
+        return executeAsync(defaultEndpoint, sessionId, requestMsg);
+    }
+
+    /**
+     * 向指定设备异步发送请求，在途请求数达到上限时排队
+     *
+     * @param endpoint   设备地址
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @return 请求结果
+     */
+    public MessageResponseFuture executeAsync(InetSocketAddress endpoint, int sessionId, Message requestMsg)
+    {
+        return executeAsync(endpoint, sessionId, requestMsg, ConcurrencyLimiter.Policy.QUEUE);
+    }
+
+    /**
+     * 向指定设备异步发送请求，从该设备在途请求最少的会话发出<p/>
+     * 在途请求数达到设备当前上限时按policy处理：BLOCK阻塞调用线程最多{@link MessageRequest#DEFAULT_TIME_OUT}毫秒，
+     * QUEUE排队到有请求完成时再发出，FAIL_FAST立即失败；未能发出的请求以{@link DeviceOverload}结束
+     *
+     * @param endpoint   设备地址
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @param policy     在途请求数达到上限时的处理方式
+     * @return 请求结果
+     */
+    public MessageResponseFuture executeAsync(InetSocketAddress endpoint, int sessionId, Message requestMsg,
+                                              ConcurrencyLimiter.Policy policy)
+    {
+        final MessageRequest request = MessageRequest.createAsyncRequest(sessionId, requestMsg, responseInspector);
+        responseInspector.addRequestId(request);
+        final InFlight inFlight = new InFlight(request, endpoint, getLimiter(endpoint));
+        dispatch(inFlight, policy);
+        return request.getFuture();
+    }
+
+    /**
+     * 向构造时指定的设备发送请求，分段响应逐段交给consumer，见{@link #executeStream(InetSocketAddress, int, Message, PartConsumer, long, TimeUnit)}
+     *
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @param consumer   分段响应的消费者
+     * @param timeout    接收全部分段的期限
+     * @param unit       时间单位
+     * @return 请求结果，以最后一段完成
+     */
+    public MessageResponseFuture executeStream(int sessionId, Message requestMsg, PartConsumer consumer, long timeout,
+                                               TimeUnit unit)
+    {
+        return executeStream(defaultEndpoint, sessionId, requestMsg, consumer, timeout, unit);
+    }
+
+    /**
+     * 向指定设备发送请求，响应的各段(带{@link Message#FLAG_PARTIAL})到达时逐段交给consumer，不在内存中拼接<p/>
+     * consumer在响应处理线程中按段序号回调，消费慢时由{@link ReadThrottle}暂停读取，每消费半个窗口向设备确认一次，
+     * 设备按确认的窗口发送(见{@link PartSender})；一个RTO内没有收到新的分段时重发上次的确认，弥补丢失的确认。
+     * 段序号不连续时以{@link PartLost}结束，之后的分段不再回调；请求失败时通知设备取消，不再发送剩余的分段。
+     * 设备只回一条普通响应时consumer收到这一条。收到第一段后不再重传，超过期限仍未收到最后一段时以
+     * {@link DeviceResponseTimeout}结束。需要有序投递，虚拟线程模式下不可用
+     *
+     * @param endpoint   设备地址
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @param consumer   分段响应的消费者
+     * @param timeout    接收全部分段的期限
+     * @param unit       时间单位
+     * @return 请求结果，以最后一段完成
+     * @throws IllegalStateException 虚拟线程模式下各响应并发处理，无法保证分段顺序
+     */
+    public MessageResponseFuture executeStream(InetSocketAddress endpoint, int sessionId, Message requestMsg,
+                                               PartConsumer consumer, long timeout, TimeUnit unit)
+    {
+        if (null != virtualExecutor)
+        {
+            throw new IllegalStateException("streaming needs ordered delivery, not available with virtual threads");
+        }
+        final MessageRequest request = MessageRequest.createAsyncRequest(sessionId, requestMsg, responseInspector,
+                unit.toMillis(timeout));
+        final InFlight inFlight = new InFlight(request, endpoint, getLimiter(endpoint), consumer);
+        request.setPartConsumer(inFlight);
+        responseInspector.addRequestId(request);
+        dispatch(inFlight, ConcurrencyLimiter.Policy.QUEUE);
+        return request.getFuture();
+    }
+
+    /**
+     * 向构造时指定的设备批量发送请求，在同一个期限内收集响应，见{@link #executeAll(InetSocketAddress, Collection, long, TimeUnit)}
+     *
+     * @param requests (sessionId, 请求消息)列表
+     * @param timeout  整批请求的期限
+     * @param unit     时间单位
+     * @return 期限内收到的响应以及失败的请求
+     */
+    public BatchResult executeAll(Collection<? extends Map.Entry<Integer, Message>> requests, long timeout, TimeUnit unit)
+    {
+        return executeAll(defaultEndpoint, requests, timeout, unit);
+    }
+
+    /**
+     * 向指定设备批量发送请求，在同一个期限内收集响应<p/>
+     * 先登记全部请求ID，再一次性写入会话的写队列，超过在途上限的请求排队到有请求完成时发出；
+     * 总耗时约为最慢的一次往返，而不是逐个execute的往返之和。期限到达时仍未完成的请求以
+     * {@link DeviceResponseTimeout}结束，与其他失败的请求一起在结果中返回
+     *
+     * @param endpoint 设备地址
+     * @param requests (sessionId, 请求消息)列表，同一批内的(sessionId, serial)不能重复
+     * @param timeout  整批请求的期限
+     * @param unit     时间单位
+     * @return 期限内收到的响应以及失败的请求
+     */
+    public BatchResult executeAll(InetSocketAddress endpoint, Collection<? extends Map.Entry<Integer, Message>> requests,
+                                  long timeout, TimeUnit unit)
+    {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final ConcurrencyLimiter limiter = getLimiter(endpoint);
+        final List<MessageRequest> batch = new ArrayList<>(requests.size());
+        for (Map.Entry<Integer, Message> entry : requests)
+        {
+            batch.add(MessageRequest.createAsyncRequest(entry.getKey(), entry.getValue(), responseInspector,
+                    unit.toMillis(timeout)));
+        }
+        // 先登记全部请求ID再发出，先发出的请求的响应不会因后面的请求还未登记而丢失
+        responseInspector.addRequestIds(batch);
+
+        final CountDownLatch remaining = new CountDownLatch(batch.size());
+        final ResponseCallback countDown = new ResponseCallback()
+        {
+            public void onResponse(Message response)
+            {
+                remaining.countDown();
+            }
+
+            public void onFailure(DeviceResponseTimeout cause)
+            {
+                remaining.countDown();
+            }
+        };
+        for (MessageRequest request : batch)
+        {
+            final InFlight inFlight = new InFlight(request, endpoint, limiter);
+            dispatch(inFlight, ConcurrencyLimiter.Policy.QUEUE);
+            request.getFuture().addCallback(countDown);
+        }
+        try
+        {
+            remaining.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        final BatchResult result = new BatchResult(batch.size());
+        for (MessageRequest request : batch)
+        {
+            final MessageResponseFuture future = request.getFuture();
+            if (!future.isDone())
             {
-                responseInspector.removeRequestId(request.getId());
+                future.setFailure(new DeviceResponseTimeout("batch deadline is exceeded, request=" + request));
             }
-            if (null != response)
+            try
+            {
+                result.addResponse(request.getKey(), future.await(0, TimeUnit.NANOSECONDS));
+            } catch (DeviceResponseTimeout ex)
             {
-                final Message data = (Message) response.getMessage();
-                return data;
+                result.addFailure(request.getKey(), ex);
             }
+        }
+        if (!result.isComplete())
+        {
+            LOGGER.warn("batch is not complete, endpoint={}, {}", endpoint, result);
+        }
+        return result;
+    }
+
+    /**
+     * 按policy取得许可后发出请求，或排队、拒绝
+     */
+    private void dispatch(final InFlight inFlight, ConcurrencyLimiter.Policy policy)
+    {
+        final MessageRequest request = inFlight.request;
+        final MessageResponseFuture future = request.getFuture();
+        final ConcurrencyLimiter limiter = inFlight.limiter;
+        final Message requestMsg = (Message) request.getMessage();
+        future.addCallback(inFlight);
+        RequestEvents.enqueued(requestMsg.getSessionId(), requestMsg.getSerial(), limiter);
+        switch (policy)
+        {
+            case FAIL_FAST:
+                if (limiter.tryAcquire())
+                {
+                    inFlight.permitTaken();
+                    send(inFlight);
+                } else
+                {
+                    reject(request, limiter);
+                }
+                break;
+            case BLOCK:
+                boolean acquired = false;
+                try
+                {
+                    acquired = limiter.acquire(MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                if (acquired)
+                {
+                    inFlight.permitTaken();
+                    send(inFlight);
+                } else
+                {
+                    reject(request, limiter);
+                }
+                break;
+            default:
+                final boolean accepted = limiter.enqueue(new Runnable()
+                {
+                    public void run()
+                    {
+                        inFlight.permitTaken();
+                        // 排队太久的请求已无意义，调用方的等待也已超时
+                        if (System.nanoTime() - inFlight.deadline > 0)
+                        {
+                            inFlight.releasePermit();
+                            future.setFailure(new DeviceOverload("request is queued too long, request=" + request));
+                            return;
+                        }
+                        send(inFlight);
+                    }
+                });
+                if (!accepted)
+                {
+                    reject(request, limiter);
+                }
+                break;
+        }
+    }
+
+    /**
+     * 持有许可发送请求，请求完成时以往返时间或超时更新设备的上限，到期未响应时重传
+     */
+    private void send(InFlight inFlight)
+    {
+        final MessageRequest request = inFlight.request;
+        final ConcurrencyLimiter limiter = inFlight.limiter;
+        final MessageResponseFuture future = request.getFuture();
+        if (future.isDone())
+        {
+            // 排队期间已被取消或等待超时
+            inFlight.releasePermit();
+            return;
+        }
+        final SessionPool.Channel channel = null != connector && connector.isActive() ? pool.acquire(inFlight.endpoint) : null;
+        if (null != channel && channel.getSession().isConnected())
+        {
+            inFlight.timer.onRequest();
+            inFlight.sent(channel.getSession());
+            channel.track(future);
+            channel.getSession().write(request);
+            inFlight.schedule(inFlight.timer.getRto());
         } else
         {
+            inFlight.releasePermit();
             LOGGER.error("connector is unavaliable!");
+            future.setFailure(new DeviceResponseTimeout("session is unavailable, request=" + request));
         }
-        return null;
     }
 
+    private static void reject(MessageRequest request, ConcurrencyLimiter limiter)
+    {
+        request.getFuture().setFailure(new DeviceOverload("too many requests in flight, " + limiter + ", request=" + request));
+    }
+
+    /**
+     * @param endpoint 设备地址
+     * @return 设备的在途请求数限制，可读取当前上限和排队数
+     */
+    public ConcurrencyLimiter getLimiter(InetSocketAddress endpoint)
+    {
+        ConcurrencyLimiter limiter = limiters.get(endpoint);
+        if (null == limiter)
+        {
+            final int maxLimit = Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, ConcurrencyLimiter.DEFAULT_MAX_LIMIT);
+            final ConcurrencyLimiter created = new ConcurrencyLimiter(
+                    Math.min(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, maxLimit), maxLimit,
+                    Integer.getInteger(MAX_QUEUE_PROPERTY, ConcurrencyLimiter.DEFAULT_MAX_QUEUE), retransmitExecutor);
+            limiter = limiters.putIfAbsent(endpoint, created);
+            if (null == limiter)
+            {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * @return 已访问过的设备的在途请求数限制
+     */
+    public Map<InetSocketAddress, ConcurrencyLimiter> getLimiters()
+    {
+        return limiters;
+    }
+
+    /**
+     * @param endpoint 设备地址
+     * @return 设备的重传计时器，可读取当前RTO和平滑往返时间
+     */
+    public RetransmissionTimer getRetransmissionTimer(InetSocketAddress endpoint)
+    {
+        RetransmissionTimer timer = retransmissionTimers.get(endpoint);
+        if (null == timer)
+        {
+            final RetransmissionTimer created = new RetransmissionTimer();
+            timer = retransmissionTimers.putIfAbsent(endpoint, created);
+            if (null == timer)
+            {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * 一个请求从调用到完成的全过程：完成时按结果记录端到端延迟；已发出的请求还要更新设备的并发上限和RTO，
+     * 等待RTO后仍未完成则以相同的(sessionId, serial)从同一会话重传，每次重传等待时间翻倍。
+     * 重传不经过RequestResponseFilter，原请求仍在其存储中等待响应；
+     * 先到的响应完成请求，迟到的重复响应已找不到请求ID，作为普通消息交给{@link #messageReceived}丢弃
+     */
+    private final class InFlight implements ResponseCallback, PartConsumer, Runnable
+    {
+        private final MessageRequest request;
+
+        private final InetSocketAddress endpoint;
+
+        private final ConcurrencyLimiter limiter;
+
+        private final RetransmissionTimer timer;
+
+        private final EndpointMetrics metrics;
+
+        private final long start = System.nanoTime();
+
+        // JFR请求事件，未启用时为null
+        private final Object event = RequestEvents.begin();
+
+        // 调用方期限，重传及其响应都要在此之前完成
+        private final long deadline;
+
+        // 发出请求的会话，未发出时为null
+        private volatile IoSession session;
+
+        private long sentAt;
+
+        // 本次等待的时间(纳秒)
+        private long rto;
+
+        private volatile int retransmits;
+
+        private volatile ScheduledFuture<?> pending;
+
+        // 分段响应的消费者，普通请求为null
+        private final PartConsumer consumer;
+
+        // 收到第一段的时间，未收到时为0
+        private volatile long firstPartAt;
+
+        // 下一段应有的段序号，只在会话的有序处理线程中访问
+        private int nextPart;
+
+        // 上次确认时已消费的分段数
+        private int ackedPart;
+
+        // 是否持有并发许可，取得许可时置位，归还时清除，保证只归还一次
+        private final AtomicBoolean permit = new AtomicBoolean();
+
+        // 上次确认的段序号上限，尚未确认时为0
+        private volatile int ackLimit;
+
+        // 最近收到分段的时间
+        private volatile long partAt;
+
+        InFlight(MessageRequest request, InetSocketAddress endpoint, ConcurrencyLimiter limiter)
+        {
+            this(request, endpoint, limiter, null);
+        }
+
+        InFlight(MessageRequest request, InetSocketAddress endpoint, ConcurrencyLimiter limiter, PartConsumer consumer)
+        {
+            this.request = request;
+            this.consumer = consumer;
+            this.endpoint = endpoint;
+            this.limiter = limiter;
+            this.timer = getRetransmissionTimer(endpoint);
+            this.metrics = getMetrics(endpoint);
+            this.deadline = start + TimeUnit.MILLISECONDS.toNanos(request.getTimeoutMillis());
+        }
+
+        void permitTaken()
+        {
+            permit.set(true);
+        }
+
+        // 未发出的请求归还许可，不计入设备的拥塞判断
+        void releasePermit()
+        {
+            if (permit.compareAndSet(true, false))
+            {
+                limiter.onIgnore();
+            }
+        }
+
+        void sent(IoSession session)
+        {
+            sentAt = System.nanoTime();
+            this.session = session;
+        }
+
+        void schedule(long delayNanos)
+        {
+            // 重传后至少还要留出一个平滑往返时间等待响应
+            if (retransmits >= maxRetransmits || System.nanoTime() + delayNanos + timer.getSrtt() >= deadline)
+            {
+                return;
+            }
+            rto = delayNanos;
+            pending = scheduleExecutor.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void run()
+        {
+            if (request.getFuture().isDone() || 0 != firstPartAt)
+            {
+                return;
+            }
+            // 在调度器线程上只做判断，编码和写出交给重传执行器
+            try
+            {
+                retransmitExecutor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        retransmit();
+                    }
+                });
+            } catch (RejectedExecutionException ex)
+            {
+                LOGGER.debug("client is destroyed, skip retransmission, request={}", request);
+            }
+        }
+
+        private void retransmit()
+        {
+            if (request.getFuture().isDone() || 0 != firstPartAt || !session.isConnected())
+            {
+                return;
+            }
+            timer.backoff(rto);
+            if (!timer.tryRetransmit())
+            {
+                LOGGER.debug("retransmission budget is exhausted, request={}", request);
+                return;
+            }
+            retransmits++;
+            LOGGER.debug("retransmit request after {} ms, times={}, request={}",
+                    TimeUnit.NANOSECONDS.toMillis(rto), retransmits, request);
+            // 只写出消息本身，RequestResponseFilter不再登记；仍经过编解码器的压缩、打包和分片
+            session.write(request.getMessage());
+            schedule(Math.min(rto * 2, TimeUnit.MILLISECONDS.toNanos(RetransmissionTimer.MAX_RTO)));
+        }
+
+        public void onPart(Message part)
+        {
+            partAt = System.nanoTime();
+            if (0 == firstPartAt)
+            {
+                // 设备已收到请求，不再重传，改为定时检查是否需要重发确认
+                firstPartAt = partAt;
+                cancel();
+                if (part.hasFlag(Message.FLAG_MORE))
+                {
+                    scheduleReack();
+                }
+            }
+            final boolean partial = part.hasFlag(Message.FLAG_PARTIAL);
+            if (partial && !inOrder(part))
+            {
+                return;
+            }
+            try
+            {
+                consumer.onPart(part);
+            } catch (RuntimeException ex)
+            {
+                LOGGER.error("part consumer failed, part={}, request={}", part, request, ex);
+            }
+            if (partial && part.hasFlag(Message.FLAG_MORE))
+            {
+                acknowledge();
+            }
+        }
+
+        // 段序号不连续时以PartLost结束请求，之后的分段不再交给消费者
+        private boolean inOrder(Message part)
+        {
+            if (request.getFuture().isDone())
+            {
+                return false;
+            }
+            if (part.getPartIndex() != nextPart)
+            {
+                LOGGER.warn("part is lost or out of order, expected={}, received={}, request={}",
+                        nextPart, part.getPartIndex(), request);
+                request.getFuture().setFailure(new PartLost("part is lost or out of order, expected=" + nextPart
+                        + ", received=" + part.getPartIndex() + ", request=" + request));
+                return false;
+            }
+            nextPart++;
+            return true;
+        }
+
+        // 每消费半个窗口确认一次，发送方据此继续写出，积压的分段不超过读取窗口
+        private void acknowledge()
+        {
+            final int window = readThrottle.getWindow();
+            if (nextPart - ackedPart < Math.max(1, window / 2))
+            {
+                return;
+            }
+            ackedPart = nextPart;
+            ackLimit = nextPart + window;
+            final Message msg = (Message) request.getMessage();
+            session.write(PartSender.newAck(msg.getSessionId(), msg.getSerial(), ackLimit));
+        }
+
+        // 等待分段期间每个RTO检查一次，期间没有新的分段时重发上次的确认，发送方可能正等着这个丢失的确认
+        private void scheduleReack()
+        {
+            try
+            {
+                pending = scheduleExecutor.schedule(new Runnable()
+                {
+                    public void run()
+                    {
+                        reack();
+                    }
+                }, timer.getRto(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex)
+            {
+                LOGGER.debug("client is destroyed, stop re-sending acks, request={}", request);
+            }
+        }
+
+        private void reack()
+        {
+            if (request.getFuture().isDone() || !session.isConnected())
+            {
+                return;
+            }
+            final int limit = ackLimit;
+            if (0 != limit && System.nanoTime() - partAt >= timer.getRto())
+            {
+                LOGGER.debug("no part in {} ms, re-send ack limit={}, request={}",
+                        TimeUnit.NANOSECONDS.toMillis(timer.getRto()), limit, request);
+                final Message msg = (Message) request.getMessage();
+                session.write(PartSender.newAck(msg.getSessionId(), msg.getSerial(), limit));
+            }
+            scheduleReack();
+        }
+
+        public void onResponse(Message response)
+        {
+            cancel();
+            final long now = System.nanoTime();
+            metrics.recordOk(TimeUnit.NANOSECONDS.toMicros(now - start));
+            trace(RequestEvents.OK);
+            if (null == session)
+            {
+                releasePermit();
+                return;
+            }
+            if (!permit.compareAndSet(true, false))
+            {
+                return;
+            }
+            // 分段响应的往返时间以第一段为准，不含传输和消费其余分段的时间
+            final long rtt = (0 == firstPartAt ? now : firstPartAt) - sentAt;
+            if (0 == retransmits)
+            {
+                timer.onRtt(rtt);
+                limiter.onSuccess(rtt);
+            } else
+            {
+                // Karn算法：无法确定响应对应哪一次发送，不采样；发生过丢包视为拥塞
+                limiter.onDropped();
+            }
+        }
+
+        public void onFailure(DeviceResponseTimeout cause)
+        {
+            cancel();
+            if (cause instanceof DeviceOverload)
+            {
+                metrics.recordRejected();
+                trace(RequestEvents.REJECTED);
+            } else
+            {
+                metrics.recordTimeout(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                trace(RequestEvents.TIMEOUT);
+            }
+            final IoSession session = this.session;
+            if (null == session)
+            {
+                // 未发出的请求(包括检查完成状态之后、发出之前失败的)归还许可
+                releasePermit();
+                return;
+            }
+            if (!permit.compareAndSet(true, false))
+            {
+                return;
+            }
+            // 调用方先结束的请求(批量期限、取消、等待超时)从RequestResponseFilter中移除，不再重复报告超时
+            requestResponseFilter.forget(session, request);
+            if (0 != firstPartAt && session.isConnected())
+            {
+                // 设备可能还在按窗口发送分段，通知它放弃
+                final Message msg = (Message) request.getMessage();
+                session.write(PartSender.newCancel(msg.getSessionId(), msg.getSerial()));
+            }
+            // 调用方主动取消不代表设备拥塞
+            if (request.getFuture().isCancelled())
+            {
+                limiter.onIgnore();
+            } else
+            {
+                limiter.onDropped();
+            }
+        }
+
+        private void trace(String outcome)
+        {
+            final Message msg = (Message) request.getMessage();
+            RequestEvents.end(event, msg.getSessionId(), msg.getSerial(), endpoint, outcome, retransmits);
+        }
+
+        private void cancel()
+        {
+            final ScheduledFuture<?> scheduled = pending;
+            if (null != scheduled)
+            {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 异步发送请求，完成时回调
+     *
+     * @param sessionId  客户端唯一标识
+     * @param requestMsg 请求消息
+     * @param callback   完成回调
+     * @return 请求结果
+     */
+    public MessageResponseFuture executeAsync(int sessionId, Message requestMsg, ResponseCallback callback)
+    {
+        final MessageResponseFuture future = executeAsync(sessionId, requestMsg);
+        future.addCallback(callback);
+        return future;
+    }
+
+    /**
+     * @param endpoint 设备地址
+     * @return 设备的请求延迟统计，首次访问时创建并注册到JMX
+     */
+    public EndpointMetrics getMetrics(InetSocketAddress endpoint)
+    {
+        EndpointMetrics endpointMetrics = metrics.get(endpoint);
+        if (null == endpointMetrics)
+        {
+            final EndpointMetrics created = new EndpointMetrics(endpoint);
+            endpointMetrics = metrics.putIfAbsent(endpoint, created);
+            if (null == endpointMetrics)
+            {
+                endpointMetrics = created;
+                created.register(name);
+            }
+        }
+        return endpointMetrics;
+    }
+
+    /**
+     * 将所有设备的端到端延迟(微秒)累加到快照中，快照由调用方复用，读取不影响请求路径
+     *
+     * @param snapshot 目标快照，累加前不会清零
+     * @param ok       true读取收到响应的请求，false读取超时的请求
+     * @return 目标快照
+     */
+    public LatencyHistogram.Snapshot snapshotLatency(LatencyHistogram.Snapshot snapshot, boolean ok)
+    {
+        for (EndpointMetrics endpointMetrics : metrics.values())
+        {
+            (ok ? endpointMetrics.getOk() : endpointMetrics.getTimeout()).addTo(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return 客户端名称，即JMX名称中的name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * 输出每个设备的延迟统计、并发上限和重传计时器
+     *
+     * @param logger 日志，为null时使用本类的日志
+     */
     public void profile(Logger logger)
     {
         logger = logger == null ? LOGGER : logger;
-        final Set<IoEventType> events = profiler.getEventsToProfile();
-        for (IoEventType eventType : events)
+        logger.info("{}", readThrottle);
+        for (Map.Entry<InetSocketAddress, EndpointMetrics> entry : metrics.entrySet())
         {
-            logger.debug("call eventType {}, average time is: {} milliseconds", eventType.name(), profiler.getAverageTime(eventType));
-            logger.debug("call eventType {}, maxinum time is: {} milliseconds", eventType.name(), profiler.getMaximumTime(eventType));
-            logger.debug("call eventType {}, total calls is: {}", eventType.name(), profiler.getTotalCalls(eventType));
-            logger.debug("call eventType {}, total times is: {} milliseconds", eventType.name(), profiler.getTotalTime(eventType));
+            logger.info("{}, {}, {}", entry.getValue(), limiters.get(entry.getKey()),
+                    retransmissionTimers.get(entry.getKey()));
         }
     }
 
     public static void main(String[] args) throws Exception
     {
-        final MessageClient messageClient = new MessageClient(Executors.newScheduledThreadPool(1), "10.8.9.194", MessageServer.PORT);
+        final MessageClient messageClient = new MessageClient(new TimingWheelScheduler(), "10.8.9.194", MessageServer.PORT);
         System.out.println("begin....");
         int sessionId = 10000;
         int serial = 1;
@@ -227,12 +1208,53 @@ public class MessageClient implements IoHandler
 
     public void exceptionCaught(IoSession session, Throwable cause) throws Exception
     {
+        if (cause instanceof RequestTimeoutException)
+        {
+            // RequestResponseFilter的超时事件，结束对应的异步请求
+            final Request request = ((RequestTimeoutException) cause).getRequest();
+            final MessageResponseFuture future = getFuture(request);
+            if (null != future && !future.setFailure(new DeviceResponseTimeout("request is time out, request=" + request)))
+            {
+                // 与调用方结束请求同时发生，调用方已得到失败结果
+                LOGGER.debug("request is already completed, ignore the time out, request={}", request);
+                return;
+            }
+            LOGGER.error("request is time out, request={}", request);
+            return;
+        }
         LOGGER.error("process session:{} failed, cause:{}", session, cause);
     }
 
     public void messageReceived(IoSession session, Object message) throws Exception
     {
         LOGGER.debug("receive a msg from:{}, msg:{}", session, message);
+        if (message instanceof Response)
+        {
+            // RequestResponseFilter匹配到的响应，完成对应的异步请求
+            final Response response = (Response) message;
+            final Message msg = (Message) response.getMessage();
+            RequestEvents.matched(msg.getSessionId(), msg.getSerial());
+            final MessageResponseFuture future = getFuture(response.getRequest());
+            if (null != future)
+            {
+                final PartConsumer consumer = ((MessageRequest) response.getRequest()).getPartConsumer();
+                if (null != consumer)
+                {
+                    consumer.onPart(msg);
+                }
+                // 普通请求收到分段响应时只以最后一段完成
+                if (ResponseType.PARTIAL != response.getType())
+                {
+                    future.setResponse(msg);
+                }
+            }
+        }
+        // 其他消息(如请求重传后迟到的重复响应)找不到对应的请求，直接丢弃
+    }
+
+    private static MessageResponseFuture getFuture(Request request)
+    {
+        return request instanceof MessageRequest ? ((MessageRequest) request).getFuture() : null;
     }
 
     public void messageSent(IoSession session, Object message) throws Exception
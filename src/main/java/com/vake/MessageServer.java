@@ -19,22 +19,38 @@
  */
 package com.vake;
 
+import com.vake.cache.ResponseCacheFilter;
+import com.vake.capture.WireCaptureFilter;
 import com.vake.message.Message;
+import com.vake.message.MessagePool;
 import com.vake.message.codec.MessageProtocolCodecFactory;
+import com.vake.message.request.PartSender;
+import com.vake.metrics.RequestEventFilter;
+import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
+import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.service.IoService;
+import org.apache.mina.core.service.IoServiceListener;
+import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.transport.socket.DatagramSessionConfig;
 import org.apache.mina.transport.socket.SocketSessionConfig;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
 
 /**
- * TODO Add class comment here<p/>
+ * 回显服务，也用作本地容量测试的设备模拟器<p/>
+ * 用法: MessageServer [tcp|udp] [port]，缺省为tcp、端口4999。
+ * udp模式与MessageClient使用同一协议，会话按对端地址管理并有数量上限，回显直接在I/O线程上完成；
+ * 客户端重传的重复请求由{@link ResponseCacheFilter}以缓存的响应回复
  *
  * @author xiongqimin
  * @version 1.0.0
@@ -49,37 +65,165 @@ public class MessageServer extends IoHandlerAdapter
 
     public static final int PORT = 4999;
 
+    // UDP接收/发送缓冲区大小
+    public static final int DATAGRAM_BUFFER_SIZE = 4 * 1024 * 1024;//4M
+
     public static void main(String[] args)
     {
-        final NioSocketAcceptor acceptor = new NioSocketAcceptor();
-        acceptor.getFilterChain().addLast("codec", new ProtocolCodecFilter(new MessageProtocolCodecFactory()));
-        acceptor.getFilterChain().addLast("exec", new ExecutorFilter(1));
-
-        // Bind
-        acceptor.setHandler(new IoHandlerAdapter()
+        final boolean udp = args.length > 0 && "udp".equalsIgnoreCase(args[0]);
+        final int port = args.length > 1 ? Integer.parseInt(args[1]) : PORT;
+        try
         {
-            @Override
-            public void messageReceived(IoSession session, Object message) throws Exception
+            if (udp)
+            {
+                bindDatagram(port);
+            } else
             {
-                LOGGER.debug("received a message from:{}, content:{}", session, message);
-                Message msg = (Message) message;
-                final Message copy = Message.copy(msg);
-                copy.setContent("server reply " + copy.getContent());
-                session.write(msg);
+                bindSocket(port);
             }
-        });
+        } catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+        System.out.println("Listening on " + (udp ? "udp" : "tcp") + " port " + port);
+    }
+
+    /**
+     * 启动TCP回显服务
+     *
+     * @param port 端口
+     * @return acceptor，dispose(或unbind)时一并释放编解码器
+     * @throws IOException 绑定失败
+     */
+    public static NioSocketAcceptor bindSocket(int port) throws IOException
+    {
+        final NioSocketAcceptor acceptor = new NioSocketAcceptor();
+        addCodec(acceptor, false);
+        acceptor.getFilterChain().addLast("exec", new ExecutorFilter(1));
+        acceptor.setHandler(new MessageServer());
 
         final SocketSessionConfig scfg = acceptor.getSessionConfig();
         scfg.setReuseAddress(true);
         scfg.setReadBufferSize(1024 * 10);
         scfg.setSendBufferSize(1024 * 10);
-        try
+        acceptor.bind(new InetSocketAddress(port));
+        return acceptor;
+    }
+
+    /**
+     * 启动UDP回显服务<p/>
+     * 回显不阻塞，不加ExecutorFilter，在I/O线程上解码后直接写回，省去线程切换。
+     * 设置-Dcache.entries=0时不缓存响应
+     *
+     * @param port 端口，0表示由系统分配
+     * @return acceptor，dispose(或unbind)时一并释放编解码器
+     * @throws IOException 绑定失败
+     */
+    public static NioDatagramAcceptor bindDatagram(int port) throws IOException
+    {
+        final NioDatagramAcceptor acceptor = new NioDatagramAcceptor();
+        addCodec(acceptor, true);
+        final ResponseCacheFilter cache = ResponseCacheFilter.fromSystemProperties();
+        if (null != cache)
         {
-            acceptor.bind(new InetSocketAddress(PORT));
-        } catch (IOException ex)
+            acceptor.getFilterChain().addLast("cache", cache);
+        }
+        acceptor.setHandler(new MessageServer());
+        acceptor.setSessionRecycler(new LruSessionRecycler());
+
+        final DatagramSessionConfig dcfg = acceptor.getSessionConfig();
+        // 回收器只在收到数据时检查空闲，没有任何数据时由acceptor的空闲通知关闭会话
+        dcfg.setIdleTime(IdleStatus.READER_IDLE, (int) (LruSessionRecycler.DEFAULT_IDLE_TIMEOUT / 1000));
+        dcfg.setReuseAddress(true);
+        dcfg.setReceiveBufferSize(DATAGRAM_BUFFER_SIZE);
+        dcfg.setSendBufferSize(DATAGRAM_BUFFER_SIZE);
+        acceptor.bind(new InetSocketAddress(port));
+        return acceptor;
+    }
+
+    // 编解码器随acceptor停止(unbind或dispose)而释放
+    private static void addCodec(IoAcceptor acceptor, boolean datagram)
+    {
+        final DefaultIoFilterChainBuilder filterChain = acceptor.getFilterChain();
+        // JFR收发事件和抓包放在最前面，记录编解码前的原始报文；
+        // TCP读写的buffer不按帧对齐，无法从中解析出帧，只有编解码器发布的逐帧事件
+        final RequestEventFilter events = datagram ? RequestEventFilter.create() : null;
+        if (null != events)
         {
-            ex.printStackTrace();
+            filterChain.addLast("events", events);
+        }
+        final WireCaptureFilter capture = WireCaptureFilter.fromSystemProperties();
+        if (null != capture)
+        {
+            filterChain.addLast("capture", capture);
+        }
+        final MessageProtocolCodecFactory codec =
+                MessageProtocolCodecFactory.fromSystemProperties(Charset.defaultCharset(), new MessagePool());
+        filterChain.addLast("codec", new ProtocolCodecFilter(codec));
+        // 分段响应的窗口确认不交给响应缓存和处理器
+        filterChain.addLast("partAck", PartSender.getAckFilter());
+        acceptor.addListener(new IoServiceListener()
+        {
+            public void serviceActivated(IoService service)
+            {
+            }
+
+            public void serviceIdle(IoService service, IdleStatus idleStatus)
+            {
+            }
+
+            public void serviceDeactivated(IoService service)
+            {
+                // 停止合并写出的后台线程，释放压缩器池中的zlib状态
+                codec.dispose();
+                if (null != capture)
+                {
+                    try
+                    {
+                        capture.getRing().close();
+                    } catch (IOException ex)
+                    {
+                        LOGGER.error("close capture file failed", ex);
+                    }
+                }
+            }
+
+            public void sessionCreated(IoSession session)
+            {
+            }
+
+            public void sessionDestroyed(IoSession session)
+            {
+            }
+        });
+    }
+
+    @Override
+    public void messageReceived(IoSession session, Object message) throws Exception
+    {
+        LOGGER.debug("received a message from:{}, content:{}", session, message);
+        // 原样回显，消息来自池，写完后在messageSent中归还
+        session.write(message);
+    }
+
+    @Override
+    public void sessionIdle(IoSession session, IdleStatus status) throws Exception
+    {
+        // UDP会话不会自行断开，空闲的会话关闭后释放其属性中的重组状态、分段发送窗口等
+        if (session.getTransportMetadata().isConnectionless() && IdleStatus.READER_IDLE == status)
+        {
+            LOGGER.debug("close idle session:{}", session);
+            session.close(true);
+        }
+    }
+
+    @Override
+    public void messageSent(IoSession session, Object message) throws Exception
+    {
+        // 处理器是最后一个看到写请求的，此后消息不再被引用；写失败时消息不归还，由GC回收
+        if (message instanceof Message)
+        {
+            ((Message) message).release();
         }
-        System.out.println("Listening on port " + PORT);
     }
 }
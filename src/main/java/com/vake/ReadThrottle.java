@@ -0,0 +1,247 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vake.message.Message;
+import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.service.IoProcessor;
+import org.apache.mina.core.session.AbstractIoSession;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * 分段响应的读取流控<p/>
+ * 入口过滤器放在ExecutorFilter之前(I/O线程)，出口过滤器放在其后(处理线程)，两者之间即等待处理的分段。
+ * 一个会话等待处理的分段达到窗口大小时暂停读取，处理到半个窗口以下时恢复，消费慢时内存中只保留有限个分段；
+ * 暂停期间数据报积压在socket接收缓冲区中，超出后由内核丢弃，发送方需按窗口控制发送速度(见{@link com.vake.message.request.PartSender})；
+ * 接收方按段序号发现丢失的分段
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class ReadThrottle
+{
+    /**
+     * 每个会话最多等待处理的分段数
+     */
+    public static final String WINDOW_PROPERTY = "client.streamWindow";
+
+    public static final int DEFAULT_WINDOW = 64;
+
+    private static final AttributeKey STATE = new AttributeKey(ReadThrottle.class, "state");
+
+    private final int highWater;
+
+    private final int lowWater;
+
+    private final AtomicLong suspensions = new AtomicLong();
+
+    private final IoFilter enqueueFilter = new IoFilterAdapter()
+    {
+        @Override
+        public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+        {
+            if (isPartial(message))
+            {
+                enqueued(session);
+            }
+            nextFilter.messageReceived(session, message);
+        }
+    };
+
+    private final IoFilter dequeueFilter = new IoFilterAdapter()
+    {
+        @Override
+        public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+        {
+            if (isPartial(message))
+            {
+                dequeued(session);
+            }
+            nextFilter.messageReceived(session, message);
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param window 每个会话最多等待处理的分段数
+     */
+    public ReadThrottle(int window)
+    {
+        if (window <= 0)
+        {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        highWater = window;
+        lowWater = window / 2;
+    }
+
+    /**
+     * @return 按-Dclient.streamWindow创建，缺省{@link #DEFAULT_WINDOW}
+     */
+    public static ReadThrottle fromSystemProperties()
+    {
+        return new ReadThrottle(Integer.getInteger(WINDOW_PROPERTY, DEFAULT_WINDOW));
+    }
+
+    /**
+     * @return 放在ExecutorFilter之前的过滤器
+     */
+    public IoFilter getEnqueueFilter()
+    {
+        return enqueueFilter;
+    }
+
+    /**
+     * @return 放在ExecutorFilter之后的过滤器
+     */
+    public IoFilter getDequeueFilter()
+    {
+        return dequeueFilter;
+    }
+
+    public int getWindow()
+    {
+        return highWater;
+    }
+
+    /**
+     * @return 累计暂停读取的次数
+     */
+    public long getSuspensions()
+    {
+        return suspensions.get();
+    }
+
+    /**
+     * @param session 会话
+     * @return 会话当前等待处理的分段数
+     */
+    public int getPending(IoSession session)
+    {
+        final State state = (State) session.getAttribute(STATE);
+        if (null == state)
+        {
+            return 0;
+        }
+        state.lock.lock();
+        try
+        {
+            return state.pending;
+        } finally
+        {
+            state.lock.unlock();
+        }
+    }
+
+    // 会话的processor处理的就是这个会话，AbstractIoSession只返回原始类型
+    @SuppressWarnings("unchecked")
+    private static IoProcessor<IoSession> processorOf(AbstractIoSession session)
+    {
+        return session.getProcessor();
+    }
+
+    private static boolean isPartial(Object message)
+    {
+        return message instanceof Message && ((Message) message).hasFlag(Message.FLAG_PARTIAL);
+    }
+
+    private void enqueued(IoSession session)
+    {
+        final State state = stateOf(session);
+        state.lock.lock();
+        try
+        {
+            // 计数和暂停/恢复在同一把锁内，不会在恢复之后才暂停
+            if (++state.pending >= highWater && !session.isReadSuspended())
+            {
+                session.suspendRead();
+                suspensions.incrementAndGet();
+            }
+        } finally
+        {
+            state.lock.unlock();
+        }
+    }
+
+    private void dequeued(IoSession session)
+    {
+        final State state = stateOf(session);
+        state.lock.lock();
+        try
+        {
+            if (--state.pending <= lowWater && session.isReadSuspended())
+            {
+                session.resumeRead();
+                // MINA 2.0.7的resumeRead只修改interestOps，不唤醒selector，最多要等一次select超时(1秒)；
+                // 借flush唤醒I/O线程，写队列为空时flush没有其他作用
+                if (session instanceof AbstractIoSession)
+                {
+                    processorOf((AbstractIoSession) session).flush(session);
+                }
+            }
+        } finally
+        {
+            state.lock.unlock();
+        }
+    }
+
+    private static State stateOf(IoSession session)
+    {
+        State state = (State) session.getAttribute(STATE);
+        if (null == state)
+        {
+            final State created = new State();
+            state = (State) session.setAttributeIfAbsent(STATE, created);
+            if (null == state)
+            {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    private static final class State
+    {
+        private final Lock lock = new ReentrantLock();
+
+        // 受lock保护
+        private int pending;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ReadThrottle{" +
+                "window=" + highWater +
+                ", suspensions=" + suspensions +
+                '}';
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vake.message.DeviceOverload;
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+import com.vake.message.RequestCancelled;
+import com.vake.message.request.MessageResponseFuture;
+import com.vake.message.request.ResponseCallback;
+import org.apache.mina.core.RuntimeIoException;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoConnector;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按设备地址分组的会话池<p/>
+ * 每个设备首次使用时才建立连接，一次打开channelsPerEndpoint个会话(通道)，每个通道绑定各自的本地端口，
+ * 设备按请求的源端口回复。请求和响应在各通道自己的RequestResponseFilter存储中匹配，一个通道关闭只结束该通道上的请求。
+ * 发送时选择在途请求最少的健康通道，在途数相同时轮流选择；连续超时达到阈值的通道视为不健康，
+ * 此后每隔探测间隔放行一个请求作为探测(半开)，探测收到响应即恢复；被取消或因过载未发出的请求不计入失败。
+ * 已关闭的通道在下次被选中时重连。<p/>
+ * 响应ID检查器(MessageResponseInspector)由各通道共享，它只按(sessionId, serial)识别响应对应的请求ID，
+ * 不同设备上相同(sessionId, serial)的请求按在途数计数登记，请求是否完成由收到响应的会话自己的存储决定
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class SessionPool
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionPool.class);
+
+    // 连续失败多少次后通道视为不健康
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    // 不健康的通道每隔多久放行一个探测请求
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 1000;
+
+    private final IoConnector connector;
+
+    private final int channelsPerEndpoint;
+
+    private final int failureThreshold;
+
+    private final long probeIntervalNanos;
+
+    private final ConcurrentMap<InetSocketAddress, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param connector           已配置好过滤器链和处理器的连接器
+     * @param channelsPerEndpoint 每个设备的通道数
+     */
+    public SessionPool(IoConnector connector, int channelsPerEndpoint)
+    {
+        this(connector, channelsPerEndpoint, DEFAULT_FAILURE_THRESHOLD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connector           已配置好过滤器链和处理器的连接器
+     * @param channelsPerEndpoint 每个设备的通道数
+     * @param failureThreshold    连续失败多少次后通道视为不健康
+     */
+    public SessionPool(IoConnector connector, int channelsPerEndpoint, int failureThreshold)
+    {
+        this(connector, channelsPerEndpoint, failureThreshold, DEFAULT_PROBE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connector           已配置好过滤器链和处理器的连接器
+     * @param channelsPerEndpoint 每个设备的通道数
+     * @param failureThreshold    连续失败多少次后通道视为不健康
+     * @param probeIntervalMillis 不健康的通道每隔多久放行一个探测请求
+     */
+    public SessionPool(IoConnector connector, int channelsPerEndpoint, int failureThreshold, long probeIntervalMillis)
+    {
+        if (channelsPerEndpoint <= 0)
+        {
+            throw new IllegalArgumentException("channelsPerEndpoint must be positive: " + channelsPerEndpoint);
+        }
+        if (failureThreshold <= 0)
+        {
+            throw new IllegalArgumentException("failureThreshold must be positive: " + failureThreshold);
+        }
+        if (probeIntervalMillis <= 0)
+        {
+            throw new IllegalArgumentException("probeIntervalMillis must be positive: " + probeIntervalMillis);
+        }
+        this.connector = connector;
+        this.channelsPerEndpoint = channelsPerEndpoint;
+        this.failureThreshold = failureThreshold;
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis);
+    }
+
+    /**
+     * 立即建立到设备的通道，已建立时不做任何事
+     *
+     * @param remote    设备地址
+     * @param localPort 第一个通道的本地绑定端口，0表示由系统分配，其余通道总是由系统分配
+     * @throws RuntimeIoException 连接失败
+     */
+    public void open(InetSocketAddress remote, int localPort)
+    {
+        endpoint(remote).open(localPort);
+    }
+
+    /**
+     * 选择发送请求的通道，设备尚未连接时先建立连接
+     *
+     * @param remote 设备地址
+     * @return 到了探测时间的不健康通道，或在途请求最少的健康通道，连接失败时为null
+     */
+    public Channel acquire(InetSocketAddress remote)
+    {
+        try
+        {
+            return endpoint(remote).select();
+        } catch (RuntimeIoException ex)
+        {
+            LOGGER.error("connect to {} failed", remote, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param remote 设备地址
+     * @return 到设备的所有通道，尚未连接时为空
+     */
+    public List<Channel> getChannels(InetSocketAddress remote)
+    {
+        final Endpoint endpoint = endpoints.get(remote);
+        final Channel[] channels = null == endpoint ? null : endpoint.channels;
+        if (null == channels)
+        {
+            return Collections.emptyList();
+        }
+        final List<Channel> list = new ArrayList<>(channels.length);
+        Collections.addAll(list, channels);
+        return list;
+    }
+
+    /**
+     * @return 所有设备的所有通道
+     */
+    public List<Channel> getChannels()
+    {
+        final List<Channel> list = new ArrayList<>();
+        for (InetSocketAddress remote : endpoints.keySet())
+        {
+            list.addAll(getChannels(remote));
+        }
+        return list;
+    }
+
+    private Endpoint endpoint(InetSocketAddress remote)
+    {
+        Endpoint endpoint = endpoints.get(remote);
+        if (null == endpoint)
+        {
+            final Endpoint created = new Endpoint(remote);
+            endpoint = endpoints.putIfAbsent(remote, created);
+            if (null == endpoint)
+            {
+                endpoint = created;
+            }
+        }
+        return endpoint;
+    }
+
+    private IoSession connect(InetSocketAddress remote, int localPort)
+    {
+        final ConnectFuture connect = connector.connect(remote, new InetSocketAddress(localPort));
+        connect.awaitUninterruptibly();
+        return connect.getSession();
+    }
+
+    /**
+     * 选择时a是否优于b：健康的优先，其次在途请求少的优先
+     */
+    private static boolean isBetter(Channel a, Channel b)
+    {
+        if (null == b)
+        {
+            return true;
+        }
+        final boolean healthy = a.isHealthy();
+        if (healthy != b.isHealthy())
+        {
+            return healthy;
+        }
+        return a.getOutstanding() < b.getOutstanding();
+    }
+
+    /**
+     * 一个设备的所有通道，连接和重连在锁内进行
+     */
+    private final class Endpoint
+    {
+        private final InetSocketAddress remote;
+
+        private final Lock lock = new ReentrantLock();
+
+        // 在途数相同时的起始位置，使空闲时各通道轮流使用
+        private final AtomicInteger next = new AtomicInteger();
+
+        private volatile Channel[] channels;
+
+        Endpoint(InetSocketAddress remote)
+        {
+            this.remote = remote;
+        }
+
+        void open(int localPort)
+        {
+            lock.lock();
+            try
+            {
+                if (null != channels)
+                {
+                    return;
+                }
+                final Channel[] opened = new Channel[channelsPerEndpoint];
+                try
+                {
+                    for (int i = 0; i < opened.length; i++)
+                    {
+                        final int port = 0 == i ? localPort : 0;
+                        opened[i] = new Channel(connect(remote, port), port, failureThreshold, probeIntervalNanos);
+                    }
+                } catch (RuntimeException ex)
+                {
+                    // 已打开的会话不会再被引用，关闭后再抛出
+                    for (Channel channel : opened)
+                    {
+                        if (null != channel)
+                        {
+                            channel.session.close(true);
+                        }
+                    }
+                    throw ex;
+                }
+                channels = opened;
+                LOGGER.debug("open {} channels to {}", opened.length, remote);
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+
+        Channel select()
+        {
+            Channel[] current = channels;
+            if (null == current)
+            {
+                open(0);
+                current = channels;
+            }
+            final int start = 1 == current.length ? 0 : (next.getAndIncrement() & Integer.MAX_VALUE) % current.length;
+            Channel best = null;
+            long now = 0;
+            for (int i = 0; i < current.length; i++)
+            {
+                final Channel channel = current[(start + i) % current.length];
+                if (!channel.isHealthy() && channel.session.isConnected())
+                {
+                    // 只在有不健康通道时读取时钟
+                    if (0 == now)
+                    {
+                        now = System.nanoTime();
+                    }
+                    if (channel.tryProbe(now))
+                    {
+                        LOGGER.debug("probe unhealthy channel {}", channel);
+                        return channel;
+                    }
+                }
+                if (isBetter(channel, best))
+                {
+                    best = channel;
+                }
+            }
+            if (!best.session.isConnected())
+            {
+                reconnect(best);
+            }
+            return best;
+        }
+
+        private void reconnect(Channel channel)
+        {
+            lock.lock();
+            try
+            {
+                if (!channel.session.isConnected())
+                {
+                    LOGGER.warn("channel {} is closed, reconnect", channel);
+                    channel.session = connect(remote, channel.localPort);
+                    channel.failures.set(0);
+                }
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 到设备的一个通道，记录在途请求数和连续超时次数
+     */
+    public static final class Channel implements ResponseCallback
+    {
+        private final int localPort;
+
+        private final int failureThreshold;
+
+        private final long probeIntervalNanos;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final AtomicInteger failures = new AtomicInteger();
+
+        // 不健康时下一次允许探测的时刻(System.nanoTime)
+        private final AtomicLong nextProbe = new AtomicLong();
+
+        private volatile IoSession session;
+
+        Channel(IoSession session, int localPort, int failureThreshold, long probeIntervalNanos)
+        {
+            this.session = session;
+            this.localPort = localPort;
+            this.failureThreshold = failureThreshold;
+            this.probeIntervalNanos = probeIntervalNanos;
+        }
+
+        public IoSession getSession()
+        {
+            return session;
+        }
+
+        /**
+         * @return 已发出尚未完成的请求数
+         */
+        public int getOutstanding()
+        {
+            return outstanding.get();
+        }
+
+        /**
+         * @return 连续超时次数，收到响应后清零
+         */
+        public int getConsecutiveFailures()
+        {
+            return failures.get();
+        }
+
+        /**
+         * @return 会话已连接且连续超时次数未达到阈值
+         */
+        public boolean isHealthy()
+        {
+            return session.isConnected() && failures.get() < failureThreshold;
+        }
+
+        /**
+         * 不健康的通道到了探测时间时占用这次探测，每个探测间隔只有一个调用方成功
+         *
+         * @param now 当前System.nanoTime
+         * @return 是否由调用方发出探测请求
+         */
+        boolean tryProbe(long now)
+        {
+            final long due = nextProbe.get();
+            return now - due >= 0 && nextProbe.compareAndSet(due, now + probeIntervalNanos);
+        }
+
+        /**
+         * 请求从本通道发出前调用，请求完成时更新在途数和健康状态
+         *
+         * @param future 请求结果
+         */
+        public void track(MessageResponseFuture future)
+        {
+            outstanding.incrementAndGet();
+            future.addCallback(this);
+        }
+
+        public void onResponse(Message response)
+        {
+            outstanding.decrementAndGet();
+            failures.set(0);
+        }
+
+        public void onFailure(DeviceResponseTimeout cause)
+        {
+            outstanding.decrementAndGet();
+            if (cause instanceof RequestCancelled || cause instanceof DeviceOverload)
+            {
+                // 调用方放弃或本地限流，与通道是否可用无关
+                return;
+            }
+            if (failures.incrementAndGet() == failureThreshold)
+            {
+                nextProbe.set(System.nanoTime() + probeIntervalNanos);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Channel{session=" + session + ", outstanding=" + outstanding + ", failures=" + failures + '}';
+        }
+    }
+}
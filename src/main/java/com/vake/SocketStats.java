@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * 单个UDP socket的收包统计<p/>
+ * 收包数和字节数来自MINA会话，内核丢包数来自Linux的/proc/net/udp(udp6)的drops列，按本地端口和对端端口匹配
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class SocketStats
+{
+    private static final String[] PROC_FILES = {"/proc/net/udp", "/proc/net/udp6"};
+
+    private final InetSocketAddress localAddress;
+
+    private final InetSocketAddress remoteAddress;
+
+    private final long readMessages;
+
+    private final long readBytes;
+
+    private final long drops;
+
+    public SocketStats(InetSocketAddress localAddress, InetSocketAddress remoteAddress, long readMessages,
+                       long readBytes, long drops)
+    {
+        this.localAddress = localAddress;
+        this.remoteAddress = remoteAddress;
+        this.readMessages = readMessages;
+        this.readBytes = readBytes;
+        this.drops = drops;
+    }
+
+    /**
+     * 采集会话当前的统计
+     *
+     * @param session UDP会话
+     * @return 统计
+     */
+    public static SocketStats of(IoSession session)
+    {
+        final InetSocketAddress local = (InetSocketAddress) session.getLocalAddress();
+        final InetSocketAddress remote = (InetSocketAddress) session.getRemoteAddress();
+        final long drops = null == local || null == remote ? -1 : readDrops(local.getPort(), remote.getPort());
+        return new SocketStats(local, remote, session.getReadMessages(), session.getReadBytes(), drops);
+    }
+
+    /**
+     * 从/proc/net/udp读取本地端口和对端端口匹配的socket的内核丢包数
+     *
+     * @param localPort  本地端口
+     * @param remotePort 对端端口
+     * @return 丢包数，无法读取时为-1
+     */
+    public static long readDrops(int localPort, int remotePort)
+    {
+        long drops = 0;
+        boolean found = false;
+        for (String path : PROC_FILES)
+        {
+            final File file = new File(path);
+            if (!file.canRead())
+            {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+            {
+                // 跳过表头
+                String line = reader.readLine();
+                while (null != (line = reader.readLine()))
+                {
+                    final String[] fields = line.trim().split("\\s+");
+                    if (fields.length < 13)
+                    {
+                        continue;
+                    }
+                    if (portOf(fields[1]) == localPort && portOf(fields[2]) == remotePort)
+                    {
+                        drops += Long.parseLong(fields[fields.length - 1]);
+                        found = true;
+                    }
+                }
+            } catch (IOException | NumberFormatException ex)
+            {
+                return -1;
+            }
+        }
+        return found ? drops : -1;
+    }
+
+    // 地址形如0100007F:1F40，端口为十六进制
+    private static int portOf(String address)
+    {
+        return Integer.parseInt(address.substring(address.indexOf(':') + 1), 16);
+    }
+
+    public InetSocketAddress getLocalAddress()
+    {
+        return localAddress;
+    }
+
+    public InetSocketAddress getRemoteAddress()
+    {
+        return remoteAddress;
+    }
+
+    public long getReadMessages()
+    {
+        return readMessages;
+    }
+
+    public long getReadBytes()
+    {
+        return readBytes;
+    }
+
+    /**
+     * @return 内核丢包数，无法获取时为-1
+     */
+    public long getDrops()
+    {
+        return drops;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SocketStats{" +
+                "local=" + localAddress +
+                ", remote=" + remoteAddress +
+                ", readMessages=" + readMessages +
+                ", readBytes=" + readBytes +
+                ", drops=" + drops +
+                '}';
+    }
+}
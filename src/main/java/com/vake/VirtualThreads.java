@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程(JDK 21+)的反射入口<p/>
+ * 工程仍按1.7编译，运行在不支持虚拟线程的JVM上时{@link #isSupported()}返回false
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public final class VirtualThreads
+{
+    // Executors.newVirtualThreadPerTaskExecutor，不支持时为null
+    private static final Method NEW_EXECUTOR = lookupExecutorFactory();
+
+    private VirtualThreads()
+    {
+    }
+
+    private static Method lookupExecutorFactory()
+    {
+        try
+        {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // JDK 19/20未开启preview时方法存在但调用会失败
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return 当前JVM是否可以创建虚拟线程
+     */
+    public static boolean isSupported()
+    {
+        return null != NEW_EXECUTOR;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器
+     *
+     * @return 执行器
+     * @throws UnsupportedOperationException 当前JVM不支持虚拟线程
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor()
+    {
+        if (null == NEW_EXECUTOR)
+        {
+            throw new UnsupportedOperationException("virtual threads require JDK 21+, running on " + System.getProperty("java.version"));
+        }
+        try
+        {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException ex)
+        {
+            throw new UnsupportedOperationException("create virtual thread executor failed", ex);
+        }
+    }
+}
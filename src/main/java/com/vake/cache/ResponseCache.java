@@ -0,0 +1,347 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vake.message.Message;
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * 以(sessionId, serial)打包值为键的有界响应缓存，编码后的响应字节保存在堆外<p/>
+ * 堆外区按固定大小的槽划分，一个条目占一个槽，帧长超过槽大小的响应不缓存。
+ * 请求开始处理时{@link #begin(long)}登记条目并占用槽，响应写出时{@link #put(long, Message)}编码进槽；
+ * 条目按登记顺序淘汰：超过TTL的过期淘汰，槽用尽时淘汰最早的条目；尚未响应的条目另有较短的处理期限，
+ * 处理器失败或不回复时过期，之后的重复请求重新交给处理器。索引只保存槽号、长度和过期时间，不持有响应对象
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class ResponseCache
+{
+    private final ByteBuffer arena;
+
+    private final int slotSize;
+
+    private final long ttlNanos;
+
+    private final long pendingNanos;
+
+    private final Lock lock = new ReentrantLock();
+
+    // 按登记顺序排列，最早的在前
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+
+    private final int[] freeSlots;
+
+    private int freeCount;
+
+    private volatile long hits;
+
+    private volatile long misses;
+
+    private volatile long evictions;
+
+    private volatile long expirations;
+
+    /**
+     * Constructor
+     *
+     * @param capacity  最多缓存的响应数
+     * @param slotSize  每个响应最大字节数
+     * @param ttlMillis 响应保留时间(毫秒)，也是尚未响应的条目的处理期限
+     */
+    public ResponseCache(int capacity, int slotSize, long ttlMillis)
+    {
+        this(capacity, slotSize, ttlMillis, ttlMillis);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity      最多缓存的响应数
+     * @param slotSize      每个响应最大字节数
+     * @param ttlMillis     响应保留时间(毫秒)
+     * @param pendingMillis 尚未响应的条目的处理期限(毫秒)，期间重复的请求被丢弃
+     */
+    public ResponseCache(int capacity, int slotSize, long ttlMillis, long pendingMillis)
+    {
+        if (capacity <= 0 || slotSize < Message.HEAD_LENGTH)
+        {
+            throw new IllegalArgumentException("illegal cache size, capacity=" + capacity + ", slotSize=" + slotSize);
+        }
+        if ((long) capacity * slotSize > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("cache is too large, capacity=" + capacity + ", slotSize=" + slotSize);
+        }
+        this.arena = ByteBuffer.allocateDirect(capacity * slotSize);
+        this.slotSize = slotSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.pendingNanos = TimeUnit.MILLISECONDS.toNanos(pendingMillis);
+        this.freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+    }
+
+    /**
+     * 查找已缓存的响应
+     *
+     * @param key (sessionId, serial)打包值
+     * @return 响应字节的拷贝，已flip可直接写出；未缓存、尚未响应或已过期时为null
+     */
+    public IoBuffer get(long key)
+    {
+        lock.lock();
+        try
+        {
+            final Entry entry = entries.get(key);
+            if (null != entry && isExpired(entry, System.nanoTime()))
+            {
+                remove(key, entry);
+                expirations++;
+            } else if (null != entry && entry.length > 0)
+            {
+                hits++;
+                // 拷贝出来再写，写出期间槽可能被淘汰复用
+                final IoBuffer copy = IoBuffer.allocate(entry.length, false);
+                copy.put(slot(entry.slot, entry.length));
+                copy.flip();
+                return copy;
+            }
+            misses++;
+            return null;
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求开始处理，登记条目等待响应
+     *
+     * @param key (sessionId, serial)打包值
+     * @return false表示同一请求仍在处理期限内或已有响应，本次是重复请求
+     */
+    public boolean begin(long key)
+    {
+        lock.lock();
+        try
+        {
+            final long now = System.nanoTime();
+            final Entry existed = entries.get(key);
+            if (null != existed)
+            {
+                if (!isExpired(existed, now))
+                {
+                    return false;
+                }
+                remove(key, existed);
+                expirations++;
+            }
+            expire(now);
+            if (0 == freeCount)
+            {
+                // 槽用尽，淘汰最早登记的条目
+                final Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+                freeSlots[freeCount++] = it.next().getValue().slot;
+                it.remove();
+                evictions++;
+            }
+            entries.put(key, new Entry(freeSlots[--freeCount], now + pendingNanos));
+            return true;
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 保存请求的响应，只保存经{@link #begin(long)}登记且尚未淘汰的请求
+     *
+     * @param key      (sessionId, serial)打包值
+     * @param response 响应消息
+     * @return 是否已缓存
+     */
+    public boolean put(long key, Message response)
+    {
+        final int length = response.getFrameLength();
+        lock.lock();
+        try
+        {
+            final Entry entry = entries.get(key);
+            if (null == entry || entry.length > 0)
+            {
+                return false;
+            }
+            if (length > slotSize)
+            {
+                // 放不下的响应不缓存，重复请求会再次处理
+                remove(key, entry);
+                return false;
+            }
+            response.encodeTo(IoBuffer.wrap(slot(entry.slot, slotSize)));
+            entry.length = length;
+            entry.expiresAt = System.nanoTime() + ttlNanos;
+            return true;
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放弃请求的条目，如处理失败时
+     *
+     * @param key (sessionId, serial)打包值
+     */
+    public void discard(long key)
+    {
+        lock.lock();
+        try
+        {
+            final Entry entry = entries.get(key);
+            if (null != entry)
+            {
+                remove(key, entry);
+            }
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    // 从最早的条目开始淘汰过期的，在锁内调用
+    private void expire(long now)
+    {
+        final Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext())
+        {
+            final Entry entry = it.next();
+            if (!isExpired(entry, now))
+            {
+                break;
+            }
+            freeSlots[freeCount++] = entry.slot;
+            it.remove();
+            expirations++;
+        }
+    }
+
+    private void remove(long key, Entry entry)
+    {
+        entries.remove(key);
+        freeSlots[freeCount++] = entry.slot;
+    }
+
+    private static boolean isExpired(Entry entry, long now)
+    {
+        return now - entry.expiresAt >= 0;
+    }
+
+    private ByteBuffer slot(int slot, int length)
+    {
+        final ByteBuffer view = arena.duplicate();
+        view.position(slot * slotSize);
+        view.limit(slot * slotSize + length);
+        return view.slice();
+    }
+
+    /**
+     * @return 当前条目数，含尚未响应的
+     */
+    public int size()
+    {
+        lock.lock();
+        try
+        {
+            return entries.size();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity()
+    {
+        return freeSlots.length;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return 因槽用尽被淘汰的条目数
+     */
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * @return 超过TTL被淘汰的条目数
+     */
+    public long getExpirations()
+    {
+        return expirations;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ResponseCache{size=" + size() + ", capacity=" + getCapacity() + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", expirations=" + expirations + '}';
+    }
+
+    private static final class Entry
+    {
+        private final int slot;
+
+        // 编码后的长度，0表示尚未响应
+        private int length;
+
+        private long expiresAt;
+
+        Entry(int slot, long expiresAt)
+        {
+            this.slot = slot;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.cache;
+
+import com.vake.message.Message;
+import com.vake.message.request.MessageRequest;
+import com.vake.message.request.RetransmissionTimer;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 服务端幂等响应过滤器，客户端重传的重复请求直接以缓存的响应字节回复，不再交给处理器<p/>
+ * 需放在编解码过滤器之后。首次收到的请求在{@link ResponseCache}中登记后交给处理器，处理器写出同一(sessionId, serial)
+ * 的响应时编码一份存入缓存；请求仍在处理中时收到的重复请求直接丢弃，客户端稍后重传时即可命中。
+ * 处理器抛出异常时放弃登记的条目，没有回复的请求超过处理期限后放弃，客户端的重传重新交给处理器
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class ResponseCacheFilter extends IoFilterAdapter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCacheFilter.class);
+
+    /**
+     * 最多缓存的响应数，0表示不启用
+     */
+    public static final String ENTRIES_PROPERTY = "cache.entries";
+
+    /**
+     * 响应保留时间(毫秒)
+     */
+    public static final String TTL_PROPERTY = "cache.ttl";
+
+    /**
+     * 请求的处理期限(毫秒)，超过仍未响应时重复的请求重新交给处理器
+     */
+    public static final String PENDING_PROPERTY = "cache.pending";
+
+    public static final int DEFAULT_ENTRIES = 4096;
+
+    // 覆盖客户端的整个重传期限
+    public static final long DEFAULT_TTL = 2 * MessageRequest.DEFAULT_TIME_OUT;
+
+    // 客户端的初始重传间隔，处理器失败时第一次重传之后即可重新处理
+    public static final long DEFAULT_PENDING = RetransmissionTimer.DEFAULT_INITIAL_RTO;
+
+    // 会话上正在交给处理器的请求键，处理器在I/O线程上同步抛出异常时据此放弃条目
+    private static final AttributeKey IN_PROGRESS = new AttributeKey(ResponseCacheFilter.class, "inProgress");
+
+    // 不分片的UDP数据报最大载荷
+    public static final int DEFAULT_SLOT_SIZE = 1472;
+
+    private final ResponseCache cache;
+
+    public ResponseCacheFilter(ResponseCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * 按系统属性创建
+     *
+     * @return {@link #ENTRIES_PROPERTY}不大于0时返回null
+     */
+    public static ResponseCacheFilter fromSystemProperties()
+    {
+        final int entries = Integer.getInteger(ENTRIES_PROPERTY, DEFAULT_ENTRIES);
+        if (entries <= 0)
+        {
+            return null;
+        }
+        final long ttl = Long.getLong(TTL_PROPERTY, DEFAULT_TTL);
+        final long pending = Long.getLong(PENDING_PROPERTY, DEFAULT_PENDING);
+        LOGGER.info("response cache enabled, entries={}, ttl={}ms, pending={}ms", entries, ttl, pending);
+        return new ResponseCacheFilter(new ResponseCache(entries, DEFAULT_SLOT_SIZE, ttl, pending));
+    }
+
+    public ResponseCache getCache()
+    {
+        return cache;
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+    {
+        // 窗口确认与请求的(sessionId, serial)相同，不是重复的请求
+        if (message instanceof Message && !((Message) message).hasFlag(Message.FLAG_ACK))
+        {
+            final Message request = (Message) message;
+            final long key = MessageRequest.generateKey(request.getSessionId(), request.getSerial());
+            final IoBuffer cached = cache.get(key);
+            if (null != cached)
+            {
+                LOGGER.debug("duplicate request, reply from cache, request={}", request);
+                request.release();
+                session.write(cached);
+                return;
+            }
+            if (!cache.begin(key))
+            {
+                LOGGER.debug("duplicate request is in progress, drop it, request={}", request);
+                request.release();
+                return;
+            }
+            // 处理器的异常在过滤器链中转为exceptionCaught，在本方法返回前同步触发
+            session.setAttribute(IN_PROGRESS, key);
+            try
+            {
+                nextFilter.messageReceived(session, message);
+            } finally
+            {
+                session.removeAttribute(IN_PROGRESS);
+            }
+            return;
+        }
+        nextFilter.messageReceived(session, message);
+    }
+
+    @Override
+    public void exceptionCaught(NextFilter nextFilter, IoSession session, Throwable cause) throws Exception
+    {
+        final Long key = (Long) session.getAttribute(IN_PROGRESS);
+        if (null != key)
+        {
+            // 处理失败的请求不再视为处理中，客户端的重传重新交给处理器
+            LOGGER.debug("handler failed, discard the pending entry, key={}", key);
+            cache.discard(key);
+        }
+        nextFilter.exceptionCaught(session, cause);
+    }
+
+    @Override
+    public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+    {
+        final Object message = writeRequest.getMessage();
+        if (message instanceof Message)
+        {
+            final Message response = (Message) message;
+            final long key = MessageRequest.generateKey(response.getSessionId(), response.getSerial());
+            if (!response.hasFlag(Message.FLAG_PARTIAL))
+            {
+                cache.put(key, response);
+            } else if (!response.hasFlag(Message.FLAG_MORE))
+            {
+                // 分段响应不缓存，最后一段写出前重复的请求仍视为处理中而丢弃
+                cache.discard(key);
+            }
+        }
+        nextFilter.filterWrite(session, writeRequest);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.capture;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoConnector;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.socket.nio.NioDatagramConnector;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 抓包回放工具<p/>
+ * 按记录的时间间隔(可按倍速加快)把抓包文件中某一方向的原始报文发往目标地址：
+ * 回放服务端收到的报文(in)即可对MessageServer重现生产负载，回放客户端收到的报文(in)到客户端端口即可模拟设备响应。<p/>
+ * 用法: CaptureReplayer &lt;抓包文件&gt; &lt;host&gt; &lt;port&gt; [udp|tcp] [in|out] [倍速，0表示不限速]
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class CaptureReplayer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaptureReplayer.class);
+
+    private final IoSession session;
+
+    private final byte direction;
+
+    private final double speed;
+
+    private long firstTimestamp = -1;
+
+    private long startNanos;
+
+    private long replayed;
+
+    /**
+     * Constructor
+     *
+     * @param session   已连接到目标的会话，过滤器链中不应有编解码器
+     * @param direction 回放的方向
+     * @param speed     回放倍速，1为原速，小于等于0表示不限速
+     */
+    public CaptureReplayer(IoSession session, byte direction, double speed)
+    {
+        this.session = session;
+        this.direction = direction;
+        this.speed = speed;
+    }
+
+    /**
+     * 回放抓包文件中的全部记录
+     *
+     * @param ring 抓包文件
+     * @return 回放的报文数
+     */
+    public long replay(CaptureRingFile ring)
+    {
+        ring.forEach(new CaptureRingFile.RecordVisitor()
+        {
+            public void visit(long timestampMicros, byte recordDirection, InetSocketAddress peer, ByteBuffer payload)
+            {
+                if (recordDirection == direction)
+                {
+                    send(timestampMicros, payload);
+                }
+            }
+        });
+        return replayed;
+    }
+
+    private void send(long timestampMicros, ByteBuffer payload)
+    {
+        if (firstTimestamp < 0)
+        {
+            firstTimestamp = timestampMicros;
+            startNanos = System.nanoTime();
+        } else if (speed > 0)
+        {
+            final long due = startNanos + (long) (TimeUnit.MICROSECONDS.toNanos(timestampMicros - firstTimestamp) / speed);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0)
+            {
+                LockSupport.parkNanos(wait);
+            }
+        }
+        final IoBuffer buffer = IoBuffer.allocate(payload.remaining(), false);
+        buffer.put(payload).flip();
+        session.write(buffer);
+        replayed++;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 3)
+        {
+            System.out.println("usage: CaptureReplayer <capture file> <host> <port> [udp|tcp] [in|out] [speed, 0 = unlimited]");
+            return;
+        }
+        final File file = new File(args[0]);
+        final InetSocketAddress target = new InetSocketAddress(args[1], Integer.parseInt(args[2]));
+        final boolean udp = args.length < 4 || !"tcp".equalsIgnoreCase(args[3]);
+        final byte direction = args.length > 4 && "out".equalsIgnoreCase(args[4])
+                ? CaptureRingFile.DIRECTION_OUT : CaptureRingFile.DIRECTION_IN;
+        final double speed = args.length > 5 ? Double.parseDouble(args[5]) : 1.0;
+
+        final IoConnector connector = udp ? new NioDatagramConnector() : new NioSocketConnector();
+        connector.setHandler(new IoHandlerAdapter());
+        final CaptureRingFile ring = CaptureRingFile.open(file);
+        try
+        {
+            final ConnectFuture connect = connector.connect(target);
+            connect.awaitUninterruptibly();
+            final IoSession session = connect.getSession();
+            final long start = System.nanoTime();
+            final long count = new CaptureReplayer(session, direction, speed).replay(ring);
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("replayed {} of {} records to {} in {} ms", count, ring.getCount(), target, elapsed);
+            session.close(false).awaitUninterruptibly();
+        } finally
+        {
+            ring.close();
+            connector.dispose();
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.capture;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于内存映射文件的环形抓包文件<p/>
+ * 文件由64字节的文件头、定长的索引区和定长的数据区组成，数据区写满后覆盖最早的记录。
+ * 每条记录格式: length(int) + timestamp微秒(long) + direction(byte) + 地址长度(byte) + 地址(0/4/16字节)
+ * + port(int) + 报文原始字节；末尾空间放不下一条记录时从数据区开头继续写。<p/>
+ * 写入不加锁：以原子游标在一条无限增长的逻辑流上预留位置，写完记录后在索引区以序号提交；
+ * 遍历时先复制索引区和数据区的快照，只访问序号仍匹配且未被覆盖的记录，回放期间不阻塞写入
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class CaptureRingFile implements Closeable
+{
+    /**
+     * 收到的报文
+     */
+    public static final byte DIRECTION_IN = 0;
+
+    /**
+     * 发出的报文
+     */
+    public static final byte DIRECTION_OUT = 1;
+
+    // "MCAP"
+    private static final int MAGIC = 0x4D434150;
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_LENGTH = 64;
+
+    private static final int CAPACITY_OFFSET = 8;
+
+    private static final int SLOTS_OFFSET = 12;
+
+    private static final int DROPPED_OFFSET = 16;
+
+    // 索引项: 序号(long) + 记录在逻辑流上的起始位置(long)
+    private static final int SLOT_LENGTH = 16;
+
+    private static final int MIN_SLOTS = 16;
+
+    // 按平均记录长度估算索引项数
+    private static final int AVERAGE_RECORD_LENGTH = 32;
+
+    private static final long UNUSED = -1;
+
+    // length + timestamp + direction + 地址长度 + port
+    private static final int RECORD_FIXED_LENGTH = 4 + 8 + 1 + 1 + 4;
+
+    private final RandomAccessFile file;
+
+    private final MappedByteBuffer mapped;
+
+    // 索引区的视图，position从0开始
+    private final ByteBuffer index;
+
+    // 数据区的视图，position从0开始
+    private final ByteBuffer data;
+
+    private final int capacity;
+
+    private final int slots;
+
+    // 逻辑流上下一条记录的起始位置，对capacity取模即数据区偏移
+    private final AtomicLong cursor = new AtomicLong();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 每条记录提交后递增，遍历前读取以看到已提交记录的全部写入
+    private final AtomicLong committed = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private CaptureRingFile(RandomAccessFile file, MappedByteBuffer mapped, int capacity, int slots)
+    {
+        this.file = file;
+        this.mapped = mapped;
+        this.capacity = capacity;
+        this.slots = slots;
+        mapped.position(HEADER_LENGTH);
+        mapped.limit(HEADER_LENGTH + slots * SLOT_LENGTH);
+        this.index = mapped.slice();
+        mapped.limit(mapped.capacity());
+        mapped.position(HEADER_LENGTH + slots * SLOT_LENGTH);
+        this.data = mapped.slice();
+        mapped.position(0);
+    }
+
+    /**
+     * 创建新的抓包文件，已存在的同名文件被清空
+     *
+     * @param path     文件路径
+     * @param capacity 数据区大小(字节)
+     * @return 抓包文件
+     * @throws IOException 文件创建或映射失败
+     */
+    public static CaptureRingFile create(File path, int capacity) throws IOException
+    {
+        if (capacity <= RECORD_FIXED_LENGTH)
+        {
+            throw new IllegalArgumentException("capacity is too small: " + capacity);
+        }
+        final int slots = Math.max(MIN_SLOTS, capacity / AVERAGE_RECORD_LENGTH);
+        final long length = HEADER_LENGTH + (long) slots * SLOT_LENGTH + capacity;
+        final RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        file.setLength(length);
+        final MappedByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, VERSION);
+        mapped.putInt(CAPACITY_OFFSET, capacity);
+        mapped.putInt(SLOTS_OFFSET, slots);
+        final CaptureRingFile ring = new CaptureRingFile(file, mapped, capacity, slots);
+        for (int i = 0; i < slots; i++)
+        {
+            ring.index.putLong(i * SLOT_LENGTH, UNUSED);
+        }
+        return ring;
+    }
+
+    /**
+     * 打开已有的抓包文件
+     *
+     * @param path 文件路径
+     * @return 抓包文件
+     * @throws IOException 文件不存在、格式不正确或映射失败
+     */
+    public static CaptureRingFile open(File path) throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(path, "rw");
+        final MappedByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        if (file.length() < HEADER_LENGTH || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION)
+        {
+            file.close();
+            throw new IOException("not a capture file: " + path);
+        }
+        final CaptureRingFile ring = new CaptureRingFile(file, mapped, mapped.getInt(CAPACITY_OFFSET), mapped.getInt(SLOTS_OFFSET));
+        ring.dropped.set(mapped.getLong(DROPPED_OFFSET));
+        // 从索引恢复序号和游标，以便继续追加
+        long next = 0;
+        long newest = UNUSED;
+        for (int i = 0; i < ring.slots; i++)
+        {
+            final long seq = ring.index.getLong(i * SLOT_LENGTH);
+            if (seq != UNUSED)
+            {
+                next = Math.max(next, seq + 1);
+                newest = Math.max(newest, ring.index.getLong(i * SLOT_LENGTH + 8));
+            }
+        }
+        ring.sequence.set(next);
+        // 较早的索引项指向的数据可能已被覆盖，只有最新的记录保证完整
+        ring.cursor.set(newest == UNUSED ? 0 : newest + ring.data.getInt((int) (newest % ring.capacity)));
+        return ring;
+    }
+
+    /**
+     * 追加一条记录，空间不足时覆盖最早的记录；payload从position读到limit，读取后position不变。
+     * 可被多个线程并发调用
+     *
+     * @param timestampMicros 时间戳(微秒)
+     * @param direction       方向，{@link #DIRECTION_IN}或{@link #DIRECTION_OUT}
+     * @param peer            对端地址
+     * @param payload         报文原始字节
+     * @return 记录过大无法写入时返回false
+     */
+    public boolean append(long timestampMicros, byte direction, SocketAddress peer, ByteBuffer payload)
+    {
+        byte[] address = null;
+        int port = 0;
+        if (peer instanceof InetSocketAddress && null != ((InetSocketAddress) peer).getAddress())
+        {
+            address = ((InetSocketAddress) peer).getAddress().getAddress();
+            port = ((InetSocketAddress) peer).getPort();
+        }
+        final int addressLength = null == address ? 0 : address.length;
+        final int length = RECORD_FIXED_LENGTH + addressLength + payload.remaining();
+        if (length > capacity)
+        {
+            mapped.putLong(DROPPED_OFFSET, dropped.incrementAndGet());
+            return false;
+        }
+        final long start = reserve(length);
+        final long seq = sequence.getAndIncrement();
+
+        final ByteBuffer record = data.duplicate();
+        record.position((int) (start % capacity));
+        record.putInt(length);
+        record.putLong(timestampMicros);
+        record.put(direction);
+        record.put((byte) addressLength);
+        if (null != address)
+        {
+            record.put(address);
+        }
+        record.putInt(port);
+        record.put(payload.duplicate());
+
+        // 先写位置后写序号，序号匹配即表示记录已完整写入
+        final int slot = (int) (seq % slots) * SLOT_LENGTH;
+        index.putLong(slot + 8, start);
+        index.putLong(slot, seq);
+        committed.incrementAndGet();
+        return true;
+    }
+
+    // 在逻辑流上预留length字节，末尾空间不足时跳到下一圈的开头，返回记录的起始位置
+    private long reserve(int length)
+    {
+        while (true)
+        {
+            final long current = cursor.get();
+            final int offset = (int) (current % capacity);
+            final long start = offset + length > capacity ? current + capacity - offset : current;
+            if (cursor.compareAndSet(current, start + length))
+            {
+                return start;
+            }
+        }
+    }
+
+    /**
+     * 从最早到最新遍历所有记录；遍历的是调用时的快照，访问者可以任意耗时而不影响并发写入
+     *
+     * @param visitor 记录访问者
+     */
+    public void forEach(RecordVisitor visitor)
+    {
+        final long last = sequence.get();
+        committed.get();
+        final ByteBuffer indexSnapshot = copy(index);
+        final ByteBuffer dataSnapshot = copy(data);
+        // 复制期间被覆盖的记录起始位置都小于low
+        final long low = cursor.get() - capacity;
+
+        for (long seq = Math.max(0, last - slots); seq < last; seq++)
+        {
+            final int slot = (int) (seq % slots) * SLOT_LENGTH;
+            final long start = indexSnapshot.getLong(slot + 8);
+            if (indexSnapshot.getLong(slot) != seq || start < low)
+            {
+                // 未提交、已被覆盖或索引项已被更新的序号占用
+                continue;
+            }
+            visit(dataSnapshot, (int) (start % capacity), visitor);
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer source)
+    {
+        final ByteBuffer snapshot = ByteBuffer.allocate(source.capacity());
+        snapshot.put(source.duplicate()).flip();
+        return snapshot;
+    }
+
+    private static void visit(ByteBuffer snapshot, int position, RecordVisitor visitor)
+    {
+        final int length = snapshot.getInt(position);
+        final long timestamp = snapshot.getLong(position + 4);
+        final byte direction = snapshot.get(position + 12);
+        final int addressLength = snapshot.get(position + 13);
+        InetSocketAddress peer = null;
+        if (addressLength > 0)
+        {
+            final byte[] address = new byte[addressLength];
+            for (int j = 0; j < addressLength; j++)
+            {
+                address[j] = snapshot.get(position + 14 + j);
+            }
+            try
+            {
+                peer = new InetSocketAddress(InetAddress.getByAddress(address), snapshot.getInt(position + 14 + addressLength));
+            } catch (UnknownHostException ex)
+            {
+                // 长度只会是4或16，不会发生
+                throw new IllegalStateException(ex);
+            }
+        }
+        final ByteBuffer payload = snapshot.duplicate();
+        payload.limit(position + length);
+        payload.position(position + RECORD_FIXED_LENGTH + addressLength);
+        visitor.visit(timestamp, direction, peer, payload.slice());
+    }
+
+    /**
+     * @return 当前仍保留在文件中的记录数
+     */
+    public int getCount()
+    {
+        final long last = sequence.get();
+        committed.get();
+        final long low = cursor.get() - capacity;
+        int count = 0;
+        for (long seq = Math.max(0, last - slots); seq < last; seq++)
+        {
+            final int slot = (int) (seq % slots) * SLOT_LENGTH;
+            if (index.getLong(slot) == seq && index.getLong(slot + 8) >= low)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 因过大而未能写入的记录数
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public void close() throws IOException
+    {
+        mapped.force();
+        file.close();
+    }
+
+    /**
+     * 抓包记录访问者
+     */
+    public interface RecordVisitor
+    {
+        /**
+         * @param timestampMicros 时间戳(微秒)
+         * @param direction       方向
+         * @param peer            对端地址，未知时为null
+         * @param payload         报文原始字节，只在回调期间有效
+         */
+        void visit(long timestampMicros, byte direction, InetSocketAddress peer, ByteBuffer payload);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 抓包过滤器，将收发的原始报文连同时间戳、对端地址写入环形抓包文件<p/>
+ * 需放在过滤器链最前面(编解码之前)，直接拷贝IoBuffer内容，不做任何字符串格式化。
+ * 可按1/N抽样以降低开销，抓包文件可用{@link CaptureReplayer}回放
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class WireCaptureFilter extends IoFilterAdapter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(WireCaptureFilter.class);
+
+    /**
+     * 抓包文件路径，设置后MessageServer和MessageClient自动启用抓包
+     */
+    public static final String FILE_PROPERTY = "capture.file";
+
+    /**
+     * 抓包文件数据区大小(字节)
+     */
+    public static final String SIZE_PROPERTY = "capture.size";
+
+    /**
+     * 抽样间隔，每N个报文抓一个
+     */
+    public static final String SAMPLE_PROPERTY = "capture.sample";
+
+    public static final int DEFAULT_CAPTURE_SIZE = 64 * 1024 * 1024;//64M
+
+    private final CaptureRingFile ring;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 墙上时间基准，之后用nanoTime推算，避免每个报文调用currentTimeMillis丢失精度
+    private final long baseMicros = System.currentTimeMillis() * 1000;
+
+    private final long baseNanos = System.nanoTime();
+
+    private volatile int sampleEvery = 1;
+
+    private volatile boolean enabled = true;
+
+    public WireCaptureFilter(CaptureRingFile ring)
+    {
+        this.ring = ring;
+    }
+
+    /**
+     * 根据系统属性创建抓包过滤器
+     *
+     * @return 未设置{@link #FILE_PROPERTY}时返回null
+     */
+    public static WireCaptureFilter fromSystemProperties()
+    {
+        final String path = System.getProperty(FILE_PROPERTY);
+        if (null == path)
+        {
+            return null;
+        }
+        try
+        {
+            final int size = Integer.getInteger(SIZE_PROPERTY, DEFAULT_CAPTURE_SIZE);
+            final WireCaptureFilter filter = new WireCaptureFilter(CaptureRingFile.create(new File(path), size));
+            filter.setSampleEvery(Integer.getInteger(SAMPLE_PROPERTY, 1));
+            LOGGER.info("wire capture enabled, file={}, size={}, sample=1/{}", path, size, filter.getSampleEvery());
+            return filter;
+        } catch (IOException ex)
+        {
+            LOGGER.error("create capture file failed, file={}", path, ex);
+            return null;
+        }
+    }
+
+    public CaptureRingFile getRing()
+    {
+        return ring;
+    }
+
+    public int getSampleEvery()
+    {
+        return sampleEvery;
+    }
+
+    /**
+     * 设置抽样间隔
+     *
+     * @param sampleEvery 每N个报文抓一个，1表示全部抓取
+     */
+    public void setSampleEvery(int sampleEvery)
+    {
+        if (sampleEvery < 1)
+        {
+            throw new IllegalArgumentException("sampleEvery must be positive: " + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+    {
+        if (message instanceof IoBuffer)
+        {
+            capture(CaptureRingFile.DIRECTION_IN, session.getRemoteAddress(), (IoBuffer) message);
+        }
+        nextFilter.messageReceived(session, message);
+    }
+
+    @Override
+    public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+    {
+        final Object message = writeRequest.getMessage();
+        if (message instanceof IoBuffer)
+        {
+            final SocketAddress destination = writeRequest.getDestination();
+            capture(CaptureRingFile.DIRECTION_OUT, null != destination ? destination : session.getRemoteAddress(),
+                    (IoBuffer) message);
+        }
+        nextFilter.filterWrite(session, writeRequest);
+    }
+
+    private void capture(byte direction, SocketAddress peer, IoBuffer buffer)
+    {
+        if (!enabled || !buffer.hasRemaining())
+        {
+            return;
+        }
+        final int sample = sampleEvery;
+        if (sample > 1 && sequence.getAndIncrement() % sample != 0)
+        {
+            return;
+        }
+        final long timestamp = baseMicros + (System.nanoTime() - baseNanos) / 1000;
+        ring.append(timestamp, direction, peer, buffer.buf());
+    }
+}
@@ -21,12 +21,14 @@ package com.vake.message;
 
 import com.vake.ArrayUtils;
 import com.vake.NumberUtils;
-import org.apache.commons.beanutils.BeanUtils;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 
 /**
@@ -44,7 +46,48 @@ public class Message
     private static Logger LOGGER = LoggerFactory.getLogger(Message.class);
 
     // sessionId + serial + contentLength的长度
-    public static final int HEAD_LENGTH = 8;
+    public static final int HEAD_LENGTH = 12;
+
+    /**
+     * 长度字段低24位为内容长度，高8位为标志位
+     */
+    public static final int MAX_CONTENT_LENGTH = 0x00FFFFFF;
+
+    /**
+     * 标志位：分段响应中的一段，同一请求的各段(sessionId, serial)相同，内容前带{@link #PART_INDEX_LENGTH}字节的段序号
+     */
+    public static final int FLAG_PARTIAL = 0x40;
+
+    /**
+     * 分段响应的段序号长度，线路上计入长度字段，不计入contentLength
+     */
+    public static final int PART_INDEX_LENGTH = 4;
+
+    /**
+     * 标志位：之后还有同一响应的分段，最后一段不带此标志
+     */
+    public static final int FLAG_MORE = 0x80;
+
+    /**
+     * 标志位：UDP分片，内容为分片头加原消息内容的一段，由{@link com.vake.message.codec.FragmentReassembler}重组
+     */
+    public static final int FLAG_FRAGMENT = 0x20;
+
+    /**
+     * 标志位：分片重传请求，内容为缺失分片的序号(每个2字节)
+     */
+    public static final int FLAG_NACK = 0x10;
+
+    /**
+     * 标志位：内容经过压缩，由{@link com.vake.message.codec.MessageCompressor}解压
+     */
+    public static final int FLAG_COMPRESSED = 0x08;
+
+    /**
+     * 标志位：分段窗口确认，由接收方发给分段的发送方，内容为允许发送的段序号上限(4字节，不含)；
+     * 不带内容时表示接收方已放弃请求
+     */
+    public static final int FLAG_ACK = 0x04;
 
     // 客户端唯一标识
     private int sessionId;
@@ -55,9 +98,34 @@ public class Message
     // 内容长度
     private int contentLength;
 
-    // 消息内容
+    // 标志位，编码在长度字段的高8位
+    private int flags;
+
+    // 分段响应的段序号，从0开始，只在带FLAG_PARTIAL时编码
+    private int partIndex;
+
+    // 消息内容，由原始字节延迟解码而来时会缓存在此
     private String content;
 
+    // 内容字节(数组的一段)：来自线路或setContentBytes时是原始数据，来自setContent(String)时是编码缓存
+    private byte[] contentBytes;
+
+    private int contentOffset;
+
+    private int contentBytesLength;
+
+    // contentBytes是否为原始数据(content只是其解码缓存)
+    private boolean rawContent;
+
+    // 内容的字符集，缺省与平台一致
+    private Charset charset = Charset.defaultCharset();
+
+    // 从池中取出时为所属的池，归还后为null
+    MessagePool pool;
+
+    // 池化消息解码时复用的内容数组，只由解码器使用
+    private byte[] scratch;
+
     public int getSessionId()
     {
         return sessionId;
@@ -78,14 +146,118 @@ public class Message
         this.serial = serial;
     }
 
+    /**
+     * 获取消息内容，内容来自原始字节时在首次调用时按charset解码并缓存
+     *
+     * @return 消息内容
+     */
     public String getContent()
     {
+        if (null == content && rawContent)
+        {
+            content = new String(contentBytes, contentOffset, contentBytesLength, charset);
+        }
         return content;
     }
 
+    /**
+     * 设置消息内容，原始字节随之失效，编码时按charset重新编码
+     *
+     * @param content 消息内容
+     */
     public void setContent(String content)
     {
         this.content = content;
+        this.contentBytes = null;
+        this.rawContent = false;
+    }
+
+    public void setContent(String content, Charset charset)
+    {
+        setCharset(charset);
+        setContent(content);
+    }
+
+    /**
+     * 以原始字节设置消息内容，不创建String；编码时原样写出
+     *
+     * @param bytes  字节数组，调用后不应再修改
+     * @param offset 起始位置
+     * @param length 长度
+     */
+    public void setContentBytes(byte[] bytes, int offset, int length)
+    {
+        if (offset < 0 || length < 0 || offset + length > bytes.length)
+        {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", size=" + bytes.length);
+        }
+        this.contentBytes = bytes;
+        this.contentOffset = offset;
+        this.contentBytesLength = length;
+        this.content = null;
+        this.rawContent = true;
+    }
+
+    /**
+     * @return 内容是否以原始字节形式持有(可不经String直接转发)
+     */
+    public boolean hasContentBytes()
+    {
+        return rawContent;
+    }
+
+    /**
+     * 内容字节所在的数组，不复制；与{@link #getContentOffset()}、{@link #getContentBytesLength()}一起确定内容范围。
+     * 没有原始字节时按charset编码content并缓存
+     *
+     * @return 内容字节数组，调用方不应修改来自setContent(String)的编码缓存
+     */
+    public byte[] getContentBytes()
+    {
+        prepareContentBytes();
+        return contentBytes;
+    }
+
+    public int getContentOffset()
+    {
+        prepareContentBytes();
+        return contentOffset;
+    }
+
+    public int getContentBytesLength()
+    {
+        prepareContentBytes();
+        return contentBytesLength;
+    }
+
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * 设置内容字符集，按旧字符集解码或编码的缓存随之失效
+     *
+     * @param charset 字符集
+     */
+    public void setCharset(Charset charset)
+    {
+        if (null == charset)
+        {
+            throw new IllegalArgumentException("charset can't be null");
+        }
+        if (!charset.equals(this.charset))
+        {
+            // 丢弃按旧字符集得到的缓存
+            if (rawContent)
+            {
+                content = null;
+            } else
+            {
+                contentBytes = null;
+            }
+        }
+        this.charset = charset;
     }
 
     public int getContentLength()
@@ -95,9 +267,64 @@ public class Message
 
     public void setContentLength(int contentLength)
     {
+        if (contentLength < 0 || contentLength > MAX_CONTENT_LENGTH)
+        {
+            throw new IllegalArgumentException("contentLength must be in [0, " + MAX_CONTENT_LENGTH + "]: " + contentLength);
+        }
         this.contentLength = contentLength;
     }
 
+    public int getFlags()
+    {
+        return flags;
+    }
+
+    /**
+     * @param flags {@link #FLAG_PARTIAL}、{@link #FLAG_MORE}等标志位的组合，只取低8位
+     */
+    public void setFlags(int flags)
+    {
+        this.flags = flags & 0xFF;
+    }
+
+    public boolean hasFlag(int flag)
+    {
+        return flag == (flags & flag);
+    }
+
+    public int getPartIndex()
+    {
+        return partIndex;
+    }
+
+    /**
+     * @param partIndex 分段响应的段序号，从0开始连续递增，接收方据此发现丢失和乱序的分段
+     */
+    public void setPartIndex(int partIndex)
+    {
+        this.partIndex = partIndex;
+    }
+
+    /**
+     * @param lengthField 线路上的长度字段
+     * @return 其中的内容长度
+     */
+    public static int lengthOf(int lengthField)
+    {
+        return lengthField & MAX_CONTENT_LENGTH;
+    }
+
+    // 线路上的长度字段：标志位加内容长度(分段响应含段序号)
+    private int lengthField()
+    {
+        return flags << 24 | partIndexLength() + contentLength;
+    }
+
+    private int partIndexLength()
+    {
+        return hasFlag(FLAG_PARTIAL) ? PART_INDEX_LENGTH : 0;
+    }
+
     public byte[] encodeToBytes()
     {
         final ByteArrayOutputStream stream = new ByteArrayOutputStream();
@@ -106,15 +333,16 @@ public class Message
         {
             stream.write(NumberUtils.intToBytes(sessionId));
             stream.write(NumberUtils.intToBytes(serial));
-            stream.write(NumberUtils.intToBytes(contentLength));
-
-            final byte[] contentBytes = content.getBytes();
-            stream.write(contentBytes);
-            final int length = contentBytes.length;
-            if (length <= contentLength)
+            stream.write(NumberUtils.intToBytes(lengthField()));
+            if (hasFlag(FLAG_PARTIAL))
             {
-                stream.write(new byte[contentLength - length]);
+                stream.write(NumberUtils.intToBytes(partIndex));
             }
+
+            prepareContentBytes();
+            final int length = writtenLength();
+            stream.write(contentBytes, contentOffset, length);
+            stream.write(new byte[contentLength - length]);
             stream.flush();
             bytes = stream.toByteArray();
         } catch (Exception ex)
@@ -134,6 +362,76 @@ public class Message
         return bytes;
     }
 
+    /**
+     * 将消息直接编码到预先按帧长分配好的IoBuffer中，不再经过ByteArrayOutputStream和临时数组<p/>
+     * 返回的buffer已经flip，可直接写出
+     *
+     * @return 编码后的buffer
+     */
+    public IoBuffer encodeToBuffer()
+    {
+        final IoBuffer buffer = IoBuffer.allocate(getFrameLength(), false);
+        encodeTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return 编码后的帧长度(消息头、段序号加contentLength字节的内容)，与长度字段一致
+     */
+    public int getFrameLength()
+    {
+        return HEAD_LENGTH + partIndexLength() + contentLength;
+    }
+
+    /**
+     * 将消息追加编码到buffer的当前位置，线路格式与{@link #encodeToBytes()}一致
+     *
+     * @param buffer 目标buffer，空间不足时需设置为autoExpand
+     */
+    public void encodeTo(IoBuffer buffer)
+    {
+        prepareContentBytes();
+        buffer.putInt(sessionId);
+        buffer.putInt(serial);
+        buffer.putInt(lengthField());
+        if (hasFlag(FLAG_PARTIAL))
+        {
+            buffer.putInt(partIndex);
+        }
+        final int length = writtenLength();
+        buffer.put(contentBytes, contentOffset, length);
+        if (length < contentLength)
+        {
+            // 分配器可能返回复用的buffer，补齐部分需显式清零
+            buffer.fill((byte) 0, contentLength - length);
+        }
+    }
+
+    // 线路上只写长度字段声明的contentLength字节：内容更长时截断，否则多出的字节会被流式分帧当作下一帧的消息头
+    private int writtenLength()
+    {
+        if (contentBytesLength > contentLength)
+        {
+            LOGGER.warn("content of {} bytes truncated to contentLength={}, sessionId={}, serial={}",
+                    contentBytesLength, contentLength, sessionId, serial);
+            return contentLength;
+        }
+        return contentBytesLength;
+    }
+
+    // 没有原始字节时按charset编码content，之后再次编码直接复用
+    private void prepareContentBytes()
+    {
+        if (null == contentBytes)
+        {
+            final byte[] bytes = null == content ? ArrayUtils.EMPTY_BYTE_ARRAY : content.getBytes(charset);
+            contentBytes = bytes;
+            contentOffset = 0;
+            contentBytesLength = bytes.length;
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -141,7 +439,9 @@ public class Message
                 "sessionId=" + sessionId +
                 ", serial=" + serial +
                 ", contentLength=" + contentLength +
-                ", content='" + content + '\'' +
+                (0 == flags ? "" : ", flags=0x" + Integer.toHexString(flags)) +
+                (hasFlag(FLAG_PARTIAL) ? ", partIndex=" + partIndex : "") +
+                ", content='" + getContent() + '\'' +
                 '}';
     }
 
@@ -150,6 +450,100 @@ public class Message
         return data.length >= Message.HEAD_LENGTH;
     }
 
+    /**
+     * 判断buffer中从当前位置开始是否包含一条完整的消息，不移动position
+     *
+     * @param in 输入buffer
+     * @return 是否完整
+     */
+    public static boolean isValid(IoBuffer in)
+    {
+        final int remaining = in.remaining();
+        if (remaining < HEAD_LENGTH)
+        {
+            return false;
+        }
+        final int length = lengthOf(in.getInt(in.position() + 8));
+        return length <= remaining - HEAD_LENGTH;
+    }
+
+    /**
+     * 从buffer的当前位置直接读取一条消息，不复制中间数组，读取后position移动到消息末尾<p/>
+     * 调用前需通过{@link #isValid(IoBuffer)}确认消息完整
+     *
+     * @param in 输入buffer
+     * @return 消息
+     */
+    public static Message from(IoBuffer in)
+    {
+        return from(in, Charset.defaultCharset());
+    }
+
+    /**
+     * 从buffer的当前位置直接读取一条消息，内容只复制原始字节，调用{@link #getContent()}时才按charset解码
+     *
+     * @param in      输入buffer
+     * @param charset 内容字符集
+     * @return 消息
+     */
+    public static Message from(IoBuffer in, Charset charset)
+    {
+        return from(in, charset, null);
+    }
+
+    /**
+     * 从buffer的当前位置读取一条消息，pool不为null时消息从池中取出并复用其内容数组<p/>
+     * 池化消息写出后由处理器在messageSent中调用{@link #release()}归还，此后不应再使用
+     *
+     * @param in      输入buffer
+     * @param charset 内容字符集
+     * @param pool    消息池，可以为null
+     * @return 消息
+     */
+    public static Message from(IoBuffer in, Charset charset, MessagePool pool)
+    {
+        final Message msg = null == pool ? new Message() : pool.acquire();
+        msg.charset = charset;
+        msg.sessionId = in.getInt();
+        msg.serial = in.getInt();
+        final int lengthField = in.getInt();
+        msg.contentLength = lengthOf(lengthField);
+        msg.flags = lengthField >>> 24;
+        if (msg.hasFlag(FLAG_PARTIAL) && msg.contentLength >= PART_INDEX_LENGTH)
+        {
+            msg.partIndex = in.getInt();
+            msg.contentLength -= PART_INDEX_LENGTH;
+        }
+
+        final int length = msg.contentLength;
+        if (length > 0)
+        {
+            // buffer在解码后会被复用，原始字节需要复制出来
+            final byte[] temp = msg.contentArray(length);
+            in.get(temp, 0, length);
+            msg.setContentBytes(temp, 0, length);
+        } else
+        {
+            // 不带内容的消息，如取消确认
+            LOGGER.debug("message has no content, sessionId={}, serial={}", msg.sessionId, msg.serial);
+        }
+        return msg;
+    }
+
+    // 池化消息复用上次的数组，容量不足或非池化时新分配
+    private byte[] contentArray(int length)
+    {
+        if (null == pool)
+        {
+            return new byte[length];
+        }
+        if (null == scratch || scratch.length < length)
+        {
+            scratch = new byte[length];
+        }
+        return scratch;
+    }
+
     public static Message from(byte[] data)
     {
         Message msg = new Message();
@@ -167,31 +561,92 @@ public class Message
         temp = new byte[4];
         System.arraycopy(data, position, temp, 0, 4);
         position += 4;
-        msg.contentLength = ArrayUtils.bytesToInt(temp);
+        final int lengthField = ArrayUtils.bytesToInt(temp);
+        msg.contentLength = lengthOf(lengthField);
+        msg.flags = lengthField >>> 24;
+        if (msg.hasFlag(FLAG_PARTIAL) && msg.contentLength >= PART_INDEX_LENGTH)
+        {
+            temp = new byte[4];
+            System.arraycopy(data, position, temp, 0, 4);
+            position += 4;
+            msg.partIndex = ArrayUtils.bytesToInt(temp);
+            msg.contentLength -= PART_INDEX_LENGTH;
+        }
 
         if (msg.contentLength > 0)
         {
             temp = new byte[msg.contentLength];
             System.arraycopy(data, position, temp, 0, msg.contentLength);
             position += msg.contentLength;
-            msg.content = new String(temp);
+            msg.setContentBytes(temp, 0, msg.contentLength);
         } else
         {
-            LOGGER.warn("actual content length:{} is less than 0", msg.contentLength);
+            LOGGER.debug("message has no content, sessionId={}, serial={}", msg.sessionId, msg.serial);
         }
         return msg;
     }
 
+    /**
+     * 逐字段复制消息，原始内容字节会复制一份，与源消息(包括池化消息)互不影响
+     *
+     * @param src 源消息
+     * @return 新消息
+     */
     public static Message copy(Message src)
     {
         final Message dst = new Message();
-        try
+        dst.sessionId = src.sessionId;
+        dst.serial = src.serial;
+        dst.contentLength = src.contentLength;
+        dst.flags = src.flags;
+        dst.partIndex = src.partIndex;
+        dst.charset = src.charset;
+        dst.content = src.content;
+        dst.rawContent = src.rawContent;
+        if (src.rawContent)
         {
-            BeanUtils.copyProperties(dst, src);
-        } catch (Exception e)
+            dst.contentBytes = Arrays.copyOfRange(src.contentBytes, src.contentOffset,
+                    src.contentOffset + src.contentBytesLength);
+            dst.contentOffset = 0;
+        } else
         {
-            LOGGER.error("copy properties failed", e);
+            // 编码缓存由String生成后不再修改，可以共享
+            dst.contentBytes = src.contentBytes;
+            dst.contentOffset = src.contentOffset;
         }
+        dst.contentBytesLength = src.contentBytesLength;
         return dst;
     }
+
+    /**
+     * 将从池中取出的消息归还，非池化消息或已归还的消息调用无效果
+     *
+     * @return 是否归还到池中
+     */
+    public boolean release()
+    {
+        final MessagePool owner = pool;
+        if (null == owner)
+        {
+            return false;
+        }
+        pool = null;
+        return owner.recycle(this);
+    }
+
+    // 清空消息内容，保留复用的内容数组
+    void reset()
+    {
+        sessionId = 0;
+        serial = 0;
+        contentLength = 0;
+        flags = 0;
+        partIndex = 0;
+        content = null;
+        contentBytes = null;
+        contentOffset = 0;
+        contentBytesLength = 0;
+        rawContent = false;
+        charset = Charset.defaultCharset();
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界的Message回收池<p/>
+ * 解码器从池中取出消息并填充，消息编码写出后由编码器调用{@link Message#release()}归还，
+ * 稳态下每个请求不再分配Message和内容数组。池满时归还的消息直接丢弃，池空时新建
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class MessagePool
+{
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final ArrayBlockingQueue<Message> free;
+
+    private final int capacity;
+
+    private final AtomicLong created = new AtomicLong();
+
+    public MessagePool()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity 池中最多保留的空闲消息数
+     */
+    public MessagePool(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 取出一条空消息，池空时新建
+     *
+     * @return 属于本池的消息
+     */
+    public Message acquire()
+    {
+        Message msg = free.poll();
+        if (null == msg)
+        {
+            msg = new Message();
+            created.incrementAndGet();
+        }
+        msg.pool = this;
+        return msg;
+    }
+
+    // 由Message.release调用，清空后放回
+    boolean recycle(Message msg)
+    {
+        msg.reset();
+        return free.offer(msg);
+    }
+
+    /**
+     * @return 当前空闲消息数
+     */
+    public int size()
+    {
+        return free.size();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return 池空时新建的消息总数，稳态下不再增长
+     */
+    public long getCreatedCount()
+    {
+        return created.get();
+    }
+}
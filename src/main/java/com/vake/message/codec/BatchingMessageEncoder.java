@@ -0,0 +1,363 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.io.NotSerializableException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.vake.message.Message;
+import com.vake.metrics.RequestEvents;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.apache.mina.filter.reqres.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 合并写出的消息编码器<p/>
+ * 每个会话把连续的消息编码到同一个buffer中，达到大小上限时立即写出，否则由后台线程在flushMicros内写出。
+ * TCP的上限为batchSize，减少系统调用次数；UDP的上限为datagramSize(按MTU)，多条小消息打包在一个数据报中，
+ * 由{@link MessageDecoder}逐条拆出。超过上限的单条消息单独写出，UDP上由{@link MessageFragmenter}分片。<p/>
+ * 注意：消息只是进入批次时MINA就认为已写出(messageSent/WriteFuture提前完成)；不同批次之间可能乱序，
+ * 请求响应按流水号匹配，不依赖顺序
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class BatchingMessageEncoder extends ProtocolEncoderAdapter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingMessageEncoder.class);
+
+    /**
+     * 缺省TCP批次大小
+     */
+    public static final int DEFAULT_BATCH_SIZE = 8 * 1024;//8K
+
+    /**
+     * 缺省UDP数据报大小，以太网MTU 1500减去IP头20字节和UDP头8字节
+     */
+    public static final int DEFAULT_DATAGRAM_SIZE = 1472;
+
+    /**
+     * 缺省的批次最长等待时间(微秒)
+     */
+    public static final long DEFAULT_FLUSH_MICROS = 100;
+
+    private static final AttributeKey BATCH = new AttributeKey(BatchingMessageEncoder.class, "batch");
+
+    private final int batchSize;
+
+    private final int datagramSize;
+
+    private final long flushNanos;
+
+    private final MessageFragmenter fragmenter;
+
+    private final MessageCompressor compressor;
+
+    // 有未写出批次的会话，由flusher线程按时写出
+    private final ConcurrentLinkedQueue<Batch> pending = new ConcurrentLinkedQueue<>();
+
+    private final Thread flusher;
+
+    // flusher无事可做、已无限期park时为true，此时新批次需要唤醒它
+    private volatile boolean idle;
+
+    private volatile boolean running = true;
+
+    public BatchingMessageEncoder()
+    {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_DATAGRAM_SIZE, DEFAULT_FLUSH_MICROS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param batchSize    TCP批次大小上限
+     * @param datagramSize UDP数据报大小上限
+     * @param flushMicros  批次最长等待时间(微秒)
+     */
+    public BatchingMessageEncoder(int batchSize, int datagramSize, long flushMicros)
+    {
+        this(batchSize, datagramSize, flushMicros, new MessageCompressor());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param batchSize    TCP批次大小上限
+     * @param datagramSize UDP数据报大小上限
+     * @param flushMicros  批次最长等待时间(微秒)
+     * @param compressor   压缩器，超过阈值的消息压缩后再进入批次
+     */
+    public BatchingMessageEncoder(int batchSize, int datagramSize, long flushMicros, MessageCompressor compressor)
+    {
+        this(batchSize, new MessageFragmenter(datagramSize), flushMicros, compressor);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param batchSize   TCP批次大小上限
+     * @param fragmenter  UDP分片器，数据报大小上限取其数据报大小；与解码器共用时NACK可以找到保留的分片
+     * @param flushMicros 批次最长等待时间(微秒)
+     * @param compressor  压缩器，超过阈值的消息压缩后再进入批次
+     */
+    public BatchingMessageEncoder(int batchSize, MessageFragmenter fragmenter, long flushMicros,
+                                  MessageCompressor compressor)
+    {
+        final int datagramSize = fragmenter.getDatagramSize();
+        if (batchSize < Message.HEAD_LENGTH || datagramSize <= Message.HEAD_LENGTH + MessageFragmenter.FRAGMENT_HEAD_LENGTH
+                || flushMicros <= 0)
+        {
+            throw new IllegalArgumentException("batchSize=" + batchSize + ", datagramSize=" + datagramSize
+                    + ", flushMicros=" + flushMicros);
+        }
+        this.batchSize = batchSize;
+        this.datagramSize = datagramSize;
+        this.flushNanos = TimeUnit.MICROSECONDS.toNanos(flushMicros);
+        this.fragmenter = fragmenter;
+        this.compressor = compressor;
+        flusher = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                flushLoop();
+            }
+        }, "message-batch-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws Exception
+    {
+        final Message msg;
+        if (message instanceof Message)
+        {
+            msg = (Message) message;
+        } else if (message instanceof Request)
+        {
+            msg = (Message) ((Request) message).getMessage();
+        } else
+        {
+            throw new NotSerializableException();
+        }
+
+        final int limit = session.getTransportMetadata().isConnectionless() ? datagramSize : batchSize;
+        // 需要压缩的消息先单独编码压缩，之后按压缩后的帧处理
+        final IoBuffer frame = compressor.isCandidate(msg.getFrameLength()) ? compressor.compress(msg.encodeToBuffer()) : null;
+        final int frameLength = null == frame ? msg.getFrameLength() : frame.remaining();
+        final Batch batch = batchOf(session);
+        IoBuffer full = null;
+        IoBuffer single = null;
+        boolean started = false;
+        synchronized (batch)
+        {
+            if (null != batch.buffer && batch.buffer.position() + frameLength > limit)
+            {
+                full = batch.take();
+            }
+            if (frameLength >= limit)
+            {
+                // 放不进一个批次的消息单独写出
+                single = null == frame ? msg.encodeToBuffer() : frame;
+            } else
+            {
+                if (null == batch.buffer)
+                {
+                    batch.buffer = IoBuffer.allocate(limit, false);
+                    started = true;
+                }
+                if (null == frame)
+                {
+                    msg.encodeTo(batch.buffer);
+                } else
+                {
+                    batch.buffer.put(frame);
+                }
+            }
+        }
+        if (null != full)
+        {
+            out.write(full);
+        }
+        if (null != single)
+        {
+            if (fragmenter.needsFragmentation(session, single))
+            {
+                fragmenter.write(session, single, out);
+            } else
+            {
+                out.write(single);
+            }
+        }
+        if (started)
+        {
+            pending.offer(batch);
+            if (idle)
+            {
+                LockSupport.unpark(flusher);
+            }
+        }
+        RequestEvents.encoded(msg.getSessionId(), msg.getSerial(), frameLength);
+    }
+
+    private Batch batchOf(IoSession session)
+    {
+        Batch batch = (Batch) session.getAttribute(BATCH);
+        if (null == batch)
+        {
+            final Batch created = new Batch(session);
+            batch = (Batch) session.setAttributeIfAbsent(BATCH, created);
+            if (null == batch)
+            {
+                batch = created;
+            }
+        }
+        return batch;
+    }
+
+    private void flushLoop()
+    {
+        while (running)
+        {
+            if (pending.isEmpty())
+            {
+                idle = true;
+                // 置idle后再检查一次，避免错过唤醒
+                if (pending.isEmpty())
+                {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                continue;
+            }
+            // 给批次留出积累的时间，之后写出此刻所有待写的批次
+            LockSupport.parkNanos(this, flushNanos);
+            for (int i = pending.size(); i > 0; i--)
+            {
+                final Batch batch = pending.poll();
+                if (null == batch)
+                {
+                    break;
+                }
+                flush(batch);
+            }
+        }
+    }
+
+    private void flush(Batch batch)
+    {
+        final IoBuffer buffer;
+        synchronized (batch)
+        {
+            buffer = batch.take();
+        }
+        if (null == buffer)
+        {
+            return;
+        }
+        try
+        {
+            // IoBuffer不再经过编码，直接穿过ProtocolCodecFilter
+            batch.session.write(buffer);
+        } catch (RuntimeException ex)
+        {
+            LOGGER.error("flush batch to {} failed", batch.session, ex);
+        }
+    }
+
+    @Override
+    public void dispose(IoSession session) throws Exception
+    {
+        // 会话关闭，未写出的批次丢弃
+        session.removeAttribute(BATCH);
+    }
+
+    /**
+     * 停止后台写出线程，之后未满的批次不再写出
+     */
+    public void shutdown()
+    {
+        running = false;
+        LockSupport.unpark(flusher);
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public int getDatagramSize()
+    {
+        return datagramSize;
+    }
+
+    public long getFlushMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(flushNanos);
+    }
+
+    public MessageCompressor getCompressor()
+    {
+        return compressor;
+    }
+
+    /**
+     * @return UDP分片器
+     */
+    public MessageFragmenter getFragmenter()
+    {
+        return fragmenter;
+    }
+
+    // 一个会话上正在积累的批次，受自身监视器保护
+    private static final class Batch
+    {
+        private final IoSession session;
+
+        private IoBuffer buffer;
+
+        Batch(IoSession session)
+        {
+            this.session = session;
+        }
+
+        IoBuffer take()
+        {
+            final IoBuffer taken = buffer;
+            buffer = null;
+            if (null != taken)
+            {
+                taken.flip();
+            }
+            return taken;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vake.message.Message;
+import com.vake.message.request.MessageRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * UDP分片重组<p/>
+ * 各分片的内容复制到池化的定长块中，全部到齐后一次拷成原帧交给解码器，块归还池中。
+ * 两端的数据报大小需一致：分片数和各分片的长度由原帧长度决定，不符的分片直接丢弃，不据此分配内存。
+ * 每条消息有重组期限，过期的在后续分片到达或会话关闭时释放；每个对端(会话)重组占用的内存有上限，
+ * 按全部分片的块和索引数组计算，超出时新消息的分片被丢弃。收到最后一个分片时仍有缺失，则向对端发送{@link Message#FLAG_NACK}，
+ * 只请求缺失的分片；最后一个分片本身丢失时无从得知，由请求重传恢复
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class FragmentReassembler
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(FragmentReassembler.class);
+
+    /**
+     * 缺省的每条消息重组期限(毫秒)，与请求缺省超时一致
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = MessageRequest.DEFAULT_TIME_OUT;
+
+    /**
+     * 缺省的每个对端重组中的字节数上限
+     */
+    public static final int DEFAULT_MAX_BYTES_PER_PEER = 4 * 1024 * 1024;//4M
+
+    /**
+     * 缺省的池中空闲块数上限
+     */
+    public static final int DEFAULT_POOLED_CHUNKS = 1024;
+
+    /**
+     * 同一条消息两次重传请求的最小间隔(毫秒)
+     */
+    public static final long NACK_INTERVAL_MILLIS = 50;
+
+    /**
+     * 每条消息最多发送的重传请求数
+     */
+    public static final int MAX_NACKS = 3;
+
+    private static final AttributeKey PEER = new AttributeKey(FragmentReassembler.class, "peer");
+
+    // 每个分片在块之外的开销：块引用和长度
+    private static final int PART_OVERHEAD = 12;
+
+    // 块大小，不小于一个分片的内容长度
+    private final int chunkSize;
+
+    private final long timeoutNanos;
+
+    private final int maxBytesPerPeer;
+
+    // 一个重传请求最多列出的分片数，保证其本身不超过一个数据报
+    private final int maxNackIndexes;
+
+    private final ArrayBlockingQueue<byte[]> chunks;
+
+    private final AtomicLong reassembled = new AtomicLong();
+
+    private final AtomicLong expired = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong nacks = new AtomicLong();
+
+    public FragmentReassembler()
+    {
+        this(BatchingMessageEncoder.DEFAULT_DATAGRAM_SIZE);
+    }
+
+    public FragmentReassembler(int datagramSize)
+    {
+        this(datagramSize, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_BYTES_PER_PEER, DEFAULT_POOLED_CHUNKS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param datagramSize    数据报大小，决定块大小
+     * @param timeoutMillis   每条消息的重组期限(毫秒)
+     * @param maxBytesPerPeer 每个对端重组占用的字节数上限
+     * @param pooledChunks    池中空闲块数上限
+     */
+    public FragmentReassembler(int datagramSize, long timeoutMillis, int maxBytesPerPeer, int pooledChunks)
+    {
+        if (datagramSize <= Message.HEAD_LENGTH + MessageFragmenter.FRAGMENT_HEAD_LENGTH || timeoutMillis <= 0
+                || maxBytesPerPeer <= 0 || pooledChunks <= 0)
+        {
+            throw new IllegalArgumentException("datagramSize=" + datagramSize + ", timeoutMillis=" + timeoutMillis
+                    + ", maxBytesPerPeer=" + maxBytesPerPeer + ", pooledChunks=" + pooledChunks);
+        }
+        this.chunkSize = datagramSize - Message.HEAD_LENGTH - MessageFragmenter.FRAGMENT_HEAD_LENGTH;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxBytesPerPeer = maxBytesPerPeer;
+        this.maxNackIndexes = (datagramSize - Message.HEAD_LENGTH) / 2;
+        this.chunks = new ArrayBlockingQueue<>(pooledChunks);
+    }
+
+    /**
+     * 按-Dcodec.datagramSize创建
+     *
+     * @return reassembler
+     */
+    public static FragmentReassembler fromSystemProperties()
+    {
+        return new FragmentReassembler(Integer.getInteger(MessageFragmenter.DATAGRAM_SIZE_PROPERTY,
+                BatchingMessageEncoder.DEFAULT_DATAGRAM_SIZE));
+    }
+
+    /**
+     * 读取一个分片，position从分片的消息头移动到其末尾
+     *
+     * @param session 会话，缺失分片的重传请求写往该会话
+     * @param in      输入buffer，调用前需通过{@link Message#isValid(IoBuffer)}确认分片完整
+     * @return 全部分片到齐时返回重组的帧(已flip，标志位去掉{@link Message#FLAG_FRAGMENT})，否则返回null
+     */
+    public IoBuffer receive(IoSession session, IoBuffer in)
+    {
+        final int sessionId = in.getInt();
+        final int serial = in.getInt();
+        final int lengthField = in.getInt();
+        final int length = Message.lengthOf(lengthField);
+        final int end = in.position() + length;
+        if (length < MessageFragmenter.FRAGMENT_HEAD_LENGTH)
+        {
+            in.position(end);
+            dropped.incrementAndGet();
+            return null;
+        }
+        final int index = in.getUnsignedShort();
+        final int count = in.getUnsignedShort();
+        final int total = in.getInt();
+        final int payload = length - MessageFragmenter.FRAGMENT_HEAD_LENGTH;
+        // 除最后一个分片外都是整块，分片数必须与总长度相符，先校验分片数再计算长度，不会溢出
+        if (index >= count || total < 0 || total > Message.MAX_CONTENT_LENGTH
+                || count != (total + chunkSize - 1) / chunkSize
+                || payload != (index == count - 1 ? total - index * chunkSize : chunkSize))
+        {
+            LOGGER.warn("invalid fragment from {}, index={}, count={}, total={}",
+                    session.getRemoteAddress(), index, count, total);
+            in.position(end);
+            dropped.incrementAndGet();
+            return null;
+        }
+
+        final Peer peer = peerOf(session);
+        final long now = System.nanoTime();
+        final Partial complete;
+        List<Integer> missing = null;
+        peer.lock.lock();
+        try
+        {
+            expire(peer, now);
+            final Long key = MessageFragmenter.keyOf(sessionId, serial);
+            Partial partial = peer.partials.get(key);
+            if (null == partial)
+            {
+                final int charge = charge(count);
+                if (peer.bytes + charge > maxBytesPerPeer)
+                {
+                    LOGGER.debug("reassembly limit of {} is exceeded, drop fragment of serial={}",
+                            session.getRemoteAddress(), serial);
+                    in.position(end);
+                    dropped.incrementAndGet();
+                    return null;
+                }
+                partial = new Partial(lengthField >>> 24 & ~Message.FLAG_FRAGMENT, count, total, charge,
+                        now + timeoutNanos);
+                peer.partials.put(key, partial);
+                peer.bytes += charge;
+            } else if (partial.parts.length != count || partial.total != total)
+            {
+                in.position(end);
+                dropped.incrementAndGet();
+                return null;
+            }
+            if (null == partial.parts[index])
+            {
+                final byte[] chunk = takeChunk();
+                in.get(chunk, 0, payload);
+                partial.parts[index] = chunk;
+                partial.lengths[index] = payload;
+                partial.received++;
+                partial.size += payload;
+            }
+            in.position(end);
+
+            if (partial.received == count)
+            {
+                peer.partials.remove(key);
+                peer.bytes -= partial.charge;
+                complete = partial;
+            } else
+            {
+                complete = null;
+                // 最后一个分片到达时报告缺失，之后仍缺失的按间隔再次报告
+                final boolean due = 0 == partial.nacks ? index == count - 1
+                        : now - partial.lastNackAt >= TimeUnit.MILLISECONDS.toNanos(NACK_INTERVAL_MILLIS);
+                if (due && partial.nacks < MAX_NACKS)
+                {
+                    missing = partial.missing(maxNackIndexes);
+                    partial.nacks++;
+                    partial.lastNackAt = now;
+                }
+            }
+        } finally
+        {
+            peer.lock.unlock();
+        }
+
+        if (null != missing)
+        {
+            nack(session, sessionId, serial, missing);
+            return null;
+        }
+        if (null == complete)
+        {
+            return null;
+        }
+        if (complete.size != complete.total)
+        {
+            LOGGER.warn("fragments of serial={} from {} don't add up, size={}, total={}",
+                    serial, session.getRemoteAddress(), complete.size, complete.total);
+            release(complete);
+            dropped.incrementAndGet();
+            return null;
+        }
+        return assemble(complete, sessionId, serial);
+    }
+
+    private IoBuffer assemble(Partial partial, int sessionId, int serial)
+    {
+        final IoBuffer frame = IoBuffer.allocate(Message.HEAD_LENGTH + partial.total, false);
+        frame.putInt(sessionId);
+        frame.putInt(serial);
+        frame.putInt(partial.flags << 24 | partial.total);
+        for (int i = 0; i < partial.parts.length; i++)
+        {
+            frame.put(partial.parts[i], 0, partial.lengths[i]);
+        }
+        frame.flip();
+        release(partial);
+        reassembled.incrementAndGet();
+        return frame;
+    }
+
+    private void nack(IoSession session, int sessionId, int serial, List<Integer> missing)
+    {
+        final IoBuffer buffer = IoBuffer.allocate(Message.HEAD_LENGTH + missing.size() * 2, false);
+        buffer.putInt(sessionId);
+        buffer.putInt(serial);
+        buffer.putInt(Message.FLAG_NACK << 24 | missing.size() * 2);
+        for (Integer index : missing)
+        {
+            buffer.putShort(index.shortValue());
+        }
+        buffer.flip();
+        nacks.incrementAndGet();
+        LOGGER.debug("request {} missing fragments of serial={} from {}", missing.size(), serial, session.getRemoteAddress());
+        // IoBuffer直接穿过编解码写出
+        session.write(buffer);
+    }
+
+    // 丢弃过期的重组，调用时持有peer.lock；按创建顺序排列，遇到未过期的即停止
+    private void expire(Peer peer, long now)
+    {
+        final Iterator<Partial> it = peer.partials.values().iterator();
+        while (it.hasNext())
+        {
+            final Partial partial = it.next();
+            if (now - partial.deadline < 0)
+            {
+                break;
+            }
+            it.remove();
+            peer.bytes -= partial.charge;
+            release(partial);
+            expired.incrementAndGet();
+        }
+    }
+
+    /**
+     * 会话关闭时释放其上所有未完成的重组
+     *
+     * @param session 会话
+     */
+    public void dispose(IoSession session)
+    {
+        final Peer peer = (Peer) session.removeAttribute(PEER);
+        if (null == peer)
+        {
+            return;
+        }
+        peer.lock.lock();
+        try
+        {
+            for (Partial partial : peer.partials.values())
+            {
+                release(partial);
+            }
+            peer.partials.clear();
+            peer.bytes = 0;
+        } finally
+        {
+            peer.lock.unlock();
+        }
+    }
+
+    /**
+     * @param count 分片数
+     * @return 一条消息重组占用的字节数：每个分片一个整块加索引数组的开销
+     */
+    int charge(int count)
+    {
+        return count * (chunkSize + PART_OVERHEAD);
+    }
+
+    private byte[] takeChunk()
+    {
+        final byte[] chunk = chunks.poll();
+        return null == chunk ? new byte[chunkSize] : chunk;
+    }
+
+    // 定长块归还池中，池满时直接丢弃
+    private void release(Partial partial)
+    {
+        for (int i = 0; i < partial.parts.length; i++)
+        {
+            final byte[] chunk = partial.parts[i];
+            if (null != chunk && chunk.length == chunkSize)
+            {
+                chunks.offer(chunk);
+            }
+            partial.parts[i] = null;
+        }
+    }
+
+    private Peer peerOf(IoSession session)
+    {
+        Peer peer = (Peer) session.getAttribute(PEER);
+        if (null == peer)
+        {
+            final Peer created = new Peer();
+            peer = (Peer) session.setAttributeIfAbsent(PEER, created);
+            if (null == peer)
+            {
+                peer = created;
+            }
+        }
+        return peer;
+    }
+
+    /**
+     * @param session 会话
+     * @return 该会话上重组占用的字节数，见{@link #charge(int)}
+     */
+    public int getPendingBytes(IoSession session)
+    {
+        final Peer peer = (Peer) session.getAttribute(PEER);
+        if (null == peer)
+        {
+            return 0;
+        }
+        peer.lock.lock();
+        try
+        {
+            return peer.bytes;
+        } finally
+        {
+            peer.lock.unlock();
+        }
+    }
+
+    /**
+     * @return 池中的空闲块数
+     */
+    public int getPooledChunks()
+    {
+        return chunks.size();
+    }
+
+    /**
+     * @return 累计重组完成的消息数
+     */
+    public long getReassembled()
+    {
+        return reassembled.get();
+    }
+
+    /**
+     * @return 累计因过期丢弃的重组数
+     */
+    public long getExpired()
+    {
+        return expired.get();
+    }
+
+    /**
+     * @return 累计丢弃的无效或超出上限的分片数
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * @return 累计发送的重传请求数
+     */
+    public long getNacks()
+    {
+        return nacks.get();
+    }
+
+    // 一个对端上重组中的消息，按创建顺序排列
+    private static final class Peer
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final LinkedHashMap<Long, Partial> partials = new LinkedHashMap<>();
+
+        private int bytes;
+    }
+
+    private static final class Partial
+    {
+        private final int flags;
+
+        private final int total;
+
+        // 计入对端上限的字节数
+        private final int charge;
+
+        private final long deadline;
+
+        private final byte[][] parts;
+
+        private final int[] lengths;
+
+        private int received;
+
+        // 已收到的内容字节数
+        private int size;
+
+        private int nacks;
+
+        private long lastNackAt;
+
+        Partial(int flags, int count, int total, int charge, long deadline)
+        {
+            this.flags = flags;
+            this.total = total;
+            this.charge = charge;
+            this.deadline = deadline;
+            this.parts = new byte[count][];
+            this.lengths = new int[count];
+        }
+
+        List<Integer> missing(int max)
+        {
+            final List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < parts.length && indexes.size() < max; i++)
+            {
+                if (null == parts[i])
+                {
+                    indexes.add(i);
+                }
+            }
+            return indexes;
+        }
+    }
+}
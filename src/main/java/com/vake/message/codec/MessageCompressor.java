@@ -0,0 +1,407 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.vake.message.Message;
+import com.vake.message.MessagePool;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 消息内容压缩<p/>
+ * 内容不小于阈值的帧用Deflater压缩，压缩后的帧带{@link Message#FLAG_COMPRESSED}，
+ * 内容为原内容长度(4字节)加zlib数据；压缩后没有变小的帧原样写出。
+ * 解压不受阈值限制，不压缩的对端发来的帧不带该标志，照常解码；原内容长度来自对端，解压时按实际输出逐步扩大缓冲区，
+ * 并受{@link #MAX_ORIGINAL_LENGTH_PROPERTY}限制。
+ * Deflater/Inflater放在有上限的池中复用，避免每条消息分配和释放native内存；池满时多出的实例用完即end，
+ * {@link #dispose()}释放池中的实例，线程的创建和销毁不会留下待回收的native内存
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class MessageCompressor
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageCompressor.class);
+
+    /**
+     * 压缩阈值(内容字节数)的系统属性，不设置或不大于0时不压缩
+     */
+    public static final String THRESHOLD_PROPERTY = "codec.compressThreshold";
+
+    /**
+     * 压缩级别的系统属性
+     */
+    public static final String LEVEL_PROPERTY = "codec.compressLevel";
+
+    /**
+     * 解压后内容长度上限的系统属性
+     */
+    public static final String MAX_ORIGINAL_LENGTH_PROPERTY = "codec.maxDecompressedLength";
+
+    /**
+     * 不压缩
+     */
+    public static final int DISABLED = 0;
+
+    /**
+     * 缺省压缩级别，设备读数重复度高，最快的级别已能明显压缩
+     */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * 缺省的解压后内容长度上限，与消息内容长度上限一致
+     */
+    public static final int DEFAULT_MAX_ORIGINAL_LENGTH = Message.MAX_CONTENT_LENGTH;
+
+    // 压缩内容前的原内容长度
+    private static final int ORIGINAL_LENGTH = 4;
+
+    // 解压缓冲区的初始大小，不足时按倍数扩大
+    private static final int INITIAL_OUTPUT = 1024;
+
+    // 池中空闲的Deflater/Inflater上限，覆盖I/O线程和写出线程
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final int threshold;
+
+    private final int level;
+
+    private final int maxOriginalLength;
+
+    private final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private volatile boolean disposed;
+
+    private final AtomicLong compressed = new AtomicLong();
+
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public MessageCompressor()
+    {
+        this(DISABLED);
+    }
+
+    public MessageCompressor(int threshold)
+    {
+        this(threshold, DEFAULT_LEVEL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threshold 内容不小于此字节数时压缩，不大于0时不压缩
+     * @param level     压缩级别，见{@link Deflater}
+     */
+    public MessageCompressor(int threshold, int level)
+    {
+        this(threshold, level, DEFAULT_MAX_ORIGINAL_LENGTH);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threshold         内容不小于此字节数时压缩，不大于0时不压缩
+     * @param level             压缩级别，见{@link Deflater}
+     * @param maxOriginalLength 解压后内容长度上限，超出的帧丢弃
+     */
+    public MessageCompressor(int threshold, int level, int maxOriginalLength)
+    {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+        if (maxOriginalLength < 0 || maxOriginalLength > Message.MAX_CONTENT_LENGTH)
+        {
+            throw new IllegalArgumentException("maxOriginalLength must be in [0, " + Message.MAX_CONTENT_LENGTH + "]: "
+                    + maxOriginalLength);
+        }
+        this.threshold = threshold;
+        this.level = level;
+        this.maxOriginalLength = maxOriginalLength;
+    }
+
+    /**
+     * @return 按-Dcodec.compressThreshold、-Dcodec.compressLevel和-Dcodec.maxDecompressedLength创建，缺省不压缩
+     */
+    public static MessageCompressor fromSystemProperties()
+    {
+        return new MessageCompressor(Integer.getInteger(THRESHOLD_PROPERTY, DISABLED),
+                Integer.getInteger(LEVEL_PROPERTY, DEFAULT_LEVEL),
+                Integer.getInteger(MAX_ORIGINAL_LENGTH_PROPERTY, DEFAULT_MAX_ORIGINAL_LENGTH));
+    }
+
+    /**
+     * @param frameLength 帧长度
+     * @return 该长度的帧是否需要尝试压缩
+     */
+    public boolean isCandidate(int frameLength)
+    {
+        return threshold > 0 && frameLength - Message.HEAD_LENGTH >= threshold;
+    }
+
+    /**
+     * 压缩一帧
+     *
+     * @param frame 编码后的帧，position在帧头
+     * @return 压缩后的帧；未达阈值、已压缩或压缩后没有变小时返回frame本身
+     */
+    public IoBuffer compress(IoBuffer frame)
+    {
+        final int start = frame.position();
+        final int lengthField = frame.getInt(start + 8);
+        final int flags = lengthField >>> 24;
+        final int length = frame.remaining() - Message.HEAD_LENGTH;
+        if (!isCandidate(frame.remaining()) || 0 != (flags & Message.FLAG_COMPRESSED) || !frame.hasArray())
+        {
+            return frame;
+        }
+
+        // 压缩结果直接写入新帧，写满仍未完成说明没有变小
+        final IoBuffer out = IoBuffer.allocate(Message.HEAD_LENGTH + length, false);
+        final byte[] dst = out.array();
+        final int dstOffset = out.arrayOffset() + Message.HEAD_LENGTH + ORIGINAL_LENGTH;
+        final int capacity = length - ORIGINAL_LENGTH;
+        final Deflater deflater = takeDeflater();
+        int produced = 0;
+        try
+        {
+            deflater.setInput(frame.array(), frame.arrayOffset() + start + Message.HEAD_LENGTH, length);
+            deflater.finish();
+            while (!deflater.finished() && produced < capacity)
+            {
+                produced += deflater.deflate(dst, dstOffset + produced, capacity - produced);
+            }
+            if (!deflater.finished())
+            {
+                return frame;
+            }
+        } finally
+        {
+            giveBack(deflater);
+        }
+
+        out.putInt(frame.getInt(start));
+        out.putInt(frame.getInt(start + 4));
+        out.putInt((flags | Message.FLAG_COMPRESSED) << 24 | ORIGINAL_LENGTH + produced);
+        out.putInt(length);
+        out.position(Message.HEAD_LENGTH + ORIGINAL_LENGTH + produced);
+        out.flip();
+        compressed.incrementAndGet();
+        savedBytes.addAndGet(length - ORIGINAL_LENGTH - produced);
+        return out;
+    }
+
+    /**
+     * 读取并解压一帧，position从帧头移动到帧末尾
+     *
+     * @param session 会话
+     * @param in      输入buffer，调用前需通过{@link Message#isValid(IoBuffer)}确认帧完整
+     * @param charset 内容字符集
+     * @param pool    消息池，可以为null
+     * @return 消息，压缩数据无效时返回null
+     */
+    public Message decompress(IoSession session, IoBuffer in, Charset charset, MessagePool pool)
+    {
+        final int sessionId = in.getInt();
+        final int serial = in.getInt();
+        final int lengthField = in.getInt();
+        final int length = Message.lengthOf(lengthField);
+        final int end = in.position() + length;
+        final int original = length >= ORIGINAL_LENGTH ? in.getInt() : -1;
+        if (original < 0 || original > maxOriginalLength)
+        {
+            LOGGER.warn("invalid compressed frame from {}, serial={}, original length={}",
+                    session.getRemoteAddress(), serial, original);
+            in.position(end);
+            return null;
+        }
+
+        final byte[] input;
+        final int inputOffset;
+        final int inputLength = end - in.position();
+        if (in.hasArray())
+        {
+            input = in.array();
+            inputOffset = in.arrayOffset() + in.position();
+        } else
+        {
+            input = new byte[inputLength];
+            inputOffset = 0;
+            in.get(input);
+        }
+        in.position(end);
+
+        // 原内容长度只是对端的声明，缓冲区随实际输出扩大，伪造的长度不会导致按声明一次分配
+        byte[] content = new byte[Math.min(original, Math.max(INITIAL_OUTPUT, inputLength * 4))];
+        final Inflater inflater = takeInflater();
+        try
+        {
+            inflater.setInput(input, inputOffset, inputLength);
+            int produced = 0;
+            while (produced < original && !inflater.finished() && !inflater.needsInput() && !inflater.needsDictionary())
+            {
+                if (produced == content.length)
+                {
+                    content = Arrays.copyOf(content, (int) Math.min(original, 2L * content.length));
+                }
+                produced += inflater.inflate(content, produced, content.length - produced);
+            }
+            if (produced != original || !inflater.finished())
+            {
+                LOGGER.warn("compressed frame from {} doesn't match its length, serial={}, original length={}",
+                        session.getRemoteAddress(), serial, original);
+                return null;
+            }
+        } catch (DataFormatException ex)
+        {
+            LOGGER.warn("invalid compressed frame from {}, serial={}", session.getRemoteAddress(), serial, ex);
+            return null;
+        } finally
+        {
+            giveBack(inflater);
+        }
+
+        final Message msg = null == pool ? new Message() : pool.acquire();
+        msg.setCharset(charset);
+        msg.setSessionId(sessionId);
+        msg.setSerial(serial);
+        msg.setFlags(lengthField >>> 24 & ~Message.FLAG_COMPRESSED);
+        // 分段响应的段序号与内容一起压缩
+        int offset = 0;
+        if (msg.hasFlag(Message.FLAG_PARTIAL) && original >= Message.PART_INDEX_LENGTH)
+        {
+            msg.setPartIndex(IoBuffer.wrap(content).getInt(0));
+            offset = Message.PART_INDEX_LENGTH;
+        }
+        msg.setContentLength(original - offset);
+        msg.setContentBytes(content, offset, original - offset);
+        return msg;
+    }
+
+    private Deflater takeDeflater()
+    {
+        final Deflater deflater = deflaters.poll();
+        return null == deflater ? new Deflater(level) : deflater;
+    }
+
+    private Inflater takeInflater()
+    {
+        final Inflater inflater = inflaters.poll();
+        return null == inflater ? new Inflater() : inflater;
+    }
+
+    // 归还池中，池满或已释放时立即end；与dispose并发时由归还方再清空一次
+    private void giveBack(Deflater deflater)
+    {
+        deflater.reset();
+        if (disposed || !deflaters.offer(deflater))
+        {
+            deflater.end();
+        } else if (disposed)
+        {
+            endAll();
+        }
+    }
+
+    private void giveBack(Inflater inflater)
+    {
+        inflater.reset();
+        if (disposed || !inflaters.offer(inflater))
+        {
+            inflater.end();
+        } else if (disposed)
+        {
+            endAll();
+        }
+    }
+
+    /**
+     * 释放池中的Deflater/Inflater，之后仍可使用，每次用完即释放
+     */
+    public void dispose()
+    {
+        disposed = true;
+        endAll();
+    }
+
+    private void endAll()
+    {
+        Deflater deflater;
+        while (null != (deflater = deflaters.poll()))
+        {
+            deflater.end();
+        }
+        Inflater inflater;
+        while (null != (inflater = inflaters.poll()))
+        {
+            inflater.end();
+        }
+    }
+
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    public int getMaxOriginalLength()
+    {
+        return maxOriginalLength;
+    }
+
+    /**
+     * @return 池中空闲的Deflater和Inflater数
+     */
+    public int getPooled()
+    {
+        return deflaters.size() + inflaters.size();
+    }
+
+    /**
+     * @return 累计压缩的帧数
+     */
+    public long getCompressed()
+    {
+        return compressed.get();
+    }
+
+    /**
+     * @return 累计压缩节省的字节数
+     */
+    public long getSavedBytes()
+    {
+        return savedBytes.get();
+    }
+}
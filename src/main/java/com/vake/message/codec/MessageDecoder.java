@@ -20,9 +20,12 @@
 package com.vake.message.codec;
 
 import java.net.SocketAddress;
+import java.nio.charset.Charset;
 
 import com.vake.ArrayUtils;
 import com.vake.message.Message;
+import com.vake.message.MessagePool;
+import com.vake.metrics.RequestEvents;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolDecoderAdapter;
@@ -44,22 +47,138 @@ public class MessageDecoder extends ProtocolDecoderAdapter
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageDecoder.class);
 
+    // 消息内容的字符集，仅在读取内容时才用于解码
+    private final Charset charset;
+
+    // 消息池，为null时每条消息新建
+    private final MessagePool pool;
+
+    // 响应对端的分片重传请求
+    private final MessageFragmenter fragmenter;
+
+    private final FragmentReassembler reassembler;
+
+    // 解压带压缩标志的帧，解压不受其阈值限制
+    private final MessageCompressor compressor;
+
+    public MessageDecoder()
+    {
+        this(Charset.defaultCharset());
+    }
+
+    public MessageDecoder(Charset charset)
+    {
+        this(charset, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param charset 消息内容的字符集
+     * @param pool    消息池，可以为null
+     */
+    public MessageDecoder(Charset charset, MessagePool pool)
+    {
+        this(charset, pool, new MessageFragmenter(), new FragmentReassembler(), new MessageCompressor());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param charset     消息内容的字符集
+     * @param pool        消息池，可以为null
+     * @param fragmenter  重发对端请求的分片
+     * @param reassembler 重组收到的分片
+     * @param compressor  解压收到的帧
+     */
+    public MessageDecoder(Charset charset, MessagePool pool, MessageFragmenter fragmenter, FragmentReassembler reassembler,
+                          MessageCompressor compressor)
+    {
+        this.charset = charset;
+        this.pool = pool;
+        this.fragmenter = fragmenter;
+        this.reassembler = reassembler;
+        this.compressor = compressor;
+    }
+
     public void decode(IoSession session, IoBuffer in, ProtocolDecoderOutput out) throws Exception
     {
-        final int limit = in.limit();
-        byte[] bytes = new byte[limit];
-        in.get(bytes);
-        in.position(limit);
-        final SocketAddress remoteAddress = session.getRemoteAddress();
-        LOGGER.info("receive data from {}, bytes={}", remoteAddress, ArrayUtils.toHexString(bytes));
+        // 逐包的十六进制日志开销很大，仅在TRACE级别输出，流量观测使用WireCaptureFilter
+        if (LOGGER.isTraceEnabled())
+        {
+            final SocketAddress remoteAddress = session.getRemoteAddress();
+            LOGGER.trace("receive data from {}, bytes={}", remoteAddress, toHexString(in));
+        }
 
-        if (Message.isValid(bytes))
+        // 一个数据报中可能打包了多条消息(见BatchingMessageEncoder)，逐条读出
+        while (Message.isValid(in))
         {
-            final Message message = Message.from(bytes);
+            final int flags = in.getInt(in.position() + 8) >>> 24;
+            if (0 != (flags & Message.FLAG_NACK))
+            {
+                fragmenter.resend(session, in);
+                continue;
+            }
+            IoBuffer frame = in;
+            if (0 != (flags & Message.FLAG_FRAGMENT))
+            {
+                // 分片到齐后按重组出的帧继续解码
+                frame = reassembler.receive(session, in);
+                if (null == frame)
+                {
+                    continue;
+                }
+            }
+            final Message message;
+            if (0 != (frame.getInt(frame.position() + 8) >>> 24 & Message.FLAG_COMPRESSED))
+            {
+                message = compressor.decompress(session, frame, charset, pool);
+                if (null == message)
+                {
+                    continue;
+                }
+            } else
+            {
+                // 直接从IoBuffer中读取各字段，不再复制整个数据包
+                message = Message.from(frame, charset, pool);
+            }
+            RequestEvents.decoded(message.getSessionId(), message.getSerial(), message.getFrameLength());
             out.write(message);
-        } else
+        }
+        if (in.hasRemaining())
         {
-            LOGGER.info("can't parse , invalid bytes, bytes={}", ArrayUtils.toHexString(bytes));
+            LOGGER.warn("can't parse , invalid bytes from {}, length={}", session.getRemoteAddress(), in.remaining());
         }
+        in.position(in.limit());
+    }
+
+    @Override
+    public void dispose(IoSession session) throws Exception
+    {
+        reassembler.dispose(session);
+    }
+
+    public MessageFragmenter getFragmenter()
+    {
+        return fragmenter;
+    }
+
+    public FragmentReassembler getReassembler()
+    {
+        return reassembler;
+    }
+
+    public MessageCompressor getCompressor()
+    {
+        return compressor;
+    }
+
+    private static String toHexString(IoBuffer in)
+    {
+        final byte[] bytes = new byte[in.remaining()];
+        in.mark();
+        in.get(bytes);
+        in.reset();
+        return ArrayUtils.toHexString(bytes);
     }
-}
\ No newline at end of file
+}
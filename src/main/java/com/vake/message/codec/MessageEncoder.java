@@ -24,6 +24,7 @@ import java.net.SocketAddress;
 
 import com.vake.ArrayUtils;
 import com.vake.message.Message;
+import com.vake.metrics.RequestEvents;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
@@ -46,29 +47,72 @@ public class MessageEncoder extends ProtocolEncoderAdapter
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageEncoder.class);
 
+    // UDP上超过数据报大小的帧分片写出
+    private final MessageFragmenter fragmenter;
+
+    // 超过阈值的内容压缩后写出，先压缩再分片
+    private final MessageCompressor compressor;
+
+    public MessageEncoder()
+    {
+        this(new MessageFragmenter(), new MessageCompressor());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param fragmenter 分片器
+     * @param compressor 压缩器
+     */
+    public MessageEncoder(MessageFragmenter fragmenter, MessageCompressor compressor)
+    {
+        this.fragmenter = fragmenter;
+        this.compressor = compressor;
+    }
+
+    public MessageCompressor getCompressor()
+    {
+        return compressor;
+    }
+
     public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws Exception
     {
         if (message instanceof Message)
         {
             final Message msg = (Message) message;
-            sendData(msg, session);
+            // 池化消息(如服务端回显的请求)不在此归还：MINA仍持有写请求并在messageSent中传给处理器
+            sendData(msg, session, out);
         } else if (message instanceof Request)
         {
             final Request req = (Request) message;
             final Message data = (Message) req.getMessage();
-            sendData(data, session);
+            sendData(data, session, out);
         } else
         {
             throw new NotSerializableException();
         }
     }
 
-    private void sendData(Message msg, IoSession session)
+    private void sendData(Message msg, IoSession session, ProtocolEncoderOutput out)
     {
-        final byte[] encodeToBytes = msg.encodeToBytes();
-        final SocketAddress remoteAddress = session.getRemoteAddress();
-        LOGGER.debug("send data to {}, bytes={}", remoteAddress, ArrayUtils.toHexString(encodeToBytes));
-        final IoBuffer wrap = IoBuffer.wrap(encodeToBytes);
-        session.write(wrap);
+        // 按帧长一次性分配buffer，消息头和内容直接写入
+        final IoBuffer buffer = compressor.compress(msg.encodeToBuffer());
+        RequestEvents.encoded(msg.getSessionId(), msg.getSerial(), buffer.remaining());
+        if (LOGGER.isTraceEnabled())
+        {
+            final SocketAddress remoteAddress = session.getRemoteAddress();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.mark();
+            buffer.get(bytes);
+            buffer.reset();
+            LOGGER.trace("send data to {}, bytes={}", remoteAddress, ArrayUtils.toHexString(bytes));
+        }
+        if (fragmenter.needsFragmentation(session, buffer))
+        {
+            fragmenter.write(session, buffer, out);
+        } else
+        {
+            out.write(buffer);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,376 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vake.message.Message;
+import com.vake.message.request.MessageRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * UDP消息分片<p/>
+ * 超过数据报大小的帧拆成多个分片写出，每个分片是一条带{@link Message#FLAG_FRAGMENT}的消息，
+ * 消息头与原消息相同(长度为分片长度)，内容为分片头(序号2字节、分片数2字节、原内容总长4字节)加原内容的一段。
+ * 原帧按(sessionId, serial)在会话上保留一段时间，收到对端的{@link Message#FLAG_NACK}时只重发缺失的分片。
+ * 保留的帧按时间和字节数上限淘汰，淘汰后缺失的分片只能依靠请求重传恢复
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class MessageFragmenter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageFragmenter.class);
+
+    /**
+     * 数据报大小的系统属性，同时用于合并写出和分片
+     */
+    public static final String DATAGRAM_SIZE_PROPERTY = "codec.datagramSize";
+
+    /**
+     * 分片头长度：序号、分片数、原内容总长
+     */
+    public static final int FRAGMENT_HEAD_LENGTH = 8;
+
+    /**
+     * 缺省的已发送帧保留时间(毫秒)，与请求缺省超时一致
+     */
+    public static final long DEFAULT_RETENTION_MILLIS = MessageRequest.DEFAULT_TIME_OUT;
+
+    /**
+     * 缺省的每个会话保留帧的字节数上限
+     */
+    public static final int DEFAULT_MAX_RETAINED_BYTES = 4 * 1024 * 1024;//4M
+
+    private static final AttributeKey SENT = new AttributeKey(MessageFragmenter.class, "sent");
+
+    private final int datagramSize;
+
+    // 每个分片携带的原内容字节数
+    private final int payloadSize;
+
+    private final long retentionNanos;
+
+    private final int maxRetainedBytes;
+
+    private final AtomicLong fragmented = new AtomicLong();
+
+    private final AtomicLong resent = new AtomicLong();
+
+    public MessageFragmenter()
+    {
+        this(BatchingMessageEncoder.DEFAULT_DATAGRAM_SIZE);
+    }
+
+    public MessageFragmenter(int datagramSize)
+    {
+        this(datagramSize, DEFAULT_RETENTION_MILLIS, DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param datagramSize     数据报大小上限，超过的帧被分片
+     * @param retentionMillis  已发送帧的保留时间(毫秒)
+     * @param maxRetainedBytes 每个会话保留帧的字节数上限
+     */
+    public MessageFragmenter(int datagramSize, long retentionMillis, int maxRetainedBytes)
+    {
+        if (datagramSize <= Message.HEAD_LENGTH + FRAGMENT_HEAD_LENGTH || retentionMillis < 0 || maxRetainedBytes < 0)
+        {
+            throw new IllegalArgumentException("datagramSize=" + datagramSize + ", retentionMillis=" + retentionMillis
+                    + ", maxRetainedBytes=" + maxRetainedBytes);
+        }
+        this.datagramSize = datagramSize;
+        this.payloadSize = datagramSize - Message.HEAD_LENGTH - FRAGMENT_HEAD_LENGTH;
+        this.retentionNanos = TimeUnit.MILLISECONDS.toNanos(retentionMillis);
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return 按-Dcodec.datagramSize创建，缺省{@link BatchingMessageEncoder#DEFAULT_DATAGRAM_SIZE}
+     */
+    public static MessageFragmenter fromSystemProperties()
+    {
+        return new MessageFragmenter(Integer.getInteger(DATAGRAM_SIZE_PROPERTY, BatchingMessageEncoder.DEFAULT_DATAGRAM_SIZE));
+    }
+
+    /**
+     * @param session 会话
+     * @param frame   编码后的帧
+     * @return 是否需要分片：无连接传输且帧超过数据报大小
+     */
+    public boolean needsFragmentation(IoSession session, IoBuffer frame)
+    {
+        return frame.remaining() > datagramSize && session.getTransportMetadata().isConnectionless();
+    }
+
+    /**
+     * 分片写到编码器输出，帧被保留以便重发
+     *
+     * @param session 会话
+     * @param frame   编码后的帧，之后不应再修改
+     * @param out     编码器输出
+     */
+    public void write(IoSession session, IoBuffer frame, ProtocolEncoderOutput out)
+    {
+        final int count = retain(session, frame);
+        for (int index = 0; index < count; index++)
+        {
+            out.write(fragment(frame, index, count));
+        }
+    }
+
+    /**
+     * 绕过编解码直接写出，需要时分片(用于请求重传等已编码的帧)
+     *
+     * @param session 会话
+     * @param frame   编码后的帧，之后不应再修改
+     */
+    public void write(IoSession session, IoBuffer frame)
+    {
+        if (!needsFragmentation(session, frame))
+        {
+            session.write(frame);
+            return;
+        }
+        final int count = retain(session, frame);
+        for (int index = 0; index < count; index++)
+        {
+            session.write(fragment(frame, index, count));
+        }
+    }
+
+    /**
+     * 处理对端的重传请求，只重发其中列出的分片<p/>
+     * 重复列出的序号只重发一次，一个重传请求最多重发全部分片各一次，不会因伪造的请求放大写出量。
+     * in的position在重传请求的消息头处，处理后移动到该消息末尾
+     *
+     * @param session 会话
+     * @param in      输入buffer
+     */
+    public void resend(IoSession session, IoBuffer in)
+    {
+        final int sessionId = in.getInt();
+        final int serial = in.getInt();
+        final int length = Message.lengthOf(in.getInt());
+        final int end = in.position() + length;
+        final IoBuffer frame = retained(session, sessionId, serial);
+        if (null == frame)
+        {
+            LOGGER.debug("fragments of sessionId={}, serial={} are no longer retained", sessionId, serial);
+            in.position(end);
+            return;
+        }
+        final int count = countOf(frame);
+        final BitSet requested = new BitSet(count);
+        int duplicates = 0;
+        while (in.position() + 2 <= end)
+        {
+            final int index = in.getUnsignedShort();
+            if (index >= count)
+            {
+                continue;
+            }
+            if (requested.get(index))
+            {
+                duplicates++;
+                continue;
+            }
+            requested.set(index);
+            session.write(fragment(frame, index, count));
+            resent.incrementAndGet();
+        }
+        if (duplicates > 0)
+        {
+            LOGGER.warn("nack from {} repeats {} fragment indexes, sessionId={}, serial={}",
+                    session.getRemoteAddress(), duplicates, sessionId, serial);
+        }
+        in.position(end);
+    }
+
+    // 保留帧并返回分片数
+    private int retain(IoSession session, IoBuffer frame)
+    {
+        final int count = countOf(frame);
+        fragmented.incrementAndGet();
+        final int length = frame.remaining();
+        if (length > maxRetainedBytes)
+        {
+            return count;
+        }
+        final Retained retained = retainedOf(session);
+        final long now = System.nanoTime();
+        retained.lock.lock();
+        try
+        {
+            final Long key = keyOf(frame.getInt(frame.position()), frame.getInt(frame.position() + 4));
+            final Entry previous = retained.frames.remove(key);
+            if (null != previous)
+            {
+                retained.bytes -= previous.frame.remaining();
+            }
+            // 按写出顺序淘汰过期或超出字节上限的帧
+            final Iterator<Entry> it = retained.frames.values().iterator();
+            while (it.hasNext())
+            {
+                final Entry entry = it.next();
+                if (now - entry.expiresAt < 0 && retained.bytes + length <= maxRetainedBytes)
+                {
+                    break;
+                }
+                retained.bytes -= entry.frame.remaining();
+                it.remove();
+            }
+            retained.frames.put(key, new Entry(frame, now + retentionNanos));
+            retained.bytes += length;
+        } finally
+        {
+            retained.lock.unlock();
+        }
+        return count;
+    }
+
+    private IoBuffer retained(IoSession session, int sessionId, int serial)
+    {
+        final Retained retained = (Retained) session.getAttribute(SENT);
+        if (null == retained)
+        {
+            return null;
+        }
+        retained.lock.lock();
+        try
+        {
+            final Entry entry = retained.frames.get(keyOf(sessionId, serial));
+            return null == entry || System.nanoTime() - entry.expiresAt >= 0 ? null : entry.frame;
+        } finally
+        {
+            retained.lock.unlock();
+        }
+    }
+
+    private Retained retainedOf(IoSession session)
+    {
+        Retained retained = (Retained) session.getAttribute(SENT);
+        if (null == retained)
+        {
+            final Retained created = new Retained();
+            retained = (Retained) session.setAttributeIfAbsent(SENT, created);
+            if (null == retained)
+            {
+                retained = created;
+            }
+        }
+        return retained;
+    }
+
+    private int countOf(IoBuffer frame)
+    {
+        final int contentLength = frame.remaining() - Message.HEAD_LENGTH;
+        return (contentLength + payloadSize - 1) / payloadSize;
+    }
+
+    // 第index个分片：原消息头(加FLAG_FRAGMENT，长度改为分片长度)、分片头、原内容的一段
+    private IoBuffer fragment(IoBuffer frame, int index, int count)
+    {
+        final int start = frame.position();
+        final int total = frame.remaining() - Message.HEAD_LENGTH;
+        final int offset = index * payloadSize;
+        final int length = Math.min(payloadSize, total - offset);
+        final int flags = frame.getInt(start + 8) >>> 24 | Message.FLAG_FRAGMENT;
+
+        final IoBuffer buffer = IoBuffer.allocate(Message.HEAD_LENGTH + FRAGMENT_HEAD_LENGTH + length, false);
+        buffer.putInt(frame.getInt(start));
+        buffer.putInt(frame.getInt(start + 4));
+        buffer.putInt(flags << 24 | FRAGMENT_HEAD_LENGTH + length);
+        buffer.putShort((short) index);
+        buffer.putShort((short) count);
+        buffer.putInt(total);
+        final IoBuffer slice = frame.duplicate();
+        slice.position(start + Message.HEAD_LENGTH + offset);
+        slice.limit(slice.position() + length);
+        buffer.put(slice);
+        buffer.flip();
+        return buffer;
+    }
+
+    static Long keyOf(int sessionId, int serial)
+    {
+        return (long) sessionId << 32 | serial & 0xFFFFFFFFL;
+    }
+
+    public int getDatagramSize()
+    {
+        return datagramSize;
+    }
+
+    /**
+     * @return 累计分片写出的帧数
+     */
+    public long getFragmented()
+    {
+        return fragmented.get();
+    }
+
+    /**
+     * @return 累计按重传请求重发的分片数
+     */
+    public long getResent()
+    {
+        return resent.get();
+    }
+
+    // 一个会话上保留的已发送帧，按写出顺序排列
+    private static final class Retained
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final LinkedHashMap<Long, Entry> frames = new LinkedHashMap<>();
+
+        private int bytes;
+    }
+
+    private static final class Entry
+    {
+        private final IoBuffer frame;
+
+        private final long expiresAt;
+
+        Entry(IoBuffer frame, long expiresAt)
+        {
+            this.frame = frame;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.nio.charset.Charset;
+
+import com.vake.message.Message;
+import com.vake.message.MessagePool;
+import com.vake.metrics.RequestEvents;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于消息头(sessionId + serial + contentLength)长度字段的分帧解码器<p/>
+ * 用于TCP等面向流的传输：跨多次读取累积半包，一次读取中的多个完整帧一次性全部解码。
+ * 每个会话的累积缓冲区大小受maxContentLength限制，超出即认为流已错乱并关闭会话
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class MessageFrameDecoder extends CumulativeProtocolDecoder
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageFrameDecoder.class);
+
+    /**
+     * 缺省单帧内容最大长度
+     */
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 1024 * 1024;//1M
+
+    private final int maxContentLength;
+
+    private final Charset charset;
+
+    private final MessagePool pool;
+
+    private final MessageCompressor compressor;
+
+    public MessageFrameDecoder()
+    {
+        this(DEFAULT_MAX_CONTENT_LENGTH);
+    }
+
+    public MessageFrameDecoder(int maxContentLength)
+    {
+        this(maxContentLength, Charset.defaultCharset());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxContentLength 单帧内容最大长度，同时限定了每个会话累积缓冲区的上限
+     * @param charset          消息内容的字符集
+     */
+    public MessageFrameDecoder(int maxContentLength, Charset charset)
+    {
+        this(maxContentLength, charset, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxContentLength 单帧内容最大长度
+     * @param charset          消息内容的字符集
+     * @param pool             消息池，可以为null
+     */
+    public MessageFrameDecoder(int maxContentLength, Charset charset, MessagePool pool)
+    {
+        if (maxContentLength <= 0 || maxContentLength > Message.MAX_CONTENT_LENGTH)
+        {
+            throw new IllegalArgumentException("maxContentLength must be in (0, " + Message.MAX_CONTENT_LENGTH + "]: "
+                    + maxContentLength);
+        }
+        this.maxContentLength = maxContentLength;
+        this.charset = charset;
+        // 解压后的内容同样受单帧上限约束
+        this.compressor = new MessageCompressor(MessageCompressor.DISABLED, MessageCompressor.DEFAULT_LEVEL,
+                maxContentLength);
+        this.pool = pool;
+    }
+
+    public int getMaxContentLength()
+    {
+        return maxContentLength;
+    }
+
+    @Override
+    protected boolean doDecode(IoSession session, IoBuffer in, ProtocolDecoderOutput out) throws Exception
+    {
+        while (in.remaining() >= Message.HEAD_LENGTH)
+        {
+            final int contentLength = Message.lengthOf(in.getInt(in.position() + 8));
+            if (contentLength > maxContentLength)
+            {
+                // 长度字段非法时无法再找到帧边界，丢弃已累积的数据并关闭会话
+                in.position(in.limit());
+                session.close(true);
+                throw new ProtocolDecoderException("invalid content length:" + contentLength + ", max:" + maxContentLength);
+            }
+            if (in.remaining() - Message.HEAD_LENGTH < contentLength)
+            {
+                // 半包，等待后续数据
+                LOGGER.trace("partial frame from {}, need {} bytes, remaining {}", session.getRemoteAddress(),
+                        Message.HEAD_LENGTH + contentLength, in.remaining());
+                return false;
+            }
+            final Message message;
+            if (0 != (in.getInt(in.position() + 8) >>> 24 & Message.FLAG_COMPRESSED))
+            {
+                message = compressor.decompress(session, in, charset, pool);
+                if (null == message)
+                {
+                    continue;
+                }
+            } else
+            {
+                message = Message.from(in, charset, pool);
+            }
+            RequestEvents.decoded(message.getSessionId(), message.getSerial(), message.getFrameLength());
+            out.write(message);
+        }
+        return false;
+    }
+
+    public MessageCompressor getCompressor()
+    {
+        return compressor;
+    }
+}
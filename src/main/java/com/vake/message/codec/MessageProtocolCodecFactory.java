@@ -19,6 +19,9 @@
  */
 package com.vake.message.codec;
 
+import java.nio.charset.Charset;
+
+import com.vake.message.MessagePool;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolDecoder;
 import org.apache.mina.filter.codec.ProtocolEncoder;
@@ -35,14 +38,123 @@ import org.apache.mina.filter.codec.ProtocolEncoder;
  */
 public class MessageProtocolCodecFactory implements org.apache.mina.filter.codec.ProtocolCodecFactory
 {
+    /**
+     * 设置为true时MessageClient和MessageServer使用{@link BatchingMessageEncoder}合并写出
+     */
+    public static final String BATCHING_PROPERTY = "codec.batching";
+
     private ProtocolEncoder encoder;
 
-    private ProtocolDecoder decoder;
+    private MessageDecoder decoder;
+
+    // 面向流的传输(TCP)使用的分帧解码器
+    private MessageFrameDecoder frameDecoder;
 
     public MessageProtocolCodecFactory()
     {
-        encoder = new MessageEncoder();
-        decoder = new MessageDecoder();
+        this(Charset.defaultCharset());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param charset 解码出的消息内容的字符集，内容只在被读取时才解码
+     */
+    public MessageProtocolCodecFactory(Charset charset)
+    {
+        this(charset, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param charset 解码出的消息内容的字符集
+     * @param pool    消息池，不为null时解码出的消息从池中取出，由处理器在messageSent中归还
+     */
+    public MessageProtocolCodecFactory(Charset charset, MessagePool pool)
+    {
+        this(charset, pool, new MessageEncoder());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param charset 解码出的消息内容的字符集
+     * @param pool    消息池，可以为null
+     * @param encoder 编码器，如{@link MessageEncoder}或{@link BatchingMessageEncoder}
+     */
+    public MessageProtocolCodecFactory(Charset charset, MessagePool pool, ProtocolEncoder encoder)
+    {
+        this(charset, pool, encoder, new MessageDecoder(charset, pool));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param charset 解码出的消息内容的字符集
+     * @param pool    消息池，可以为null
+     * @param encoder 编码器
+     * @param decoder UDP使用的解码器，其中的分片器和重组器决定分片的重发和重组
+     */
+    public MessageProtocolCodecFactory(Charset charset, MessagePool pool, ProtocolEncoder encoder, MessageDecoder decoder)
+    {
+        this.encoder = encoder;
+        this.decoder = decoder;
+        frameDecoder = new MessageFrameDecoder(MessageFrameDecoder.DEFAULT_MAX_CONTENT_LENGTH, charset, pool);
+    }
+
+    /**
+     * 按系统属性{@link #BATCHING_PROPERTY}选择编码器，按{@link MessageFragmenter#DATAGRAM_SIZE_PROPERTY}设置UDP数据报大小，
+     * 按{@link MessageCompressor#THRESHOLD_PROPERTY}设置压缩阈值
+     *
+     * @param charset 解码出的消息内容的字符集
+     * @param pool    消息池，可以为null
+     * @return codec factory
+     */
+    public static MessageProtocolCodecFactory fromSystemProperties(Charset charset, MessagePool pool)
+    {
+        final MessageFragmenter fragmenter = MessageFragmenter.fromSystemProperties();
+        final MessageCompressor compressor = MessageCompressor.fromSystemProperties();
+        final int datagramSize = fragmenter.getDatagramSize();
+        final ProtocolEncoder encoder = Boolean.getBoolean(BATCHING_PROPERTY)
+                ? new BatchingMessageEncoder(BatchingMessageEncoder.DEFAULT_BATCH_SIZE, fragmenter,
+                BatchingMessageEncoder.DEFAULT_FLUSH_MICROS, compressor)
+                : new MessageEncoder(fragmenter, compressor);
+        return new MessageProtocolCodecFactory(charset, pool, encoder,
+                new MessageDecoder(charset, pool, fragmenter, new FragmentReassembler(datagramSize), compressor));
+    }
+
+    /**
+     * 释放编解码器占用的资源(合并写出模式的后台线程，压缩器池中的native zlib状态)
+     */
+    public void dispose()
+    {
+        if (encoder instanceof BatchingMessageEncoder)
+        {
+            ((BatchingMessageEncoder) encoder).shutdown();
+            ((BatchingMessageEncoder) encoder).getCompressor().dispose();
+        } else if (encoder instanceof MessageEncoder)
+        {
+            ((MessageEncoder) encoder).getCompressor().dispose();
+        }
+        decoder.getCompressor().dispose();
+        frameDecoder.getCompressor().dispose();
+    }
+
+    /**
+     * @return UDP分片器，已编码的帧绕过编码器写出时用它分片
+     */
+    public MessageFragmenter getFragmenter()
+    {
+        return decoder.getFragmenter();
+    }
+
+    /**
+     * @return UDP分片重组器
+     */
+    public FragmentReassembler getReassembler()
+    {
+        return decoder.getReassembler();
     }
 
     public ProtocolEncoder getEncoder(IoSession session) throws Exception
@@ -52,6 +164,7 @@ public class MessageProtocolCodecFactory implements org.apache.mina.filter.codec
 
     public ProtocolDecoder getDecoder(IoSession session) throws Exception
     {
-        return decoder;
+        // UDP一个数据报即一条消息；TCP会合并、拆分报文段，需要按长度分帧
+        return session.getTransportMetadata().hasFragmentation() ? frameDecoder : decoder;
     }
 }
\ No newline at end of file
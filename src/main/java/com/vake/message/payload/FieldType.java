@@ -0,0 +1,78 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.payload;
+
+/**
+ * 定长二进制载荷的字段类型，多字节整数按网络字节序(大端)存放
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public enum FieldType
+{
+    BYTE(1),
+    SHORT(2),
+    INT(4),
+    LONG(8),
+    /**
+     * IPv4地址，4字节
+     */
+    IPV4(4),
+    /**
+     * MAC地址，6字节
+     */
+    MAC(6),
+    /**
+     * BCD码，每字节两位、高半字节在前，以0xF半字节结束；长度(字节数)在schema中指定
+     */
+    BCD(0),
+    /**
+     * 定长ASCII，不足部分补0；长度在schema中指定
+     */
+    ASCII(0);
+
+    // 定长类型的字节数，0表示长度在schema中指定
+    private final int size;
+
+    FieldType(int size)
+    {
+        this.size = size;
+    }
+
+    /**
+     * @return 定长类型的字节数，长度由schema指定的类型返回0
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return 长度是否需要在schema中指定
+     */
+    public boolean isSized()
+    {
+        return 0 == size;
+    }
+}
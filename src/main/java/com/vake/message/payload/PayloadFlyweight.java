@@ -0,0 +1,472 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.payload;
+
+import com.vake.message.Message;
+import com.vake.message.payload.PayloadSchema.Field;
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * 按{@link PayloadSchema}直接读写字节数组中的定长载荷<p/>
+ * 一个实例可反复wrap不同的消息内容或帧，读写时只按字段的偏移访问字节，不创建对象；
+ * 字符串类字段追加到调用方提供的StringBuilder中。非线程安全，通常每个线程或每个处理器持有一个
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class PayloadFlyweight
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // BCD半字节0x0~0xE对应的字符，0xF为结束符
+    private static final char[] BCD_CHARS = "0123456789A*#DE".toCharArray();
+
+    private static final int BCD_END = 0xF;
+
+    private final PayloadSchema schema;
+
+    private byte[] array;
+
+    // 载荷在array中的起始位置
+    private int base;
+
+    public PayloadFlyweight(PayloadSchema schema)
+    {
+        this.schema = schema;
+    }
+
+    /**
+     * 指向数组中从offset开始的载荷
+     *
+     * @param array  数组
+     * @param offset 载荷起始位置
+     * @return this
+     */
+    public PayloadFlyweight wrap(byte[] array, int offset)
+    {
+        if (offset < 0 || offset + schema.getLength() > array.length)
+        {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + schema.getLength()
+                    + ", size=" + array.length);
+        }
+        this.array = array;
+        this.base = offset;
+        return this;
+    }
+
+    /**
+     * 指向消息的内容，不复制
+     *
+     * @param msg 消息
+     * @return this
+     */
+    public PayloadFlyweight wrap(Message msg)
+    {
+        if (msg.getContentBytesLength() < schema.getLength())
+        {
+            throw new IndexOutOfBoundsException("content length " + msg.getContentBytesLength()
+                    + " is less than payload length " + schema.getLength());
+        }
+        return wrap(msg.getContentBytes(), msg.getContentOffset());
+    }
+
+    /**
+     * 指向buffer中当前位置的帧的内容，不移动position
+     *
+     * @param frame 帧，需为heap buffer
+     * @return this
+     */
+    public PayloadFlyweight wrap(IoBuffer frame)
+    {
+        if (!frame.hasArray())
+        {
+            throw new IllegalArgumentException("direct buffer is not supported");
+        }
+        if (frame.remaining() < Message.HEAD_LENGTH + schema.getLength())
+        {
+            throw new IndexOutOfBoundsException("frame length " + frame.remaining()
+                    + " is less than payload length " + schema.getLength());
+        }
+        return wrap(frame.array(), frame.arrayOffset() + frame.position() + Message.HEAD_LENGTH);
+    }
+
+    /**
+     * 新建一个载荷长度的数组并指向它，用于编码新消息
+     *
+     * @return this
+     */
+    public PayloadFlyweight allocate()
+    {
+        return wrap(new byte[schema.getLength()], 0);
+    }
+
+    /**
+     * 把当前载荷设置为消息的内容，不复制
+     *
+     * @param msg 消息
+     */
+    public void writeTo(Message msg)
+    {
+        msg.setContentBytes(array, base, schema.getLength());
+        msg.setContentLength(schema.getLength());
+    }
+
+    public PayloadSchema getSchema()
+    {
+        return schema;
+    }
+
+    public byte getByte(Field field)
+    {
+        return array[offsetOf(field, FieldType.BYTE)];
+    }
+
+    public void putByte(Field field, byte value)
+    {
+        array[offsetOf(field, FieldType.BYTE)] = value;
+    }
+
+    public short getShort(Field field)
+    {
+        return (short) getBigEndian(offsetOf(field, FieldType.SHORT), 2);
+    }
+
+    public int getUnsignedShort(Field field)
+    {
+        return (int) getBigEndian(offsetOf(field, FieldType.SHORT), 2);
+    }
+
+    public void putShort(Field field, int value)
+    {
+        putBigEndian(offsetOf(field, FieldType.SHORT), 2, value);
+    }
+
+    public int getInt(Field field)
+    {
+        return (int) getBigEndian(offsetOf(field, FieldType.INT), 4);
+    }
+
+    public void putInt(Field field, int value)
+    {
+        putBigEndian(offsetOf(field, FieldType.INT), 4, value);
+    }
+
+    public long getLong(Field field)
+    {
+        return getBigEndian(offsetOf(field, FieldType.LONG), 8);
+    }
+
+    public void putLong(Field field, long value)
+    {
+        putBigEndian(offsetOf(field, FieldType.LONG), 8, value);
+    }
+
+    /**
+     * @param field IPv4字段
+     * @return 地址的32位整数形式，与{@link com.vake.NumberUtils#intToIpV4String(int)}一致
+     */
+    public int getIpv4(Field field)
+    {
+        return (int) getBigEndian(offsetOf(field, FieldType.IPV4), 4);
+    }
+
+    public void putIpv4(Field field, int address)
+    {
+        putBigEndian(offsetOf(field, FieldType.IPV4), 4, address);
+    }
+
+    /**
+     * 以点分十进制追加IPv4地址
+     *
+     * @param field   IPv4字段
+     * @param builder 目标
+     * @return builder
+     */
+    public StringBuilder appendIpv4(Field field, StringBuilder builder)
+    {
+        final int offset = offsetOf(field, FieldType.IPV4);
+        for (int i = 0; i < 4; i++)
+        {
+            if (i > 0)
+            {
+                builder.append('.');
+            }
+            builder.append(array[offset + i] & 0xFF);
+        }
+        return builder;
+    }
+
+    /**
+     * @param field MAC字段
+     * @return 地址的低48位整数形式
+     */
+    public long getMac(Field field)
+    {
+        return getBigEndian(offsetOf(field, FieldType.MAC), 6);
+    }
+
+    public void putMac(Field field, long address)
+    {
+        putBigEndian(offsetOf(field, FieldType.MAC), 6, address);
+    }
+
+    /**
+     * 以xx-xx-xx-xx-xx-xx形式追加MAC地址，格式同{@link com.vake.ArrayUtils#bytesToMacString(byte[])}
+     *
+     * @param field   MAC字段
+     * @param builder 目标
+     * @return builder
+     */
+    public StringBuilder appendMac(Field field, StringBuilder builder)
+    {
+        final int offset = offsetOf(field, FieldType.MAC);
+        for (int i = 0; i < 6; i++)
+        {
+            if (i > 0)
+            {
+                builder.append('-');
+            }
+            final int b = array[offset + i] & 0xFF;
+            builder.append(HEX[b >>> 4]).append(HEX[b & 0xF]);
+        }
+        return builder;
+    }
+
+    /**
+     * 追加BCD码表示的号码，遇到0xF半字节结束，与{@link com.vake.NumberUtils#bcdToString(byte[])}一致
+     *
+     * @param field   BCD字段
+     * @param builder 目标
+     * @return builder
+     */
+    public StringBuilder appendBcd(Field field, StringBuilder builder)
+    {
+        final int offset = offsetOf(field, FieldType.BCD);
+        final int digits = field.getSize() * 2;
+        for (int i = 0; i < digits; i++)
+        {
+            final int b = array[offset + i / 2];
+            final int nibble = 0 == i % 2 ? b >>> 4 & 0xF : b & 0xF;
+            if (BCD_END == nibble)
+            {
+                break;
+            }
+            builder.append(BCD_CHARS[nibble]);
+        }
+        return builder;
+    }
+
+    /**
+     * 写入BCD码，与{@link com.vake.NumberUtils#stringToBcd(String, int)}一致：至少保留一个0xF结束半字节，
+     * 超长部分截断，非法字符视为结束
+     *
+     * @param field  BCD字段
+     * @param digits 号码，可包含0-9、A-E、*、#
+     */
+    public void putBcd(Field field, CharSequence digits)
+    {
+        final int offset = offsetOf(field, FieldType.BCD);
+        final int size = field.getSize();
+        for (int i = 0; i < size; i++)
+        {
+            array[offset + i] = 0;
+        }
+        final int length = Math.min(digits.length(), size * 2 - 1);
+        int i = 0;
+        for (; i < length; i++)
+        {
+            final int nibble = nibbleOf(digits.charAt(i));
+            if (BCD_END == nibble)
+            {
+                break;
+            }
+            putNibble(offset, i, nibble);
+        }
+        putNibble(offset, i, BCD_END);
+    }
+
+    /**
+     * 追加定长ASCII字段，遇到0结束
+     *
+     * @param field   ASCII字段
+     * @param builder 目标
+     * @return builder
+     */
+    public StringBuilder appendAscii(Field field, StringBuilder builder)
+    {
+        final int offset = offsetOf(field, FieldType.ASCII);
+        for (int i = 0; i < field.getSize(); i++)
+        {
+            final byte b = array[offset + i];
+            if (0 == b)
+            {
+                break;
+            }
+            builder.append((char) (b & 0x7F));
+        }
+        return builder;
+    }
+
+    /**
+     * 写入定长ASCII字段，超长部分截断，不足补0，非ASCII字符写为'?'
+     *
+     * @param field ASCII字段
+     * @param text  文本
+     */
+    public void putAscii(Field field, CharSequence text)
+    {
+        final int offset = offsetOf(field, FieldType.ASCII);
+        final int length = Math.min(text.length(), field.getSize());
+        for (int i = 0; i < field.getSize(); i++)
+        {
+            if (i < length)
+            {
+                final char c = text.charAt(i);
+                array[offset + i] = (byte) (c < 0x80 ? c : '?');
+            } else
+            {
+                array[offset + i] = 0;
+            }
+        }
+    }
+
+    /**
+     * 按字段追加全部内容，用于日志
+     *
+     * @param builder 目标
+     * @return builder
+     */
+    public StringBuilder appendTo(StringBuilder builder)
+    {
+        builder.append('{');
+        for (Field field : schema.getFields())
+        {
+            if (field.getIndex() > 0)
+            {
+                builder.append(", ");
+            }
+            builder.append(field.getName()).append('=');
+            switch (field.getType())
+            {
+                case BYTE:
+                    builder.append(getByte(field));
+                    break;
+                case SHORT:
+                    builder.append(getShort(field));
+                    break;
+                case INT:
+                    builder.append(getInt(field));
+                    break;
+                case LONG:
+                    builder.append(getLong(field));
+                    break;
+                case IPV4:
+                    appendIpv4(field, builder);
+                    break;
+                case MAC:
+                    appendMac(field, builder);
+                    break;
+                case BCD:
+                    appendBcd(field, builder);
+                    break;
+                default:
+                    appendAscii(field, builder);
+                    break;
+            }
+        }
+        return builder.append('}');
+    }
+
+    @Override
+    public String toString()
+    {
+        return null == array ? "PayloadFlyweight{}" : appendTo(new StringBuilder("PayloadFlyweight")).toString();
+    }
+
+    // 字段在array中的位置，同时检查字段属于本schema且类型匹配
+    private int offsetOf(Field field, FieldType type)
+    {
+        if (field.getType() != type || !schema.contains(field))
+        {
+            throw new IllegalArgumentException("field " + field + " is not a " + type + " field of this schema");
+        }
+        return base + field.getOffset();
+    }
+
+    private long getBigEndian(int offset, int size)
+    {
+        long value = 0;
+        for (int i = 0; i < size; i++)
+        {
+            value = value << 8 | array[offset + i] & 0xFF;
+        }
+        return value;
+    }
+
+    private void putBigEndian(int offset, int size, long value)
+    {
+        for (int i = size - 1; i >= 0; i--)
+        {
+            array[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    // 第index个半字节，偶数位在高半字节
+    private void putNibble(int offset, int index, int nibble)
+    {
+        final int position = offset + index / 2;
+        array[position] = (byte) (0 == index % 2 ? array[position] & 0x0F | nibble << 4 : array[position] & 0xF0 | nibble);
+    }
+
+    private static int nibbleOf(char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        switch (c)
+        {
+            case 'a':
+            case 'A':
+                return 0xA;
+            case 'b':
+            case 'B':
+            case '*':
+                return 0xB;
+            case 'c':
+            case 'C':
+            case '#':
+                return 0xC;
+            case 'd':
+            case 'D':
+                return 0xD;
+            case 'e':
+            case 'E':
+                return 0xE;
+            default:
+                return BCD_END;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.payload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 定长二进制载荷的schema<p/>
+ * 每行描述一个字段：名称、类型、长度(仅bcd和ascii需要)，字段按顺序紧密排列，#开始的为注释，例如
+ * <pre>
+ * # 设备状态
+ * deviceId  int
+ * port      short
+ * phone     bcd   6
+ * mac       mac
+ * ip        ipv4
+ * name      ascii 16
+ * </pre>
+ * 解析时算出每个字段的偏移，{@link PayloadFlyweight}按字段直接读写字节
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public final class PayloadSchema
+{
+    private final List<Field> fields;
+
+    private final Map<String, Field> byName;
+
+    private final int length;
+
+    private PayloadSchema(List<Field> fields, Map<String, Field> byName, int length)
+    {
+        this.fields = Collections.unmodifiableList(fields);
+        this.byName = byName;
+        this.length = length;
+    }
+
+    /**
+     * 解析schema文本
+     *
+     * @param text schema文本
+     * @return schema
+     * @throws IllegalArgumentException 格式错误、类型未知或字段重名
+     */
+    public static PayloadSchema parse(String text)
+    {
+        final List<Field> fields = new ArrayList<>();
+        final Map<String, Field> byName = new LinkedHashMap<>();
+        int offset = 0;
+        final String[] lines = text.split("\r?\n");
+        for (int lineNo = 1; lineNo <= lines.length; lineNo++)
+        {
+            String line = lines[lineNo - 1];
+            final int comment = line.indexOf('#');
+            if (comment >= 0)
+            {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty())
+            {
+                continue;
+            }
+            final String[] tokens = line.split("\\s+");
+            final FieldType type = typeOf(tokens, lineNo);
+            final int size;
+            if (type.isSized())
+            {
+                if (3 != tokens.length)
+                {
+                    throw new IllegalArgumentException("line " + lineNo + ": " + tokens[1] + " needs a length: " + line);
+                }
+                size = sizeOf(tokens[2], lineNo);
+            } else
+            {
+                if (2 != tokens.length)
+                {
+                    throw new IllegalArgumentException("line " + lineNo + ": unexpected tokens: " + line);
+                }
+                size = type.getSize();
+            }
+            final Field field = new Field(fields.size(), tokens[0], type, offset, size);
+            if (null != byName.put(field.name, field))
+            {
+                throw new IllegalArgumentException("line " + lineNo + ": duplicate field " + field.name);
+            }
+            fields.add(field);
+            offset += size;
+        }
+        if (fields.isEmpty())
+        {
+            throw new IllegalArgumentException("schema has no fields");
+        }
+        return new PayloadSchema(fields, byName, offset);
+    }
+
+    /**
+     * 从classpath加载schema，文件为UTF-8编码
+     *
+     * @param resource 资源名称，如"device-status.schema"
+     * @return schema
+     * @throws IOException 资源不存在或读取失败
+     */
+    public static PayloadSchema load(String resource) throws IOException
+    {
+        final InputStream in = PayloadSchema.class.getClassLoader().getResourceAsStream(resource);
+        if (null == in)
+        {
+            throw new IOException("schema resource not found: " + resource);
+        }
+        try (Reader reader = new InputStreamReader(in, Charset.forName("UTF-8")))
+        {
+            final StringBuilder text = new StringBuilder();
+            final char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer)) > 0)
+            {
+                text.append(buffer, 0, read);
+            }
+            return parse(text.toString());
+        }
+    }
+
+    private static FieldType typeOf(String[] tokens, int lineNo)
+    {
+        if (tokens.length < 2)
+        {
+            throw new IllegalArgumentException("line " + lineNo + ": field type is missing: " + tokens[0]);
+        }
+        try
+        {
+            return FieldType.valueOf(tokens[1].toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException ex)
+        {
+            throw new IllegalArgumentException("line " + lineNo + ": unknown field type " + tokens[1]);
+        }
+    }
+
+    private static int sizeOf(String token, int lineNo)
+    {
+        final int size;
+        try
+        {
+            size = Integer.parseInt(token);
+        } catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException("line " + lineNo + ": invalid length " + token);
+        }
+        if (size <= 0)
+        {
+            throw new IllegalArgumentException("line " + lineNo + ": length must be positive: " + size);
+        }
+        return size;
+    }
+
+    /**
+     * @return 载荷总长度(字节)
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    public List<Field> getFields()
+    {
+        return fields;
+    }
+
+    /**
+     * 按名称查找字段，应在初始化时查好后保存，读写时直接使用
+     *
+     * @param name 字段名
+     * @return 字段
+     * @throws IllegalArgumentException 字段不存在
+     */
+    public Field getField(String name)
+    {
+        final Field field = byName.get(name);
+        if (null == field)
+        {
+            throw new IllegalArgumentException("no such field: " + name);
+        }
+        return field;
+    }
+
+    boolean contains(Field field)
+    {
+        return field.index < fields.size() && fields.get(field.index) == field;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PayloadSchema{" +
+                "fields=" + fields +
+                ", length=" + length +
+                '}';
+    }
+
+    /**
+     * schema中的一个字段
+     */
+    public static final class Field
+    {
+        private final int index;
+
+        private final String name;
+
+        private final FieldType type;
+
+        private final int offset;
+
+        private final int size;
+
+        Field(int index, String name, FieldType type, int offset, int size)
+        {
+            this.index = index;
+            this.name = name;
+            this.type = type;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public int getIndex()
+        {
+            return index;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public FieldType getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return 相对载荷起始的偏移
+         */
+        public int getOffset()
+        {
+            return offset;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + ':' + type.name().toLowerCase(Locale.ENGLISH) + '@' + offset + '+' + size;
+        }
+    }
+}
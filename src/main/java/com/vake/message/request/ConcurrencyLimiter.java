@@ -0,0 +1,444 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按实测往返时间自适应的在途请求数限制(AIMD)<p/>
+ * 每个设备一个实例，同时平滑出短期和长期(约{@link #RTT_WINDOW}个样本)两个往返时间。请求返回时，短期往返时间超过长期的
+ * {@link #RTT_TOLERANCE}倍(设备开始排队)则上限乘以{@link #BACKOFF_RATIO}，否则在途数已用到上限一半以上时上限加1；
+ * 请求超时同样缩减上限。每完成一轮在途请求最多缩减一次，避免一批同时超时的请求把上限一次压到底。
+ * 长期往返时间随设备的稳态延迟缓慢变化，只有延迟突然升高才触发缩减。<p/>
+ * 达到上限时调用方可选择阻塞等待({@link #acquire(long, TimeUnit)})、立即失败({@link #tryAcquire()})
+ * 或排队({@link #enqueue(Runnable)})，排队的任务在其他请求完成时交给构造时指定的执行器，未指定时于完成线程中执行。
+ * 每个获得许可的请求完成后必须调用且只调用一次{@link #onSuccess(long)}、{@link #onDropped()}或{@link #onIgnore()}
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class ConcurrencyLimiter
+{
+    /**
+     * 达到上限时调用方的选择
+     */
+    public enum Policy
+    {
+        /**
+         * 阻塞调用线程直到有许可或超时
+         */
+        BLOCK,
+        /**
+         * 放入队列，有许可时再发出，队列满时失败
+         */
+        QUEUE,
+        /**
+         * 立即失败
+         */
+        FAIL_FAST
+    }
+
+    public static final int DEFAULT_INITIAL_LIMIT = 32;
+
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+
+    public static final int DEFAULT_MAX_QUEUE = 10000;
+
+    // 短期往返时间超过长期往返时间的倍数，超过即视为设备开始排队
+    public static final double RTT_TOLERANCE = 2.0;
+
+    // 拥塞时上限的缩减比例
+    public static final double BACKOFF_RATIO = 0.9;
+
+    // 长期往返时间的平滑样本数
+    public static final int RTT_WINDOW = 256;
+
+    // 短期往返时间的平滑系数
+    private static final double SHORT_RTT_WEIGHT = 0.2;
+
+    private final int maxLimit;
+
+    private final int maxQueue;
+
+    private final Lock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+
+    private volatile double limit;
+
+    private volatile int inFlight;
+
+    // 纳秒，0表示尚无样本
+    private volatile double shortRtt;
+
+    private volatile double longRtt;
+
+    // 上次缩减后完成的请求数
+    private int sinceBackoff;
+
+    private volatile long rejected;
+
+    // 执行出队的排队任务，null表示在完成请求的线程中执行
+    private final Executor executor;
+
+    public ConcurrencyLimiter()
+    {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_MAX_QUEUE);
+    }
+
+    /**
+     * Constructor，排队的任务在完成请求的线程中执行
+     *
+     * @param initialLimit 初始上限
+     * @param maxLimit     上限的最大值
+     * @param maxQueue     排队的最大请求数
+     */
+    public ConcurrencyLimiter(int initialLimit, int maxLimit, int maxQueue)
+    {
+        this(initialLimit, maxLimit, maxQueue, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param initialLimit 初始上限
+     * @param maxLimit     上限的最大值
+     * @param maxQueue     排队的最大请求数
+     * @param executor     执行出队的排队任务，完成请求的线程(如IO线程)上不宜执行会阻塞的任务；null表示在完成线程中执行
+     */
+    public ConcurrencyLimiter(int initialLimit, int maxLimit, int maxQueue, Executor executor)
+    {
+        if (initialLimit <= 0 || maxLimit < initialLimit)
+        {
+            throw new IllegalArgumentException("illegal limit, initial=" + initialLimit + ", max=" + maxLimit);
+        }
+        if (maxQueue < 0)
+        {
+            throw new IllegalArgumentException("maxQueue must not be negative: " + maxQueue);
+        }
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.executor = executor;
+    }
+
+    /**
+     * 有许可时获取许可
+     *
+     * @return 是否获得许可，未获得时计入拒绝数
+     */
+    public boolean tryAcquire()
+    {
+        lock.lock();
+        try
+        {
+            if (inFlight < getLimit())
+            {
+                inFlight++;
+                return true;
+            }
+            rejected++;
+            return false;
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 阻塞等待许可
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 是否获得许可，超时未获得时计入拒绝数
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try
+        {
+            // 排队的请求先于新来的阻塞调用方
+            while (inFlight >= getLimit() || !queue.isEmpty())
+            {
+                if (nanos <= 0)
+                {
+                    rejected++;
+                    return false;
+                }
+                nanos = available.awaitNanos(nanos);
+            }
+            inFlight++;
+            return true;
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 有许可时在当前线程立即执行任务，否则放入队列等待其他请求完成
+     *
+     * @param task 持有许可执行的任务
+     * @return 任务是否已执行或入队，队列已满时为false并计入拒绝数
+     */
+    public boolean enqueue(Runnable task)
+    {
+        lock.lock();
+        try
+        {
+            if (queue.isEmpty() && inFlight < getLimit())
+            {
+                inFlight++;
+            } else if (queue.size() < maxQueue)
+            {
+                queue.addLast(task);
+                return true;
+            } else
+            {
+                rejected++;
+                return false;
+            }
+        } finally
+        {
+            lock.unlock();
+        }
+        task.run();
+        return true;
+    }
+
+    /**
+     * 请求收到响应
+     *
+     * @param rttNanos 往返时间
+     */
+    public void onSuccess(long rttNanos)
+    {
+        final List<Runnable> ready;
+        lock.lock();
+        try
+        {
+            sampleRtt(rttNanos);
+            sinceBackoff++;
+            if (shortRtt > longRtt * RTT_TOLERANCE)
+            {
+                backoff();
+            } else if (inFlight * 2 >= limit)
+            {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            ready = release();
+        } finally
+        {
+            lock.unlock();
+        }
+        run(ready);
+    }
+
+    /**
+     * 请求超时或被丢弃，视为拥塞
+     */
+    public void onDropped()
+    {
+        final List<Runnable> ready;
+        lock.lock();
+        try
+        {
+            sinceBackoff++;
+            backoff();
+            ready = release();
+        } finally
+        {
+            lock.unlock();
+        }
+        run(ready);
+    }
+
+    /**
+     * 请求未到达设备(如会话不可用或排队期间已被取消)，只归还许可，不调整上限
+     */
+    public void onIgnore()
+    {
+        final List<Runnable> ready;
+        lock.lock();
+        try
+        {
+            ready = release();
+        } finally
+        {
+            lock.unlock();
+        }
+        run(ready);
+    }
+
+    private void sampleRtt(long rttNanos)
+    {
+        if (0 == longRtt)
+        {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+            return;
+        }
+        shortRtt += (rttNanos - shortRtt) * SHORT_RTT_WEIGHT;
+        longRtt += (rttNanos - longRtt) / RTT_WINDOW;
+    }
+
+    private void backoff()
+    {
+        // 缩减前发出的请求都已完成后才再次缩减
+        if (sinceBackoff >= inFlight)
+        {
+            limit = Math.max(1, limit * BACKOFF_RATIO);
+            sinceBackoff = 0;
+        }
+    }
+
+    /**
+     * 归还一个许可，取出可以执行的排队任务(已为其占用许可)，唤醒阻塞的调用方；在锁内调用
+     */
+    private List<Runnable> release()
+    {
+        inFlight--;
+        List<Runnable> ready = null;
+        while (!queue.isEmpty() && inFlight < getLimit())
+        {
+            if (null == ready)
+            {
+                ready = new ArrayList<>(1);
+            }
+            ready.add(queue.pollFirst());
+            inFlight++;
+        }
+        if (inFlight < getLimit())
+        {
+            available.signal();
+        }
+        return ready;
+    }
+
+    private void run(List<Runnable> ready)
+    {
+        if (null != ready)
+        {
+            for (Runnable task : ready)
+            {
+                if (null == executor)
+                {
+                    task.run();
+                    continue;
+                }
+                try
+                {
+                    executor.execute(task);
+                } catch (RejectedExecutionException ex)
+                {
+                    // 执行器已关闭，任务仍持有许可，在当前线程执行以便其归还
+                    task.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 当前上限
+     */
+    public int getLimit()
+    {
+        return (int) limit;
+    }
+
+    /**
+     * @return 持有许可的请求数
+     */
+    public int getInFlight()
+    {
+        return inFlight;
+    }
+
+    /**
+     * @return 排队等待许可的请求数
+     */
+    public int getQueueDepth()
+    {
+        lock.lock();
+        try
+        {
+            return queue.size();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 因达到上限或队列已满被拒绝的请求数
+     */
+    public long getRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * @return 短期平滑往返时间(纳秒)，尚无样本时为0
+     */
+    public long getShortRtt()
+    {
+        return (long) shortRtt;
+    }
+
+    /**
+     * @return 长期平滑往返时间(纳秒)，尚无样本时为0
+     */
+    public long getLongRtt()
+    {
+        return (long) longRtt;
+    }
+
+    @Override
+    public String toString()
+    {
+        lock.lock();
+        try
+        {
+            return "ConcurrencyLimiter{limit=" + getLimit() + ", inFlight=" + inFlight + ", queue=" + queue.size()
+                    + ", rejected=" + rejected + ", shortRtt=" + TimeUnit.NANOSECONDS.toMicros((long) shortRtt)
+                    + "us, longRtt=" + TimeUnit.NANOSECONDS.toMicros((long) longRtt) + "us}";
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+}
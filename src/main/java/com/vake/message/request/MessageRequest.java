@@ -40,34 +40,107 @@ public class MessageRequest extends Request
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageRequest.class);
 
-    private static final String FLAG = "#";
-
     /**
      * 缺省超时时间(毫秒)
      */
     public static final int DEFAULT_TIME_OUT = 5000;
 
-    public MessageRequest(String id, Message message, long timeoutMillis)
+    // (sessionId, serial)打包后的键，请求ID即其装箱值
+    private final long key;
+
+    // 异步请求的结果，同步请求为null
+    private MessageResponseFuture future;
+
+    // 分段响应的消费者，普通请求为null
+    private volatile PartConsumer partConsumer;
+
+    public MessageRequest(long key, Message message, long timeoutMillis)
+    {
+        this(key, message, true, timeoutMillis);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param useResponseQueue 是否将响应放入队列供awaitResponse读取，异步请求不需要
+     */
+    public MessageRequest(long key, Message message, boolean useResponseQueue, long timeoutMillis)
     {
-        super(id, message, true, timeoutMillis);
+        super(key, message, useResponseQueue, timeoutMillis);
+        this.key = key;
     }
 
-    public MessageRequest(String id, Message message, long timeout, TimeUnit unit)
+    public MessageRequest(long key, Message message, long timeout, TimeUnit unit)
     {
-        super(id, message, true, timeout, unit);
+        super(key, message, true, timeout, unit);
+        this.key = key;
     }
 
-    public static String generateKey(int sessionId, long serial)
+    public long getKey()
     {
-        String key = sessionId + FLAG + serial;
         return key;
     }
 
+    public MessageResponseFuture getFuture()
+    {
+        return future;
+    }
+
+    public PartConsumer getPartConsumer()
+    {
+        return partConsumer;
+    }
+
+    /**
+     * 设置后响应的每一段(包括最后一段)都交给consumer，发出请求前设置
+     *
+     * @param partConsumer 分段响应的消费者
+     */
+    public void setPartConsumer(PartConsumer partConsumer)
+    {
+        this.partConsumer = partConsumer;
+    }
+
+    public static long generateKey(int sessionId, int serial)
+    {
+        return RequestCorrelationTable.pack(sessionId, serial);
+    }
+
     public static MessageRequest createRequest(int sessionId, Message sendingMessage)
     {
-        final long serial = sendingMessage.getSerial();
-        final String key = generateKey(sessionId, serial);
+        final long key = generateKey(sessionId, sendingMessage.getSerial());
         final MessageRequest request = new MessageRequest(key, sendingMessage, DEFAULT_TIME_OUT);
         return request;
     }
-}
\ No newline at end of file
+
+    /**
+     * 创建异步请求，响应或超时事件直接完成其future，不需要线程等待
+     *
+     * @param sessionId      客户端唯一标识
+     * @param sendingMessage 请求消息
+     * @param inspector      请求完成时从中移除请求ID
+     * @return 请求
+     */
+    public static MessageRequest createAsyncRequest(int sessionId, Message sendingMessage, MessageResponseInspector inspector)
+    {
+        return createAsyncRequest(sessionId, sendingMessage, inspector, DEFAULT_TIME_OUT);
+    }
+
+    /**
+     * 创建指定超时时间的异步请求
+     *
+     * @param sessionId      客户端唯一标识
+     * @param sendingMessage 请求消息
+     * @param inspector      请求完成时从中移除请求ID
+     * @param timeoutMillis  超时时间(毫秒)
+     * @return 请求
+     */
+    public static MessageRequest createAsyncRequest(int sessionId, Message sendingMessage, MessageResponseInspector inspector,
+                                                    long timeoutMillis)
+    {
+        final long key = generateKey(sessionId, sendingMessage.getSerial());
+        final MessageRequest request = new MessageRequest(key, sendingMessage, false, timeoutMillis);
+        request.future = new MessageResponseFuture(request, inspector);
+        return request;
+    }
+}
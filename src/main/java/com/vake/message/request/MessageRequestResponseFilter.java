@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.reqres.Request;
+import org.apache.mina.filter.reqres.RequestResponseFilter;
+import org.apache.mina.filter.reqres.ResponseInspector;
+
+/**
+ * 可以撤销请求的RequestResponseFilter<p/>
+ * 调用方在RequestResponseFilter超时之前已经结束的请求(批量期限到达、取消、等待超时)，
+ * 用{@link #forget(IoSession, Request)}从会话的请求存储中移除，之后到期的超时任务找不到该请求，不再触发RequestTimeoutException。
+ * 父类的存储是私有的会话属性，这里在创建存储时另存一份引用；父类以存储本身为monitor同步，移除时也同样加锁
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class MessageRequestResponseFilter extends RequestResponseFilter
+{
+    private final AttributeKey requestStoreKey = new AttributeKey(getClass(), "requestStore");
+
+    private final AttributeKey unrespondedStoreKey = new AttributeKey(getClass(), "unrespondedRequestStore");
+
+    public MessageRequestResponseFilter(ResponseInspector inspector, ScheduledExecutorService timeoutScheduler)
+    {
+        super(inspector, timeoutScheduler);
+    }
+
+    @Override
+    protected Map<Object, Request> createRequestStore(IoSession session)
+    {
+        final Map<Object, Request> store = super.createRequestStore(session);
+        session.setAttribute(requestStoreKey, store);
+        return store;
+    }
+
+    @Override
+    protected Set<Request> createUnrespondedRequestStore(IoSession session)
+    {
+        final Set<Request> store = super.createUnrespondedRequestStore(session);
+        session.setAttribute(unrespondedStoreKey, store);
+        return store;
+    }
+
+    /**
+     * 从会话的请求存储中移除请求，请求已被响应或已超时时不做任何事
+     *
+     * @param session 发出请求的会话
+     * @param request 请求
+     * @return 请求是否仍在存储中并被移除
+     */
+    @SuppressWarnings("unchecked")
+    public boolean forget(IoSession session, Request request)
+    {
+        final Set<Request> unresponded = (Set<Request>) session.getAttribute(unrespondedStoreKey);
+        if (null != unresponded)
+        {
+            synchronized (unresponded)
+            {
+                unresponded.remove(request);
+            }
+        }
+        final Map<Object, Request> store = (Map<Object, Request>) session.getAttribute(requestStoreKey);
+        if (null == store)
+        {
+            return false;
+        }
+        synchronized (store)
+        {
+            if (store.get(request.getId()) != request)
+            {
+                return false;
+            }
+            store.remove(request.getId());
+            return true;
+        }
+    }
+}
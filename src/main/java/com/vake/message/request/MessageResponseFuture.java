@@ -0,0 +1,253 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+import com.vake.message.RequestCancelled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 异步请求的结果<p/>
+ * 由RequestResponseFilter投递的响应或超时事件完成，不占用等待线程；
+ * 完成时同时从MessageResponseInspector中移除请求ID
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class MessageResponseFuture implements Future<Message>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageResponseFuture.class);
+
+    private final MessageRequest request;
+
+    private final MessageResponseInspector inspector;
+
+    // 只使用j.u.c的同步器等待，不在monitor上阻塞
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private volatile boolean done;
+
+    private volatile boolean cancelled;
+
+    private volatile Message response;
+
+    private volatile DeviceResponseTimeout failure;
+
+    // 保护done和callbacks；不用synchronized，虚拟线程在此竞争时不会钉住载体线程
+    private final Lock lock = new ReentrantLock();
+
+    // 受lock保护，完成后置为null
+    private List<ResponseCallback> callbacks;
+
+    MessageResponseFuture(MessageRequest request, MessageResponseInspector inspector)
+    {
+        this.request = request;
+        this.inspector = inspector;
+    }
+
+    public MessageRequest getRequest()
+    {
+        return request;
+    }
+
+    /**
+     * 注册完成回调，若已完成则在当前线程立即回调
+     *
+     * @param callback 回调
+     */
+    public void addCallback(ResponseCallback callback)
+    {
+        lock.lock();
+        try
+        {
+            if (!done)
+            {
+                if (null == callbacks)
+                {
+                    callbacks = new ArrayList<ResponseCallback>(1);
+                }
+                callbacks.add(callback);
+                return;
+            }
+        } finally
+        {
+            lock.unlock();
+        }
+        notifyCallback(callback);
+    }
+
+    public boolean setResponse(Message response)
+    {
+        return complete(response, null, false);
+    }
+
+    public boolean setFailure(DeviceResponseTimeout failure)
+    {
+        return complete(null, failure, false);
+    }
+
+    private boolean complete(Message response, DeviceResponseTimeout failure, boolean cancelled)
+    {
+        final List<ResponseCallback> toNotify;
+        lock.lock();
+        try
+        {
+            if (done)
+            {
+                return false;
+            }
+            this.response = response;
+            this.failure = failure;
+            this.cancelled = cancelled;
+            done = true;
+            toNotify = callbacks;
+            callbacks = null;
+        } finally
+        {
+            lock.unlock();
+        }
+        inspector.removeRequestId(request);
+        // 先回调再唤醒等待方，等待方返回时回调维护的状态(如会话的在途请求数)已经更新
+        if (null != toNotify)
+        {
+            for (ResponseCallback callback : toNotify)
+            {
+                notifyCallback(callback);
+            }
+        }
+        latch.countDown();
+        return true;
+    }
+
+    private void notifyCallback(ResponseCallback callback)
+    {
+        try
+        {
+            if (null != failure)
+            {
+                callback.onFailure(failure);
+            } else
+            {
+                callback.onResponse(response);
+            }
+        } catch (RuntimeException ex)
+        {
+            LOGGER.error("response callback failed, request={}", request, ex);
+        }
+    }
+
+    /**
+     * 阻塞等待响应，超时或被中断时以DeviceResponseTimeout结束该请求
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return 响应消息
+     * @throws DeviceResponseTimeout 超时、中断或请求失败
+     */
+    public Message await(long timeout, TimeUnit unit) throws DeviceResponseTimeout
+    {
+        try
+        {
+            if (!latch.await(timeout, unit))
+            {
+                setFailure(new DeviceResponseTimeout("request is time out, request=" + request));
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            setFailure(new RequestCancelled("thread interrupted while waiting response, request=" + request));
+        }
+        if (null != failure)
+        {
+            throw failure;
+        }
+        return response;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return complete(null, new RequestCancelled("request is cancelled, request=" + request), true);
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    public boolean isDone()
+    {
+        return done;
+    }
+
+    public Message get() throws InterruptedException, ExecutionException
+    {
+        latch.await();
+        return getNow();
+    }
+
+    public Message get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if (!latch.await(timeout, unit))
+        {
+            throw new TimeoutException();
+        }
+        return getNow();
+    }
+
+    private Message getNow() throws ExecutionException
+    {
+        if (cancelled)
+        {
+            throw new CancellationException();
+        }
+        if (null != failure)
+        {
+            throw new ExecutionException(failure);
+        }
+        return response;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MessageResponseFuture{" +
+                "request=" + request +
+                ", done=" + done +
+                ", cancelled=" + cancelled +
+                '}';
+    }
+}
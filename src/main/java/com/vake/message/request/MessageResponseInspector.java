@@ -19,12 +19,12 @@
  */
 package com.vake.message.request;
 
-import java.util.Set;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.vake.message.Message;
 import org.apache.mina.filter.reqres.ResponseInspector;
 import org.apache.mina.filter.reqres.ResponseType;
-import org.apache.mina.util.ConcurrentHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,48 +42,128 @@ public class MessageResponseInspector implements ResponseInspector
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageResponseInspector.class);
 
-    private final Set requestIdSet = new ConcurrentHashSet<Object>();
+    // 登记和移除的加锁分段数
+    private static final int LOCKS = 16;
 
-    public void addRequestId(Object requestId)
+    // 以打包后的(sessionId, serial)为键，值中的请求ID对象在响应匹配时原样返回给RequestResponseFilter
+    private final RequestCorrelationTable<Registration> requestIds = new RequestCorrelationTable<Registration>();
+
+    // 计数的增减需要先读后写，按键分段加锁；查找不加锁
+    private final ReentrantLock[] locks = new ReentrantLock[LOCKS];
+
+    public MessageResponseInspector()
+    {
+        for (int i = 0; i < LOCKS; i++)
+        {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 登记请求ID。检查器由各会话共享，不同设备上的请求可能有相同的(sessionId, serial)，
+     * 同一个键按在途请求数计数，全部完成后才移除；响应属于哪个请求由收到它的会话自己的请求存储决定
+     *
+     * @param request 请求
+     */
+    public void addRequestId(MessageRequest request)
+    {
+        final long key = request.getKey();
+        final ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try
+        {
+            final Registration existed = requestIds.get(key);
+            if (null == existed)
+            {
+                requestIds.put(key, new Registration(request.getId()));
+                return;
+            }
+            existed.count++;
+            LOGGER.debug("requestId={} is in flight {} times", existed.id, existed.count);
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 一次登记一批请求ID，全部登记后再发出请求
+     *
+     * @param requests 请求
+     */
+    public void addRequestIds(Collection<MessageRequest> requests)
     {
-        final boolean existed = requestIdSet.add(requestId);
-        if (!existed)
+        for (MessageRequest request : requests)
         {
-            LOGGER.warn("requestId={} is existed", requestId);
+            addRequestId(request);
         }
     }
 
-    public void removeRequestId(Object requestId)
+    public void removeRequestId(MessageRequest request)
     {
-        final boolean existed = requestIdSet.remove(requestId);
-        if (!existed)
+        final long key = request.getKey();
+        final ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try
+        {
+            final Registration existed = requestIds.get(key);
+            if (null == existed)
+            {
+                LOGGER.warn("requestId={} is not existed", request.getId());
+            } else if (0 == --existed.count)
+            {
+                requestIds.remove(key);
+            }
+        } finally
         {
-            LOGGER.warn("requestId={} is not existed", requestId);
+            lock.unlock();
         }
     }
 
+    private ReentrantLock lockFor(long key)
+    {
+        return locks[(int) (key ^ key >>> 32) & (LOCKS - 1)];
+    }
+
     public Object getRequestId(Object data)
     {
         if (data instanceof Message)
         {
             final Message property = (Message) data;
-            // 
-            final int sessionId = property.getSessionId();
-            final String requestId = MessageRequest.generateKey(sessionId, property.getSerial());
-            return requestIdSet.contains(requestId) ? requestId : null;
+            // 查找过程不创建任何对象
+            final Registration registration =
+                    requestIds.get(MessageRequest.generateKey(property.getSessionId(), property.getSerial()));
+            return null == registration ? null : registration.id;
         }
         return null;
     }
 
     /**
-     * 仅支持包不大的情况，一个包包含一整条完整的消息
-     * @param message
-     * @return
+     * 一个包包含一整条完整的消息；带{@link Message#FLAG_PARTIAL}的是分段响应的一段，
+     * 带{@link Message#FLAG_MORE}时之后还有分段，否则为最后一段
+     *
+     * @param message 响应消息
+     * @return 响应类型
      */
     public ResponseType getResponseType(Object message)
     {
+        if (message instanceof Message && ((Message) message).hasFlag(Message.FLAG_PARTIAL))
+        {
+            return ((Message) message).hasFlag(Message.FLAG_MORE) ? ResponseType.PARTIAL : ResponseType.PARTIAL_LAST;
+        }
         return ResponseType.WHOLE;
     }
 
+    // 一个键上的请求ID及其在途请求数，计数受键所在分段的锁保护
+    private static final class Registration
+    {
+        private final Object id;
+
+        private int count = 1;
 
+        Registration(Object id)
+        {
+            this.id = id;
+        }
+    }
 }
\ No newline at end of file
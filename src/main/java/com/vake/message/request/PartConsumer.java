@@ -0,0 +1,44 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import com.vake.message.Message;
+
+/**
+ * 分段响应的消费者<p/>
+ * 各段按到达顺序在响应处理线程中逐个回调，包括最后一段；回调返回前同一会话的后续分段不会投递，
+ * 消费慢时由{@link com.vake.ReadThrottle}暂停读取，内存中只保留有限个分段
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public interface PartConsumer
+{
+    /**
+     * 收到一段响应
+     *
+     * @param part 响应分段，最后一段不带{@link Message#FLAG_MORE}
+     */
+    void onPart(Message part);
+}
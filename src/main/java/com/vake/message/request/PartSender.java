@@ -0,0 +1,384 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vake.message.Message;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分段响应的发送窗口<p/>
+ * 按段序号依次写出一个请求的各段，写出的段序号不超过接收方允许的上限；超出的分段在内存中排队，
+ * 收到接收方的窗口确认({@link Message#FLAG_ACK})后继续写出。接收方暂停读取时发送方随之停止，
+ * 不会把数据报灌进接收方的socket缓冲区而被内核丢弃。收到第一个确认之前按构造时的窗口发送，
+ * 应与接收方的{@link com.vake.ReadThrottle}窗口一致。确认是累积的，丢失的确认由之后的确认或接收方定时重发的确认弥补。
+ * 接收方放弃请求时发来不带内容的确认(见{@link #newCancel(int, int)})，发送方随即关闭；超过空闲期限既没有确认也没有
+ * 提交新分段的发送方在会话收到确认、开始新的发送、空闲或关闭时关闭，不会一直留在会话上<p/>
+ * 发送方会话的过滤器链中需在编解码器之后加入{@link #getAckFilter()}，确认消息不再交给处理器
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class PartSender
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartSender.class);
+
+    // 会话上正在发送的分段响应，键为请求键
+    private static final AttributeKey SENDERS = new AttributeKey(PartSender.class, "senders");
+
+    // 确认内容：允许写出的段序号上限
+    private static final int ACK_LENGTH = 4;
+
+    /**
+     * 缺省空闲期限(毫秒)，接收方等待分段期间定时重发确认，正常的请求不会空闲这么久
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = MessageRequest.DEFAULT_TIME_OUT;
+
+    private static final IoFilter ACK_FILTER = new IoFilterAdapter()
+    {
+        @Override
+        public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+        {
+            if (message instanceof Message && ((Message) message).hasFlag(Message.FLAG_ACK))
+            {
+                final Message ack = (Message) message;
+                acknowledged(session, ack);
+                ack.release();
+                return;
+            }
+            nextFilter.messageReceived(session, message);
+        }
+
+        @Override
+        public void sessionIdle(NextFilter nextFilter, IoSession session, IdleStatus status) throws Exception
+        {
+            expireIdle(session, System.nanoTime());
+            nextFilter.sessionIdle(session, status);
+        }
+
+        @Override
+        public void sessionClosed(NextFilter nextFilter, IoSession session) throws Exception
+        {
+            for (PartSender sender : sendersOf(session).values())
+            {
+                sender.close();
+            }
+            nextFilter.sessionClosed(session);
+        }
+    };
+
+    private final IoSession session;
+
+    private final int sessionId;
+
+    private final int serial;
+
+    private final long key;
+
+    private final long idleTimeoutNanos;
+
+    private final Lock lock = new ReentrantLock();
+
+    // 超出窗口等待写出的分段
+    private final Queue<Message> queued = new ArrayDeque<>();
+
+    // 下一段的序号
+    private int nextIndex;
+
+    // 允许写出的段序号上限(不含)
+    private int limit;
+
+    // 最后一段是否已提交
+    private boolean last;
+
+    // 最近一次收到确认或提交分段的时间
+    private volatile long activeAt = System.nanoTime();
+
+    private PartSender(IoSession session, Message request, int window, long idleTimeoutMillis)
+    {
+        this.session = session;
+        this.sessionId = request.getSessionId();
+        this.serial = request.getSerial();
+        this.key = MessageRequest.generateKey(sessionId, serial);
+        this.limit = window;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    /**
+     * 开始发送请求的分段响应，空闲期限为{@link #DEFAULT_IDLE_TIMEOUT}
+     *
+     * @param session 收到请求的会话
+     * @param request 请求消息，各段沿用其(sessionId, serial)
+     * @param window  收到确认之前最多写出的分段数
+     * @return 发送窗口
+     */
+    public static PartSender open(IoSession session, Message request, int window)
+    {
+        return open(session, request, window, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * 开始发送请求的分段响应
+     *
+     * @param session 收到请求的会话
+     * @param request 请求消息，各段沿用其(sessionId, serial)
+     * @param window  收到确认之前最多写出的分段数
+     * @param idleTimeoutMillis 既没有确认也没有提交分段超过此时间(毫秒)即关闭，丢弃尚未写出的分段
+     * @return 发送窗口
+     */
+    public static PartSender open(IoSession session, Message request, int window, long idleTimeoutMillis)
+    {
+        if (window <= 0 || idleTimeoutMillis <= 0)
+        {
+            throw new IllegalArgumentException("window and idleTimeout must be positive, window=" + window
+                    + ", idleTimeout=" + idleTimeoutMillis);
+        }
+        expireIdle(session, System.nanoTime());
+        final PartSender sender = new PartSender(session, request, window, idleTimeoutMillis);
+        sendersOf(session).put(sender.key, sender);
+        return sender;
+    }
+
+    /**
+     * @return 放在发送方编解码器之后的过滤器，处理窗口确认
+     */
+    public static IoFilter getAckFilter()
+    {
+        return ACK_FILTER;
+    }
+
+    /**
+     * 创建窗口确认，由分段的接收方写出
+     *
+     * @param sessionId 客户端唯一标识
+     * @param serial    请求的流水号
+     * @param limit     允许写出的段序号上限(不含)
+     * @return 确认消息
+     */
+    public static Message newAck(int sessionId, int serial, int limit)
+    {
+        final Message ack = new Message();
+        ack.setSessionId(sessionId);
+        ack.setSerial(serial);
+        ack.setFlags(Message.FLAG_ACK);
+        final IoBuffer content = IoBuffer.allocate(ACK_LENGTH, false);
+        content.putInt(0, limit);
+        ack.setContentBytes(content.array(), 0, ACK_LENGTH);
+        ack.setContentLength(ACK_LENGTH);
+        return ack;
+    }
+
+    /**
+     * 创建取消确认，由放弃请求的接收方写出，发送方收到后关闭，不再写出剩余的分段
+     *
+     * @param sessionId 客户端唯一标识
+     * @param serial    请求的流水号
+     * @return 不带内容的确认消息
+     */
+    public static Message newCancel(int sessionId, int serial)
+    {
+        final Message cancel = new Message();
+        cancel.setSessionId(sessionId);
+        cancel.setSerial(serial);
+        cancel.setFlags(Message.FLAG_ACK);
+        return cancel;
+    }
+
+    /**
+     * 提交一段，窗口内直接写出，否则排队等待确认；分段的(sessionId, serial)、段序号和标志位由本方法设置
+     *
+     * @param part 分段
+     * @param last 是否为最后一段
+     * @throws IllegalStateException 最后一段已提交
+     */
+    public void send(Message part, boolean last)
+    {
+        part.setSessionId(sessionId);
+        part.setSerial(serial);
+        part.setFlags(part.getFlags() & ~Message.FLAG_MORE | Message.FLAG_PARTIAL | (last ? 0 : Message.FLAG_MORE));
+        lock.lock();
+        try
+        {
+            if (this.last)
+            {
+                throw new IllegalStateException("the last part is already sent, serial=" + serial);
+            }
+            part.setPartIndex(nextIndex++);
+            this.last = last;
+            activeAt = System.nanoTime();
+            // 在锁内写出，各段按序号进入写队列
+            if (queued.isEmpty() && part.getPartIndex() < limit)
+            {
+                session.write(part);
+            } else
+            {
+                queued.add(part);
+            }
+            finishIfDone();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 等待确认的分段数
+     */
+    public int getQueued()
+    {
+        lock.lock();
+        try
+        {
+            return queued.size();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 是否仍在会话上等待写出分段，最后一段写出或关闭后为false
+     */
+    public boolean isOpen()
+    {
+        return sendersOf(session).get(key) == this;
+    }
+
+    /**
+     * 放弃尚未写出的分段，接收方将以超时结束请求
+     */
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            queued.clear();
+            last = true;
+            finishIfDone();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void onAck(int newLimit)
+    {
+        activeAt = System.nanoTime();
+        lock.lock();
+        try
+        {
+            // 确认可能乱序到达，上限只增不减
+            if (newLimit - limit <= 0)
+            {
+                return;
+            }
+            limit = newLimit;
+            while (!queued.isEmpty() && queued.peek().getPartIndex() < limit)
+            {
+                session.write(queued.poll());
+            }
+            finishIfDone();
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    // 最后一段写出后不再需要确认
+    private void finishIfDone()
+    {
+        if (last && queued.isEmpty())
+        {
+            sendersOf(session).remove(key, this);
+        }
+    }
+
+    private static void acknowledged(IoSession session, Message ack)
+    {
+        expireIdle(session, System.nanoTime());
+        final PartSender sender = sendersOf(session).get(MessageRequest.generateKey(ack.getSessionId(), ack.getSerial()));
+        if (null == sender)
+        {
+            LOGGER.debug("no parts are waiting for the ack, ack={}", ack);
+            return;
+        }
+        if (0 == ack.getContentBytesLength())
+        {
+            LOGGER.debug("receiver gave up, close the sender, ack={}", ack);
+            sender.close();
+            return;
+        }
+        if (ack.getContentBytesLength() < ACK_LENGTH)
+        {
+            LOGGER.warn("invalid ack from {}, ack={}", session.getRemoteAddress(), ack);
+            return;
+        }
+        sender.onAck(IoBuffer.wrap(ack.getContentBytes(), ack.getContentOffset(), ACK_LENGTH).getInt());
+    }
+
+    // 关闭空闲超时的发送方，接收方已放弃而取消确认又丢失时不会一直占着排队的分段
+    private static void expireIdle(IoSession session, long now)
+    {
+        for (PartSender sender : sendersOf(session).values())
+        {
+            if (now - sender.activeAt - sender.idleTimeoutNanos >= 0)
+            {
+                LOGGER.warn("part sender is idle for {} ms, close it, serial={}, queued={}",
+                        TimeUnit.NANOSECONDS.toMillis(now - sender.activeAt), sender.serial, sender.getQueued());
+                sender.close();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<Long, PartSender> sendersOf(IoSession session)
+    {
+        ConcurrentMap<Long, PartSender> senders = (ConcurrentMap<Long, PartSender>) session.getAttribute(SENDERS);
+        if (null == senders)
+        {
+            senders = new ConcurrentHashMap<>();
+            final ConcurrentMap<Long, PartSender> existing =
+                    (ConcurrentMap<Long, PartSender>) session.setAttributeIfAbsent(SENDERS, senders);
+            if (null != existing)
+            {
+                senders = existing;
+            }
+        }
+        return senders;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 以64位long为键的请求关联表<p/>
+ * 分段加锁的开放寻址(线性探测)哈希表，键直接存放在long[]中，增删查都不装箱、不拼接字符串、不分配对象
+ * (仅扩容时分配新数组)。删除采用后移(backward shift)方式，不留墓碑
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class RequestCorrelationTable<V>
+{
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final Segment[] segments;
+
+    private final int segmentShift;
+
+    public RequestCorrelationTable()
+    {
+        this(DEFAULT_SEGMENTS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param segmentCount    分段数，向上取整为2的幂
+     * @param initialCapacity 预期容量，平均分配到各分段
+     */
+    public RequestCorrelationTable(int segmentCount, int initialCapacity)
+    {
+        final int count = tableSizeFor(Math.max(1, segmentCount));
+        segments = new Segment[count];
+        segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+        final int perSegment = Math.max(initialCapacity / count, 16);
+        for (int i = 0; i < count; i++)
+        {
+            segments[i] = new Segment(tableSizeFor(perSegment * 2));
+        }
+    }
+
+    /**
+     * 将sessionId和serial打包成64位键
+     */
+    public static long pack(int sessionId, int serial)
+    {
+        return ((long) sessionId << 32) | (serial & 0xFFFFFFFFL);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        if (null == value)
+        {
+            throw new IllegalArgumentException("value can't be null");
+        }
+        final long hash = mix(key);
+        return (V) segmentFor(hash).put(key, hash, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        final long hash = mix(key);
+        return (V) segmentFor(hash).get(key, hash);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        final long hash = mix(key);
+        return (V) segmentFor(hash).remove(key, hash);
+    }
+
+    public boolean containsKey(long key)
+    {
+        return null != get(key);
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            segment.lock.lock();
+            try
+            {
+                size += segment.size;
+            } finally
+            {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    private Segment segmentFor(long hash)
+    {
+        // 高位选分段，低位选槽位，二者互不相关
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    // murmur3 fmix64
+    private static long mix(long key)
+    {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int tableSizeFor(int n)
+    {
+        final int highest = Integer.highestOneBit(n);
+        return highest == n ? n : highest << 1;
+    }
+
+    // 用ReentrantLock而不是synchronized，虚拟线程在分段上竞争时不会钉住载体线程
+    private static final class Segment
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private long[] keys;
+
+        // 槽位为空当且仅当values[i] == null
+        private Object[] values;
+
+        private int mask;
+
+        private int size;
+
+        private int threshold;
+
+        Segment(int capacity)
+        {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity)
+        {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            // 负载因子0.5，保证线性探测的探测长度较短
+            threshold = capacity >>> 1;
+        }
+
+        Object put(long key, long hash, Object value)
+        {
+            lock.lock();
+            try
+            {
+                int index = (int) hash & mask;
+                Object current;
+                while (null != (current = values[index]))
+                {
+                    if (keys[index] == key)
+                    {
+                        values[index] = value;
+                        return current;
+                    }
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = value;
+                if (++size > threshold)
+                {
+                    rehash();
+                }
+                return null;
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+
+        Object get(long key, long hash)
+        {
+            lock.lock();
+            try
+            {
+                int index = (int) hash & mask;
+                Object current;
+                while (null != (current = values[index]))
+                {
+                    if (keys[index] == key)
+                    {
+                        return current;
+                    }
+                    index = (index + 1) & mask;
+                }
+                return null;
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+
+        Object remove(long key, long hash)
+        {
+            lock.lock();
+            try
+            {
+                int index = (int) hash & mask;
+                Object current;
+                while (null != (current = values[index]))
+                {
+                    if (keys[index] == key)
+                    {
+                        shiftBack(index);
+                        size--;
+                        return current;
+                    }
+                    index = (index + 1) & mask;
+                }
+                return null;
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+
+        void clear()
+        {
+            lock.lock();
+            try
+            {
+                Arrays.fill(values, null);
+                size = 0;
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+
+        // 删除后将同一探测链上后续的元素前移，保持查找不被空槽截断
+        private void shiftBack(int hole)
+        {
+            int index = hole;
+            while (true)
+            {
+                index = (index + 1) & mask;
+                final Object value = values[index];
+                if (null == value)
+                {
+                    break;
+                }
+                final long key = keys[index];
+                final int ideal = (int) mix(key) & mask;
+                // ideal不在(hole, index]区间内时，该元素可以移动到hole
+                if (((index - ideal) & mask) >= ((index - hole) & mask))
+                {
+                    keys[hole] = key;
+                    values[hole] = value;
+                    hole = index;
+                }
+            }
+            values[hole] = null;
+        }
+
+        private void rehash()
+        {
+            final long[] oldKeys = keys;
+            final Object[] oldValues = values;
+            allocate(oldKeys.length << 1);
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                final Object value = oldValues[i];
+                if (null != value)
+                {
+                    final long key = oldKeys[i];
+                    int index = (int) mix(key) & mask;
+                    while (null != values[index])
+                    {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = key;
+                    values[index] = value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+
+/**
+ * 异步请求完成回调<p/>
+ * 回调在完成请求的线程中执行(响应处理线程或超时调度线程)，实现中不应有阻塞操作
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public interface ResponseCallback
+{
+    /**
+     * 收到响应
+     *
+     * @param response 响应消息
+     */
+    void onResponse(Message response);
+
+    /**
+     * 请求失败(超时、会话不可用或被取消)
+     *
+     * @param cause 失败原因
+     */
+    void onFailure(DeviceResponseTimeout cause);
+}
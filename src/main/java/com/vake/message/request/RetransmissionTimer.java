@@ -0,0 +1,229 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一个设备的UDP重传超时(RTO)计算与重传预算<p/>
+ * 按RFC 6298由平滑往返时间SRTT和往返时间偏差RTTVAR计算RTO = SRTT + max(G, 4 * RTTVAR)，限制在[minRto, {@link #MAX_RTO}]内，
+ * 尚无样本时为{@link #DEFAULT_INITIAL_RTO}。按Karn算法只用未重传过的请求采样；重传超时后RTO至少翻倍，
+ * 直到下一个有效样本重新计算。<p/>
+ * 重传预算防止设备不可达时重传放大流量：预算最多积累{@link #BUDGET_MAX}次重传，之后每{@link #REQUESTS_PER_RETRANSMIT}个新请求才允许一次重传
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class RetransmissionTimer
+{
+    /**
+     * 尚无往返时间样本时的RTO(毫秒)
+     */
+    public static final long DEFAULT_INITIAL_RTO = 1000;
+
+    /**
+     * RTO下限(毫秒)，设备多在局域网内，低于RFC建议的1秒
+     */
+    public static final long DEFAULT_MIN_RTO = 200;
+
+    /**
+     * RTO上限(毫秒)
+     */
+    public static final long MAX_RTO = 60000;
+
+    public static final int REQUESTS_PER_RETRANSMIT = 10;
+
+    public static final int BUDGET_MAX = 10;
+
+    // 时钟粒度G，由调度器的tick决定
+    private static final long GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(TimingWheelScheduler.DEFAULT_TICK_MILLIS);
+
+    private final long minRtoNanos;
+
+    private final Lock lock = new ReentrantLock();
+
+    // 纳秒，0表示尚无样本
+    private volatile long srtt;
+
+    private volatile long rttvar;
+
+    private volatile long rto;
+
+    // 以请求数计的预算，一次重传消耗REQUESTS_PER_RETRANSMIT
+    private int budget = BUDGET_MAX * REQUESTS_PER_RETRANSMIT;
+
+    private volatile long retransmits;
+
+    public RetransmissionTimer()
+    {
+        this(DEFAULT_MIN_RTO);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param minRtoMillis RTO下限(毫秒)
+     */
+    public RetransmissionTimer(long minRtoMillis)
+    {
+        if (minRtoMillis <= 0)
+        {
+            throw new IllegalArgumentException("minRto must be positive: " + minRtoMillis);
+        }
+        this.minRtoNanos = TimeUnit.MILLISECONDS.toNanos(minRtoMillis);
+        this.rto = Math.max(minRtoNanos, TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_RTO));
+    }
+
+    /**
+     * 未重传过的请求收到响应
+     *
+     * @param rttNanos 往返时间
+     */
+    public void onRtt(long rttNanos)
+    {
+        lock.lock();
+        try
+        {
+            if (0 == srtt)
+            {
+                srtt = rttNanos;
+                rttvar = rttNanos / 2;
+            } else
+            {
+                // RTTVAR = 3/4 RTTVAR + 1/4 |SRTT - R'|, SRTT = 7/8 SRTT + 1/8 R'
+                rttvar = rttvar - (rttvar >> 2) + (Math.abs(srtt - rttNanos) >> 2);
+                srtt = srtt - (srtt >> 3) + (rttNanos >> 3);
+            }
+            rto = bound(srtt + Math.max(GRANULARITY_NANOS, 4 * rttvar));
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求等待expiredRto后仍未收到响应，设备的RTO至少翻倍
+     *
+     * @param expiredRtoNanos 该请求本次等待的时间
+     */
+    public void backoff(long expiredRtoNanos)
+    {
+        lock.lock();
+        try
+        {
+            rto = bound(Math.max(rto, expiredRtoNanos * 2));
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 发出新请求，存入重传预算
+     */
+    public void onRequest()
+    {
+        lock.lock();
+        try
+        {
+            if (budget < BUDGET_MAX * REQUESTS_PER_RETRANSMIT)
+            {
+                budget++;
+            }
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 申请一次重传
+     *
+     * @return 预算是否允许
+     */
+    public boolean tryRetransmit()
+    {
+        lock.lock();
+        try
+        {
+            if (budget < REQUESTS_PER_RETRANSMIT)
+            {
+                return false;
+            }
+            budget -= REQUESTS_PER_RETRANSMIT;
+            retransmits++;
+            return true;
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private long bound(long nanos)
+    {
+        return Math.min(TimeUnit.MILLISECONDS.toNanos(MAX_RTO), Math.max(minRtoNanos, nanos));
+    }
+
+    /**
+     * @return 当前RTO(纳秒)
+     */
+    public long getRto()
+    {
+        return rto;
+    }
+
+    /**
+     * @return 平滑往返时间(纳秒)，尚无样本时为0
+     */
+    public long getSrtt()
+    {
+        return srtt;
+    }
+
+    /**
+     * @return 往返时间偏差(纳秒)
+     */
+    public long getRttvar()
+    {
+        return rttvar;
+    }
+
+    /**
+     * @return 累计重传次数
+     */
+    public long getRetransmits()
+    {
+        return retransmits;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RetransmissionTimer{rto=" + TimeUnit.NANOSECONDS.toMillis(rto) + "ms, srtt="
+                + TimeUnit.NANOSECONDS.toMicros(srtt) + "us, rttvar=" + TimeUnit.NANOSECONDS.toMicros(rttvar)
+                + "us, retransmits=" + retransmits + '}';
+    }
+}
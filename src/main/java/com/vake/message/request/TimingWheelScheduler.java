@@ -0,0 +1,551 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于哈希时间轮的超时调度器<p/>
+ * 用于替代RequestResponseFilter使用的ScheduledThreadPoolExecutor：登记和取消都是O(1)，
+ * 由单个tick线程推进时间轮，每个tick到期的所有任务批量执行(请求超时即在此抛出RequestTimeoutException，
+ * 最终转换为DeviceResponseTimeout)。超时精度为一个tick。<p/>
+ * 只支持一次性延时任务，不支持scheduleAtFixedRate/scheduleWithFixedDelay；关闭时未到期的任务直接丢弃
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class TimingWheelScheduler extends AbstractExecutorService implements ScheduledExecutorService
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /**
+     * 缺省tick间隔(毫秒)
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * 缺省时间轮槽数，配合缺省tick一圈约5秒，与请求缺省超时时间相当
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    // 每个tick最多从登记队列转入时间轮的任务数，防止突发登记拖慢tick
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private static final int RUNNING = 0;
+
+    private static final int SHUTDOWN = 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    // 登记和取消都只入队，由tick线程处理，时间轮本身只被tick线程访问
+    private final Queue<WheelTimeout<?>> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout<?>>();
+
+    private final Queue<WheelTimeout<?>> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout<?>>();
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    // 当前tick到期的任务，批量执行后复用
+    private final List<WheelTimeout<?>> expired = new ArrayList<WheelTimeout<?>>();
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private final Thread worker;
+
+    private final long startTime;
+
+    private volatile int state = RUNNING;
+
+    private long tick;
+
+    public TimingWheelScheduler()
+    {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param tickDuration tick间隔，即超时精度
+     * @param unit         时间单位
+     * @param wheelSize    时间轮槽数，向上取整为2的幂
+     */
+    public TimingWheelScheduler(long tickDuration, TimeUnit unit, int wheelSize)
+    {
+        if (tickDuration <= 0 || wheelSize <= 0)
+        {
+            throw new IllegalArgumentException("tickDuration and wheelSize must be positive");
+        }
+        tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(wheelSize);
+        size = size == wheelSize ? size : size << 1;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+        {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+        startTime = System.nanoTime();
+        worker = new Thread(new Worker(), "timing-wheel-" + System.identityHashCode(this));
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return 尚未到期也未取消的任务数
+     */
+    public long getPendingTimeouts()
+    {
+        return pendingCount.get();
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+    {
+        if (null == command)
+        {
+            throw new NullPointerException("command");
+        }
+        return arm(command, null, delay, unit);
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit)
+    {
+        if (null == callable)
+        {
+            throw new NullPointerException("callable");
+        }
+        return arm(null, callable, delay, unit);
+    }
+
+    private <V> WheelTimeout<V> arm(Runnable command, Callable<V> callable, long delay, TimeUnit unit)
+    {
+        if (state != RUNNING)
+        {
+            throw new RejectedExecutionException("scheduler is shutdown");
+        }
+        final long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        final WheelTimeout<V> timeout = new WheelTimeout<V>(command, callable, deadline);
+        pendingCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit)
+    {
+        throw new UnsupportedOperationException("periodic task is not supported");
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit)
+    {
+        throw new UnsupportedOperationException("periodic task is not supported");
+    }
+
+    public void execute(Runnable command)
+    {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public void shutdown()
+    {
+        state = SHUTDOWN;
+        LockSupport.unpark(worker);
+    }
+
+    public List<Runnable> shutdownNow()
+    {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+    public boolean isShutdown()
+    {
+        return state != RUNNING;
+    }
+
+    public boolean isTerminated()
+    {
+        return terminated.getCount() == 0;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return terminated.await(timeout, unit);
+    }
+
+    private final class Worker implements Runnable
+    {
+        public void run()
+        {
+            try
+            {
+                while (state == RUNNING)
+                {
+                    final long now = waitForNextTick();
+                    if (now < 0)
+                    {
+                        break;
+                    }
+                    processCancelled();
+                    transferPending();
+                    wheel[(int) (tick & mask)].expire(now, expired);
+                    tick++;
+                    runExpired();
+                }
+            } finally
+            {
+                pendingCount.set(0);
+                terminated.countDown();
+            }
+        }
+
+        private long waitForNextTick()
+        {
+            final long deadline = tickNanos * (tick + 1);
+            while (true)
+            {
+                final long current = System.nanoTime() - startTime;
+                final long sleepNanos = deadline - current;
+                if (sleepNanos <= 0)
+                {
+                    return current;
+                }
+                LockSupport.parkNanos(this, sleepNanos);
+                if (state != RUNNING)
+                {
+                    return -1;
+                }
+            }
+        }
+
+        private void processCancelled()
+        {
+            WheelTimeout<?> timeout;
+            while (null != (timeout = cancelledTimeouts.poll()))
+            {
+                if (null != timeout.bucket)
+                {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+        }
+
+        private void transferPending()
+        {
+            for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++)
+            {
+                final WheelTimeout<?> timeout = pendingTimeouts.poll();
+                if (null == timeout)
+                {
+                    break;
+                }
+                if (timeout.state != WheelTimeout.INIT)
+                {
+                    // 入轮之前已被取消
+                    continue;
+                }
+                final long calculated = timeout.deadline / tickNanos;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+                // 已过期的任务放到当前槽，本tick即执行
+                final long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+
+        private void runExpired()
+        {
+            final int size = expired.size();
+            for (int i = 0; i < size; i++)
+            {
+                expired.get(i).expire();
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * 时间轮的一个槽，双向链表，只被tick线程访问
+     */
+    private static final class Bucket
+    {
+        private WheelTimeout<?> head;
+
+        private WheelTimeout<?> tail;
+
+        void add(WheelTimeout<?> timeout)
+        {
+            timeout.bucket = this;
+            if (null == head)
+            {
+                head = tail = timeout;
+            } else
+            {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long now, List<WheelTimeout<?>> expired)
+        {
+            WheelTimeout<?> timeout = head;
+            while (null != timeout)
+            {
+                final WheelTimeout<?> next = timeout.next;
+                if (timeout.remainingRounds <= 0)
+                {
+                    remove(timeout);
+                    if (timeout.state == WheelTimeout.INIT)
+                    {
+                        expired.add(timeout);
+                    }
+                } else if (timeout.state != WheelTimeout.INIT)
+                {
+                    remove(timeout);
+                } else
+                {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(WheelTimeout<?> timeout)
+        {
+            if (timeout.bucket != this)
+            {
+                return;
+            }
+            final WheelTimeout<?> next = timeout.next;
+            if (null != timeout.prev)
+            {
+                timeout.prev.next = next;
+            }
+            if (null != next)
+            {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head)
+            {
+                head = next;
+            }
+            if (timeout == tail)
+            {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    private final class WheelTimeout<V> implements ScheduledFuture<V>
+    {
+        static final int INIT = 0;
+
+        // 已到期、任务正在执行，结果尚未写入
+        static final int RUNNING = 1;
+
+        static final int CANCELLED = 2;
+
+        static final int EXPIRED = 3;
+
+        private final Runnable command;
+
+        private final Callable<V> callable;
+
+        // 相对startTime的纳秒数
+        private final long deadline;
+
+        // 通过STATE_UPDATER做CAS，不能声明为private
+        volatile int state = INIT;
+
+        private volatile boolean hasWaiters;
+
+        // 在state置为EXPIRED之前写入，读取方看到EXPIRED后即可见
+        private volatile V result;
+
+        private volatile Throwable failure;
+
+        // 以下字段只被tick线程访问
+        private long remainingRounds;
+
+        private Bucket bucket;
+
+        private WheelTimeout<?> prev;
+
+        private WheelTimeout<?> next;
+
+        WheelTimeout(Runnable command, Callable<V> callable, long deadline)
+        {
+            this.command = command;
+            this.callable = callable;
+            this.deadline = deadline;
+        }
+
+        @SuppressWarnings("unchecked")
+        void expire()
+        {
+            if (!STATE_UPDATER.compareAndSet(this, INIT, RUNNING))
+            {
+                return;
+            }
+            pendingCount.decrementAndGet();
+            try
+            {
+                if (null != command)
+                {
+                    command.run();
+                } else
+                {
+                    result = callable.call();
+                }
+            } catch (Throwable ex)
+            {
+                failure = ex;
+                LOGGER.error("timeout task failed, task={}", null != command ? command : callable, ex);
+            }
+            // 结果写入后才算完成，之后检查hasWaiters，与get()中先置hasWaiters再检查state配对
+            state = EXPIRED;
+            if (hasWaiters)
+            {
+                synchronized (this)
+                {
+                    notifyAll();
+                }
+            }
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            if (!STATE_UPDATER.compareAndSet(this, INIT, CANCELLED))
+            {
+                return false;
+            }
+            pendingCount.decrementAndGet();
+            cancelledTimeouts.add(this);
+            if (hasWaiters)
+            {
+                synchronized (this)
+                {
+                    notifyAll();
+                }
+            }
+            return true;
+        }
+
+        public boolean isCancelled()
+        {
+            return state == CANCELLED;
+        }
+
+        public boolean isDone()
+        {
+            return state >= CANCELLED;
+        }
+
+        public V get() throws InterruptedException, ExecutionException
+        {
+            synchronized (this)
+            {
+                hasWaiters = true;
+                while (!isDone())
+                {
+                    wait();
+                }
+            }
+            return getNow();
+        }
+
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+        {
+            final long waitUntil = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this)
+            {
+                hasWaiters = true;
+                while (!isDone())
+                {
+                    final long remaining = waitUntil - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            return getNow();
+        }
+
+        private V getNow() throws ExecutionException
+        {
+            if (state == CANCELLED)
+            {
+                throw new CancellationException();
+            }
+            if (null != failure)
+            {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(deadline - (System.nanoTime() - startTime), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other)
+        {
+            final long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+}
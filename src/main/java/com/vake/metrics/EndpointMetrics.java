@@ -0,0 +1,230 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一个设备从调用到完成的请求延迟(微秒)，按结果分为ok和timeout两个直方图，另计过载拒绝数<p/>
+ * 记录不加锁不分配对象；读取时把直方图累加到调用方复用的{@link LatencyHistogram.Snapshot}中。
+ * JMX属性共用一个内部快照，每次读取属性时刷新
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class EndpointMetrics implements EndpointMetricsMXBean
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(EndpointMetrics.class);
+
+    /**
+     * JMX域名
+     */
+    public static final String DOMAIN = "com.vake";
+
+    private final InetSocketAddress endpoint;
+
+    private final LatencyHistogram ok = new LatencyHistogram();
+
+    private final LatencyHistogram timeout = new LatencyHistogram();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final Lock jmxLock = new ReentrantLock();
+
+    private final LatencyHistogram.Snapshot jmxSnapshot = new LatencyHistogram.Snapshot();
+
+    private ObjectName objectName;
+
+    public EndpointMetrics(InetSocketAddress endpoint)
+    {
+        this.endpoint = endpoint;
+    }
+
+    public void recordOk(long micros)
+    {
+        ok.record(micros);
+    }
+
+    public void recordTimeout(long micros)
+    {
+        timeout.record(micros);
+    }
+
+    public void recordRejected()
+    {
+        rejected.incrementAndGet();
+    }
+
+    public LatencyHistogram getOk()
+    {
+        return ok;
+    }
+
+    public LatencyHistogram getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * 注册到平台MBeanServer，名称为com.vake:type=MessageClient,name={client},endpoint="{endpoint}"
+     *
+     * @param client 客户端名称，区分同一JVM中的多个客户端
+     */
+    public void register(String client)
+    {
+        try
+        {
+            final ObjectName name = new ObjectName(DOMAIN + ":type=MessageClient,name=" + client
+                    + ",endpoint=" + ObjectName.quote(endpoint.toString()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException ex)
+        {
+            LOGGER.warn("register metrics of {} failed", endpoint, ex);
+        }
+    }
+
+    public void unregister()
+    {
+        final ObjectName name = objectName;
+        if (null == name)
+        {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex)
+        {
+            LOGGER.warn("unregister metrics of {} failed", endpoint, ex);
+        }
+    }
+
+    public ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+    public String getEndpoint()
+    {
+        return endpoint.toString();
+    }
+
+    public long getOkCount()
+    {
+        return read(ok, -1);
+    }
+
+    public long getOkP50Micros()
+    {
+        return read(ok, 50);
+    }
+
+    public long getOkP99Micros()
+    {
+        return read(ok, 99);
+    }
+
+    public long getOkP999Micros()
+    {
+        return read(ok, 99.9);
+    }
+
+    public long getOkMaxMicros()
+    {
+        return read(ok, 100);
+    }
+
+    public long getTimeoutCount()
+    {
+        return read(timeout, -1);
+    }
+
+    public long getTimeoutP50Micros()
+    {
+        return read(timeout, 50);
+    }
+
+    public long getTimeoutP99Micros()
+    {
+        return read(timeout, 99);
+    }
+
+    public long getTimeoutP999Micros()
+    {
+        return read(timeout, 99.9);
+    }
+
+    public long getTimeoutMaxMicros()
+    {
+        return read(timeout, 100);
+    }
+
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * @param percentile 百分位，负数表示读取计数，100表示最大值
+     */
+    private long read(LatencyHistogram histogram, double percentile)
+    {
+        jmxLock.lock();
+        try
+        {
+            histogram.addTo(jmxSnapshot.reset());
+            if (percentile < 0)
+            {
+                return jmxSnapshot.getCount();
+            }
+            return percentile >= 100 ? jmxSnapshot.getMax() : jmxSnapshot.getValueAtPercentile(percentile);
+        } finally
+        {
+            jmxLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "EndpointMetrics{endpoint=" + endpoint + ", ok={" + ok.addTo(new LatencyHistogram.Snapshot())
+                + "}, timeout={" + timeout.addTo(new LatencyHistogram.Snapshot()) + "}, rejected=" + rejected + '}';
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+/**
+ * 一个设备的请求统计，通过JMX发布，延迟单位为微秒<p/>
+ * ok为收到响应的请求，timeout为超时或会话不可用而失败的请求，rejected为因过载未发出的请求
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public interface EndpointMetricsMXBean
+{
+    String getEndpoint();
+
+    long getOkCount();
+
+    long getOkP50Micros();
+
+    long getOkP99Micros();
+
+    long getOkP999Micros();
+
+    long getOkMaxMicros();
+
+    long getTimeoutCount();
+
+    long getTimeoutP50Micros();
+
+    long getTimeoutP99Micros();
+
+    long getTimeoutP999Micros();
+
+    long getTimeoutMaxMicros();
+
+    long getRejectedCount();
+}
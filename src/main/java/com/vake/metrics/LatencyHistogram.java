@@ -0,0 +1,211 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁、可合并的延迟直方图，单位由调用方决定(MessageClient中为微秒)<p/>
+ * 按对数-线性分桶：小于{@link #SUB_BUCKETS}的值每个值一个桶，之后每个2的幂区间线性划分为{@link #SUB_BUCKETS}/2个桶，
+ * 相对误差不超过1/32；超过{@link #MAX_VALUE}的值计入最后一个桶。
+ * 记录只对一个桶计数做原子自增，最大值只在变大时CAS，不加锁也不分配对象。<p/>
+ * 读取时把计数累加到调用方持有的{@link Snapshot}中，快照可复用，多个直方图累加到同一快照即为合并
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int HALF = SUB_BUCKETS >> 1;
+
+    // 可记录的最大值位数，以微秒计约12天
+    private static final int MAX_BITS = 40;
+
+    public static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 2) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值
+     *
+     * @param value 值，负数按0记录
+     */
+    public void record(long value)
+    {
+        final long v = value < 0 ? 0 : Math.min(value, MAX_VALUE);
+        counts.incrementAndGet(index(v));
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v))
+        {
+            current = max.get();
+        }
+    }
+
+    /**
+     * 将当前计数累加到快照中，并发记录时快照是近似一致的
+     *
+     * @param snapshot 目标快照
+     * @return 目标快照
+     */
+    public Snapshot addTo(Snapshot snapshot)
+    {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            final long c = counts.get(i);
+            snapshot.counts[i] += c;
+            count += c;
+        }
+        snapshot.count += count;
+        snapshot.max = Math.max(snapshot.max, max.get());
+        return snapshot;
+    }
+
+    static int index(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return (shift + 1) * HALF + (int) ((value >>> shift) & (HALF - 1));
+    }
+
+    // 桶内的最大值
+    static long highestValue(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        final int shift = index / HALF - 1;
+        return ((long) (HALF + index % HALF) << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * 直方图快照，可复用和合并，非线程安全
+     */
+    public static final class Snapshot
+    {
+        private final long[] counts = new long[BUCKETS];
+
+        private long count;
+
+        private long max;
+
+        /**
+         * 清零，复用前调用
+         *
+         * @return this
+         */
+        public Snapshot reset()
+        {
+            Arrays.fill(counts, 0);
+            count = 0;
+            max = 0;
+            return this;
+        }
+
+        /**
+         * 合并另一个快照
+         *
+         * @param other 快照
+         * @return this
+         */
+        public Snapshot add(Snapshot other)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+            return this;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * @param percentile 百分位，如99.9
+         * @return 不小于该百分位的所有记录值的最小上界(桶上界，不超过最大值)，无记录时为0
+         */
+        public long getValueAtPercentile(double percentile)
+        {
+            if (0 == count)
+            {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                seen += counts[i];
+                if (seen >= rank)
+                {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getP50()
+        {
+            return getValueAtPercentile(50);
+        }
+
+        public long getP99()
+        {
+            return getValueAtPercentile(99);
+        }
+
+        public long getP999()
+        {
+            return getValueAtPercentile(99.9);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "count=" + count + ", p50=" + getP50() + ", p99=" + getP99() + ", p99.9=" + getP999() + ", max=" + max;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+ * 在编解码之前发布数据报收发的JFR事件，应放在过滤器链最前面，见{@link RequestEvents}<p/>
+ * MINA不向过滤器通知编码后写请求的messageSent，写出事件启用时把编码后的数据报换成普通写请求，
+ * 写入socket后在这里发布事件，不再向上传递。只用于数据报会话：事件按整帧解析buffer，
+ * TCP会话读写的buffer可能从帧的中间开始或结束，在TCP会话上不发布事件，逐帧的事件由编解码器发布
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class RequestEventFilter extends IoFilterAdapter
+{
+    /**
+     * 当前JVM不支持JFR时为null
+     *
+     * @return 过滤器
+     */
+    public static RequestEventFilter create()
+    {
+        return RequestEvents.isAvailable() ? new RequestEventFilter() : null;
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+    {
+        if (message instanceof IoBuffer && isDatagram(session))
+        {
+            RequestEvents.received((IoBuffer) message);
+        }
+        nextFilter.messageReceived(session, message);
+    }
+
+    @Override
+    public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+    {
+        if (writeRequest.isEncoded() && writeRequest.getMessage() instanceof IoBuffer && isDatagram(session)
+                && RequestEvents.isWrittenEnabled())
+        {
+            nextFilter.filterWrite(session, new TracedWriteRequest(writeRequest));
+            return;
+        }
+        nextFilter.filterWrite(session, writeRequest);
+    }
+
+    @Override
+    public void messageSent(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+    {
+        // 重传和缓存命中直接写出的IoBuffer同样发布事件
+        final Object message = writeRequest.getMessage();
+        if (message instanceof IoBuffer && isDatagram(session))
+        {
+            RequestEvents.written((IoBuffer) message);
+        }
+        if (!(writeRequest instanceof TracedWriteRequest))
+        {
+            nextFilter.messageSent(session, writeRequest);
+        }
+    }
+
+    private static boolean isDatagram(IoSession session)
+    {
+        return session.getTransportMetadata().isConnectionless();
+    }
+
+    /**
+     * 代替编码后的写请求，使写完成时能收到messageSent
+     */
+    private static final class TracedWriteRequest extends DefaultWriteRequest
+    {
+        TracedWriteRequest(WriteRequest encoded)
+        {
+            super(encoded.getMessage(), encoded.getFuture(), encoded.getDestination());
+        }
+    }
+}
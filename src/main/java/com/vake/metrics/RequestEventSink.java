@@ -0,0 +1,57 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import java.net.InetSocketAddress;
+
+import com.vake.message.request.ConcurrencyLimiter;
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * {@link RequestEvents}的事件实现，各方法含义见RequestEvents中的同名方法<p/>
+ * JFR实现(JfrRequestEvents)位于src/main/jfr/java，只在JDK 11+上由jfr profile编译，运行时按类名加载
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+interface RequestEventSink
+{
+    Object begin();
+
+    void end(Object handle, int sessionId, int serial, InetSocketAddress endpoint, String outcome, int retransmits);
+
+    void enqueued(int sessionId, int serial, ConcurrencyLimiter limiter);
+
+    void encoded(int sessionId, int serial, int length);
+
+    void decoded(int sessionId, int serial, int length);
+
+    void matched(int sessionId, int serial);
+
+    boolean isWrittenEnabled();
+
+    void written(IoBuffer buffer);
+
+    void received(IoBuffer buffer);
+}
@@ -0,0 +1,209 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import java.net.InetSocketAddress;
+
+import com.vake.message.request.ConcurrencyLimiter;
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * 请求生命周期的JFR(Java Flight Recorder)事件入口<p/>
+ * 每个阶段一个事件，都带(sessionId, serial)用于关联同一个请求：
+ * 入队(RequestEnqueued)、编码(MessageEncoded)、写出(MessageWritten)、收到数据报(DatagramReceived)、
+ * 解码(MessageDecoded)、匹配到请求(ResponseMatched)，以及从调用到完成或超时的请求事件(Request，带持续时间和结果)。
+ * 工程按1.7编译，JFR实现只在JDK 11+上由jfr profile编译并在运行时按类名加载；
+ * 没有jdk.jfr或未编译JFR实现时所有方法为空操作；事件未启用时只有一次isEnabled判断，不记录任何数据
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public final class RequestEvents
+{
+    /**
+     * 请求成功完成
+     */
+    public static final String OK = "ok";
+
+    /**
+     * 请求超时或被调用方取消
+     */
+    public static final String TIMEOUT = "timeout";
+
+    /**
+     * 请求因设备过载未发出
+     */
+    public static final String REJECTED = "rejected";
+
+    private static final String JFR_SINK = "com.vake.metrics.JfrRequestEvents";
+
+    // JFR实现，当前JVM没有jdk.jfr或构建时未编译JFR实现时为null
+    private static final RequestEventSink SINK = lookupJfr();
+
+    private RequestEvents()
+    {
+    }
+
+    private static RequestEventSink lookupJfr()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event", false, RequestEvents.class.getClassLoader());
+            return (RequestEventSink) Class.forName(JFR_SINK).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return 当前JVM是否支持JFR事件，且构建中包含JFR实现
+     */
+    public static boolean isAvailable()
+    {
+        return null != SINK;
+    }
+
+    /**
+     * 请求开始，返回的句柄交给{@link #end}
+     *
+     * @return 请求事件句柄，事件未启用时为null
+     */
+    public static Object begin()
+    {
+        return null != SINK ? SINK.begin() : null;
+    }
+
+    /**
+     * 请求完成或超时，超过事件阈值时提交
+     *
+     * @param handle      {@link #begin()}返回的句柄，可以为null
+     * @param sessionId   客户端唯一标识
+     * @param serial      流水号
+     * @param endpoint    设备地址
+     * @param outcome     {@link #OK}、{@link #TIMEOUT}或{@link #REJECTED}
+     * @param retransmits 重传次数
+     */
+    public static void end(Object handle, int sessionId, int serial, InetSocketAddress endpoint, String outcome,
+                           int retransmits)
+    {
+        if (null != handle)
+        {
+            SINK.end(handle, sessionId, serial, endpoint, outcome, retransmits);
+        }
+    }
+
+    /**
+     * 请求交给客户端，准备发出或排队
+     *
+     * @param sessionId 客户端唯一标识
+     * @param serial    流水号
+     * @param limiter   设备的并发限制，事件记录其当前在途数和排队数
+     */
+    public static void enqueued(int sessionId, int serial, ConcurrencyLimiter limiter)
+    {
+        if (null != SINK)
+        {
+            SINK.enqueued(sessionId, serial, limiter);
+        }
+    }
+
+    /**
+     * 消息已编码
+     *
+     * @param sessionId 客户端唯一标识
+     * @param serial    流水号
+     * @param length    帧长
+     */
+    public static void encoded(int sessionId, int serial, int length)
+    {
+        if (null != SINK)
+        {
+            SINK.encoded(sessionId, serial, length);
+        }
+    }
+
+    /**
+     * 消息已解码
+     *
+     * @param sessionId 客户端唯一标识
+     * @param serial    流水号
+     * @param length    帧长
+     */
+    public static void decoded(int sessionId, int serial, int length)
+    {
+        if (null != SINK)
+        {
+            SINK.decoded(sessionId, serial, length);
+        }
+    }
+
+    /**
+     * RequestResponseFilter把响应匹配到请求，已经过ExecutorFilter切换线程
+     *
+     * @param sessionId 客户端唯一标识
+     * @param serial    流水号
+     */
+    public static void matched(int sessionId, int serial)
+    {
+        if (null != SINK)
+        {
+            SINK.matched(sessionId, serial);
+        }
+    }
+
+    /**
+     * @return 写出事件是否启用，未启用时{@link RequestEventFilter}不跟踪写请求
+     */
+    public static boolean isWrittenEnabled()
+    {
+        return null != SINK && SINK.isWrittenEnabled();
+    }
+
+    /**
+     * 数据报已写入socket，每个帧一个事件，不改变buffer的位置
+     *
+     * @param buffer 写出的数据报
+     */
+    public static void written(IoBuffer buffer)
+    {
+        if (null != SINK)
+        {
+            SINK.written(buffer);
+        }
+    }
+
+    /**
+     * 从socket收到数据报，每个帧一个事件，不改变buffer的位置
+     *
+     * @param buffer 收到的数据报
+     */
+    public static void received(IoBuffer buffer)
+    {
+        if (null != SINK)
+        {
+            SINK.received(buffer);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import java.net.InetSocketAddress;
+
+import com.vake.message.Message;
+import com.vake.message.request.ConcurrencyLimiter;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * {@link RequestEvents}的JFR实现，只在jdk.jfr存在时由RequestEvents按类名加载<p/>
+ * 需要JDK 11+编译，放在src/main/jfr/java中由jfr profile加入构建，1.7工具链上不编译。
+ * 请求事件缺省只记录超过10毫秒的请求，适合持续录制；各阶段事件缺省关闭，
+ * 排查时用vake-requests.jfc打开。事件对象未启用时不逃逸，由JIT消除分配
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+final class JfrRequestEvents implements RequestEventSink
+{
+
+    public Object begin()
+    {
+        final RequestEvent event = new RequestEvent();
+        if (!event.isEnabled())
+        {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public void end(Object handle, int sessionId, int serial, InetSocketAddress endpoint, String outcome,
+                    int retransmits)
+    {
+        final RequestEvent event = (RequestEvent) handle;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.sessionId = sessionId;
+            event.serial = serial;
+            event.endpoint = String.valueOf(endpoint);
+            event.outcome = outcome;
+            event.retransmits = retransmits;
+            event.commit();
+        }
+    }
+
+    public void enqueued(int sessionId, int serial, ConcurrencyLimiter limiter)
+    {
+        final EnqueuedEvent event = new EnqueuedEvent();
+        if (event.isEnabled())
+        {
+            event.sessionId = sessionId;
+            event.serial = serial;
+            event.inFlight = limiter.getInFlight();
+            event.queued = limiter.getQueueDepth();
+            event.commit();
+        }
+    }
+
+    public void encoded(int sessionId, int serial, int length)
+    {
+        final EncodedEvent event = new EncodedEvent();
+        if (event.isEnabled())
+        {
+            event.sessionId = sessionId;
+            event.serial = serial;
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    public void decoded(int sessionId, int serial, int length)
+    {
+        final DecodedEvent event = new DecodedEvent();
+        if (event.isEnabled())
+        {
+            event.sessionId = sessionId;
+            event.serial = serial;
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    public void matched(int sessionId, int serial)
+    {
+        final MatchedEvent event = new MatchedEvent();
+        if (event.isEnabled())
+        {
+            event.sessionId = sessionId;
+            event.serial = serial;
+            event.commit();
+        }
+    }
+
+    public boolean isWrittenEnabled()
+    {
+        return new WrittenEvent().isEnabled();
+    }
+
+    public void written(IoBuffer buffer)
+    {
+        if (new WrittenEvent().isEnabled())
+        {
+            int position = buffer.position();
+            // 合并写出的数据报中可能有多个帧
+            while (buffer.limit() - position >= Message.HEAD_LENGTH)
+            {
+                final int contentLength = Message.lengthOf(buffer.getInt(position + 8));
+                final WrittenEvent event = new WrittenEvent();
+                event.sessionId = buffer.getInt(position);
+                event.serial = buffer.getInt(position + 4);
+                event.length = Message.HEAD_LENGTH + contentLength;
+                event.commit();
+                position += event.length;
+            }
+        }
+    }
+
+    public void received(IoBuffer buffer)
+    {
+        if (new ReceivedEvent().isEnabled())
+        {
+            int position = buffer.position();
+            while (buffer.limit() - position >= Message.HEAD_LENGTH)
+            {
+                final int contentLength = Message.lengthOf(buffer.getInt(position + 8));
+                final ReceivedEvent event = new ReceivedEvent();
+                event.sessionId = buffer.getInt(position);
+                event.serial = buffer.getInt(position + 4);
+                event.length = Message.HEAD_LENGTH + contentLength;
+                event.commit();
+                position += event.length;
+            }
+        }
+    }
+
+    @Name("com.vake.Request")
+    @Label("Request")
+    @Description("A request from execute to completion or timeout")
+    @Category({"Vake", "Request"})
+    @Threshold("10 ms")
+    static final class RequestEvent extends Event
+    {
+        @Label("Session Id")
+        int sessionId;
+
+        @Label("Serial")
+        int serial;
+
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Retransmits")
+        int retransmits;
+    }
+
+    @Name("com.vake.RequestEnqueued")
+    @Label("Request Enqueued")
+    @Description("A request is handed to the client, before the concurrency limit")
+    @Category({"Vake", "Request"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class EnqueuedEvent extends Event
+    {
+        @Label("Session Id")
+        int sessionId;
+
+        @Label("Serial")
+        int serial;
+
+        @Label("In Flight")
+        int inFlight;
+
+        @Label("Queued")
+        int queued;
+    }
+
+    @Name("com.vake.MessageEncoded")
+    @Label("Message Encoded")
+    @Category({"Vake", "Message"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class EncodedEvent extends Event
+    {
+        @Label("Session Id")
+        int sessionId;
+
+        @Label("Serial")
+        int serial;
+
+        @Label("Length")
+        @DataAmount
+        int length;
+    }
+
+    @Name("com.vake.MessageWritten")
+    @Label("Message Written")
+    @Description("A frame is written to the socket")
+    @Category({"Vake", "Message"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class WrittenEvent extends Event
+    {
+        @Label("Session Id")
+        int sessionId;
+
+        @Label("Serial")
+        int serial;
+
+        @Label("Length")
+        @DataAmount
+        int length;
+    }
+
+    @Name("com.vake.DatagramReceived")
+    @Label("Datagram Received")
+    @Description("A frame is read from the socket, before decoding")
+    @Category({"Vake", "Message"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ReceivedEvent extends Event
+    {
+        @Label("Session Id")
+        int sessionId;
+
+        @Label("Serial")
+        int serial;
+
+        @Label("Length")
+        @DataAmount
+        int length;
+    }
+
+    @Name("com.vake.MessageDecoded")
+    @Label("Message Decoded")
+    @Category({"Vake", "Message"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class DecodedEvent extends Event
+    {
+        @Label("Session Id")
+        int sessionId;
+
+        @Label("Serial")
+        int serial;
+
+        @Label("Length")
+        @DataAmount
+        int length;
+    }
+
+    @Name("com.vake.ResponseMatched")
+    @Label("Response Matched")
+    @Description("A response is matched to its request after the ExecutorFilter hand-off")
+    @Category({"Vake", "Request"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class MatchedEvent extends Event
+    {
+        @Label("Session Id")
+        int sessionId;
+
+        @Label("Serial")
+        int serial;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * ArrayUtils格式化与解析测试<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public class ArrayUtilsTest extends TestCase
+{
+    private static byte[] allBytes()
+    {
+        final byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    public void testSameFormatAsLegacy()
+    {
+        final byte[] bytes = allBytes();
+        assertEquals(LegacyArrayUtils.toString(bytes, 16), ArrayUtils.toHexString(bytes));
+        assertEquals(LegacyArrayUtils.toString(bytes, 8), ArrayUtils.toString(bytes, 8));
+        assertEquals(LegacyArrayUtils.toString(bytes, 2), ArrayUtils.toString(bytes, 2));
+        assertEquals(LegacyArrayUtils.toSimpleHexString(bytes), ArrayUtils.toSimpleHexString(bytes));
+    }
+
+    public void testEdgeCases()
+    {
+        assertEquals("null", ArrayUtils.toHexString(null));
+        assertEquals("[]", ArrayUtils.toHexString(new byte[0]));
+        assertEquals("null", ArrayUtils.toSimpleHexString(null));
+        assertEquals("", ArrayUtils.toSimpleHexString(new byte[0]));
+        try
+        {
+            ArrayUtils.toString(new byte[1], 10);
+            fail("radix 10 must be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    public void testBinaryString()
+    {
+        assertEquals("[00000101, 11111111]", ArrayUtils.toBinaryString(new byte[]{5, (byte) 0xFF}));
+    }
+
+    public void testRangeAndAppend()
+    {
+        final byte[] bytes = {1, 2, (byte) 0xAB, (byte) 0xCD, 5};
+        assertEquals("[AB, CD]", ArrayUtils.toString(bytes, 2, 2, 16));
+
+        final StringBuilder builder = new StringBuilder("frame=");
+        ArrayUtils.append(builder, bytes, 0, 2, 8);
+        ArrayUtils.appendSimpleHex(builder.append(' '), bytes, 2, 3);
+        assertEquals("frame=[001, 002] ABCD05", builder.toString());
+
+        final char[] chars = new char[8];
+        assertEquals(4, ArrayUtils.toSimpleHexChars(bytes, 2, 2, chars, 2));
+        assertEquals("ABCD", new String(chars, 2, 4));
+    }
+
+    public void testTruncate()
+    {
+        final byte[] bytes = {0x0A, 0x0B, 0x0C};
+        assertEquals("[0A, 0B, 0C]", ArrayUtils.toHexString(bytes, 3));
+        assertEquals("[0A, 0B, ...(3 bytes)]", ArrayUtils.toHexString(bytes, 2));
+        assertEquals("[...(3 bytes)]", ArrayUtils.toHexString(bytes, 0));
+    }
+
+    public void testParse()
+    {
+        final byte[] bytes = allBytes();
+        assertTrue(Arrays.equals(bytes, ArrayUtils.parseSimpleHexString(ArrayUtils.toSimpleHexString(bytes))));
+        assertTrue(Arrays.equals(bytes, ArrayUtils.parseHexString(ArrayUtils.toHexString(bytes))));
+        assertTrue(Arrays.equals(new byte[]{(byte) 0xAB, 0x0C}, ArrayUtils.parseSimpleHexString("ab0c")));
+        try
+        {
+            ArrayUtils.parseHexString("[0A, F]");
+            fail("single digit byte must be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+        try
+        {
+            ArrayUtils.parseSimpleHexString("0G");
+            fail("invalid digit must be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+}
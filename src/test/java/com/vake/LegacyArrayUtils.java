@@ -0,0 +1,86 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * 改造前的ArrayUtils格式化实现，作为ArrayUtilsTest的格式基线和ConversionBenchmark的性能基线<p/>
+ *
+ * @author xiongqimin
+ * @version 1.0.0
+ * @history<br/> ver    date       author desc
+ * 1.0.0  2026/10/18 xiongqimin created<br/>
+ * <p/>
+ * @since 1.0.0
+ */
+public final class LegacyArrayUtils
+{
+    private LegacyArrayUtils()
+    {
+    }
+
+    public static String toString(byte[] bytes, int radix)
+    {
+        final StringBuilder builder = new StringBuilder("[");
+        final int len = bytes.length;
+        for (int i = 0; i < len; i++)
+        {
+            final int intValue = bytes[i] & 0xFF;
+            final String string;
+            final String padString;
+            switch (radix)
+            {
+                case 2:
+                    string = Integer.toBinaryString(intValue);
+                    padString = StringUtils.leftPad(string, 8, '0');
+                    break;
+                case 8:
+                    string = Integer.toOctalString(intValue);
+                    padString = StringUtils.leftPad(string, 3, '0');
+                    break;
+                default:
+                    string = Integer.toHexString(intValue);
+                    padString = StringUtils.leftPad(string, 2, '0');
+            }
+            builder.append(padString.toUpperCase());
+            if (i < len - 1)
+            {
+                builder.append(", ");
+            }
+        }
+        builder.append("]");
+        return builder.toString();
+    }
+
+    public static String toSimpleHexString(byte[] bytes)
+    {
+        final int len = bytes.length;
+        final StringBuilder builder = new StringBuilder(len * 2);
+        for (int i = 0; i < len; i++)
+        {
+            final int intValue = bytes[i] & 0xFF;
+            final String string = Integer.toHexString(intValue);
+            final String padString = StringUtils.leftPad(string, 2, '0');
+            builder.append(padString.toUpperCase());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+import org.apache.mina.core.session.DummySession;
+
+/**
+ * LruSessionRecycler测试
+ */
+public class LruSessionRecyclerTest extends TestCase
+{
+    private static DummySession newSession(int port)
+    {
+        final DummySession session = new DummySession();
+        session.setRemoteAddress(new InetSocketAddress("127.0.0.1", port));
+        return session;
+    }
+
+    public void testEvictsLeastRecentlyUsed()
+    {
+        final LruSessionRecycler recycler = new LruSessionRecycler(2, LruSessionRecycler.DEFAULT_IDLE_TIMEOUT, 0);
+        final DummySession first = newSession(1);
+        final DummySession second = newSession(2);
+        recycler.put(first);
+        recycler.put(second);
+        // 访问first后second成为最久未使用
+        assertSame(first, recycler.recycle(first.getRemoteAddress()));
+
+        final DummySession third = newSession(3);
+        recycler.put(third);
+        assertEquals(2, recycler.size());
+        assertEquals(1, recycler.getEvicted());
+        assertNull(recycler.recycle(second.getRemoteAddress()));
+        assertTrue(second.isClosing());
+        assertFalse(first.isClosing());
+    }
+
+    public void testReordersOnlyOnceInAWhile()
+    {
+        final LruSessionRecycler recycler = new LruSessionRecycler(2);
+        final DummySession first = newSession(1);
+        final DummySession second = newSession(2);
+        recycler.put(first);
+        recycler.put(second);
+        // 调整间隔内的访问不改变顺序，first仍是最久未使用
+        assertSame(first, recycler.recycle(first.getRemoteAddress()));
+        recycler.put(newSession(3));
+        assertTrue(first.isClosing());
+        assertFalse(second.isClosing());
+    }
+
+    public void testClosesIdleSessions() throws Exception
+    {
+        final LruSessionRecycler recycler = new LruSessionRecycler(4, 100);
+        final DummySession idle = newSession(1);
+        final DummySession active = newSession(2);
+        recycler.put(idle);
+        recycler.put(active);
+        // 空闲检查每秒最多一次
+        final long deadline = System.currentTimeMillis() + 3000;
+        while (!idle.isClosing() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(50);
+            assertSame(active, recycler.recycle(active.getRemoteAddress()));
+        }
+        assertTrue(idle.isClosing());
+        assertFalse(active.isClosing());
+        assertNull(recycler.recycle(idle.getRemoteAddress()));
+        assertEquals(1, recycler.getExpired());
+        assertEquals(1, recycler.size());
+    }
+
+    public void testRemoveOnlyOwnSession()
+    {
+        final LruSessionRecycler recycler = new LruSessionRecycler(4);
+        final DummySession old = newSession(1);
+        final DummySession current = newSession(1);
+        recycler.put(old);
+        recycler.put(current);
+        recycler.remove(old);
+        assertSame(current, recycler.recycle(current.getRemoteAddress()));
+        recycler.remove(current);
+        assertEquals(0, recycler.size());
+    }
+}
@@ -0,0 +1,768 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vake.message.DeviceOverload;
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+import com.vake.message.PartLost;
+import com.vake.message.request.ConcurrencyLimiter;
+import com.vake.message.codec.MessageProtocolCodecFactory;
+import com.vake.message.request.MessageResponseFuture;
+import com.vake.message.request.PartConsumer;
+import com.vake.message.request.PartSender;
+import com.vake.message.request.ResponseCallback;
+import com.vake.metrics.EndpointMetrics;
+import com.vake.metrics.LatencyHistogram;
+import com.vake.message.request.RetransmissionTimer;
+import com.vake.message.request.MessageRequest;
+import com.vake.message.request.TimingWheelScheduler;
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+
+/**
+ * MessageClient经本机UDP回环与MessageServer的udp模式进行请求响应的测试
+ */
+public class MessageClientTest extends TestCase
+{
+    private static final int SESSION_ID = 10000;
+
+    private NioDatagramAcceptor server;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        server = MessageServer.bindDatagram(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        server.dispose();
+    }
+
+    private static Message newMessage(int serial)
+    {
+        final Message msg = new Message();
+        msg.setSessionId(SESSION_ID);
+        msg.setSerial(serial);
+        msg.setContent("test" + serial);
+        msg.setContentLength(msg.getContent().length());
+        return msg;
+    }
+
+    public void testResponsesMatchedAcrossSockets() throws Exception
+    {
+        final int sockets = 3;
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                server.getLocalAddress().getPort(), 0, false, sockets);
+        try
+        {
+            for (int serial = 1; serial <= 30; serial++)
+            {
+                final Message response = client.execute(SESSION_ID, newMessage(serial));
+                assertNotNull(response);
+                assertEquals(serial, response.getSerial());
+                assertEquals("test" + serial, response.getContent());
+            }
+            final List<SocketStats> stats = client.getSocketStats();
+            assertEquals(sockets, stats.size());
+            for (SocketStats stat : stats)
+            {
+                // 请求轮流从各socket发出，回复也分散到各socket
+                assertEquals(stat.toString(), 10, stat.getReadMessages());
+            }
+
+            // 端到端延迟按设备统计并通过JMX发布
+            final InetSocketAddress endpoint = new InetSocketAddress("127.0.0.1", server.getLocalAddress().getPort());
+            final EndpointMetrics metrics = client.getMetrics(endpoint);
+            assertEquals(30, metrics.getOkCount());
+            assertEquals(0, metrics.getTimeoutCount());
+            assertTrue(metrics.getOkP50Micros() > 0);
+            assertTrue(metrics.getOkP999Micros() <= metrics.getOkMaxMicros());
+            assertEquals(30L, ManagementFactory.getPlatformMBeanServer().getAttribute(metrics.getObjectName(), "OkCount"));
+            assertEquals(30, client.snapshotLatency(new LatencyHistogram.Snapshot(), true).getCount());
+        } finally
+        {
+            client.destory();
+        }
+    }
+
+    public void testRoutesByEndpoint() throws Exception
+    {
+        final NioDatagramAcceptor other = MessageServer.bindDatagram(0);
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                server.getLocalAddress().getPort(), 0, false, 2);
+        try
+        {
+            final InetSocketAddress endpoint = new InetSocketAddress("127.0.0.1", other.getLocalAddress().getPort());
+            assertTrue(client.getSessionPool().getChannels(endpoint).isEmpty());
+            for (int serial = 1; serial <= 4; serial++)
+            {
+                final Message response = client.execute(endpoint, SESSION_ID, newMessage(serial));
+                assertNotNull(response);
+                assertEquals(serial, response.getSerial());
+            }
+            final List<SessionPool.Channel> channels = client.getSessionPool().getChannels(endpoint);
+            assertEquals(2, channels.size());
+            for (SessionPool.Channel channel : channels)
+            {
+                assertEquals(endpoint, channel.getSession().getRemoteAddress());
+                assertEquals(2, channel.getSession().getReadMessages());
+                assertEquals(0, channel.getOutstanding());
+            }
+        } finally
+        {
+            client.destory();
+            other.dispose();
+        }
+    }
+
+    public void testSameSerialOnTwoEndpoints() throws Exception
+    {
+        // 回应较慢的设备，请求仍在途时另一个设备完成了相同(sessionId, serial)的请求
+        final NioDatagramAcceptor slow = new NioDatagramAcceptor();
+        slow.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new MessageProtocolCodecFactory(Charset.defaultCharset())));
+        slow.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message) throws Exception
+            {
+                Thread.sleep(300);
+                session.write(message);
+            }
+        });
+        slow.bind(new InetSocketAddress(0));
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                server.getLocalAddress().getPort(), 0, false, 1);
+        try
+        {
+            final InetSocketAddress slowEndpoint = new InetSocketAddress("127.0.0.1", slow.getLocalAddress().getPort());
+            final MessageResponseFuture pending = client.executeAsync(slowEndpoint, SESSION_ID, newMessage(1),
+                    ConcurrencyLimiter.Policy.QUEUE);
+            assertEquals(1, client.execute(SESSION_ID, newMessage(1)).getSerial());
+            assertFalse(pending.isDone());
+            // 先完成的请求不影响另一个设备上的请求匹配响应
+            final Message response = pending.get(MessageRequest.DEFAULT_TIME_OUT / 2, TimeUnit.MILLISECONDS);
+            assertEquals("test1", response.getContent());
+        } finally
+        {
+            client.destory();
+            slow.dispose();
+        }
+    }
+
+    public void testFailFastWhenLimitReached() throws Exception
+    {
+        System.setProperty(MessageClient.MAX_IN_FLIGHT_PROPERTY, "2");
+        // 收到请求但从不应答，请求一直在途
+        final NioDatagramAcceptor silent = new NioDatagramAcceptor();
+        silent.setHandler(new IoHandlerAdapter());
+        silent.bind(new InetSocketAddress(0));
+        final int port = silent.getLocalAddress().getPort();
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1", port, 0, false, 1);
+        try
+        {
+            final InetSocketAddress endpoint = new InetSocketAddress("127.0.0.1", port);
+            final MessageResponseFuture first = client.executeAsync(endpoint, SESSION_ID, newMessage(1),
+                    ConcurrencyLimiter.Policy.FAIL_FAST);
+            final MessageResponseFuture second = client.executeAsync(endpoint, SESSION_ID, newMessage(2),
+                    ConcurrencyLimiter.Policy.FAIL_FAST);
+            assertFalse(first.isDone());
+            assertFalse(second.isDone());
+            try
+            {
+                client.execute(endpoint, SESSION_ID, newMessage(3), ConcurrencyLimiter.Policy.FAIL_FAST);
+                fail("limit is reached");
+            } catch (DeviceOverload expected)
+            {
+                // 未发出即被拒绝
+            }
+            final ConcurrencyLimiter limiter = client.getLimiter(endpoint);
+            assertEquals(2, limiter.getInFlight());
+            assertEquals(1, limiter.getRejected());
+
+            // 排队的请求在有请求完成后发出
+            final MessageResponseFuture queued = client.executeAsync(endpoint, SESSION_ID, newMessage(4));
+            assertEquals(1, limiter.getQueueDepth());
+            first.cancel(false);
+            assertEquals(0, limiter.getQueueDepth());
+            assertEquals(2, limiter.getInFlight());
+            assertFalse(queued.isDone());
+        } finally
+        {
+            System.clearProperty(MessageClient.MAX_IN_FLIGHT_PROPERTY);
+            client.destory();
+            silent.dispose();
+        }
+    }
+
+    /**
+     * 丢弃每个请求的第一个数据报，之后的回复copies次
+     */
+    private static NioDatagramAcceptor bindLossy(final int copies) throws Exception
+    {
+        final NioDatagramAcceptor acceptor = new NioDatagramAcceptor();
+        acceptor.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new MessageProtocolCodecFactory(Charset.defaultCharset())));
+        acceptor.setHandler(new IoHandlerAdapter()
+        {
+            private final Set<Integer> seen = new HashSet<>();
+
+            @Override
+            public void messageReceived(IoSession session, Object message)
+            {
+                final Message msg = (Message) message;
+                if (seen.add(msg.getSerial()))
+                {
+                    return;
+                }
+                for (int i = 0; i < copies; i++)
+                {
+                    session.write(Message.copy(msg));
+                }
+            }
+        });
+        acceptor.bind(new InetSocketAddress(0));
+        return acceptor;
+    }
+
+    public void testRetransmitsLostRequest() throws Exception
+    {
+        final NioDatagramAcceptor lossy = bindLossy(2);
+        final InetSocketAddress endpoint = new InetSocketAddress("127.0.0.1", lossy.getLocalAddress().getPort());
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1", endpoint.getPort(), 0,
+                false, 1);
+        try
+        {
+            // 没有有效样本，RTO按1秒、2秒退避
+            for (int serial = 1; serial <= 2; serial++)
+            {
+                final long start = System.nanoTime();
+                final Message response = client.execute(SESSION_ID, newMessage(serial));
+                assertEquals(serial, response.getSerial());
+                // 等待一个RTO而不是整个请求超时
+                assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(MessageRequest.DEFAULT_TIME_OUT));
+            }
+            final RetransmissionTimer timer = client.getRetransmissionTimer(endpoint);
+            assertEquals(2, timer.getRetransmits());
+            // 重传过的请求不采样
+            assertEquals(0, timer.getSrtt());
+            // 迟到的重复响应被丢弃，不影响之后的请求
+            assertEquals(0, client.getLimiter(endpoint).getInFlight());
+        } finally
+        {
+            client.destory();
+            lossy.dispose();
+        }
+    }
+
+    public void testExecuteAllCollectsPartialResults() throws Exception
+    {
+        // 只回应偶数流水号的设备
+        final NioDatagramAcceptor halfServer = new NioDatagramAcceptor();
+        halfServer.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new MessageProtocolCodecFactory(Charset.defaultCharset())));
+        halfServer.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message)
+            {
+                final Message msg = (Message) message;
+                if (0 == msg.getSerial() % 2)
+                {
+                    session.write(msg);
+                }
+            }
+        });
+        halfServer.bind(new InetSocketAddress(0));
+        final InetSocketAddress half = new InetSocketAddress("127.0.0.1", halfServer.getLocalAddress().getPort());
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                server.getLocalAddress().getPort(), 0, false, 2);
+        try
+        {
+            final List<Map.Entry<Integer, Message>> requests = new ArrayList<>();
+            for (int serial = 1; serial <= 200; serial++)
+            {
+                requests.add(new AbstractMap.SimpleImmutableEntry<>(SESSION_ID, newMessage(serial)));
+            }
+            final BatchResult all = client.executeAll(requests, MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS);
+            assertTrue(all.toString(), all.isComplete());
+            assertEquals(200, all.getResponses().size());
+            assertEquals("test150", all.getResponse(SESSION_ID, 150).getContent());
+
+            final List<Map.Entry<Integer, Message>> next = new ArrayList<>();
+            for (int serial = 201; serial <= 220; serial++)
+            {
+                next.add(new AbstractMap.SimpleImmutableEntry<>(SESSION_ID, newMessage(serial)));
+            }
+            final long start = System.nanoTime();
+            final BatchResult partial = client.executeAll(half, next, 500, TimeUnit.MILLISECONDS);
+            // 整批只等待一个期限
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(MessageRequest.DEFAULT_TIME_OUT));
+            assertFalse(partial.isComplete());
+            assertEquals(10, partial.getResponses().size());
+            assertEquals(10, partial.getFailures().size());
+            assertEquals(202, partial.getResponse(SESSION_ID, 202).getSerial());
+            assertNull(partial.getResponse(SESSION_ID, 201));
+            assertNotNull(partial.getFailure(SESSION_ID, 201));
+            assertTrue(partial.getFailures().containsKey(MessageRequest.generateKey(SESSION_ID, 219)));
+            assertEquals(0, client.getLimiter(half).getInFlight());
+        } finally
+        {
+            client.destory();
+            halfServer.dispose();
+        }
+    }
+
+    public void testStreamsPartialResponses() throws Exception
+    {
+        final int parts = 100;
+        final AtomicInteger maxQueued = new AtomicInteger();
+        // 收到请求后一次提交全部分段的设备，按窗口写出；初始窗口大于客户端的读取窗口，客户端仍需暂停读取
+        final NioDatagramAcceptor streamServer = new NioDatagramAcceptor();
+        streamServer.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new MessageProtocolCodecFactory(Charset.defaultCharset())));
+        streamServer.getFilterChain().addLast("partAck", PartSender.getAckFilter());
+        streamServer.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message)
+            {
+                final PartSender sender = PartSender.open(session, (Message) message, 16);
+                for (int i = 0; i < parts; i++)
+                {
+                    final Message part = new Message();
+                    part.setContent("part" + i);
+                    part.setContentLength(part.getContent().length());
+                    sender.send(part, i == parts - 1);
+                }
+                maxQueued.set(sender.getQueued());
+            }
+        });
+        streamServer.bind(new InetSocketAddress(0));
+        System.setProperty(ReadThrottle.WINDOW_PROPERTY, "8");
+        final MessageClient client;
+        try
+        {
+            client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1", streamServer.getLocalAddress().getPort(), 0,
+                    false, 1);
+        } finally
+        {
+            System.clearProperty(ReadThrottle.WINDOW_PROPERTY);
+        }
+        try
+        {
+            final List<String> received = new ArrayList<>();
+            final MessageResponseFuture future = client.executeStream(SESSION_ID, newMessage(1), new PartConsumer()
+            {
+                public void onPart(Message part)
+                {
+                    received.add(part.getContent());
+                    try
+                    {
+                        // 消费比接收慢
+                        Thread.sleep(2);
+                    } catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS);
+            final Message last = future.await(MessageRequest.DEFAULT_TIME_OUT * 2, TimeUnit.MILLISECONDS);
+            assertEquals("part" + (parts - 1), last.getContent());
+            assertEquals(parts, received.size());
+            for (int i = 0; i < parts; i++)
+            {
+                assertEquals("part" + i, received.get(i));
+            }
+            // 超出窗口的分段在设备上排队，等待客户端确认后写出
+            assertEquals(parts - 16, maxQueued.get());
+            // 积压的分段达到窗口时暂停了读取
+            assertEquals(8, client.getReadThrottle().getWindow());
+            assertTrue(client.getReadThrottle().toString(), client.getReadThrottle().getSuspensions() > 0);
+            final SessionPool.Channel channel = client.getSessionPool().getChannels().get(0);
+            assertEquals(0, client.getReadThrottle().getPending(channel.getSession()));
+            assertFalse(channel.getSession().isReadSuspended());
+        } finally
+        {
+            client.destory();
+            streamServer.dispose();
+        }
+    }
+
+    // 按窗口发送parts个分段的设备，dropAcks个确认在到达发送方之前被丢弃
+    private static NioDatagramAcceptor bindStreamServer(final int parts, final int dropAcks,
+                                                        final AtomicReference<PartSender> opened) throws Exception
+    {
+        final AtomicInteger dropped = new AtomicInteger();
+        final NioDatagramAcceptor streamServer = new NioDatagramAcceptor();
+        streamServer.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new MessageProtocolCodecFactory(Charset.defaultCharset())));
+        streamServer.getFilterChain().addLast("lossyAck", new IoFilterAdapter()
+        {
+            @Override
+            public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+            {
+                final Message msg = (Message) message;
+                if (msg.hasFlag(Message.FLAG_ACK) && msg.getContentBytesLength() > 0
+                        && dropped.incrementAndGet() <= dropAcks)
+                {
+                    return;
+                }
+                nextFilter.messageReceived(session, message);
+            }
+        });
+        streamServer.getFilterChain().addLast("partAck", PartSender.getAckFilter());
+        streamServer.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message)
+            {
+                final PartSender sender = PartSender.open(session, (Message) message, 4);
+                opened.set(sender);
+                for (int i = 0; i < parts; i++)
+                {
+                    final Message part = new Message();
+                    part.setContent("part" + i);
+                    part.setContentLength(part.getContent().length());
+                    sender.send(part, i == parts - 1);
+                }
+            }
+        });
+        streamServer.bind(new InetSocketAddress(0));
+        return streamServer;
+    }
+
+    private static MessageClient newStreamClient(int port)
+    {
+        System.setProperty(ReadThrottle.WINDOW_PROPERTY, "8");
+        try
+        {
+            return new MessageClient(new TimingWheelScheduler(), "127.0.0.1", port, 0, false, 1);
+        } finally
+        {
+            System.clearProperty(ReadThrottle.WINDOW_PROPERTY);
+        }
+    }
+
+    private static final PartConsumer IGNORE_PARTS = new PartConsumer()
+    {
+        public void onPart(Message part)
+        {
+        }
+    };
+
+    public void testStreamRecoversLostAck() throws Exception
+    {
+        // 第一个确认丢失，设备写完初始窗口后停下，客户端定时重发确认后继续
+        final AtomicReference<PartSender> opened = new AtomicReference<>();
+        final NioDatagramAcceptor streamServer = bindStreamServer(20, 1, opened);
+        final MessageClient client = newStreamClient(streamServer.getLocalAddress().getPort());
+        try
+        {
+            final MessageResponseFuture future = client.executeStream(SESSION_ID, newMessage(1), IGNORE_PARTS,
+                    MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS);
+            final Message last = future.await(MessageRequest.DEFAULT_TIME_OUT * 2, TimeUnit.MILLISECONDS);
+            assertEquals("part19", last.getContent());
+            assertFalse(opened.get().isOpen());
+        } finally
+        {
+            client.destory();
+            streamServer.dispose();
+        }
+    }
+
+    public void testFailedStreamCancelsSender() throws Exception
+    {
+        // 确认全部丢失，客户端超时后通知设备取消，设备不再保留排队的分段
+        final AtomicReference<PartSender> opened = new AtomicReference<>();
+        final NioDatagramAcceptor streamServer = bindStreamServer(20, Integer.MAX_VALUE, opened);
+        final MessageClient client = newStreamClient(streamServer.getLocalAddress().getPort());
+        try
+        {
+            final MessageResponseFuture future = client.executeStream(SESSION_ID, newMessage(1), IGNORE_PARTS,
+                    500, TimeUnit.MILLISECONDS);
+            try
+            {
+                future.get(MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS);
+                fail("acks are lost");
+            } catch (ExecutionException expected)
+            {
+                assertTrue(expected.getCause() instanceof DeviceResponseTimeout);
+            }
+            final long deadline = System.currentTimeMillis() + 1000;
+            while (opened.get().isOpen() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            assertFalse(opened.get().isOpen());
+            assertEquals(0, opened.get().getQueued());
+        } finally
+        {
+            client.destory();
+            streamServer.dispose();
+        }
+    }
+
+    public void testStreamFailsOnLostPart() throws Exception
+    {
+        // 第2段丢失的设备
+        final NioDatagramAcceptor lossyServer = new NioDatagramAcceptor();
+        lossyServer.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new MessageProtocolCodecFactory(Charset.defaultCharset())));
+        lossyServer.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message)
+            {
+                final Message request = (Message) message;
+                for (int i = 0; i < 4; i++)
+                {
+                    if (2 == i)
+                    {
+                        continue;
+                    }
+                    final Message part = new Message();
+                    part.setSessionId(request.getSessionId());
+                    part.setSerial(request.getSerial());
+                    part.setPartIndex(i);
+                    part.setContent("part" + i);
+                    part.setContentLength(part.getContent().length());
+                    part.setFlags(i < 3 ? Message.FLAG_PARTIAL | Message.FLAG_MORE : Message.FLAG_PARTIAL);
+                    session.write(part);
+                }
+            }
+        });
+        lossyServer.bind(new InetSocketAddress(0));
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                lossyServer.getLocalAddress().getPort(), 0, false, 1);
+        try
+        {
+            final List<String> received = new ArrayList<>();
+            final MessageResponseFuture future = client.executeStream(SESSION_ID, newMessage(1), new PartConsumer()
+            {
+                public void onPart(Message part)
+                {
+                    received.add(part.getContent());
+                }
+            }, MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS);
+            try
+            {
+                future.get(MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS);
+                fail("part 2 is lost");
+            } catch (ExecutionException expected)
+            {
+                assertTrue(expected.getCause() instanceof PartLost);
+            }
+            // 缺口之后的分段不再交给消费者
+            assertEquals(Arrays.asList("part0", "part1"), received);
+        } finally
+        {
+            client.destory();
+            lossyServer.dispose();
+        }
+    }
+
+    public void testReassemblesFragmentedMessages() throws Exception
+    {
+        // 丢弃请求的第3个分片一次的回显设备
+        final MessageProtocolCodecFactory codec = new MessageProtocolCodecFactory(Charset.defaultCharset());
+        final NioDatagramAcceptor fragmentServer = new NioDatagramAcceptor();
+        fragmentServer.getFilterChain().addLast("drop", new IoFilterAdapter()
+        {
+            private boolean dropped;
+
+            @Override
+            public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
+            {
+                final IoBuffer in = (IoBuffer) message;
+                final boolean fragment = 0 != (in.getInt(in.position() + 8) >>> 24 & Message.FLAG_FRAGMENT);
+                if (fragment && 2 == in.getUnsignedShort(in.position() + Message.HEAD_LENGTH) && !dropped)
+                {
+                    dropped = true;
+                    return;
+                }
+                nextFilter.messageReceived(session, message);
+            }
+        });
+        fragmentServer.getFilterChain().addLast("codec", new ProtocolCodecFilter(codec));
+        fragmentServer.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message)
+            {
+                session.write(Message.copy((Message) message));
+            }
+        });
+        fragmentServer.bind(new InetSocketAddress(0));
+        final InetSocketAddress endpoint = new InetSocketAddress("127.0.0.1", fragmentServer.getLocalAddress().getPort());
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1", endpoint.getPort(), 0,
+                false, 1);
+        try
+        {
+            final StringBuilder content = new StringBuilder();
+            while (content.length() < 10000)
+            {
+                content.append(content.length()).append(',');
+            }
+            final Message request = newMessage(1);
+            request.setContent(content.toString());
+            request.setContentLength(content.length());
+            final Message response = client.execute(SESSION_ID, request);
+            assertEquals(content.toString(), response.getContent());
+            // 只重发了缺失的分片，请求本身没有重传
+            assertEquals(1, codec.getReassembler().getNacks());
+            assertEquals(1, codec.getReassembler().getReassembled());
+            assertEquals(0, client.getRetransmissionTimer(endpoint).getRetransmits());
+        } finally
+        {
+            client.destory();
+            fragmentServer.dispose();
+        }
+    }
+
+    public void testExecuteAsyncPipelinesOnOneSession() throws Exception
+    {
+        final int requests = 50;
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                server.getLocalAddress().getPort(), 0, false, 1);
+        try
+        {
+            final CountDownLatch completed = new CountDownLatch(requests);
+            final AtomicInteger mismatched = new AtomicInteger();
+            final List<MessageResponseFuture> futures = new ArrayList<>();
+            // 所有请求同时在途，由同一个会话按流水号匹配响应
+            for (int serial = 1; serial <= requests; serial++)
+            {
+                final int expected = serial;
+                futures.add(client.executeAsync(SESSION_ID, newMessage(serial), new ResponseCallback()
+                {
+                    public void onResponse(Message response)
+                    {
+                        if (expected != response.getSerial() || !("test" + expected).equals(response.getContent()))
+                        {
+                            mismatched.incrementAndGet();
+                        }
+                        completed.countDown();
+                    }
+
+                    public void onFailure(DeviceResponseTimeout cause)
+                    {
+                        mismatched.incrementAndGet();
+                        completed.countDown();
+                    }
+                }));
+            }
+            assertTrue(completed.await(MessageRequest.DEFAULT_TIME_OUT, TimeUnit.MILLISECONDS));
+            assertEquals(0, mismatched.get());
+            for (int i = 0; i < requests; i++)
+            {
+                final MessageResponseFuture future = futures.get(i);
+                assertTrue(future.isDone());
+                assertEquals(i + 1, future.get().getSerial());
+            }
+            assertEquals(1, client.getSessionPool().getChannels().size());
+
+            // 已完成的future上注册的回调立即执行
+            final AtomicInteger late = new AtomicInteger();
+            futures.get(0).addCallback(new ResponseCallback()
+            {
+                public void onResponse(Message response)
+                {
+                    late.set(response.getSerial());
+                }
+
+                public void onFailure(DeviceResponseTimeout cause)
+                {
+                }
+            });
+            assertEquals(1, late.get());
+        } finally
+        {
+            client.destory();
+        }
+    }
+
+    public void testExecuteAsyncTimeoutCompletesFuture() throws Exception
+    {
+        // 从不回应的设备
+        final NioDatagramAcceptor silent = new NioDatagramAcceptor();
+        silent.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new MessageProtocolCodecFactory(Charset.defaultCharset())));
+        silent.setHandler(new IoHandlerAdapter());
+        silent.bind(new InetSocketAddress(0));
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                silent.getLocalAddress().getPort(), 0, false, 1);
+        try
+        {
+            final AtomicReference<DeviceResponseTimeout> failure = new AtomicReference<>();
+            final MessageResponseFuture future = client.executeAsync(SESSION_ID, newMessage(1), new ResponseCallback()
+            {
+                public void onResponse(Message response)
+                {
+                }
+
+                public void onFailure(DeviceResponseTimeout cause)
+                {
+                    failure.set(cause);
+                }
+            });
+            assertFalse(future.isDone());
+            try
+            {
+                future.get(MessageRequest.DEFAULT_TIME_OUT * 2, TimeUnit.MILLISECONDS);
+                fail("request should time out");
+            } catch (ExecutionException expected)
+            {
+                assertTrue(expected.getCause() instanceof DeviceResponseTimeout);
+            }
+            assertTrue(future.isDone());
+            assertFalse(future.isCancelled());
+            assertNotNull(failure.get());
+        } finally
+        {
+            client.destory();
+            silent.dispose();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vake.message.DeviceOverload;
+import com.vake.message.DeviceResponseTimeout;
+import com.vake.message.Message;
+import com.vake.message.request.MessageRequest;
+import com.vake.message.request.MessageResponseFuture;
+import com.vake.message.request.MessageResponseInspector;
+import junit.framework.TestCase;
+import org.apache.mina.core.RuntimeIoException;
+import org.apache.mina.core.service.IoConnector;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.transport.socket.nio.NioDatagramConnector;
+
+/**
+ * SessionPool按需连接、选择在途请求最少的健康通道、探测恢复不健康通道的测试
+ */
+public class SessionPoolTest extends TestCase
+{
+    private static final InetSocketAddress DEVICE_A = new InetSocketAddress("127.0.0.1", 19001);
+
+    private static final InetSocketAddress DEVICE_B = new InetSocketAddress("127.0.0.1", 19002);
+
+    private NioDatagramConnector connector;
+
+    private SessionPool pool;
+
+    private int serial;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        connector = new NioDatagramConnector();
+        connector.setHandler(new IoHandlerAdapter());
+        pool = new SessionPool(connector, 3, 2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        connector.dispose();
+    }
+
+    private MessageResponseFuture newFuture()
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(++serial);
+        return MessageRequest.createAsyncRequest(10000, msg, new MessageResponseInspector()).getFuture();
+    }
+
+    public void testConnectsEndpointsLazily()
+    {
+        assertTrue(pool.getChannels().isEmpty());
+        assertNotNull(pool.acquire(DEVICE_A));
+        assertEquals(3, pool.getChannels(DEVICE_A).size());
+        assertTrue(pool.getChannels(DEVICE_B).isEmpty());
+
+        final SessionPool.Channel channel = pool.acquire(DEVICE_B);
+        assertEquals(DEVICE_B, channel.getSession().getRemoteAddress());
+        assertEquals(6, pool.getChannels().size());
+    }
+
+    public void testSelectsLeastOutstanding()
+    {
+        final MessageResponseFuture[] futures = new MessageResponseFuture[3];
+        for (int i = 0; i < futures.length; i++)
+        {
+            final SessionPool.Channel channel = pool.acquire(DEVICE_A);
+            assertEquals(0, channel.getOutstanding());
+            futures[i] = newFuture();
+            channel.track(futures[i]);
+        }
+        for (SessionPool.Channel channel : pool.getChannels(DEVICE_A))
+        {
+            assertEquals(1, channel.getOutstanding());
+        }
+
+        futures[1].setResponse(new Message());
+        final SessionPool.Channel idle = pool.acquire(DEVICE_A);
+        assertEquals(0, idle.getOutstanding());
+        assertSame(pool.getChannels(DEVICE_A).get(1), idle);
+    }
+
+    public void testSkipsUnhealthyChannel()
+    {
+        final SessionPool.Channel failing = pool.acquire(DEVICE_A);
+        for (int i = 0; i < 2; i++)
+        {
+            final MessageResponseFuture future = newFuture();
+            failing.track(future);
+            future.setFailure(new DeviceResponseTimeout("timeout"));
+        }
+        assertFalse(failing.isHealthy());
+        for (int i = 0; i < 10; i++)
+        {
+            assertNotSame(failing, pool.acquire(DEVICE_A));
+        }
+
+        // 收到响应后恢复
+        final MessageResponseFuture future = newFuture();
+        failing.track(future);
+        future.setResponse(new Message());
+        assertTrue(failing.isHealthy());
+        assertEquals(0, failing.getConsecutiveFailures());
+    }
+
+    public void testReconnectsClosedChannel()
+    {
+        final SessionPool.Channel channel = pool.acquire(DEVICE_A);
+        for (SessionPool.Channel each : pool.getChannels(DEVICE_A))
+        {
+            each.getSession().close(true).awaitUninterruptibly();
+        }
+        assertFalse(channel.isHealthy());
+        final SessionPool.Channel reconnected = pool.acquire(DEVICE_A);
+        assertTrue(reconnected.getSession().isConnected());
+        assertTrue(reconnected.isHealthy());
+    }
+
+    private void fail(SessionPool.Channel channel, DeviceResponseTimeout cause)
+    {
+        final MessageResponseFuture future = newFuture();
+        channel.track(future);
+        future.setFailure(cause);
+    }
+
+    public void testOnlyTimeoutsCountAsFailures()
+    {
+        final SessionPool.Channel channel = pool.acquire(DEVICE_A);
+        for (int i = 0; i < 3; i++)
+        {
+            final MessageResponseFuture future = newFuture();
+            channel.track(future);
+            future.cancel(false);
+            fail(channel, new DeviceOverload("overload"));
+        }
+        assertEquals(0, channel.getConsecutiveFailures());
+        assertEquals(0, channel.getOutstanding());
+        assertTrue(channel.isHealthy());
+    }
+
+    public void testProbesUnhealthyChannelAfterInterval() throws Exception
+    {
+        pool = new SessionPool(connector, 3, 2, 50);
+        final SessionPool.Channel failing = pool.acquire(DEVICE_A);
+        fail(failing, new DeviceResponseTimeout("timeout"));
+        fail(failing, new DeviceResponseTimeout("timeout"));
+        assertFalse(failing.isHealthy());
+        assertNotSame(failing, pool.acquire(DEVICE_A));
+
+        // 探测间隔到后放行一个请求，同一间隔内只放行一次
+        Thread.sleep(80);
+        assertSame(failing, pool.acquire(DEVICE_A));
+        assertNotSame(failing, pool.acquire(DEVICE_A));
+
+        // 探测超时则继续等下一个间隔，探测收到响应则恢复
+        fail(failing, new DeviceResponseTimeout("timeout"));
+        assertNotSame(failing, pool.acquire(DEVICE_A));
+        Thread.sleep(80);
+        assertSame(failing, pool.acquire(DEVICE_A));
+        final MessageResponseFuture probe = newFuture();
+        failing.track(probe);
+        probe.setResponse(new Message());
+        assertTrue(failing.isHealthy());
+    }
+
+    public void testOpenClosesSessionsWhenConnectFails() throws Exception
+    {
+        // 第三次connect失败的连接器
+        final AtomicInteger connects = new AtomicInteger();
+        final IoConnector failing = (IoConnector) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{IoConnector.class}, new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                    {
+                        if ("connect".equals(method.getName()) && 3 == connects.incrementAndGet())
+                        {
+                            throw new RuntimeIoException("connect refused");
+                        }
+                        try
+                        {
+                            return method.invoke(connector, args);
+                        } catch (InvocationTargetException ex)
+                        {
+                            throw ex.getCause();
+                        }
+                    }
+                });
+        try
+        {
+            new SessionPool(failing, 3).open(DEVICE_A, 0);
+            fail("connect should fail");
+        } catch (RuntimeIoException expected)
+        {
+            // 前两个已打开的会话应被关闭
+        }
+        assertEquals(3, connects.get());
+        for (int i = 0; i < 100 && !connector.getManagedSessions().isEmpty(); i++)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(connector.getManagedSessions().isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * VirtualThreads测试，在JDK 21以下验证不支持时的行为
+ */
+public class VirtualThreadsTest extends TestCase
+{
+    public void testExecutorMatchesSupport() throws Exception
+    {
+        if (!VirtualThreads.isSupported())
+        {
+            try
+            {
+                VirtualThreads.newVirtualThreadPerTaskExecutor();
+                fail("virtual threads are not supported on " + System.getProperty("java.version"));
+            } catch (UnsupportedOperationException ex)
+            {
+                // expected
+            }
+            return;
+        }
+        final ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        try
+        {
+            final Future<Boolean> isVirtual = executor.submit(new Callable<Boolean>()
+            {
+                public Boolean call() throws Exception
+                {
+                    return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+                }
+            });
+            assertTrue(isVirtual.get(10, TimeUnit.SECONDS));
+        } finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vake.MessageClient;
+import com.vake.MessageServer;
+import com.vake.message.Message;
+import com.vake.message.request.TimingWheelScheduler;
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+
+/**
+ * ResponseCache的登记、命中、淘汰测试，以及UDP服务端对重复请求的缓存回复
+ */
+public class ResponseCacheTest extends TestCase
+{
+    private static Message newMessage(int serial, String content)
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(serial);
+        msg.setContent(content);
+        msg.setContentLength(content.length());
+        return msg;
+    }
+
+    public void testHitAfterResponse()
+    {
+        final ResponseCache cache = new ResponseCache(4, 64, 10000);
+        final Message response = newMessage(1, "hello");
+        assertNull(cache.get(1));
+        assertTrue(cache.begin(1));
+        assertFalse("request is in progress", cache.begin(1));
+        assertNull(cache.get(1));
+        assertTrue(cache.put(1, response));
+
+        final IoBuffer cached = cache.get(1);
+        final byte[] bytes = new byte[cached.remaining()];
+        cached.get(bytes);
+        assertTrue(Arrays.equals(response.encodeToBytes(), bytes));
+        assertFalse(cache.begin(1));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testOnlyRegisteredRequestsAreCached()
+    {
+        final ResponseCache cache = new ResponseCache(4, 64, 10000);
+        assertFalse(cache.put(1, newMessage(1, "push")));
+        assertTrue(cache.begin(2));
+        assertFalse("frame is larger than slot", cache.put(2, newMessage(2, new String(new char[64]))));
+        assertEquals(0, cache.size());
+    }
+
+    public void testEvictsEldestWhenFull()
+    {
+        final ResponseCache cache = new ResponseCache(2, 64, 10000);
+        for (int key = 1; key <= 3; key++)
+        {
+            assertTrue(cache.begin(key));
+            assertTrue(cache.put(key, newMessage(key, "r" + key)));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    public void testExpiresAfterTtl() throws InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache(2, 64, 20);
+        assertTrue(cache.begin(1));
+        assertTrue(cache.put(1, newMessage(1, "r1")));
+        Thread.sleep(40);
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getExpirations());
+        assertTrue(cache.begin(1));
+    }
+
+    public void testPendingExpiresBeforeTtl() throws InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache(2, 64, 10000, 20);
+        assertTrue(cache.begin(1));
+        assertFalse("request is in progress", cache.begin(1));
+        Thread.sleep(40);
+        // 处理期限已过仍未响应，重复的请求重新处理
+        assertTrue(cache.begin(1));
+        assertTrue(cache.put(1, newMessage(1, "r1")));
+        Thread.sleep(40);
+        // 响应按TTL保留
+        assertNotNull(cache.get(1));
+    }
+
+    public void testHandlerFailureDiscardsPending() throws Exception
+    {
+        final ResponseCacheFilter filter = new ResponseCacheFilter(new ResponseCache(4, 64, 10000));
+        final AtomicInteger handled = new AtomicInteger();
+        final DummySession session = new DummySession();
+        session.getFilterChain().addLast("cache", filter);
+        session.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message) throws Exception
+            {
+                handled.incrementAndGet();
+                throw new IllegalStateException("handler failed");
+            }
+
+            @Override
+            public void exceptionCaught(IoSession session, Throwable cause)
+            {
+            }
+        });
+        session.getFilterChain().fireMessageReceived(newMessage(1, "test1"));
+        assertEquals(0, filter.getCache().size());
+        // 处理失败后客户端的重传重新交给处理器，不被当作处理中的重复请求丢弃
+        session.getFilterChain().fireMessageReceived(newMessage(1, "test1"));
+        assertEquals(2, handled.get());
+    }
+
+    public void testServerRepliesDuplicateFromCache() throws Exception
+    {
+        final NioDatagramAcceptor server = MessageServer.bindDatagram(0);
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                server.getLocalAddress().getPort(), 0);
+        try
+        {
+            final ResponseCache cache = ((ResponseCacheFilter) server.getFilterChain().get("cache")).getCache();
+            assertEquals(1, client.execute(10000, newMessage(1, "test1")).getSerial());
+            // 同一(sessionId, serial)再发一次，由缓存回复
+            client.sendMessage(newMessage(1, "test1"));
+            for (int i = 0; i < 100 && 0 == cache.getHits(); i++)
+            {
+                Thread.sleep(10);
+            }
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.size());
+        } finally
+        {
+            client.destory();
+            server.dispose();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.capture;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.apache.mina.transport.socket.nio.NioDatagramConnector;
+
+/**
+ * CaptureReplayer按方向和时间间隔回放测试
+ */
+public class CaptureReplayerTest extends TestCase
+{
+    private File file;
+
+    private NioDatagramAcceptor acceptor;
+
+    private NioDatagramConnector connector;
+
+    private IoSession session;
+
+    private final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        file = File.createTempFile("capture", ".ring");
+        acceptor = new NioDatagramAcceptor();
+        acceptor.setHandler(new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived(IoSession session, Object message)
+            {
+                received.add(((IoBuffer) message).getInt());
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+        connector = new NioDatagramConnector();
+        connector.setHandler(new IoHandlerAdapter());
+        final ConnectFuture connect = connector.connect(acceptor.getLocalAddress());
+        connect.awaitUninterruptibly();
+        session = connect.getSession();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        session.close(true);
+        connector.dispose();
+        acceptor.dispose();
+        file.delete();
+    }
+
+    private static ByteBuffer payload(int id)
+    {
+        final ByteBuffer payload = ByteBuffer.allocate(4);
+        payload.putInt(0, id);
+        return payload;
+    }
+
+    private void awaitReceived(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 200 && received.size() < count; i++)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    public void testReplaysOnlySelectedDirection() throws Exception
+    {
+        final CaptureRingFile ring = CaptureRingFile.create(file, 4096);
+        for (int i = 0; i < 20; i++)
+        {
+            ring.append(i, 0 == i % 2 ? CaptureRingFile.DIRECTION_IN : CaptureRingFile.DIRECTION_OUT, null, payload(i));
+        }
+        final long replayed = new CaptureReplayer(session, CaptureRingFile.DIRECTION_IN, 0).replay(ring);
+        ring.close();
+
+        assertEquals(10, replayed);
+        awaitReceived(10);
+        assertEquals(10, received.size());
+        for (Integer id : received)
+        {
+            assertEquals(0, id % 2);
+        }
+    }
+
+    public void testKeepsRecordedPace() throws Exception
+    {
+        final CaptureRingFile ring = CaptureRingFile.create(file, 4096);
+        ring.append(1000000, CaptureRingFile.DIRECTION_IN, null, payload(1));
+        ring.append(1200000, CaptureRingFile.DIRECTION_IN, null, payload(2));
+        ring.append(1400000, CaptureRingFile.DIRECTION_IN, null, payload(3));
+
+        // 记录间隔共400ms，2倍速回放至少需要200ms
+        final long start = System.nanoTime();
+        assertEquals(3, new CaptureReplayer(session, CaptureRingFile.DIRECTION_IN, 2).replay(ring));
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        ring.close();
+
+        assertTrue("elapsed " + elapsed, elapsed >= 200);
+        awaitReceived(3);
+        assertEquals(3, received.size());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.capture;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * CaptureRingFile测试
+ */
+public class CaptureRingFileTest extends TestCase
+{
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        file = File.createTempFile("capture", ".ring");
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        file.delete();
+    }
+
+    public void testWrapKeepsNewestRecordsInOrder() throws Exception
+    {
+        final InetSocketAddress peer = new InetSocketAddress("127.0.0.1", 4999);
+        final CaptureRingFile ring = CaptureRingFile.create(file, 300);
+        for (int i = 0; i < 100; i++)
+        {
+            // 长度不一的记录，覆盖回绕标记和隐式回绕
+            final ByteBuffer payload = ByteBuffer.allocate(4 + i % 7);
+            payload.putInt(0, i);
+            assertTrue(ring.append(i, CaptureRingFile.DIRECTION_IN, peer, payload));
+            assertEquals(0, payload.position());
+        }
+        ring.close();
+
+        final CaptureRingFile reopened = CaptureRingFile.open(file);
+        final List<Integer> ids = new ArrayList<Integer>();
+        reopened.forEach(new CaptureRingFile.RecordVisitor()
+        {
+            public void visit(long timestampMicros, byte direction, InetSocketAddress address, ByteBuffer payload)
+            {
+                final int id = payload.getInt(0);
+                assertEquals(id, timestampMicros);
+                assertEquals(4 + id % 7, payload.remaining());
+                assertEquals(CaptureRingFile.DIRECTION_IN, direction);
+                assertEquals(new InetSocketAddress("127.0.0.1", 4999), address);
+                ids.add(id);
+            }
+        });
+        reopened.close();
+
+        assertFalse(ids.isEmpty());
+        assertEquals(reopened.getCount(), ids.size());
+        assertEquals(99, ids.get(ids.size() - 1).intValue());
+        for (int i = 1; i < ids.size(); i++)
+        {
+            assertEquals(ids.get(i - 1) + 1, ids.get(i).intValue());
+        }
+    }
+
+    public void testOversizedRecordDropped() throws Exception
+    {
+        final CaptureRingFile ring = CaptureRingFile.create(file, 64);
+        assertFalse(ring.append(0, CaptureRingFile.DIRECTION_OUT, null, ByteBuffer.allocate(100)));
+        assertEquals(1, ring.getDropped());
+        assertEquals(0, ring.getCount());
+        ring.close();
+    }
+
+    public void testAppendNotBlockedBySlowVisitor() throws Exception
+    {
+        final CaptureRingFile ring = CaptureRingFile.create(file, 4096);
+        for (int i = 0; i < 10; i++)
+        {
+            final ByteBuffer payload = ByteBuffer.allocate(8);
+            payload.putInt(0, i);
+            ring.append(i, CaptureRingFile.DIRECTION_IN, null, payload);
+        }
+        final CountDownLatch visiting = new CountDownLatch(1);
+        final CountDownLatch appended = new CountDownLatch(1);
+        final List<Integer> ids = new ArrayList<Integer>();
+        final Thread replay = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                ring.forEach(new CaptureRingFile.RecordVisitor()
+                {
+                    public void visit(long timestampMicros, byte direction, InetSocketAddress peer, ByteBuffer payload)
+                    {
+                        visiting.countDown();
+                        try
+                        {
+                            appended.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException ex)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        ids.add(payload.getInt(0));
+                    }
+                });
+            }
+        });
+        replay.start();
+        assertTrue(visiting.await(5, TimeUnit.SECONDS));
+
+        // 遍历期间多线程并发追加并覆盖快照中的记录，既不被阻塞也不影响遍历结果
+        final AtomicInteger failures = new AtomicInteger();
+        final Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++)
+        {
+            writers[t] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < 500; i++)
+                    {
+                        final ByteBuffer payload = ByteBuffer.allocate(8);
+                        payload.putInt(0, 1000 + i);
+                        if (!ring.append(i, CaptureRingFile.DIRECTION_OUT, null, payload))
+                        {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+        {
+            writer.join(5000);
+            assertFalse(writer.isAlive());
+        }
+        appended.countDown();
+        replay.join(5000);
+        assertFalse(replay.isAlive());
+
+        assertEquals(0, failures.get());
+        assertEquals(10, ids.size());
+        for (int i = 0; i < ids.size(); i++)
+        {
+            assertEquals(i, ids.get(i).intValue());
+        }
+
+        final AtomicInteger visited = new AtomicInteger();
+        ring.forEach(new CaptureRingFile.RecordVisitor()
+        {
+            public void visit(long timestampMicros, byte direction, InetSocketAddress peer, ByteBuffer payload)
+            {
+                assertEquals(CaptureRingFile.DIRECTION_OUT, direction);
+                assertEquals(8, payload.remaining());
+                assertTrue(payload.getInt(0) >= 1000);
+                visited.incrementAndGet();
+            }
+        });
+        assertTrue(visited.get() > 0);
+        assertEquals(ring.getCount(), visited.get());
+        ring.close();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+import com.vake.MessageServer;
+import com.vake.message.codec.MessageEncoder;
+import junit.framework.TestCase;
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+
+/**
+ * Message逐字段复制与MessagePool测试，并对比服务端回显路径改造前后每个请求的分配字节数
+ */
+public class MessagePoolTest extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int ITERATIONS = 20000;
+
+    private static Message newMessage(String content)
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(3);
+        msg.setContent(content, UTF_8);
+        msg.setContentLength(content.getBytes(UTF_8).length);
+        return msg;
+    }
+
+    public void testCopyIsIndependent()
+    {
+        final MessagePool pool = new MessagePool(4);
+        final Message src = Message.from(newMessage("设备").encodeToBuffer(), UTF_8, pool);
+        final Message copy = Message.copy(src);
+        assertEquals(src.getSessionId(), copy.getSessionId());
+        assertEquals(src.getSerial(), copy.getSerial());
+        assertEquals(src.getContentLength(), copy.getContentLength());
+        assertEquals(UTF_8, copy.getCharset());
+        assertTrue(copy.hasContentBytes());
+
+        // 源消息归还并被复用后，副本内容不受影响
+        assertTrue(src.release());
+        Message.from(newMessage("其他").encodeToBuffer(), UTF_8, pool);
+        assertEquals("设备", copy.getContent());
+        assertFalse(copy.release());
+
+        final Message text = newMessage("text");
+        assertEquals("text", Message.copy(text).getContent());
+    }
+
+    public void testAcquireAndRelease()
+    {
+        final MessagePool pool = new MessagePool(1);
+        final Message first = pool.acquire();
+        final Message second = pool.acquire();
+        assertEquals(2, pool.getCreatedCount());
+
+        first.setSerial(9);
+        first.setContent("x");
+        assertTrue(first.release());
+        assertFalse("released twice", first.release());
+        assertFalse("pool is full", second.release());
+        assertEquals(1, pool.size());
+
+        final Message reused = pool.acquire();
+        assertSame(first, reused);
+        assertEquals(0, reused.getSerial());
+        assertNull(reused.getContent());
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    public void testPooledMessageReleasedOnMessageSent() throws Exception
+    {
+        final MessagePool pool = new MessagePool(4);
+        final Message msg = Message.from(newMessage("echo").encodeToBuffer(), UTF_8, pool);
+        final CapturingOutput out = new CapturingOutput();
+        final DummySession session = new DummySession();
+        new MessageEncoder().encode(session, msg, out);
+        // 编码后MINA仍持有写请求，消息不能归还
+        assertEquals(0, pool.size());
+        assertEquals("echo", msg.getContent());
+        assertEquals("echo", Message.from(out.last, UTF_8).getContent());
+
+        new MessageServer().messageSent(session, msg);
+        assertEquals(1, pool.size());
+    }
+
+    public void testEchoAllocationPerRequest() throws Exception
+    {
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported())
+        {
+            return;
+        }
+        final IoBuffer request = newMessage("test message content").encodeToBuffer();
+        final MessageEncoder encoder = new MessageEncoder();
+        final DummySession session = new DummySession();
+        final CapturingOutput out = new CapturingOutput();
+        final MessagePool pool = new MessagePool(16);
+        final MessageServer server = new MessageServer();
+
+        final Runnable before = new Runnable()
+        {
+            public void run()
+            {
+                // 改造前的服务端处理：新建消息、BeanUtils复制并拼接回复内容
+                request.rewind();
+                final Message msg = Message.from(request, UTF_8);
+                final Message copy = new Message();
+                try
+                {
+                    BeanUtils.copyProperties(copy, msg);
+                    encoder.encode(session, msg, out);
+                } catch (Exception e)
+                {
+                    throw new IllegalStateException(e);
+                }
+                copy.setContent("server reply " + copy.getContent());
+            }
+        };
+        final Runnable after = new Runnable()
+        {
+            public void run()
+            {
+                request.rewind();
+                final Message msg = Message.from(request, UTF_8, pool);
+                try
+                {
+                    encoder.encode(session, msg, out);
+                    server.messageSent(session, msg);
+                } catch (Exception e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        final Runnable decodeOnly = new Runnable()
+        {
+            public void run()
+            {
+                request.rewind();
+                Message.from(request, UTF_8, pool).release();
+            }
+        };
+
+        final double beforeBytes = allocatedPerRun(threadBean, before);
+        final double afterBytes = allocatedPerRun(threadBean, after);
+        final double decodeBytes = allocatedPerRun(threadBean, decodeOnly);
+        System.out.printf("echo allocation per request: before=%.1f bytes, after=%.1f bytes, pooled decode=%.1f bytes%n",
+                beforeBytes, afterBytes, decodeBytes);
+
+        // 剩余的分配只有编码输出的IoBuffer
+        assertTrue("after=" + afterBytes + ", before=" + beforeBytes, afterBytes * 4 < beforeBytes);
+        assertTrue("pooled decode=" + decodeBytes, decodeBytes < 16);
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    private static double allocatedPerRun(com.sun.management.ThreadMXBean threadBean, Runnable task)
+    {
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            task.run();
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            task.run();
+        }
+        return (double) (threadBean.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+    }
+
+    private static class CapturingOutput implements ProtocolEncoderOutput
+    {
+        private IoBuffer last;
+
+        public void write(Object encodedMessage)
+        {
+            last = (IoBuffer) encodedMessage;
+        }
+
+        public void mergeAll()
+        {
+        }
+
+        public WriteFuture flush()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * Message编解码测试
+ */
+public class MessageTest extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    private static byte[] toBytes(IoBuffer buffer)
+    {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public void testEncodeMatchesLegacyFormat()
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(7);
+        msg.setContent("test7");
+        msg.setContentLength(8);
+        assertTrue(Arrays.equals(msg.encodeToBytes(), toBytes(msg.encodeToBuffer())));
+
+        final Message decoded = Message.from(msg.encodeToBuffer());
+        assertEquals(10000, decoded.getSessionId());
+        assertEquals(7, decoded.getSerial());
+        assertEquals(8, decoded.getContentLength());
+        assertEquals("test7\0\0\0", decoded.getContent());
+    }
+
+    public void testRawContentForwardedUnchanged()
+    {
+        // 不是合法UTF-8的字节，解码再编码会变化，原样转发则不会
+        final byte[] payload = {(byte) 0xC3, (byte) 0x28, (byte) 0xFF, 0x41};
+        final Message msg = new Message();
+        msg.setSessionId(1);
+        msg.setSerial(2);
+        msg.setContentLength(payload.length);
+        msg.setContentBytes(payload, 0, payload.length);
+        msg.setCharset(UTF_8);
+
+        final IoBuffer frame = msg.encodeToBuffer();
+        final Message decoded = Message.from(frame, UTF_8);
+        assertTrue(decoded.hasContentBytes());
+
+        final byte[] forwarded = toBytes(decoded.encodeToBuffer());
+        assertTrue(Arrays.equals(payload, Arrays.copyOfRange(forwarded, Message.HEAD_LENGTH, forwarded.length)));
+    }
+
+    public void testLazyDecodeWithCharset()
+    {
+        final Message msg = new Message();
+        msg.setContent("设备", GBK);
+        msg.setContentLength("设备".getBytes(GBK).length);
+
+        final Message decoded = Message.from(msg.encodeToBuffer(), GBK);
+        final String content = decoded.getContent();
+        assertEquals("设备", content);
+        assertSame(content, decoded.getContent());
+
+        decoded.setCharset(UTF_8);
+        assertFalse("设备".equals(decoded.getContent()));
+
+        // 内容来自String时切换字符集要重新编码
+        final Message text = new Message();
+        text.setContent("设备", GBK);
+        text.encodeToBuffer();
+        text.setCharset(UTF_8);
+        assertEquals("设备", text.getContent());
+        assertEquals("设备".getBytes(UTF_8).length, text.getContentBytesLength());
+        text.setContentLength(text.getContentBytesLength());
+        assertEquals(Message.HEAD_LENGTH + "设备".getBytes(UTF_8).length, text.encodeToBuffer().remaining());
+    }
+
+    public void testFlagsInLengthField()
+    {
+        final Message msg = new Message();
+        msg.setSessionId(3);
+        msg.setSerial(4);
+        msg.setContent("part");
+        msg.setContentLength(4);
+        msg.setFlags(Message.FLAG_PARTIAL | Message.FLAG_MORE);
+        msg.setPartIndex(7);
+        assertTrue(Arrays.equals(msg.encodeToBytes(), toBytes(msg.encodeToBuffer())));
+
+        // 分段响应的长度字段含段序号
+        final IoBuffer frame = msg.encodeToBuffer();
+        assertEquals(0xC0000008, frame.getInt(8));
+        assertEquals(4 + Message.PART_INDEX_LENGTH, Message.lengthOf(frame.getInt(8)));
+        assertEquals(7, frame.getInt(Message.HEAD_LENGTH));
+        assertEquals(frame.remaining(), msg.getFrameLength());
+        assertTrue(Message.isValid(frame));
+        final Message decoded = Message.from(frame);
+        assertEquals(4, decoded.getContentLength());
+        assertEquals("part", decoded.getContent());
+        assertEquals(7, decoded.getPartIndex());
+        assertEquals(7, Message.from(msg.encodeToBytes()).getPartIndex());
+        assertEquals("part", Message.from(msg.encodeToBytes()).getContent());
+        assertEquals(7, Message.copy(decoded).getPartIndex());
+        assertTrue(decoded.hasFlag(Message.FLAG_PARTIAL));
+        assertTrue(decoded.hasFlag(Message.FLAG_MORE));
+        assertEquals(Message.FLAG_PARTIAL | Message.FLAG_MORE, Message.from(msg.encodeToBytes()).getFlags());
+        assertEquals(Message.FLAG_PARTIAL | Message.FLAG_MORE, Message.copy(decoded).getFlags());
+
+        try
+        {
+            msg.setContentLength(Message.MAX_CONTENT_LENGTH + 1);
+            fail("content length overlaps the flags");
+        } catch (IllegalArgumentException expected)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.net.SocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.vake.MessageServer;
+import com.vake.message.Message;
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.service.DefaultTransportMetadata;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.filter.codec.AbstractProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+
+/**
+ * BatchingMessageEncoder合并写出与MessageDecoder拆包测试
+ */
+public class BatchingMessageEncoderTest extends TestCase
+{
+    private BatchingMessageEncoder encoder;
+
+    // 经过编码、写往网络的buffer
+    private final List<IoBuffer> written = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        // 等待时间足够长，测试中除显式等待的用例外不会被后台线程写出
+        encoder = new BatchingMessageEncoder(256, 100, 5000000);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        encoder.shutdown();
+    }
+
+    private DummySession newSession(boolean connectionless)
+    {
+        final DummySession session = new DummySession();
+        session.setTransportMetadata(new DefaultTransportMetadata("mina", connectionless ? "datagram" : "stream",
+                connectionless, !connectionless, SocketAddress.class, IoSessionConfig.class, Object.class));
+        session.getFilterChain().addLast("recorder", new IoFilterAdapter()
+        {
+            @Override
+            public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+            {
+                final Object message = writeRequest.getMessage();
+                if (message instanceof IoBuffer && ((IoBuffer) message).hasRemaining())
+                {
+                    written.add(((IoBuffer) message).duplicate());
+                }
+                nextFilter.filterWrite(session, writeRequest);
+            }
+        });
+        session.getFilterChain().addLast("codec", new ProtocolCodecFilter(
+                new MessageProtocolCodecFactory(Charset.defaultCharset(), null, encoder)));
+        return session;
+    }
+
+    private static Message newMessage(int serial, String content)
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(serial);
+        msg.setContent(content);
+        msg.setContentLength(content.length());
+        return msg;
+    }
+
+    private static int decodeAll(IoBuffer datagram) throws Exception
+    {
+        final AbstractProtocolDecoderOutput out = new AbstractProtocolDecoderOutput()
+        {
+            public void flush(org.apache.mina.core.filterchain.IoFilter.NextFilter nextFilter, IoSession session)
+            {
+            }
+        };
+        new MessageDecoder().decode(new DummySession(), datagram, out);
+        return out.getMessageQueue().size();
+    }
+
+    public void testDatagramPacksFramesUpToLimit() throws Exception
+    {
+        final DummySession session = newSession(true);
+        // 每帧12 + 18 = 30字节，100字节的数据报可放3帧
+        for (int serial = 1; serial <= 4; serial++)
+        {
+            session.write(newMessage(serial, "content-of-msg-" + serial + "xx"));
+        }
+        assertEquals(1, written.size());
+        final IoBuffer datagram = written.get(0);
+        assertEquals(90, datagram.remaining());
+        assertEquals(3, decodeAll(datagram));
+    }
+
+    public void testOversizedDatagramFragmented() throws Exception
+    {
+        final DummySession session = newSession(true);
+        session.write(newMessage(1, "small"));
+        session.write(newMessage(2, new String(new char[120]).replace('\0', 'x')));
+        // 132字节的帧超过数据报大小，按每片80字节内容拆成两个分片
+        assertEquals(3, written.size());
+        assertEquals(17, written.get(0).remaining());
+        assertEquals(100, written.get(1).remaining());
+        assertEquals(60, written.get(2).remaining());
+    }
+
+    public void testFactorySharesFragmenter()
+    {
+        System.setProperty(MessageProtocolCodecFactory.BATCHING_PROPERTY, "true");
+        final MessageProtocolCodecFactory factory;
+        try
+        {
+            factory = MessageProtocolCodecFactory.fromSystemProperties(Charset.defaultCharset(), null);
+        } finally
+        {
+            System.clearProperty(MessageProtocolCodecFactory.BATCHING_PROPERTY);
+        }
+        try
+        {
+            // 合并写出的分片同样计入工厂的统计，NACK可以在同一个分片器中找到保留的分片
+            final BatchingMessageEncoder batching = (BatchingMessageEncoder) factory.getEncoder(null);
+            assertSame(factory.getFragmenter(), batching.getFragmenter());
+        } catch (Exception ex)
+        {
+            fail(ex.toString());
+        } finally
+        {
+            factory.dispose();
+        }
+    }
+
+    public void testServerStopDisposesCodec() throws Exception
+    {
+        System.setProperty(MessageProtocolCodecFactory.BATCHING_PROPERTY, "true");
+        final NioDatagramAcceptor server;
+        try
+        {
+            server = MessageServer.bindDatagram(0);
+        } finally
+        {
+            System.clearProperty(MessageProtocolCodecFactory.BATCHING_PROPERTY);
+        }
+        final int running = countFlushers();
+        server.dispose();
+        final long deadline = System.currentTimeMillis() + 1000;
+        while (countFlushers() >= running && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals("flusher thread must stop with the server", running - 1, countFlushers());
+    }
+
+    private static int countFlushers()
+    {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if ("message-batch-flusher".equals(thread.getName()) && thread.isAlive())
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void testStreamFlushedAfterBudget() throws Exception
+    {
+        encoder.shutdown();
+        encoder = new BatchingMessageEncoder(256, 100, 1000);
+        final DummySession session = newSession(false);
+        session.write(newMessage(1, "a"));
+        session.write(newMessage(2, "b"));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (written.isEmpty() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(1, written.size());
+        assertEquals(26, written.get(0).remaining());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.net.SocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.vake.message.Message;
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.service.DefaultTransportMetadata;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+ * MessageFragmenter分片与FragmentReassembler重组、缺失重传和内存上限测试
+ */
+public class FragmentReassemblerTest extends TestCase
+{
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    // 每个分片携带100 - 12 - 8 = 80字节内容
+    private final MessageFragmenter fragmenter = new MessageFragmenter(100);
+
+    // 写往网络的分片和重传请求
+    private final List<IoBuffer> written = new CopyOnWriteArrayList<>();
+
+    private DummySession session;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        session = new DummySession();
+        session.setTransportMetadata(new DefaultTransportMetadata("mina", "datagram", true, false,
+                SocketAddress.class, IoSessionConfig.class, Object.class));
+        session.getFilterChain().addLast("recorder", new IoFilterAdapter()
+        {
+            @Override
+            public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+            {
+                written.add(((IoBuffer) writeRequest.getMessage()).duplicate());
+                nextFilter.filterWrite(session, writeRequest);
+            }
+        });
+    }
+
+    private static String content(int length, char c)
+    {
+        return new String(new char[length]).replace('\0', c);
+    }
+
+    private List<IoBuffer> fragments(int serial, String content)
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(serial);
+        msg.setFlags(Message.FLAG_MORE);
+        msg.setContent(content);
+        msg.setContentLength(content.length());
+        written.clear();
+        fragmenter.write(session, msg.encodeToBuffer());
+        final List<IoBuffer> fragments = new CopyOnWriteArrayList<>(written);
+        written.clear();
+        return fragments;
+    }
+
+    public void testResendsOnlyMissingFragments() throws Exception
+    {
+        final FragmentReassembler reassembler = new FragmentReassembler(100);
+        final String content = content(300, 'x');
+        final List<IoBuffer> fragments = fragments(1, content);
+        assertEquals(4, fragments.size());
+
+        // 分片2丢失，最后一个分片到达时请求重传
+        assertNull(reassembler.receive(session, fragments.get(0)));
+        assertNull(reassembler.receive(session, fragments.get(1)));
+        assertNull(reassembler.receive(session, fragments.get(3)));
+        assertEquals(1, reassembler.getNacks());
+        assertEquals(1, written.size());
+        final IoBuffer nack = written.remove(0);
+        assertEquals(Message.FLAG_NACK, nack.getInt(8) >>> 24);
+        assertEquals(2, nack.getUnsignedShort(Message.HEAD_LENGTH));
+
+        fragmenter.resend(session, nack);
+        assertEquals(1, fragmenter.getResent());
+        assertEquals(1, written.size());
+        final IoBuffer frame = reassembler.receive(session, written.get(0));
+        assertNotNull(frame);
+        final Message msg = Message.from(frame, CHARSET);
+        assertEquals(1, msg.getSerial());
+        assertEquals(Message.FLAG_MORE, msg.getFlags());
+        assertEquals(300, msg.getContentLength());
+        assertEquals(content, msg.getContent());
+        // 分片内容所在的块归还池中
+        assertEquals(4, reassembler.getPooledChunks());
+        assertEquals(0, reassembler.getPendingBytes(session));
+    }
+
+    public void testNackWithRepeatedIndexes() throws Exception
+    {
+        fragments(1, content(300, 'x'));
+        // 伪造的重传请求反复列出同一个序号，以及越界的序号
+        final IoBuffer nack = IoBuffer.allocate(Message.HEAD_LENGTH + 2 * 100);
+        nack.putInt(10000);
+        nack.putInt(1);
+        nack.putInt(Message.FLAG_NACK << 24 | 2 * 100);
+        for (int i = 0; i < 98; i++)
+        {
+            nack.putUnsignedShort(i % 2);
+        }
+        nack.putUnsignedShort(3);
+        nack.putUnsignedShort(60000);
+        nack.flip();
+
+        fragmenter.resend(session, nack);
+        // 每个分片最多重发一次
+        assertEquals(3, fragmenter.getResent());
+        assertEquals(3, written.size());
+        assertFalse(nack.hasRemaining());
+    }
+
+    public void testLimitsBytesPerPeer() throws Exception
+    {
+        final FragmentReassembler reassembler = new FragmentReassembler(100, 5000, 500, 16);
+        final List<IoBuffer> first = fragments(1, content(300, 'a'));
+        final List<IoBuffer> second = fragments(2, content(300, 'b'));
+
+        assertNull(reassembler.receive(session, first.get(0)));
+        // 按分配的块计，两条消息超出上限，第二条的分片被丢弃
+        assertNull(reassembler.receive(session, second.get(0).duplicate()));
+        assertEquals(1, reassembler.getDropped());
+        assertEquals(reassembler.charge(4), reassembler.getPendingBytes(session));
+        assertTrue(reassembler.charge(4) >= 4 * 80);
+
+        for (int i = 1; i < first.size(); i++)
+        {
+            reassembler.receive(session, first.get(i));
+        }
+        assertEquals(1, reassembler.getReassembled());
+        // 第一条完成后释放的额度可用于第二条
+        IoBuffer frame = null;
+        for (IoBuffer fragment : second)
+        {
+            frame = reassembler.receive(session, fragment);
+        }
+        assertNotNull(frame);
+        assertEquals(content(300, 'b'), Message.from(frame, CHARSET).getContent());
+    }
+
+    public void testExpiresStaleReassembly() throws Exception
+    {
+        final FragmentReassembler reassembler = new FragmentReassembler(100, 10, 4096, 16);
+        final List<IoBuffer> first = fragments(1, content(300, 'a'));
+        assertNull(reassembler.receive(session, first.get(0)));
+        Thread.sleep(50);
+
+        // 后续分片到达时过期的重组被释放
+        final List<IoBuffer> second = fragments(2, content(200, 'b'));
+        assertNull(reassembler.receive(session, second.get(0)));
+        assertEquals(1, reassembler.getExpired());
+        assertEquals(reassembler.charge(3), reassembler.getPendingBytes(session));
+        // 过期重组归还的块被新的分片复用
+        assertEquals(0, reassembler.getPooledChunks());
+
+        reassembler.dispose(session);
+        assertEquals(0, reassembler.getPendingBytes(session));
+        assertEquals(1, reassembler.getPooledChunks());
+    }
+
+    private static IoBuffer fragment(int index, int count, int total, int payload)
+    {
+        final IoBuffer buffer = IoBuffer.allocate(Message.HEAD_LENGTH + MessageFragmenter.FRAGMENT_HEAD_LENGTH + payload,
+                false);
+        buffer.putInt(10000);
+        buffer.putInt(1);
+        buffer.putInt(Message.FLAG_FRAGMENT << 24 | MessageFragmenter.FRAGMENT_HEAD_LENGTH + payload);
+        buffer.putShort((short) index);
+        buffer.putShort((short) count);
+        buffer.putInt(total);
+        buffer.put(new byte[payload]);
+        buffer.flip();
+        return buffer;
+    }
+
+    public void testDropsFragmentsNotMatchingTotal() throws Exception
+    {
+        final FragmentReassembler reassembler = new FragmentReassembler(100);
+        // 总长1字节却声明65535个分片
+        assertNull(reassembler.receive(session, fragment(0, 65535, 1, 1)));
+        // 非最后一个分片不是整块
+        assertNull(reassembler.receive(session, fragment(0, 4, 300, 79)));
+        // 最后一个分片超出总长
+        assertNull(reassembler.receive(session, fragment(3, 4, 300, 80)));
+        assertEquals(3, reassembler.getDropped());
+        assertEquals(0, reassembler.getPendingBytes(session));
+        assertEquals(0, reassembler.getNacks());
+
+        // 与总长相符的分片照常重组
+        assertNull(reassembler.receive(session, fragment(0, 4, 300, 80)));
+        assertEquals(reassembler.charge(4), reassembler.getPendingBytes(session));
+    }
+}
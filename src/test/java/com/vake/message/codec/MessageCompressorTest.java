@@ -0,0 +1,162 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import com.vake.message.Message;
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.AbstractProtocolDecoderOutput;
+
+/**
+ * MessageCompressor按阈值压缩与MessageDecoder解压测试
+ */
+public class MessageCompressorTest extends TestCase
+{
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final MessageCompressor compressor = new MessageCompressor(64);
+
+    private static Message newMessage(String content)
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(1);
+        msg.setFlags(Message.FLAG_PARTIAL);
+        msg.setPartIndex(3);
+        msg.setContent(content);
+        msg.setContentLength(content.length());
+        return msg;
+    }
+
+    private static String readouts(int count)
+    {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            builder.append("meter=").append(i % 10).append(",voltage=220.").append(i % 3).append(';');
+        }
+        return builder.toString();
+    }
+
+    private static Message decode(IoBuffer frame) throws Exception
+    {
+        final AbstractProtocolDecoderOutput out = new AbstractProtocolDecoderOutput()
+        {
+            public void flush(org.apache.mina.core.filterchain.IoFilter.NextFilter nextFilter, IoSession session)
+            {
+            }
+        };
+        new MessageDecoder().decode(new DummySession(), frame, out);
+        assertEquals(1, out.getMessageQueue().size());
+        return (Message) out.getMessageQueue().poll();
+    }
+
+    public void testCompressesAboveThreshold() throws Exception
+    {
+        final String content = readouts(100);
+        final IoBuffer frame = newMessage(content).encodeToBuffer();
+        final IoBuffer compressed = compressor.compress(frame.duplicate());
+        assertNotSame(frame, compressed);
+        assertTrue(compressed.remaining() < frame.remaining() / 4);
+        assertEquals(Message.FLAG_PARTIAL | Message.FLAG_COMPRESSED, compressed.getInt(8) >>> 24);
+        assertEquals(1, compressor.getCompressed());
+        assertEquals(frame.remaining() - compressed.remaining(), compressor.getSavedBytes());
+
+        // 解码后标志位和内容与压缩前一致
+        final Message msg = decode(compressed);
+        assertEquals(1, msg.getSerial());
+        assertEquals(Message.FLAG_PARTIAL, msg.getFlags());
+        assertEquals(3, msg.getPartIndex());
+        assertEquals(content.length(), msg.getContentLength());
+        assertEquals(content, msg.getContent());
+    }
+
+    public void testKeepsSmallAndIncompressibleFrames() throws Exception
+    {
+        final IoBuffer small = newMessage(readouts(1)).encodeToBuffer();
+        assertSame(small, compressor.compress(small));
+
+        final byte[] noise = new byte[256];
+        new Random(1).nextBytes(noise);
+        final Message msg = newMessage("");
+        msg.setContentBytes(noise, 0, noise.length);
+        msg.setContentLength(noise.length);
+        final IoBuffer random = msg.encodeToBuffer();
+        assertSame(random, compressor.compress(random));
+        assertEquals(0, compressor.getCompressed());
+    }
+
+    public void testDecodesUncompressedPeers() throws Exception
+    {
+        // 未开启压缩的对端发来的帧照常解码
+        final String content = readouts(100);
+        assertFalse(new MessageCompressor().isCandidate(Message.HEAD_LENGTH + content.length()));
+        final Message msg = decode(newMessage(content).encodeToBuffer());
+        assertEquals(content, msg.getContent());
+        assertEquals(Message.FLAG_PARTIAL, msg.getFlags());
+    }
+
+    // 篡改压缩帧中声明的原内容长度
+    private static IoBuffer withOriginalLength(IoBuffer compressed, int original)
+    {
+        final IoBuffer forged = IoBuffer.allocate(compressed.remaining(), false);
+        forged.put(compressed.duplicate());
+        forged.flip();
+        forged.putInt(Message.HEAD_LENGTH, original);
+        return forged;
+    }
+
+    public void testRejectsForgedOriginalLength() throws Exception
+    {
+        final String content = readouts(100);
+        final IoBuffer compressed = compressor.compress(newMessage(content).encodeToBuffer());
+        final IoSession session = new DummySession();
+
+        // 声明16M而实际只有几K，按实际输出分配，长度不符时丢弃
+        final IoBuffer inflated = withOriginalLength(compressed, Message.MAX_CONTENT_LENGTH);
+        assertNull(compressor.decompress(session, inflated, CHARSET, null));
+        assertFalse(inflated.hasRemaining());
+
+        // 超出配置的上限直接丢弃
+        final MessageCompressor limited = new MessageCompressor(64, MessageCompressor.DEFAULT_LEVEL, 1024);
+        assertNull(limited.decompress(session, compressed.duplicate(), CHARSET, null));
+        assertNotNull(compressor.decompress(session, compressed.duplicate(), CHARSET, null));
+    }
+
+    public void testPoolsAndDisposesZlibState() throws Exception
+    {
+        final String content = readouts(100);
+        final MessageCompressor pooled = new MessageCompressor(64);
+        final IoBuffer compressed = pooled.compress(newMessage(content).encodeToBuffer());
+        assertEquals(content, pooled.decompress(new DummySession(), compressed.duplicate(), CHARSET, null).getContent());
+        assertEquals(2, pooled.getPooled());
+
+        // 释放后仍可使用，用完即释放
+        pooled.dispose();
+        assertEquals(0, pooled.getPooled());
+        assertEquals(content, pooled.decompress(new DummySession(), compressed.duplicate(), CHARSET, null).getContent());
+        assertEquals(0, pooled.getPooled());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.codec;
+
+import java.net.SocketAddress;
+import java.util.Queue;
+
+import com.vake.message.Message;
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.DefaultTransportMetadata;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+
+/**
+ * MessageFrameDecoder的分帧测试
+ */
+public class MessageFrameDecoderTest extends TestCase
+{
+    private static ProtocolCodecSession createStreamSession()
+    {
+        final ProtocolCodecSession session = new ProtocolCodecSession();
+        // 模拟TCP这类会拆包的传输
+        session.setTransportMetadata(new DefaultTransportMetadata("mina", "stream", false, true,
+                SocketAddress.class, IoSessionConfig.class, Object.class));
+        return session;
+    }
+
+    private static Message createMessage(int serial, String content)
+    {
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(serial);
+        msg.setContent(content);
+        msg.setContentLength(content.getBytes().length);
+        return msg;
+    }
+
+    private static IoBuffer concat(Message... messages)
+    {
+        final IoBuffer buffer = IoBuffer.allocate(64).setAutoExpand(true);
+        for (Message message : messages)
+        {
+            message.encodeTo(buffer);
+        }
+        return buffer.flip();
+    }
+
+    public void testCoalescedFrames() throws Exception
+    {
+        final ProtocolCodecSession session = createStreamSession();
+        final MessageFrameDecoder decoder = new MessageFrameDecoder();
+        decoder.decode(session, concat(createMessage(1, "a"), createMessage(2, "bb"), createMessage(3, "ccc")),
+                session.getDecoderOutput());
+
+        final Queue<Object> queue = session.getDecoderOutputQueue();
+        assertEquals(3, queue.size());
+        assertEquals("a", ((Message) queue.poll()).getContent());
+        assertEquals("bb", ((Message) queue.poll()).getContent());
+        assertEquals("ccc", ((Message) queue.poll()).getContent());
+    }
+
+    public void testSplitFrames() throws Exception
+    {
+        final ProtocolCodecSession session = createStreamSession();
+        final MessageFrameDecoder decoder = new MessageFrameDecoder();
+        final IoBuffer frames = concat(createMessage(1, "hello"), createMessage(2, "world"));
+        final Queue<Object> queue = session.getDecoderOutputQueue();
+
+        // 逐字节送入，模拟最坏情况下的拆包
+        while (frames.hasRemaining())
+        {
+            final IoBuffer chunk = IoBuffer.allocate(1);
+            chunk.put(frames.get()).flip();
+            decoder.decode(session, chunk, session.getDecoderOutput());
+        }
+        assertEquals(2, queue.size());
+        final Message first = (Message) queue.poll();
+        assertEquals(1, first.getSerial());
+        assertEquals("hello", first.getContent());
+        assertEquals("world", ((Message) queue.poll()).getContent());
+    }
+
+    public void testContentLongerThanLength() throws Exception
+    {
+        final ProtocolCodecSession session = createStreamSession();
+        final MessageFrameDecoder decoder = new MessageFrameDecoder();
+        // 内容比contentLength长时只写出contentLength字节，不能破坏后面帧的边界
+        final Message longer = createMessage(1, "abcdef");
+        longer.setContentLength(3);
+        assertEquals(Message.HEAD_LENGTH + 3, longer.getFrameLength());
+        final IoBuffer frames = concat(longer, createMessage(2, "next"));
+        assertEquals(longer.getFrameLength() + createMessage(2, "next").getFrameLength(), frames.remaining());
+        decoder.decode(session, frames, session.getDecoderOutput());
+
+        final Queue<Object> queue = session.getDecoderOutputQueue();
+        assertEquals(2, queue.size());
+        assertEquals("abc", ((Message) queue.poll()).getContent());
+        final Message next = (Message) queue.poll();
+        assertEquals(2, next.getSerial());
+        assertEquals("next", next.getContent());
+        assertEquals(longer.encodeToBytes().length, longer.getFrameLength());
+    }
+
+    public void testOversizedFrameRejected() throws Exception
+    {
+        final ProtocolCodecSession session = createStreamSession();
+        final MessageFrameDecoder decoder = new MessageFrameDecoder(4);
+        try
+        {
+            decoder.decode(session, concat(createMessage(1, "too long")), session.getDecoderOutput());
+            fail("oversized frame must be rejected");
+        } catch (ProtocolDecoderException ex)
+        {
+            assertTrue(session.getDecoderOutputQueue().isEmpty());
+        }
+    }
+}
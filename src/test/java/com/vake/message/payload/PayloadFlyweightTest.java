@@ -0,0 +1,145 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.payload;
+
+import java.nio.charset.Charset;
+
+import com.vake.ArrayUtils;
+import com.vake.NumberUtils;
+import com.vake.message.Message;
+import com.vake.message.payload.PayloadSchema.Field;
+import junit.framework.TestCase;
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * PayloadSchema解析与PayloadFlyweight原地读写测试
+ */
+public class PayloadFlyweightTest extends TestCase
+{
+    private PayloadSchema schema;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        schema = PayloadSchema.load("device-status.schema");
+    }
+
+    public void testSchemaLayout() throws Exception
+    {
+        assertEquals(4 + 2 + 1 + 8 + 6 + 6 + 4 + 16, schema.getLength());
+        final Field phone = schema.getField("phone");
+        assertEquals(FieldType.BCD, phone.getType());
+        assertEquals(15, phone.getOffset());
+        assertEquals(6, phone.getSize());
+
+        try
+        {
+            PayloadSchema.parse("id int\nname ascii");
+            fail("ascii without length");
+        } catch (IllegalArgumentException expected)
+        {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("line 2"));
+        }
+        try
+        {
+            PayloadSchema.parse("id int\nid short");
+            fail("duplicate field");
+        } catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    public void testRoundTripThroughFrame() throws Exception
+    {
+        final Field deviceId = schema.getField("deviceId");
+        final Field port = schema.getField("port");
+        final Field status = schema.getField("status");
+        final Field uptime = schema.getField("uptime");
+        final Field phone = schema.getField("phone");
+        final Field mac = schema.getField("mac");
+        final Field ip = schema.getField("ip");
+        final Field name = schema.getField("name");
+
+        final PayloadFlyweight payload = new PayloadFlyweight(schema).allocate();
+        payload.putInt(deviceId, 123456);
+        payload.putShort(port, 60000);
+        payload.putByte(status, (byte) -1);
+        payload.putLong(uptime, 1L << 40);
+        payload.putBcd(phone, "13800138000");
+        payload.putMac(mac, 0x001AFF0B9C01L);
+        payload.putIpv4(ip, 0xC0A80101);
+        payload.putAscii(name, "meter-01");
+
+        final Message msg = new Message();
+        msg.setSessionId(10000);
+        msg.setSerial(1);
+        payload.writeTo(msg);
+        final IoBuffer frame = msg.encodeToBuffer();
+
+        // 直接在帧上读取
+        final PayloadFlyweight reader = new PayloadFlyweight(schema).wrap(frame);
+        assertEquals(123456, reader.getInt(deviceId));
+        assertEquals(60000, reader.getUnsignedShort(port));
+        assertEquals((short) 60000, reader.getShort(port));
+        assertEquals(-1, reader.getByte(status));
+        assertEquals(1L << 40, reader.getLong(uptime));
+        assertEquals(0x001AFF0B9C01L, reader.getMac(mac));
+        assertEquals("00-1a-ff-0b-9c-01", reader.appendMac(mac, new StringBuilder()).toString());
+        assertEquals("meter-01", reader.appendAscii(name, new StringBuilder()).toString());
+
+        // 解码后的消息内容上读取，与原有的文本转换工具结果一致
+        reader.wrap(Message.from(frame, Charset.defaultCharset()));
+        assertEquals("13800138000", reader.appendBcd(phone, new StringBuilder()).toString());
+        assertEquals(NumberUtils.intToIpV4String(reader.getIpv4(ip)), reader.appendIpv4(ip, new StringBuilder()).toString());
+        final byte[] bcd = NumberUtils.stringToBcd("13800138000", 12);
+        final byte[] ipBytes = new byte[4];
+        final byte[] bcdBytes = new byte[6];
+        System.arraycopy(frame.array(), Message.HEAD_LENGTH + ip.getOffset(), ipBytes, 0, 4);
+        System.arraycopy(frame.array(), Message.HEAD_LENGTH + phone.getOffset(), bcdBytes, 0, 6);
+        assertTrue(ArrayUtils.isEquals(bcd, bcdBytes));
+        assertEquals("192.168.1.1", ArrayUtils.bytesToIpV4Address(ipBytes));
+    }
+
+    public void testRejectsMismatchedFields() throws Exception
+    {
+        final PayloadFlyweight payload = new PayloadFlyweight(schema).allocate();
+        try
+        {
+            payload.getInt(schema.getField("port"));
+            fail("type mismatch");
+        } catch (IllegalArgumentException expected)
+        {
+        }
+        try
+        {
+            payload.getInt(PayloadSchema.parse("deviceId int").getField("deviceId"));
+            fail("field of another schema");
+        } catch (IllegalArgumentException expected)
+        {
+        }
+        try
+        {
+            payload.wrap(new byte[schema.getLength() - 1], 0);
+            fail("array too short");
+        } catch (IndexOutOfBoundsException expected)
+        {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * ConcurrencyLimiter的许可、排队与AIMD调整测试
+ */
+public class ConcurrencyLimiterTest extends TestCase
+{
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public void testFailFastAtLimit()
+    {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10, 0);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejected());
+        limiter.onIgnore();
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    public void testQueueRunsWhenPermitReleased()
+    {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10, 1);
+        final AtomicInteger runs = new AtomicInteger();
+        final Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                runs.incrementAndGet();
+            }
+        };
+        assertTrue(limiter.enqueue(task));
+        assertEquals(1, runs.get());
+        assertTrue(limiter.enqueue(task));
+        assertEquals(1, limiter.getQueueDepth());
+        assertFalse("queue is full", limiter.enqueue(task));
+
+        limiter.onIgnore();
+        assertEquals(2, runs.get());
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    public void testQueuedTaskRunsOnExecutor() throws Exception
+    {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10, 1, executor);
+            final AtomicReference<Thread> ranOn = new AtomicReference<>();
+            final Runnable task = new Runnable()
+            {
+                public void run()
+                {
+                    ranOn.set(Thread.currentThread());
+                }
+            };
+            // 有许可时仍在调用线程执行
+            assertTrue(limiter.enqueue(task));
+            assertSame(Thread.currentThread(), ranOn.get());
+            ranOn.set(null);
+            assertTrue(limiter.enqueue(task));
+
+            // 出队的任务不在完成请求的线程执行
+            limiter.onIgnore();
+            executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                }
+            }).get();
+            assertNotNull(ranOn.get());
+            assertNotSame(Thread.currentThread(), ranOn.get());
+            assertEquals(1, limiter.getInFlight());
+        } finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testBlockTimesOut() throws InterruptedException
+    {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10, 0);
+        assertTrue(limiter.acquire(10, TimeUnit.MILLISECONDS));
+        assertFalse(limiter.acquire(10, TimeUnit.MILLISECONDS));
+        limiter.onSuccess(RTT);
+        assertTrue(limiter.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    public void testAdditiveIncreaseMultiplicativeDecrease()
+    {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 12, 0);
+        // 只用到一半以下时不增加
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(RTT);
+        assertEquals(10, limiter.getLimit());
+
+        for (int i = 0; i < 5; i++)
+        {
+            for (int j = 0; j < limiter.getLimit(); j++)
+            {
+                limiter.tryAcquire();
+            }
+            limiter.onSuccess(RTT);
+            while (limiter.getInFlight() > 0)
+            {
+                limiter.onIgnore();
+            }
+        }
+        assertEquals("capped at max limit", 12, limiter.getLimit());
+
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped();
+        assertEquals(10, limiter.getLimit());
+
+        // 往返时间远超最小值时视为排队，同样缩减
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(RTT * 10);
+        assertEquals(9, limiter.getLimit());
+    }
+}
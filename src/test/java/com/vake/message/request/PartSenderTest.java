@@ -0,0 +1,132 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.vake.message.Message;
+import junit.framework.TestCase;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+ * PartSender的窗口、取消与空闲关闭测试
+ */
+public class PartSenderTest extends TestCase
+{
+    // 写往网络的分段
+    private final List<Message> written = new CopyOnWriteArrayList<>();
+
+    private DummySession session;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        session = new DummySession();
+        session.getFilterChain().addLast("partAck", PartSender.getAckFilter());
+        session.getFilterChain().addLast("recorder", new IoFilterAdapter()
+        {
+            @Override
+            public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception
+            {
+                written.add((Message) writeRequest.getMessage());
+                nextFilter.filterWrite(session, writeRequest);
+            }
+        });
+    }
+
+    private static Message request(int serial)
+    {
+        final Message request = new Message();
+        request.setSessionId(10000);
+        request.setSerial(serial);
+        return request;
+    }
+
+    private static void sendParts(PartSender sender, int parts)
+    {
+        for (int i = 0; i < parts; i++)
+        {
+            final Message part = new Message();
+            part.setContent("part" + i);
+            part.setContentLength(part.getContent().length());
+            sender.send(part, i == parts - 1);
+        }
+    }
+
+    public void testAckOpensWindow()
+    {
+        final PartSender sender = PartSender.open(session, request(1), 2);
+        sendParts(sender, 5);
+        assertEquals(2, written.size());
+        assertEquals(3, sender.getQueued());
+
+        session.getFilterChain().fireMessageReceived(PartSender.newAck(10000, 1, 4));
+        assertEquals(4, written.size());
+        // 旧的确认不缩小窗口
+        session.getFilterChain().fireMessageReceived(PartSender.newAck(10000, 1, 3));
+        assertEquals(1, sender.getQueued());
+        session.getFilterChain().fireMessageReceived(PartSender.newAck(10000, 1, 5));
+        assertEquals(5, written.size());
+        assertFalse(sender.isOpen());
+    }
+
+    public void testCancelClosesSender()
+    {
+        final PartSender sender = PartSender.open(session, request(1), 2);
+        sendParts(sender, 5);
+        assertTrue(sender.isOpen());
+
+        session.getFilterChain().fireMessageReceived(PartSender.newCancel(10000, 1));
+        assertFalse(sender.isOpen());
+        assertEquals(0, sender.getQueued());
+        assertEquals(2, written.size());
+    }
+
+    public void testIdleSenderIsClosed() throws Exception
+    {
+        final PartSender idle = PartSender.open(session, request(1), 2, 50);
+        sendParts(idle, 5);
+        final PartSender active = PartSender.open(session, request(2), 2, 50);
+        sendParts(active, 5);
+        Thread.sleep(30);
+        session.getFilterChain().fireMessageReceived(PartSender.newAck(10000, 2, 3));
+        Thread.sleep(30);
+
+        // 收到确认时顺带关闭空闲超时的发送方，仍有确认的不受影响
+        session.getFilterChain().fireMessageReceived(PartSender.newAck(10000, 2, 4));
+        assertFalse(idle.isOpen());
+        assertEquals(0, idle.getQueued());
+        assertTrue(active.isOpen());
+        assertEquals(1, active.getQueued());
+    }
+
+    public void testSessionCloseClosesSenders()
+    {
+        final PartSender sender = PartSender.open(session, request(1), 2);
+        sendParts(sender, 5);
+        session.getFilterChain().fireSessionClosed();
+        assertFalse(sender.isOpen());
+        assertEquals(0, sender.getQueued());
+    }
+}
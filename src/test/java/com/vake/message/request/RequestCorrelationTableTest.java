@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * RequestCorrelationTable测试
+ */
+public class RequestCorrelationTableTest extends TestCase
+{
+    public void testPutGetRemove()
+    {
+        final RequestCorrelationTable<String> table = new RequestCorrelationTable<String>(4, 16);
+        final long key = RequestCorrelationTable.pack(10000, 1);
+        assertNull(table.put(key, "a"));
+        assertEquals("a", table.get(key));
+        assertEquals("a", table.put(key, "b"));
+        assertEquals(1, table.size());
+        assertEquals("b", table.remove(key));
+        assertNull(table.get(key));
+        assertNull(table.remove(key));
+        assertEquals(0, table.size());
+    }
+
+    public void testPack()
+    {
+        assertEquals(0L, RequestCorrelationTable.pack(0, 0));
+        assertEquals(0xFFFFFFFFL, RequestCorrelationTable.pack(0, -1));
+        assertEquals(-1L, RequestCorrelationTable.pack(-1, -1));
+        assertTrue(RequestCorrelationTable.pack(1, 2) != RequestCorrelationTable.pack(2, 1));
+    }
+
+    /**
+     * 与HashMap对照随机增删，覆盖扩容和删除时的探测链后移
+     */
+    public void testAgainstHashMap()
+    {
+        final RequestCorrelationTable<Long> table = new RequestCorrelationTable<Long>(2, 16);
+        final Map<Long, Long> expected = new HashMap<Long, Long>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 200000; i++)
+        {
+            final long key = RequestCorrelationTable.pack(random.nextInt(8), random.nextInt(4096));
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key), table.remove(key));
+            } else
+            {
+                final Long value = Long.valueOf(i);
+                assertEquals(expected.put(key, value), table.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet())
+        {
+            assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+    }
+}
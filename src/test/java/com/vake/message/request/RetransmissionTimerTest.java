@@ -0,0 +1,93 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * RetransmissionTimer按RFC 6298计算RTO、退避和重传预算的测试
+ */
+public class RetransmissionTimerTest extends TestCase
+{
+    private static long millis(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public void testInitialAndFirstSample()
+    {
+        final RetransmissionTimer timer = new RetransmissionTimer(10);
+        assertEquals(RetransmissionTimer.DEFAULT_INITIAL_RTO, millis(timer.getRto()));
+
+        // 首个样本：SRTT = R, RTTVAR = R/2, RTO = SRTT + 4 * RTTVAR = 3R
+        timer.onRtt(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(100, millis(timer.getSrtt()));
+        assertEquals(50, millis(timer.getRttvar()));
+        assertEquals(300, millis(timer.getRto()));
+    }
+
+    public void testConvergesOnStableRtt()
+    {
+        final RetransmissionTimer timer = new RetransmissionTimer(1);
+        for (int i = 0; i < 100; i++)
+        {
+            timer.onRtt(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertEquals(50, millis(timer.getSrtt()));
+        // 偏差趋于0后RTO = SRTT + G
+        assertEquals(50 + TimingWheelScheduler.DEFAULT_TICK_MILLIS, millis(timer.getRto()));
+    }
+
+    public void testMinRtoAndBackoff()
+    {
+        final RetransmissionTimer timer = new RetransmissionTimer();
+        timer.onRtt(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(RetransmissionTimer.DEFAULT_MIN_RTO, millis(timer.getRto()));
+
+        timer.backoff(timer.getRto());
+        assertEquals(2 * RetransmissionTimer.DEFAULT_MIN_RTO, millis(timer.getRto()));
+        // 同时超时的其他请求不会叠加翻倍
+        timer.backoff(TimeUnit.MILLISECONDS.toNanos(RetransmissionTimer.DEFAULT_MIN_RTO));
+        assertEquals(2 * RetransmissionTimer.DEFAULT_MIN_RTO, millis(timer.getRto()));
+
+        // 有效样本后重新计算
+        timer.onRtt(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(RetransmissionTimer.DEFAULT_MIN_RTO, millis(timer.getRto()));
+    }
+
+    public void testBudget()
+    {
+        final RetransmissionTimer timer = new RetransmissionTimer();
+        for (int i = 0; i < RetransmissionTimer.BUDGET_MAX; i++)
+        {
+            assertTrue(timer.tryRetransmit());
+        }
+        assertFalse(timer.tryRetransmit());
+        for (int i = 0; i < RetransmissionTimer.REQUESTS_PER_RETRANSMIT; i++)
+        {
+            timer.onRequest();
+        }
+        assertTrue(timer.tryRetransmit());
+        assertFalse(timer.tryRetransmit());
+        assertEquals(RetransmissionTimer.BUDGET_MAX + 1, timer.getRetransmits());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.message.request;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * TimingWheelScheduler测试
+ */
+public class TimingWheelSchedulerTest extends TestCase
+{
+    private TimingWheelScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        // 1ms一个tick，16个槽，便于覆盖多圈的情况
+        scheduler = new TimingWheelScheduler(1, TimeUnit.MILLISECONDS, 16);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    public void testExpireInBatch() throws Exception
+    {
+        final int count = 1000;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++)
+        {
+            scheduler.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    latch.countDown();
+                }
+            }, 50, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertEquals(0, scheduler.getPendingTimeouts());
+    }
+
+    public void testCancel() throws Exception
+    {
+        final AtomicInteger fired = new AtomicInteger();
+        final Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                fired.incrementAndGet();
+            }
+        };
+        final ScheduledFuture<?> cancelled = scheduler.schedule(task, 20, TimeUnit.MILLISECONDS);
+        final ScheduledFuture<?> kept = scheduler.schedule(task, 40, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel(false));
+        assertFalse(cancelled.cancel(false));
+        assertTrue(cancelled.isCancelled());
+
+        kept.get(2, TimeUnit.SECONDS);
+        assertTrue(kept.isDone());
+        assertFalse(kept.cancel(false));
+        assertEquals(1, fired.get());
+    }
+
+    public void testDelayLongerThanOneRound() throws Exception
+    {
+        final long start = System.nanoTime();
+        final ScheduledFuture<?> future = scheduler.schedule(new Runnable()
+        {
+            public void run()
+            {
+            }
+        }, 60, TimeUnit.MILLISECONDS);
+        future.get(2, TimeUnit.SECONDS);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 60);
+    }
+
+    public void testGetWaitsForSlowCallable() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final ScheduledFuture<String> future = scheduler.schedule(new Callable<String>()
+        {
+            public String call() throws Exception
+            {
+                started.countDown();
+                Thread.sleep(200);
+                return "done";
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        // 任务执行中，结果尚未写入
+        assertFalse(future.isDone());
+        assertEquals("done", future.get());
+        assertTrue(future.isDone());
+        assertFalse(future.cancel(false));
+
+        final ScheduledFuture<String> failing = scheduler.schedule(new Callable<String>()
+        {
+            public String call() throws Exception
+            {
+                Thread.sleep(100);
+                throw new IllegalStateException("failed");
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        try
+        {
+            failing.get(1, TimeUnit.SECONDS);
+            fail("failure should be visible to get()");
+        } catch (ExecutionException expected)
+        {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * LatencyHistogram的分桶精度、百分位、合并和记录无分配测试
+ */
+public class LatencyHistogramTest extends TestCase
+{
+    public void testBucketBounds()
+    {
+        long previous = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++)
+        {
+            final long highest = LatencyHistogram.highestValue(i);
+            assertEquals(i, LatencyHistogram.index(highest));
+            assertEquals(i, LatencyHistogram.index(previous + 1));
+            // 桶宽不超过桶下界的1/32
+            assertTrue((highest - previous - 1) * 32 <= Math.max(previous + 1, 32));
+            previous = highest;
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, previous);
+    }
+
+    public void testPercentiles()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++)
+        {
+            histogram.record(i);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.addTo(new LatencyHistogram.Snapshot());
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000, snapshot.getMax());
+        assertNear(5000, snapshot.getP50());
+        assertNear(9900, snapshot.getP99());
+        assertNear(9990, snapshot.getP999());
+        assertEquals(0, new LatencyHistogram.Snapshot().getP99());
+    }
+
+    private static void assertNear(long expected, long actual)
+    {
+        assertTrue("expected " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+
+    public void testMerge()
+    {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(20);
+        b.record(-5);
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+        a.addTo(snapshot);
+        b.addTo(snapshot);
+        assertEquals(3, snapshot.getCount());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(1));
+
+        final LatencyHistogram.Snapshot other = a.addTo(new LatencyHistogram.Snapshot());
+        assertEquals(4, snapshot.add(other).getCount());
+        assertEquals(0, snapshot.reset().getCount());
+    }
+
+    public void testRecordAndSnapshotDoNotAllocate()
+    {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+        for (int i = 0; i < 100000; i++)
+        {
+            histogram.record(i);
+            histogram.addTo(snapshot.reset());
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++)
+        {
+            histogram.record(i);
+        }
+        histogram.addTo(snapshot.reset());
+        final long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        assertEquals(200000, snapshot.getCount());
+    }
+
+    public void testConcurrentRecord() throws InterruptedException
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < 10000; i++)
+                    {
+                        histogram.record(i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.addTo(new LatencyHistogram.Snapshot());
+        assertEquals(40000, snapshot.getCount());
+        assertEquals(9999, snapshot.getMax());
+    }
+}
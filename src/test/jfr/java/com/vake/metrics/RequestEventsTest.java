@@ -0,0 +1,189 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package com.vake.metrics;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vake.MessageClient;
+import com.vake.MessageServer;
+import com.vake.message.Message;
+import com.vake.message.request.TimingWheelScheduler;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+import org.apache.mina.transport.socket.nio.NioDatagramAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+
+/**
+ * 用vake-requests.jfc录制一次请求响应，检查各阶段的JFR事件
+ */
+public class RequestEventsTest extends TestCase
+{
+    private static final int SESSION_ID = 20000;
+
+    private static Configuration configuration() throws Exception
+    {
+        try (Reader reader = new InputStreamReader(RequestEventsTest.class.getResourceAsStream("/vake-requests.jfc"), "UTF-8"))
+        {
+            return Configuration.create(reader);
+        }
+    }
+
+    // 按事件名统计指定sessionId的事件数
+    private static Map<String, Integer> count(File file, int sessionId) throws Exception
+    {
+        final Map<String, Integer> counts = new HashMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath()))
+        {
+            final String name = event.getEventType().getName();
+            if (name.startsWith("com.vake.") && event.hasField("sessionId") && sessionId == event.getInt("sessionId"))
+            {
+                final Integer count = counts.get(name);
+                counts.put(name, null == count ? 1 : count + 1);
+            }
+        }
+        return counts;
+    }
+
+    public void testDisabledWithoutRecording()
+    {
+        assertTrue(RequestEvents.isAvailable());
+        assertNull(RequestEvents.begin());
+    }
+
+    public void testLifecycleEvents() throws Exception
+    {
+        final Configuration configuration = configuration();
+        final NioDatagramAcceptor server = MessageServer.bindDatagram(0);
+        final MessageClient client = new MessageClient(new TimingWheelScheduler(), "127.0.0.1",
+                server.getLocalAddress().getPort(), 0, false, 1);
+        final File file = File.createTempFile("requests", ".jfr");
+        try (Recording recording = new Recording(configuration))
+        {
+            recording.start();
+            for (int serial = 1; serial <= 5; serial++)
+            {
+                final Message msg = new Message();
+                msg.setSessionId(SESSION_ID);
+                msg.setSerial(serial);
+                msg.setContent("jfr" + serial);
+                msg.setContentLength(msg.getContent().length());
+                assertNotNull(client.execute(SESSION_ID, msg));
+            }
+            recording.stop();
+            recording.dump(file.toPath());
+        } finally
+        {
+            client.destory();
+            server.dispose();
+        }
+
+        try
+        {
+            final Map<String, Integer> counts = new HashMap<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath()))
+            {
+                final String name = event.getEventType().getName();
+                if (!name.startsWith("com.vake.") || SESSION_ID != event.getInt("sessionId")
+                        || 3 != event.getInt("serial"))
+                {
+                    continue;
+                }
+                final Integer count = counts.get(name);
+                counts.put(name, null == count ? 1 : count + 1);
+                if ("com.vake.Request".equals(name))
+                {
+                    assertEquals(RequestEvents.OK, event.getString("outcome"));
+                    assertFalse(event.getDuration().isNegative() || event.getDuration().isZero());
+                }
+            }
+            assertEquals(Integer.valueOf(1), counts.get("com.vake.RequestEnqueued"));
+            // 请求和回显的响应各编解码、收发一次
+            assertEquals(Integer.valueOf(2), counts.get("com.vake.MessageEncoded"));
+            assertEquals(Integer.valueOf(2), counts.get("com.vake.MessageWritten"));
+            assertEquals(Integer.valueOf(2), counts.get("com.vake.DatagramReceived"));
+            assertEquals(Integer.valueOf(2), counts.get("com.vake.MessageDecoded"));
+            assertEquals(Integer.valueOf(1), counts.get("com.vake.ResponseMatched"));
+            assertEquals(Integer.valueOf(1), counts.get("com.vake.Request"));
+        } finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testNoRawBufferEventsOverTcp() throws Exception
+    {
+        final NioSocketAcceptor server = MessageServer.bindSocket(0);
+        final File file = File.createTempFile("requests", ".jfr");
+        try (Recording recording = new Recording(configuration()))
+        {
+            recording.start();
+            final Message first = new Message();
+            first.setSessionId(SESSION_ID + 1);
+            first.setSerial(1);
+            first.setContent("first");
+            first.setContentLength(first.getContent().length());
+            final Message second = Message.copy(first);
+            second.setSerial(2);
+            final byte[] firstBytes = first.encodeToBytes();
+            final byte[] secondBytes = second.encodeToBytes();
+            try (Socket socket = new Socket("127.0.0.1", server.getLocalAddress().getPort()))
+            {
+                // 第二帧从中间拆开，读到的buffer不按帧对齐
+                final OutputStream out = socket.getOutputStream();
+                out.write(firstBytes);
+                out.write(secondBytes, 0, 5);
+                out.flush();
+                Thread.sleep(100);
+                out.write(secondBytes, 5, secondBytes.length - 5);
+                out.flush();
+                final DataInputStream in = new DataInputStream(socket.getInputStream());
+                in.readFully(new byte[firstBytes.length + secondBytes.length]);
+            }
+            recording.stop();
+            recording.dump(file.toPath());
+        } finally
+        {
+            server.dispose();
+        }
+
+        try
+        {
+            final Map<String, Integer> counts = count(file, SESSION_ID + 1);
+            // 逐帧的编解码事件，没有从原始buffer解析出的收发事件
+            assertEquals(Integer.valueOf(2), counts.get("com.vake.MessageDecoded"));
+            assertEquals(Integer.valueOf(2), counts.get("com.vake.MessageEncoded"));
+            assertNull(counts.get("com.vake.DatagramReceived"));
+            assertNull(counts.get("com.vake.MessageWritten"));
+        } finally
+        {
+            file.delete();
+        }
+    }
+}